@@ -0,0 +1,118 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.constraint;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures validations per second of compiled constraint chains shared by all threads, compared to parsing
+ * the constraints for every value as the per session {@link ConstraintManager} did before they were cached. Run with
+ * {@code mvn -P benchmark test-compile exec:exec}, the number of threads is set by {@code -Djmh.args="-t 8"}.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConstraintValidationBenchmark {
+
+   @Param({ "number", "date", "list", "case" })
+   private String kind;
+
+   private List<String> configurations;
+   private List<String> values;
+   private ConstraintType constraintType;
+   private ConstraintManager constraintManager;
+   private CompiledConstraints compiledConstraints;
+
+   @Setup
+   public void setUp() throws InvalidConstraintException {
+      switch (kind) {
+         case "number":
+            constraintType = new NumberConstraintType();
+            configurations = Arrays.asList("isNumber", "greaterThan:-1000", "lessThan:1000");
+            values = Arrays.asList("12", "-999", "1 000", "3.14", "abc", "1000");
+            break;
+         case "date":
+            constraintType = new DateTimeConstraintType();
+            configurations = Collections.singletonList("date:yyyy/MM/dd HH:mm:ss");
+            values = Arrays.asList("2017/03/04 10:11:12", "2016/12/31 23:59:59", "2017/03/04", "now");
+            break;
+         case "list":
+            constraintType = new ListConstraintType();
+            configurations = Collections.singletonList("oneOf:red,green,blue,yellow,black,white");
+            values = Arrays.asList("red", "blue", "white", "purple");
+            break;
+         default:
+            constraintType = new CaseConstraintType();
+            configurations = Collections.singletonList("case:lower");
+            values = Arrays.asList("lower", "Upper", "MiXeD", "lower case words");
+      }
+
+      constraintType.setLocale(Locale.US);
+      constraintManager = new ConstraintManager(Locale.US);
+      compiledConstraints = constraintManager.compile(configurations);
+   }
+
+   @Benchmark
+   public Constraint.ConstraintResult compiled() {
+      return compiledConstraints.isValid(nextValue());
+   }
+
+   @Benchmark
+   public Constraint.ConstraintResult compiledLookup() throws InvalidConstraintException {
+      return constraintManager.compile(configurations).isValid(nextValue());
+   }
+
+   @Benchmark
+   public Constraint.ConstraintResult uncached() throws InvalidConstraintException {
+      final List<Constraint> constraints = new ArrayList<>();
+      for (final String configuration : configurations) {
+         constraints.add(constraintType.parseConstraint(configuration));
+      }
+
+      return CompiledConstraints.isValid(constraints, nextValue());
+   }
+
+   private String nextValue() {
+      return values.get(ThreadLocalRandom.current().nextInt(values.size()));
+   }
+}
@@ -45,10 +45,36 @@ public final class LumeerConst {
    public static final String SYSTEM_DB_PASSWORD_PROPERTY = "sys_db_passwd";
    public static final String SYSTEM_DB_USE_SSL = "sys_db_ssl";
 
+   public static final String DB_POOL_MAX_SIZE_PROPERTY = "db_pool_max_size";
+   public static final String DB_POOL_MIN_SIZE_PROPERTY = "db_pool_min_size";
+   public static final String DB_POOL_MAX_WAIT_QUEUE_SIZE_PROPERTY = "db_pool_max_wait_queue_size";
+   public static final String DB_POOL_MAX_WAIT_TIME_PROPERTY = "db_pool_max_wait_time";
+   public static final String DB_POOL_MAX_IDLE_TIME_PROPERTY = "db_pool_max_idle_time";
+   public static final String DB_CONNECT_TIMEOUT_PROPERTY = "db_connect_timeout";
+   public static final String DB_AUTH_DATABASE_PROPERTY = "db_auth_database";
+
+   public static final String SEQUENCE_BLOCK_SIZE_PROPERTY = "sequence_block_size";
+
+   public static final String LINK_GRAPH_INDEX_PROPERTY = "link_graph_index";
+
+   public static final String VERSION_SNAPSHOT_INTERVAL_PROPERTY = "version_snapshot_interval";
+
+   public static final String CACHE_MAX_SIZE_PROPERTY = "cache_max_size";
+   public static final String CACHE_EXPIRE_AFTER_WRITE_PROPERTY = "cache_expire_after_write";
+   public static final String CACHE_REFRESH_AFTER_WRITE_PROPERTY = "cache_refresh_after_write";
+
    public static final String USER_LOCALE_PROPERTY = "locale";
 
    public static final String DEFAULT_LIMIT_PROPERTY = "result_limit";
 
+   public static final String NEXT_PAGE_TOKEN_HEADER = "X-Next-Page-Token";
+
+   public static final String CSV_MEDIA_TYPE = "text/csv";
+
+   public static final String JSON_LINES_MEDIA_TYPE = "application/x-ndjson";
+
+   public static final String BSON_MEDIA_TYPE = "application/bson";
+
    private LumeerConst() {
       // we do not want any instances to be created
       throw new UnsupportedOperationException(String.format("Creation of %s is forbidden.", this.getClass().getCanonicalName()));
@@ -92,8 +118,12 @@ public final class LumeerConst {
       public static final String UPDATED_BY_USER_KEY = METADATA_PREFIX + "update-user";
       public static final String USER_RIGHTS = METADATA_PREFIX + "rights";
       public static final String COLLECTION_NAME = METADATA_PREFIX + "collection"; // used in cases where we need to note the source collection in the document
+      public static final String LINK_DEPTH = METADATA_PREFIX + "link-depth"; // used in results of link traversal to note the number of links from the start document
+      public static final String SHADOW_DELTA_KEY = METADATA_PREFIX + "delta"; // marks a delta version in a shadow collection, holds attributes missing in that version
+      public static final String SHADOW_BASE_KEY = METADATA_PREFIX + "delta-base"; // version of the full copy in a shadow collection that a delta version is based on
       public static final String METADATA_VERSION_KEY = METADATA_PREFIX + "version";
-      public static final List<String> METADATA_KEYS = Arrays.asList(METADATA_VERSION_KEY, CREATE_DATE_KEY, UPDATE_DATE_KEY, CREATE_BY_USER_KEY, UPDATED_BY_USER_KEY, USER_RIGHTS);
+      public static final String METADATA_REVISION_KEY = METADATA_PREFIX + "revision"; // incremented by writes that do not create a new version (access rights, metadata)
+      public static final List<String> METADATA_KEYS = Arrays.asList(METADATA_VERSION_KEY, METADATA_REVISION_KEY, CREATE_DATE_KEY, UPDATE_DATE_KEY, CREATE_BY_USER_KEY, UPDATED_BY_USER_KEY, USER_RIGHTS);
    }
 
    public static class View {
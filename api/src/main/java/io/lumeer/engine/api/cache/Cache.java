@@ -49,7 +49,8 @@ public interface Cache<T> {
    }
 
    /**
-    * Gets a value from the cache or computes a new value when it was null.
+    * Gets a value from the cache or computes a new value when it was null. A cache refreshing its entries calls
+    * the function again later on another thread, so the function must not depend on the request or session context.
     *
     * @param key
     *       Entry key.
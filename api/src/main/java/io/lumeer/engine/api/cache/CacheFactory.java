@@ -34,4 +34,18 @@ public interface CacheFactory {
     * @return A fresh cache of given type.
     */
    <T> Cache<T> getCache();
+
+   /**
+    * Obtains a fresh cache of given type bounded by the given policy. Factories that cannot bound their caches
+    * ignore the policy.
+    *
+    * @param policy
+    *       Bounds and expiration of the cache.
+    * @param <T>
+    *       Type of values stored in the cache.
+    * @return A fresh cache of given type.
+    */
+   default <T> Cache<T> getCache(final CachePolicy policy) {
+      return getCache();
+   }
 }
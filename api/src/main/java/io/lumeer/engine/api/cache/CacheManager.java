@@ -49,4 +49,15 @@ public interface CacheManager {
     */
    <T> Cache<T> getCache(final String cacheName);
 
+   /**
+    * Removes an entry from all caches of given name regardless of their scope, e.g. when the cached value was changed
+    * by another node of a cluster. It can be called outside of any request.
+    *
+    * @param cacheName
+    *       Name of the caches.
+    * @param key
+    *       Key of the entry to remove.
+    */
+   void invalidate(final String cacheName, final String key);
+
 }
@@ -0,0 +1,120 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.cache;
+
+import java.util.function.ToLongBiFunction;
+
+/**
+ * Bounds and expiration of a cache. Caches evict the entries they consider least useful once the total weight
+ * of their entries exceeds the maximum weight. Entries weigh 1 unless a weigher is given, the maximum weight is then
+ * the maximum number of entries.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class CachePolicy {
+
+   /**
+    * Policy of a cache that is never evicted, nor expired.
+    */
+   public static final CachePolicy UNBOUNDED = new CachePolicy(0, 0, 0);
+
+   private final long maximumWeight;
+   private final ToLongBiFunction<String, Object> weigher;
+   private final long expireAfterWrite;
+   private final long refreshAfterWrite;
+
+   /**
+    * Defines a new policy counting the entries.
+    *
+    * @param maximumSize
+    *       The maximum number of entries, 0 means no limit.
+    * @param expireAfterWrite
+    *       Time in milliseconds after which an entry is removed since it was written, 0 means never.
+    * @param refreshAfterWrite
+    *       Time in milliseconds after which an entry is recomputed in the background since it was written,
+    *       0 means never. Only entries obtained by {@link Cache#computeIfAbsent(String, java.util.function.Function)}
+    *       are refreshed, the stale value is returned until the new one is computed.
+    */
+   public CachePolicy(final long maximumSize, final long expireAfterWrite, final long refreshAfterWrite) {
+      this(maximumSize, null, expireAfterWrite, refreshAfterWrite);
+   }
+
+   /**
+    * Defines a new policy weighing the entries.
+    *
+    * @param maximumWeight
+    *       The maximum total weight of the entries, 0 means no limit.
+    * @param weigher
+    *       Computes the weight of an entry from its key and value, null to count the entries.
+    * @param expireAfterWrite
+    *       Time in milliseconds after which an entry is removed since it was written, 0 means never.
+    * @param refreshAfterWrite
+    *       Time in milliseconds after which an entry is recomputed in the background since it was written, 0 means never.
+    */
+   public CachePolicy(final long maximumWeight, final ToLongBiFunction<String, Object> weigher, final long expireAfterWrite, final long refreshAfterWrite) {
+      this.maximumWeight = maximumWeight;
+      this.weigher = weigher;
+      this.expireAfterWrite = expireAfterWrite;
+      this.refreshAfterWrite = refreshAfterWrite;
+   }
+
+   public long getMaximumWeight() {
+      return maximumWeight;
+   }
+
+   public ToLongBiFunction<String, Object> getWeigher() {
+      return weigher;
+   }
+
+   public long getExpireAfterWrite() {
+      return expireAfterWrite;
+   }
+
+   public long getRefreshAfterWrite() {
+      return refreshAfterWrite;
+   }
+
+   public boolean isBounded() {
+      return maximumWeight > 0;
+   }
+
+   /**
+    * Computes the weight of an entry.
+    *
+    * @param key
+    *       Entry key.
+    * @param value
+    *       Entry value.
+    * @return The weight of the entry, at least 1.
+    */
+   public long weigh(final String key, final Object value) {
+      return weigher != null ? Math.max(1L, weigher.applyAsLong(key, value)) : 1L;
+   }
+
+   @Override
+   public String toString() {
+      return "CachePolicy{"
+            + "maximumWeight=" + maximumWeight
+            + ", weigher=" + weigher
+            + ", expireAfterWrite=" + expireAfterWrite
+            + ", refreshAfterWrite=" + refreshAfterWrite
+            + '}';
+   }
+}
@@ -51,6 +51,9 @@ public class CaseConstraintType implements ConstraintType {
    public Constraint parseConstraint(final String constraintConfiguration) throws InvalidConstraintException {
       final String[] config = constraintConfiguration.split(":", 2);
 
+      // the constraint keeps the current locale
+      final Locale locale = this.locale;
+
       if (config.length == 2 && CONSTRAINT_PREFIX.equals(config[0])) {
          switch (config[1]) {
             case LOWER_CASE:
@@ -0,0 +1,162 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.constraint;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable chain of parsed constraints bound to a locale. It can be cached and used by multiple threads at once.
+ * Instances are obtained by {@link ConstraintManager#compile(List)}.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public final class CompiledConstraints {
+
+   /**
+    * Parsed constraints.
+    */
+   private final List<Constraint> constraints;
+
+   /**
+    * Locale the constraints were parsed with.
+    */
+   private final Locale locale;
+
+   CompiledConstraints(final List<Constraint> constraints, final Locale locale) {
+      this.constraints = Collections.unmodifiableList(constraints);
+      this.locale = locale;
+   }
+
+   /**
+    * Validates the given value with all constraints.
+    *
+    * @param value
+    *       The value to validate.
+    * @return Validation result.
+    */
+   public Constraint.ConstraintResult isValid(final String value) {
+      return isValid(constraints, value);
+   }
+
+   /**
+    * Tries to fix the value so that all constraints return {@link io.lumeer.engine.api.constraint.Constraint.ConstraintResult#VALID}.
+    *
+    * @param value
+    *       The value to fix.
+    * @return The fixed value or null when it was not possible to fix the value so that all constraint are met.
+    */
+   public String fix(final String value) {
+      return fix(constraints, value);
+   }
+
+   /**
+    * Parses the value to a date with the last date time constraint, as the value could have been fixed according to it.
+    *
+    * @param value
+    *       The value to parse.
+    * @return The date or null when the value is not a date in the format of the constraint or there is no date time constraint.
+    */
+   public Date parseDate(final String value) {
+      for (int i = constraints.size() - 1; i >= 0; i--) {
+         if (constraints.get(i) instanceof DateTimeConstraint) {
+            return ((DateTimeConstraint) constraints.get(i)).parse(value);
+         }
+      }
+
+      return null;
+   }
+
+   /**
+    * Gets configurations of the constraints.
+    *
+    * @return The list of constraint configurations.
+    */
+   public List<String> getConstraintConfigurations() {
+      return constraints.stream().map(Constraint::getConfigurationString).collect(Collectors.toList());
+   }
+
+   /**
+    * Gets the locale the constraints were parsed with.
+    *
+    * @return The locale of the constraints.
+    */
+   public Locale getLocale() {
+      return locale;
+   }
+
+   static Constraint.ConstraintResult isValid(final List<Constraint> constraints, final String value) {
+      Constraint.ConstraintResult result = Constraint.ConstraintResult.VALID;
+
+      for (final Constraint constraint : constraints) {
+         Constraint.ConstraintResult r = constraint.isValid(value);
+
+         // can make the result only worse
+         if (r.ordinal() > result.ordinal()) {
+            result = r;
+         }
+      }
+
+      return result;
+   }
+
+   static String fix(final List<Constraint> constraints, final String value) {
+      return tryToFix(constraints, new HashSet<>(), value);
+   }
+
+   /**
+    * Internal helper that tries to fix the value.
+    *
+    * @param constraints
+    *       Constraints the value must satisfy.
+    * @param used
+    *       Constraints that were already tried to fix the value.
+    * @param value
+    *       The value to fix.
+    * @return The fixed value or null when it was not possible to fix the value so that all constraint are met.
+    */
+   private static String tryToFix(final List<Constraint> constraints, final Set<Constraint> used, final String value) {
+      for (final Constraint c : constraints) {
+         if (!used.contains(c)) {
+            Constraint.ConstraintResult r = c.isValid(value);
+            if (r == Constraint.ConstraintResult.INVALID) { // no way of moving forward
+               return null;
+            } else if (r == Constraint.ConstraintResult.FIXABLE) { // apply the fix
+               final String fixed = c.fix(value);
+
+               used.add(c);
+
+               if (fixed != null) {
+                  return tryToFix(constraints, used, fixed); // try the next round
+               } else {
+                  return null;
+               }
+            }
+         }
+      }
+
+      return value;
+   }
+}
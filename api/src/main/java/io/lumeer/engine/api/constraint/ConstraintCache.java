@@ -0,0 +1,100 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.constraint;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Application-wide cache of constraint types and parsed constraints bounded by the number of entries. Lookups do not
+ * lock as they happen for every validated value. When the cache is full, it is cleared and filled again by the values
+ * in use, so configurations that are not used anymore cannot pile up.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+final class ConstraintCache<K, V> {
+
+   private final int maximumSize;
+
+   private final Map<K, V> data = new ConcurrentHashMap<>();
+
+   /**
+    * Creates an empty cache.
+    *
+    * @param maximumSize
+    *       The maximum number of entries.
+    */
+   ConstraintCache(final int maximumSize) {
+      this.maximumSize = maximumSize;
+   }
+
+   /**
+    * Gets the cached value.
+    *
+    * @param key
+    *       The key of the value.
+    * @return The cached value or null when there is none.
+    */
+   V get(final K key) {
+      return data.get(key);
+   }
+
+   /**
+    * Caches the value unless there already is one for the key.
+    *
+    * @param key
+    *       The key of the value.
+    * @param value
+    *       The value to cache.
+    * @return The value in the cache.
+    */
+   V putIfAbsent(final K key, final V value) {
+      if (data.size() >= maximumSize) {
+         data.clear();
+      }
+
+      final V previous = data.putIfAbsent(key, value);
+      return previous != null ? previous : value;
+   }
+
+   /**
+    * Gets the cached value or computes and caches a new one.
+    *
+    * @param key
+    *       The key of the value.
+    * @param fce
+    *       Computes the value.
+    * @return The value in the cache.
+    */
+   V computeIfAbsent(final K key, final Function<K, V> fce) {
+      final V value = data.get(key);
+      return value != null ? value : putIfAbsent(key, fce.apply(key));
+   }
+
+   /**
+    * Gets the number of cached values.
+    *
+    * @return The number of cached values.
+    */
+   int size() {
+      return data.size();
+   }
+}
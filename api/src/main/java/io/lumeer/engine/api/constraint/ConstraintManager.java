@@ -23,15 +23,17 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
  * Holds a list of constraints that can be obtained from a list of string configurations.
+ * Parsed constraints are immutable and cached application-wide per locale, so are the compiled constraint chains
+ * obtained by {@link #compile(List)}. The caches are bounded by {@link #MAX_CACHED_LOCALES} and {@link #MAX_CACHED_CONSTRAINTS}.
  *
  * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
  */
@@ -45,19 +47,44 @@ public class ConstraintManager {
    /**
     * Configured constraints.
     */
-   private List<Constraint> constraints;
+   private List<Constraint> constraints = new ArrayList<>();
 
    /**
-    * Registry of constraint types.
+    * Registry of constraint types of the current locale.
     */
-   private Map<String, ConstraintType> registry = new HashMap<>();
+   private Map<String, ConstraintType> registry;
 
    /**
     * List of all constraint type classes.
     */
-   private static final ConstraintType[] CONSTRAINT_CLASSES = {
-         new NumberConstraintType(), new CaseConstraintType(), new ListConstraintType(), new MatchesConstraintType(), new DateTimeConstraintType()
-   };
+   private static final List<Supplier<ConstraintType>> CONSTRAINT_CLASSES = Arrays.asList(
+         NumberConstraintType::new, CaseConstraintType::new, ListConstraintType::new, MatchesConstraintType::new, DateTimeConstraintType::new
+   );
+
+   /**
+    * Maximum number of locales with cached constraint types and constraints.
+    */
+   public static final int MAX_CACHED_LOCALES = 64;
+
+   /**
+    * Maximum number of cached parsed constraints, and of compiled constraint chains, per locale.
+    */
+   public static final int MAX_CACHED_CONSTRAINTS = 4096;
+
+   /**
+    * Registries of constraint types per locale.
+    */
+   private static final ConstraintCache<Locale, Map<String, ConstraintType>> REGISTRIES = new ConstraintCache<>(MAX_CACHED_LOCALES);
+
+   /**
+    * Parsed constraints per locale and configuration.
+    */
+   private static final ConstraintCache<Locale, ConstraintCache<String, Constraint>> PARSED_CONSTRAINTS = new ConstraintCache<>(MAX_CACHED_LOCALES);
+
+   /**
+    * Compiled constraint chains per locale and list of configurations.
+    */
+   private static final ConstraintCache<Locale, ConstraintCache<List<String>, CompiledConstraints>> COMPILED_CONSTRAINTS = new ConstraintCache<>(MAX_CACHED_LOCALES);
 
    /**
     * Initializes an empty constraint manager.
@@ -66,21 +93,21 @@ public class ConstraintManager {
     *       When there are multiple constraints asking to be registered with the same configuration prefix.
     */
    public ConstraintManager() throws InvalidConstraintException {
-      final List<String> collisions = new ArrayList<>();
-
-      for (final ConstraintType type : CONSTRAINT_CLASSES) {
-         type.getRegisteredPrefixes().forEach(prefix -> {
-            if (registry.containsKey(prefix)) {
-               collisions.add(prefix);
-            } else {
-               registry.put(prefix, type);
-            }
-         });
-      }
+      registry = getRegistry(getEffectiveLocale());
+   }
 
-      if (collisions.size() > 0) {
-         throw new InvalidConstraintException("Multiple constraint types found for the following configuration prefixes: " + String.join(", ", collisions));
-      }
+   /**
+    * Initializes an empty constraint manager for the given locale. Managers that are handed to other threads or beans
+    * should be created with their locale rather than have it changed by {@link #setLocale(Locale)}.
+    *
+    * @param locale
+    *       The user's locale.
+    * @throws InvalidConstraintException
+    *       When there are multiple constraints asking to be registered with the same configuration prefix.
+    */
+   public ConstraintManager(final Locale locale) throws InvalidConstraintException {
+      this.locale = locale;
+      registry = getRegistry(getEffectiveLocale());
    }
 
    /**
@@ -96,6 +123,28 @@ public class ConstraintManager {
       constraints = parseConstraints(constraintConfigurations);
    }
 
+   /**
+    * Gets an immutable chain of constraints with the given configurations parsed for the current locale. The chain can be
+    * shared among threads. Chains are cached, so repeated calls with the same configurations do not parse anything.
+    *
+    * @param constraintConfigurations
+    *       Configurations of constraints.
+    * @return The compiled constraints.
+    * @throws InvalidConstraintException
+    *       When it was not possible to parse constraint configuration.
+    */
+   public CompiledConstraints compile(final List<String> constraintConfigurations) throws InvalidConstraintException {
+      final Locale effectiveLocale = getEffectiveLocale();
+      final ConstraintCache<List<String>, CompiledConstraints> compiledConstraints = COMPILED_CONSTRAINTS.computeIfAbsent(effectiveLocale, l -> new ConstraintCache<>(MAX_CACHED_CONSTRAINTS));
+
+      final CompiledConstraints compiled = compiledConstraints.get(constraintConfigurations);
+      if (compiled != null) {
+         return compiled;
+      }
+
+      return compiledConstraints.putIfAbsent(new ArrayList<>(constraintConfigurations), new CompiledConstraints(parseConstraints(constraintConfigurations), effectiveLocale));
+   }
+
    /**
     * Registers another constraint.
     *
@@ -150,18 +199,7 @@ public class ConstraintManager {
     * @return Validation result.
     */
    public Constraint.ConstraintResult isValid(final String value) {
-      Constraint.ConstraintResult result = Constraint.ConstraintResult.VALID;
-
-      for (final Constraint constraint : constraints) {
-         Constraint.ConstraintResult r = constraint.isValid(value);
-
-         // can make the result only worse
-         if (r.ordinal() > result.ordinal()) {
-            result = r;
-         }
-      }
-
-      return result;
+      return CompiledConstraints.isValid(constraints, value);
    }
 
    /**
@@ -172,39 +210,7 @@ public class ConstraintManager {
     * @return The fixed value or null when it was not possible to fix the value so that all constraint are met.
     */
    public String fix(String value) {
-      return tryToFix(new HashSet<>(), value);
-   }
-
-   /**
-    * Internal helper that tries to fix the value.
-    *
-    * @param used
-    *       Constraints that were already tried to fix the value.
-    * @param value
-    *       The value to fix.
-    * @return The fixed value or null when it was not possible to fix the value so that all constraint are met.
-    */
-   private String tryToFix(final Set<Constraint> used, final String value) {
-      for (final Constraint c : constraints) {
-         if (!used.contains(c)) {
-            Constraint.ConstraintResult r = c.isValid(value);
-            if (r == Constraint.ConstraintResult.INVALID) { // no way of moving forward
-               return null;
-            } else if (r == Constraint.ConstraintResult.FIXABLE) { // apply the fix
-               final String fixed = c.fix(value);
-
-               used.add(c);
-
-               if (fixed != null) {
-                  return tryToFix(used, c.fix(value)); // try the next round
-               } else {
-                  return null;
-               }
-            }
-         }
-      }
-
-      return value;
+      return CompiledConstraints.fix(constraints, value);
    }
 
    /**
@@ -219,15 +225,24 @@ public class ConstraintManager {
    public List<Constraint> parseConstraints(final List<String> constraintConfigurations) throws InvalidConstraintException {
       final List<Constraint> constraints = new ArrayList<>();
       final List<String> invalidConfigurations = new ArrayList<>();
+      final ConstraintCache<String, Constraint> parsedConstraints = PARSED_CONSTRAINTS.computeIfAbsent(getEffectiveLocale(), l -> new ConstraintCache<>(MAX_CACHED_CONSTRAINTS));
 
       constraintConfigurations.forEach(configuration -> {
+         final Constraint parsed = parsedConstraints.get(configuration);
+         if (parsed != null) {
+            constraints.add(parsed);
+            return;
+         }
+
          final String[] config = configuration.split(":");
 
          if (!registry.containsKey(config[0])) {
             invalidConfigurations.add(configuration);
          } else {
             try {
-               constraints.add(registry.get(config[0]).parseConstraint(configuration));
+               final Constraint constraint = registry.get(config[0]).parseConstraint(configuration);
+               parsedConstraints.putIfAbsent(configuration, constraint);
+               constraints.add(constraint);
             } catch (InvalidConstraintException e) {
                invalidConfigurations.add(configuration);
             }
@@ -273,13 +288,71 @@ public class ConstraintManager {
    }
 
    /**
-    * Gets the currently used locale.
+    * Gets the currently used locale. The manager must not be used by other threads while its locale changes.
     *
     * @param locale
     *       The currently used locale.
     */
    public void setLocale(final Locale locale) {
       this.locale = locale;
-      Arrays.asList(CONSTRAINT_CLASSES).forEach(ct -> ct.setLocale(locale));
+
+      try {
+         registry = getRegistry(getEffectiveLocale());
+      } catch (InvalidConstraintException e) { // cannot happen, the same types were registered in constructor
+         throw new IllegalStateException(e);
+      }
+
+      // constraints keep the locale they were parsed with
+      constraints = constraints.stream().map(this::localizeConstraint).collect(Collectors.toList());
+   }
+
+   private Constraint localizeConstraint(final Constraint constraint) {
+      try {
+         return parseConstraints(Collections.singletonList(constraint.getConfigurationString())).get(0);
+      } catch (InvalidConstraintException e) { // constraint registered directly, we keep it as it is
+         return constraint;
+      }
+   }
+
+   private Locale getEffectiveLocale() {
+      return locale == null ? Locale.getDefault() : locale;
+   }
+
+   /**
+    * Gets the registry of constraint types for the given locale, the registry is created only once.
+    *
+    * @param locale
+    *       The locale of constraint types.
+    * @return The registry of constraint types.
+    * @throws InvalidConstraintException
+    *       When there are multiple constraints asking to be registered with the same configuration prefix.
+    */
+   private static Map<String, ConstraintType> getRegistry(final Locale locale) throws InvalidConstraintException {
+      final Map<String, ConstraintType> existingRegistry = REGISTRIES.get(locale);
+      if (existingRegistry != null) {
+         return existingRegistry;
+      }
+
+      final Map<String, ConstraintType> registry = new HashMap<>();
+      final List<String> collisions = new ArrayList<>();
+
+      for (final Supplier<ConstraintType> constraintClass : CONSTRAINT_CLASSES) {
+         final ConstraintType type = constraintClass.get();
+         type.setLocale(locale);
+
+         type.getRegisteredPrefixes().forEach(prefix -> {
+            if (registry.containsKey(prefix)) {
+               collisions.add(prefix);
+            } else {
+               registry.put(prefix, type);
+            }
+         });
+      }
+
+      if (collisions.size() > 0) {
+         throw new InvalidConstraintException("Multiple constraint types found for the following configuration prefixes: " + String.join(", ", collisions));
+      }
+
+      return REGISTRIES.putIfAbsent(locale, Collections.unmodifiableMap(registry));
    }
 }
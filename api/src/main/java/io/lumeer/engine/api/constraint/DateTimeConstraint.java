@@ -0,0 +1,265 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.constraint;
+
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.SignStyle;
+import java.time.format.TextStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalField;
+import java.time.temporal.TemporalQueries;
+import java.time.temporal.WeekFields;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Constraint accepting values in a date time format. The format is given by a {@link java.text.SimpleDateFormat} pattern,
+ * which is translated to an immutable {@link DateTimeFormatter}, so the constraint can be shared by multiple threads.
+ * As with {@link java.text.SimpleDateFormat}, fields missing in the pattern are taken from 1970-01-01 00:00:00 in the
+ * default time zone and text following the value is ignored.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class DateTimeConstraint extends FunctionConstraint {
+
+   private static final String DATE_LETTERS = "GyYMLwWDdFEu";
+   private static final String NUMBER_LETTERS = "yYMLwWDdFuHkKhmsS";
+
+   private final DateTimeFormatter formatter;
+
+   /**
+    * Creates a constraint for the given pattern.
+    *
+    * @param pattern
+    *       The {@link java.text.SimpleDateFormat} pattern of the values.
+    * @param locale
+    *       The locale of the month and day names.
+    * @param configuration
+    *       Original constraint configuration to be able to throw user friendly exceptions.
+    * @throws IllegalArgumentException
+    *       When the pattern is not valid.
+    */
+   DateTimeConstraint(final String pattern, final Locale locale, final String configuration) {
+      this(formatter(pattern, locale), configuration);
+   }
+
+   private DateTimeConstraint(final DateTimeFormatter formatter, final String configuration) {
+      super(value -> parse(formatter, value) != null, configuration);
+
+      this.formatter = formatter;
+   }
+
+   /**
+    * Parses the value to a date.
+    *
+    * @param value
+    *       The value to parse.
+    * @return The date or null when the value is not in the format of this constraint.
+    */
+   public Date parse(final String value) {
+      return parse(formatter, value);
+   }
+
+   private static Date parse(final DateTimeFormatter formatter, final String value) {
+      try {
+         final TemporalAccessor parsed = formatter.parse(value.trim(), new ParsePosition(0));
+         final LocalDate date = parsed.query(TemporalQueries.localDate());
+         final LocalTime time = parsed.query(TemporalQueries.localTime());
+         final ZoneId zone = parsed.query(TemporalQueries.zone());
+
+         return date != null && time != null ? Date.from(ZonedDateTime.of(date, time, zone != null ? zone : ZoneId.systemDefault()).toInstant()) : null;
+      } catch (DateTimeException e) {
+         return null;
+      }
+   }
+
+   private static DateTimeFormatter formatter(final String pattern, final Locale locale) {
+      final DateTimeFormatterBuilder builder = new DateTimeFormatterBuilder().parseCaseInsensitive();
+      final WeekFields weekFields = WeekFields.of(locale);
+
+      int i = 0;
+      while (i < pattern.length()) {
+         final char c = pattern.charAt(i);
+
+         if (c == '\'') { // quoted text, two quotes stand for a quote
+            final int end = pattern.indexOf('\'', i + 1);
+            if (end < 0) {
+               throw new IllegalArgumentException("Unterminated quote in pattern: " + pattern);
+            }
+            builder.appendLiteral(end == i + 1 ? "'" : pattern.substring(i + 1, end));
+            i = end + 1;
+            continue;
+         }
+
+         if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z')) {
+            builder.appendLiteral(c);
+            i++;
+            continue;
+         }
+
+         int count = 1;
+         while (i + count < pattern.length() && pattern.charAt(i + count) == c) {
+            count++;
+         }
+         i += count;
+
+         // numbers are parsed in any width unless another number follows immediately
+         final boolean adjacent = i < pattern.length() && NUMBER_LETTERS.indexOf(pattern.charAt(i)) >= 0;
+
+         switch (c) {
+            case 'G':
+               builder.appendText(ChronoField.ERA, count >= 4 ? TextStyle.FULL : TextStyle.SHORT);
+               break;
+            case 'y':
+               if (count == 2) {
+                  builder.appendValueReduced(ChronoField.YEAR_OF_ERA, 2, 2, LocalDate.now().minusYears(80));
+               } else {
+                  number(builder, ChronoField.YEAR_OF_ERA, count, adjacent);
+               }
+               break;
+            case 'Y':
+               number(builder, weekFields.weekBasedYear(), count, adjacent);
+               break;
+            case 'M':
+            case 'L':
+               if (count >= 3) {
+                  builder.appendText(ChronoField.MONTH_OF_YEAR, count >= 4 ? TextStyle.FULL : TextStyle.SHORT);
+               } else {
+                  number(builder, ChronoField.MONTH_OF_YEAR, count, adjacent);
+               }
+               break;
+            case 'w':
+               number(builder, weekFields.weekOfWeekBasedYear(), count, adjacent);
+               break;
+            case 'W':
+               number(builder, weekFields.weekOfMonth(), count, adjacent);
+               break;
+            case 'D':
+               number(builder, ChronoField.DAY_OF_YEAR, count, adjacent);
+               break;
+            case 'd':
+               number(builder, ChronoField.DAY_OF_MONTH, count, adjacent);
+               break;
+            case 'F':
+               number(builder, ChronoField.ALIGNED_WEEK_OF_MONTH, count, adjacent);
+               break;
+            case 'E':
+               builder.appendText(ChronoField.DAY_OF_WEEK, count >= 4 ? TextStyle.FULL : TextStyle.SHORT);
+               break;
+            case 'u':
+               number(builder, ChronoField.DAY_OF_WEEK, count, adjacent);
+               break;
+            case 'a':
+               builder.appendText(ChronoField.AMPM_OF_DAY, TextStyle.SHORT);
+               break;
+            case 'H':
+               number(builder, ChronoField.HOUR_OF_DAY, count, adjacent);
+               break;
+            case 'k':
+               number(builder, ChronoField.CLOCK_HOUR_OF_DAY, count, adjacent);
+               break;
+            case 'K':
+               number(builder, ChronoField.HOUR_OF_AMPM, count, adjacent);
+               break;
+            case 'h':
+               number(builder, ChronoField.CLOCK_HOUR_OF_AMPM, count, adjacent);
+               break;
+            case 'm':
+               number(builder, ChronoField.MINUTE_OF_HOUR, count, adjacent);
+               break;
+            case 's':
+               number(builder, ChronoField.SECOND_OF_MINUTE, count, adjacent);
+               break;
+            case 'S':
+               number(builder, ChronoField.MILLI_OF_SECOND, count, adjacent);
+               break;
+            case 'z':
+               builder.appendZoneText(count >= 4 ? TextStyle.FULL : TextStyle.SHORT);
+               break;
+            case 'Z':
+               builder.appendOffset("+HHMM", "+0000");
+               break;
+            case 'X':
+               if (count > 3) {
+                  throw new IllegalArgumentException("Invalid ISO 8601 time zone in pattern: " + pattern);
+               }
+               builder.appendOffset(count == 1 ? "+HHmm" : count == 2 ? "+HHMM" : "+HH:MM", "Z");
+               break;
+            default:
+               throw new IllegalArgumentException("Illegal pattern character '" + c + "' in pattern: " + pattern);
+         }
+      }
+
+      defaultMissingFields(builder, pattern);
+
+      return builder.toFormatter(locale);
+   }
+
+   private static void number(final DateTimeFormatterBuilder builder, final TemporalField field, final int count, final boolean adjacent) {
+      if (adjacent) {
+         builder.appendValue(field, count);
+      } else {
+         builder.appendValue(field, 1, Math.max(count, 10), SignStyle.NORMAL);
+      }
+   }
+
+   // fields a date and time cannot be resolved without are taken from the epoch
+   private static void defaultMissingFields(final DateTimeFormatterBuilder builder, final String pattern) {
+      final String letters = pattern.replaceAll("'[^']*'", "");
+
+      if (!containsAny(letters, DATE_LETTERS)) {
+         builder.parseDefaulting(ChronoField.EPOCH_DAY, 0);
+      } else if (!containsAny(letters, "YwDEu")) {
+         if (!containsAny(letters, "y")) {
+            builder.parseDefaulting(ChronoField.YEAR_OF_ERA, 1970);
+         }
+         if (!containsAny(letters, "ML")) {
+            builder.parseDefaulting(ChronoField.MONTH_OF_YEAR, 1);
+         }
+         if (!containsAny(letters, "d")) {
+            builder.parseDefaulting(ChronoField.DAY_OF_MONTH, 1);
+         }
+      }
+
+      if (!containsAny(letters, "HkKh")) {
+         builder.parseDefaulting(ChronoField.HOUR_OF_DAY, 0);
+      } else if (!containsAny(letters, "a") && containsAny(letters, "Kh")) {
+         builder.parseDefaulting(ChronoField.AMPM_OF_DAY, 0);
+      }
+      if (!containsAny(letters, "m")) {
+         builder.parseDefaulting(ChronoField.MINUTE_OF_HOUR, 0);
+      }
+      if (!containsAny(letters, "s")) {
+         builder.parseDefaulting(ChronoField.SECOND_OF_MINUTE, 0);
+      }
+   }
+
+   private static boolean containsAny(final String letters, final String candidates) {
+      return candidates.chars().anyMatch(c -> letters.indexOf(c) >= 0);
+   }
+}
@@ -19,9 +19,6 @@
  */
 package io.lumeer.engine.api.constraint;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
@@ -30,7 +27,7 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
- * Allows use of any date time format pattern as specified by {@link SimpleDateFormat}.
+ * Allows use of any date time format pattern as specified by {@link java.text.SimpleDateFormat}.
  *
  * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
  */
@@ -53,21 +50,14 @@ public class DateTimeConstraintType implements ConstraintType {
       final String[] config = constraintConfiguration.split(":", 2);
 
       if (config.length == 2) {
+         final Locale locale = this.locale;
+         final String pattern = config[1];
+
          try {
-            final DateFormat format = new SimpleDateFormat(config[1], locale);
-
-            return new FunctionConstraint(value -> {
-               try {
-                  format.parse(value.trim());
-                  return true;
-               } catch (ParseException pe) {
-                  return false;
-               }
-            }, constraintConfiguration);
+            return new DateTimeConstraint(pattern, locale, constraintConfiguration);
          } catch (IllegalArgumentException | NullPointerException e) {
             throw new InvalidConstraintException("Invalid pattern for '" + config[0] + "' constraint: " + config[1], e);
          }
-
       }
 
       throw new InvalidConstraintException("Missing pattern parameter for '" + config[0] + "' constraint: " + constraintConfiguration);
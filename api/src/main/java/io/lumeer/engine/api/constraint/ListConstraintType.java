@@ -45,6 +45,9 @@ public class ListConstraintType implements ConstraintType {
    public Constraint parseConstraint(final String constraintConfiguration) throws InvalidConstraintException {
       final String[] config = constraintConfiguration.split(":", 2);
 
+      // the constraint keeps the current locale
+      final Locale locale = this.locale;
+
       if (config.length == 2) {
          final Set<String> options = new HashSet<>();
          final Set<String> optionsLowerCase = new HashSet<>();
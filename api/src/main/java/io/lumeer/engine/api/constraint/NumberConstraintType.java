@@ -30,7 +30,8 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.LongAdder;
-import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
 
 /**
  * Various constraints on numbers.
@@ -47,15 +48,13 @@ public class NumberConstraintType implements ConstraintType {
    private static final String LESS_OR_EQUALS = "lessOrEquals";
    private static final String EQUALS = "equals";
 
+   private static final Pattern SPACES = Pattern.compile(" ");
+
    /**
     * Number format respecting given locale.
     */
-   private NumberFormat numberFormat = NumberFormat.getNumberInstance();
-   private NumberFormat integerNumberFormat = NumberFormat.getNumberInstance();
-
-   public NumberConstraintType() {
-      integerNumberFormat.setParseIntegerOnly(true);
-   }
+   private ThreadLocal<NumberFormat> numberFormat = numberFormat(Locale.getDefault(), false);
+   private ThreadLocal<NumberFormat> integerNumberFormat = numberFormat(Locale.getDefault(), true);
 
    @Override
    public Set<String> getRegisteredPrefixes() {
@@ -69,75 +68,76 @@ public class NumberConstraintType implements ConstraintType {
    public Constraint parseConstraint(final String constraintConfiguration) throws InvalidConstraintException {
       final String[] config = constraintConfiguration.split(":", 2);
 
+      // the constraint keeps formats of the current locale
+      final ThreadLocal<NumberFormat> numberFormat = this.numberFormat;
+
       switch (config[0]) {
          case IS_NUMBER:
-            return new FunctionConstraint((value -> {
-               try {
-                  numberFormat.parse(value.replaceAll(" ", ""));
-                  return true;
-               } catch (ParseException pe) {
-                  return false;
-               }
-            }), constraintConfiguration);
+            return numberConstraint(numberFormat, number -> true, constraintConfiguration);
          case IS_INTEGER:
-            return new FunctionConstraint((value -> {
-               try {
-                  integerNumberFormat.parse(value.replaceAll(" ", "")).intValue();
-                  return true;
-               } catch (ParseException pe) {
-                  return false;
-               }
-            }), constraintConfiguration);
+            return numberConstraint(integerNumberFormat, number -> true, constraintConfiguration);
          case LESS_THAN:
             final double ltParam = checkParameter(config, constraintConfiguration);
-            return new FunctionConstraint((value -> {
-               try {
-                  return numberFormat.parse(value.replaceAll(" ", "")).doubleValue() < ltParam;
-               } catch (ParseException pe) {
-                  return false;
-               }
-            }), constraintConfiguration);
+            return numberConstraint(numberFormat, number -> number.doubleValue() < ltParam, constraintConfiguration);
          case GREATER_THAN:
             final double gtParam = checkParameter(config, constraintConfiguration);
-            return new FunctionConstraint((value -> {
-               try {
-                  return numberFormat.parse(value.replaceAll(" ", "")).doubleValue() > gtParam;
-               } catch (ParseException pe) {
-                  return false;
-               }
-            }), constraintConfiguration);
+            return numberConstraint(numberFormat, number -> number.doubleValue() > gtParam, constraintConfiguration);
          case GREATER_OR_EQUALS:
             final double gteParam = checkParameter(config, constraintConfiguration);
-            return new FunctionConstraint((value -> {
-               try {
-                  return numberFormat.parse(value.replaceAll(" ", "")).doubleValue() >= gteParam;
-               } catch (ParseException pe) {
-                  return false;
-               }
-            }), constraintConfiguration);
+            return numberConstraint(numberFormat, number -> number.doubleValue() >= gteParam, constraintConfiguration);
          case LESS_OR_EQUALS:
             final double lteParam = checkParameter(config, constraintConfiguration);
-            return new FunctionConstraint((value -> {
-               try {
-                  return numberFormat.parse(value.replaceAll(" ", "")).doubleValue() <= lteParam;
-               } catch (ParseException pe) {
-                  return false;
-               }
-            }), constraintConfiguration);
+            return numberConstraint(numberFormat, number -> number.doubleValue() <= lteParam, constraintConfiguration);
          case EQUALS:
             final double eqParam = checkParameter(config, constraintConfiguration);
-            return new FunctionConstraint((value -> {
-               try {
-                  return numberFormat.parse(value.replaceAll(" ", "")).doubleValue() == eqParam;
-               } catch (ParseException pe) {
-                  return false;
-               }
-            }), constraintConfiguration);
+            return numberConstraint(numberFormat, number -> number.doubleValue() == eqParam, constraintConfiguration);
          default:
             throw new InvalidConstraintException("Unable to parse constraint configuration: " + constraintConfiguration);
       }
    }
 
+   /**
+    * Creates a constraint that parses the value and tests the resulting number.
+    *
+    * @param numberFormat
+    *       Per thread format used to parse the value.
+    * @param predicate
+    *       Test of the parsed number.
+    * @param constraintConfiguration
+    *       Configuration of the constraint.
+    * @return The new constraint.
+    */
+   private static Constraint numberConstraint(final ThreadLocal<NumberFormat> numberFormat, final Predicate<Number> predicate, final String constraintConfiguration) {
+      return new FunctionConstraint((value -> {
+         try {
+            return predicate.test(parse(numberFormat, value));
+         } catch (ParseException pe) {
+            return false;
+         }
+      }), constraintConfiguration);
+   }
+
+   private static Number parse(final ThreadLocal<NumberFormat> numberFormat, final String value) throws ParseException {
+      return numberFormat.get().parse(SPACES.matcher(value).replaceAll(""));
+   }
+
+   /**
+    * Number formats are not thread safe, so each thread gets its own instance.
+    *
+    * @param locale
+    *       Locale of the format.
+    * @param integerOnly
+    *       Whether the format parses only integers.
+    * @return Per thread number format.
+    */
+   private static ThreadLocal<NumberFormat> numberFormat(final Locale locale, final boolean integerOnly) {
+      return ThreadLocal.withInitial(() -> {
+         final NumberFormat format = NumberFormat.getNumberInstance(locale);
+         format.setParseIntegerOnly(integerOnly);
+         return format;
+      });
+   }
+
    private double checkParameter(final String[] config, final String constraintConfiguration) throws InvalidConstraintException {
       if (config.length < 2) {
          throw new InvalidConstraintException("Missing parameter in constraint configuration: " + constraintConfiguration);
@@ -159,7 +159,8 @@ public class NumberConstraintType implements ConstraintType {
 
    @Override
    public void setLocale(final Locale locale) {
-      numberFormat = NumberFormat.getInstance(locale);
+      numberFormat = numberFormat(locale, false);
+      integerNumberFormat = numberFormat(locale, true);
    }
 
    @Override
@@ -173,7 +174,7 @@ public class NumberConstraintType implements ConstraintType {
 
       values.forEach(s -> {
          try {
-            double d = numberFormat.parse(s.replaceAll(" ", "")).doubleValue();
+            double d = parse(numberFormat, s).doubleValue();
             numbers.increment();
             stats.put("min", Math.min(d, stats.get("min")));
             stats.put("max", Math.min(d, stats.get("max")));
@@ -182,7 +183,7 @@ public class NumberConstraintType implements ConstraintType {
          }
 
          try {
-            integerNumberFormat.parse(s.replaceAll(" ", "")).intValue();
+            parse(integerNumberFormat, s);
             integers.increment();
          } catch (ParseException pe) {
             // nps
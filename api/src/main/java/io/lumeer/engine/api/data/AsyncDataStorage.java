@@ -0,0 +1,166 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.data;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Non-blocking counterpart of {@link DataStorage}. All operations return immediately and their result
+ * is delivered through the returned {@link CompletionStage}, so that independent operations can overlap.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public interface AsyncDataStorage extends Serializable {
+
+   void connect(final List<StorageConnection> connections, final String database, final Boolean useSsl);
+
+   default void connect(final StorageConnection connection, final String database, final Boolean useSsl) {
+      connect(Collections.singletonList(connection), database, useSsl);
+   }
+
+   void disconnect();
+
+   /**
+    * Creates and inserts a new document to specified collection.
+    *
+    * @param collectionName
+    *       the name of the collection where the document will be created
+    * @param document
+    *       the DataDocument object representing a document to be created
+    * @return stage completed with the id of the newly created document
+    */
+   CompletionStage<String> createDocument(final String collectionName, final DataDocument document);
+
+   /**
+    * Reads the specified document in given collection by its id.
+    *
+    * @param collectionName
+    *       the name of the collection where the document is located
+    * @param documentId
+    *       the id of the read document
+    * @return stage completed with the read document or null when there is no such document
+    */
+   CompletionStage<DataDocument> readDocument(final String collectionName, final String documentId);
+
+   /**
+    * Reads the specified documents in given collection by their ids in a single round trip.
+    *
+    * @param collectionName
+    *       the name of the collection where the documents are located
+    * @param documentIds
+    *       the ids of the read documents
+    * @param attributes
+    *       list of attribute names, all attributes are read when null or empty
+    * @return stage completed with the read documents in the order of the given ids, ids of documents that do not exist are skipped
+    */
+   CompletionStage<List<DataDocument>> readDocuments(final String collectionName, final List<String> documentIds, final List<String> attributes);
+
+   /**
+    * Modifies an existing document in given collection by its id.
+    *
+    * @param collectionName
+    *       the name of the collection where the existing document is located
+    * @param updatedDocument
+    *       the DataDocument object representing a document with changes to update
+    * @param documentId
+    *       the id of the existing document in given collection
+    * @return stage completed when the document is updated
+    */
+   CompletionStage<Void> updateDocument(final String collectionName, final DataDocument updatedDocument, final String documentId);
+
+   /**
+    * Replace an existing document in given collection by its id.
+    *
+    * @param collectionName
+    *       the name of the collection where the existing document is located
+    * @param replaceDocument
+    *       the DataDocument object representing a document
+    * @param documentId
+    *       the id of the existing document in given collection
+    * @return stage completed when the document is replaced
+    */
+   CompletionStage<Void> replaceDocument(final String collectionName, final DataDocument replaceDocument, final String documentId);
+
+   /**
+    * Drops an existing document in given collection by its id.
+    *
+    * @param collectionName
+    *       the name of the collection where the document is located
+    * @param documentId
+    *       the id of the document to drop
+    * @return stage completed when the document is dropped
+    */
+   CompletionStage<Void> dropDocument(final String collectionName, final String documentId);
+
+   /**
+    * Increment attribute value of document by specified amount.
+    *
+    * @param collectionName
+    *       the name of the collection where the given document is located
+    * @param documentId
+    *       the id of specified document
+    * @param attributeName
+    *       the name of attribute which value is increment
+    * @param incBy
+    *       the value by which attribute is increment
+    * @return stage completed when the value is incremented
+    */
+   CompletionStage<Void> incrementAttributeValueBy(final String collectionName, final String documentId, final String attributeName, final int incBy);
+
+   /**
+    * Searches the specified collection for specified documents using filter, sort, skip and limit option.
+    *
+    * @param collectionName
+    *       the name of the collection where the run will be performed
+    * @param filter
+    *       the query predicate. If unspecified, then all documents in the collection will match the predicate.
+    * @param sort
+    *       the sort specification for the ordering of the results. If unspecified, then a sort is equivalent to setting no sort.
+    * @param skip
+    *       the number of documents to skip. A skip of 0 is equivalent to setting no skip.
+    * @param limit
+    *       the maximum number of documents to return. A limit of 0 is equivalent to setting no limit.
+    * @return stage completed with the list of the found documents
+    */
+   CompletionStage<List<DataDocument>> search(final String collectionName, final String filter, final String sort, final int skip, final int limit);
+
+   /**
+    * Counts the number of document in the collection optionally meeting the filter criteria.
+    *
+    * @param collectionName
+    *       The name of the collection.
+    * @param filter
+    *       The filter on documents.
+    * @return Stage completed with the number of documents in the collection meeting the criteria.
+    */
+   CompletionStage<Long> count(final String collectionName, final String filter);
+
+   /**
+    * Executes a command to find and return documents.
+    *
+    * @param command
+    *       the database command specified as a DataDocument
+    * @return stage completed with the list of the found documents
+    */
+   CompletionStage<List<DataDocument>> run(final DataDocument command);
+}
@@ -0,0 +1,122 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Outcome of a bulk write operation. Items are processed in chunks and independently of each other,
+ * so a failure of one item does not prevent the others from being written.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class BulkWriteResult implements Serializable {
+
+   private static final long serialVersionUID = 2931406873560712387L;
+
+   private int successCount = 0;
+   private final List<String> insertedIds = new ArrayList<>();
+   private final Map<Integer, String> errors = new TreeMap<>();
+
+   /**
+    * Records successfully written items.
+    *
+    * @param count
+    *       number of items written
+    */
+   public void addSuccess(final int count) {
+      successCount += count;
+   }
+
+   /**
+    * Records id of a newly inserted document.
+    *
+    * @param documentId
+    *       id of the inserted document
+    */
+   public void addInsertedId(final String documentId) {
+      insertedIds.add(documentId);
+   }
+
+   /**
+    * Records failure of a single item.
+    *
+    * @param index
+    *       index of the item in the original input
+    * @param message
+    *       error description
+    */
+   public void addError(final int index, final String message) {
+      errors.put(index, message);
+   }
+
+   /**
+    * Merges the other result into this one shifting its item indexes by the given offset.
+    *
+    * @param other
+    *       result of a chunk to merge
+    * @param offset
+    *       index of the first item of the chunk in the original input
+    */
+   public void merge(final BulkWriteResult other, final int offset) {
+      successCount += other.successCount;
+      insertedIds.addAll(other.insertedIds);
+      other.errors.forEach((index, message) -> errors.put(index + offset, message));
+   }
+
+   public int getSuccessCount() {
+      return successCount;
+   }
+
+   public List<String> getInsertedIds() {
+      return Collections.unmodifiableList(insertedIds);
+   }
+
+   /**
+    * Gets error messages of failed items keyed by the item index in the original input.
+    *
+    * @return map of failed item indexes to error messages
+    */
+   public Map<Integer, String> getErrors() {
+      return Collections.unmodifiableMap(errors);
+   }
+
+   public boolean isFailed(final int index) {
+      return errors.containsKey(index);
+   }
+
+   public boolean hasErrors() {
+      return !errors.isEmpty();
+   }
+
+   @Override
+   public String toString() {
+      return "BulkWriteResult{"
+            + "successCount=" + successCount
+            + ", insertedIds=" + insertedIds
+            + ", errors=" + errors
+            + '}';
+   }
+}
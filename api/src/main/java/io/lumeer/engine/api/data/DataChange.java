@@ -0,0 +1,113 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.data;
+
+/**
+ * A single change of the data made by any client of the data storage, as reported by the storage's change feed.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class DataChange {
+
+   /**
+    * Kind of the change.
+    */
+   public enum Operation {
+      INSERT, UPDATE, REPLACE, DELETE, CREATE_COLLECTION, DROP_COLLECTION, RENAME_COLLECTION
+   }
+
+   private final Operation operation;
+   private final String collectionName;
+   private final String documentId;
+   private final String newCollectionName;
+   private final DataDocument delta;
+   private final String resumeToken;
+
+   public DataChange(final Operation operation, final String collectionName, final String documentId, final String newCollectionName, final DataDocument delta, final String resumeToken) {
+      this.operation = operation;
+      this.collectionName = collectionName;
+      this.documentId = documentId;
+      this.newCollectionName = newCollectionName;
+      this.delta = delta;
+      this.resumeToken = resumeToken;
+   }
+
+   public Operation getOperation() {
+      return operation;
+   }
+
+   /**
+    * Gets the name of the changed collection, the original name for renamed collections.
+    *
+    * @return the name of the changed collection
+    */
+   public String getCollectionName() {
+      return collectionName;
+   }
+
+   /**
+    * Gets the id of the changed document.
+    *
+    * @return the id of the changed document, null for changes of whole collections
+    */
+   public String getDocumentId() {
+      return documentId;
+   }
+
+   /**
+    * Gets the new name of a renamed collection.
+    *
+    * @return the new name of the collection, null for other changes than {@link Operation#RENAME_COLLECTION}
+    */
+   public String getNewCollectionName() {
+      return newCollectionName;
+   }
+
+   /**
+    * Gets the changed part of the document. It is the whole document for inserts and replacements, the set attributes
+    * for updates (removed attributes have null values) and null otherwise.
+    *
+    * @return the changed part of the document
+    */
+   public DataDocument getDelta() {
+      return delta;
+   }
+
+   /**
+    * Gets the token to resume the change feed right after this change.
+    *
+    * @return the token to resume the change feed after this change
+    */
+   public String getResumeToken() {
+      return resumeToken;
+   }
+
+   @Override
+   public String toString() {
+      return "DataChange{"
+            + "operation=" + operation
+            + ", collectionName='" + collectionName + '\''
+            + ", documentId='" + documentId + '\''
+            + ", newCollectionName='" + newCollectionName + '\''
+            + ", delta=" + delta
+            + ", resumeToken='" + resumeToken + '\''
+            + '}';
+   }
+}
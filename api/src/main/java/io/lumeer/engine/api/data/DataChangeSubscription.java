@@ -0,0 +1,48 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.data;
+
+/**
+ * Subscription of a {@link DataChangeListener} to the change feed of a data storage. Closing the subscription stops
+ * the delivery of changes.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public interface DataChangeSubscription extends AutoCloseable {
+
+   /**
+    * Gets the token of the last change delivered to the listener. A new subscription with this token continues
+    * right after that change.
+    *
+    * @return the token of the last delivered change, null when no change was delivered yet
+    */
+   String getResumeToken();
+
+   /**
+    * Checks whether the subscription delivers changes. A subscription stops delivering when it is closed or when the
+    * storage turns out not to support the change feed.
+    *
+    * @return true if the changes are delivered
+    */
+   boolean isActive();
+
+   @Override
+   void close();
+}
@@ -0,0 +1,51 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.data;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily iterates over documents returned by the data storage. Documents are fetched from the database
+ * in batches so that only a single batch is held in memory at a time. The cursor must be closed
+ * once it is no longer needed, preferably using try-with-resources.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public interface DataCursor extends Iterator<DataDocument>, AutoCloseable {
+
+   /**
+    * Releases all resources held by the cursor.
+    */
+   @Override
+   void close();
+
+   /**
+    * Gets a sequential stream of the remaining documents. Closing the stream closes the cursor.
+    *
+    * @return stream of the remaining documents
+    */
+   default Stream<DataDocument> stream() {
+      return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(this::close);
+   }
+}
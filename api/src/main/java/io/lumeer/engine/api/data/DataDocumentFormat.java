@@ -0,0 +1,64 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compact binary representation of {@link DataDocument}s native to the data storage, used as an alternative wire format
+ * to JSON. A stream of documents is written as the documents' binary representations one after another.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public interface DataDocumentFormat {
+
+   /**
+    * Gets the media type of the binary representation.
+    *
+    * @return the media type of the binary representation
+    */
+   String getMediaType();
+
+   /**
+    * Writes the document to the stream.
+    *
+    * @param document
+    *       document to write
+    * @param output
+    *       stream to write the document to
+    * @throws IOException
+    *       when it was not possible to write to the stream
+    */
+   void write(final DataDocument document, final OutputStream output) throws IOException;
+
+   /**
+    * Reads the next document from the stream.
+    *
+    * @param input
+    *       stream to read the document from
+    * @return the read document, null when the end of the stream was reached
+    * @throws IOException
+    *       when it was not possible to read from the stream or the stream does not contain a valid document
+    */
+   DataDocument read(final InputStream input) throws IOException;
+
+}
@@ -0,0 +1,55 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A page of search or query results together with a token to read the following page.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class DataPage implements Serializable {
+
+   private static final long serialVersionUID = -3387405226410236213L;
+
+   private final List<DataDocument> documents;
+   private final String nextPageToken;
+
+   public DataPage(final List<DataDocument> documents, final String nextPageToken) {
+      this.documents = documents;
+      this.nextPageToken = nextPageToken;
+   }
+
+   public List<DataDocument> getDocuments() {
+      return documents;
+   }
+
+   /**
+    * Gets the token that continues right after the last document of this page. The token encodes the sort key and id of
+    * the last document, so reading a following page costs the same as reading the first one.
+    *
+    * @return token of the following page, null when there are no more results
+    */
+   public String getNextPageToken() {
+      return nextPageToken;
+   }
+}
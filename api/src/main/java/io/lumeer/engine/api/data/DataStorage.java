@@ -37,6 +37,10 @@ import java.util.Set;
  */
 public interface DataStorage extends Serializable {
 
+   int DEFAULT_BULK_CHUNK_SIZE = 1000;
+
+   int DEFAULT_CURSOR_BATCH_SIZE = 1000;
+
    void setCacheProvider(final CacheProvider cacheProvider);
 
    void connect(final List<StorageConnection> connections, final String database, final Boolean useSsl);
@@ -160,6 +164,30 @@ public interface DataStorage extends Serializable {
     */
    DataDocument readDocument(final String collectionName, final String documentId);
 
+   /**
+    * Reads the specified documents in given collection by their ids in a single round trip.
+    *
+    * @param collectionName
+    *       the name of the collection where the documents are located
+    * @param documentIds
+    *       the ids of the read documents
+    * @return the read documents in the order of the given ids, ids of documents that do not exist are skipped
+    */
+   List<DataDocument> readDocuments(final String collectionName, final List<String> documentIds);
+
+   /**
+    * Reads the specified documents in given collection by their ids in a single round trip.
+    *
+    * @param collectionName
+    *       the name of the collection where the documents are located
+    * @param documentIds
+    *       the ids of the read documents
+    * @param attributes
+    *       list of attribute names, all attributes are read when null or empty
+    * @return the read documents containing only specified attributes in the order of the given ids, ids of documents that do not exist are skipped
+    */
+   List<DataDocument> readDocumentsIncludeAttrs(final String collectionName, final List<String> documentIds, final List<String> attributes);
+
    /**
     * Reads the old document in given collection by its id and version.
     *
@@ -197,6 +225,38 @@ public interface DataStorage extends Serializable {
     */
    void replaceDocument(final String collectionName, final DataDocument replaceDocument, final String documentId);
 
+   /**
+    * Modifies an existing document in given collection by its id only when its version is the expected one. The check and
+    * the write are performed atomically. A document without the version attribute has version 0.
+    *
+    * @param collectionName
+    *       the name of the collection where the existing document is located
+    * @param updatedDocument
+    *       the DataDocument object representing a document with changes to update
+    * @param documentId
+    *       the id of the existing document in given collection
+    * @param expectedVersion
+    *       the version the document must have in the database
+    * @return true when the document was updated, false when it does not exist or its version differs
+    */
+   boolean updateDocument(final String collectionName, final DataDocument updatedDocument, final String documentId, final int expectedVersion);
+
+   /**
+    * Replaces an existing document in given collection by its id only when its version is the expected one. The check and
+    * the write are performed atomically. A document without the version attribute has version 0.
+    *
+    * @param collectionName
+    *       the name of the collection where the existing document is located
+    * @param replaceDocument
+    *       the DataDocument object representing a document
+    * @param documentId
+    *       the id of the existing document in given collection
+    * @param expectedVersion
+    *       the version the document must have in the database
+    * @return true when the document was replaced, false when it does not exist or its version differs
+    */
+   boolean replaceDocument(final String collectionName, final DataDocument replaceDocument, final String documentId, final int expectedVersion);
+
    /**
     * Drops an existing document in given collection by its id.
     *
@@ -229,6 +289,93 @@ public interface DataStorage extends Serializable {
     */
    void dropManyDocuments(final String collectionName, final String filter);
 
+   /**
+    * Creates and inserts new documents to specified collection in chunks of the given size.
+    * Each chunk is sent to the database at once and a failure of one document does not stop the others.
+    *
+    * @param collectionName
+    *       the name of the collection where the documents will be created
+    * @param documents
+    *       the documents to be created
+    * @param chunkSize
+    *       maximal number of documents sent to the database at once
+    * @return result containing ids of the created documents and errors of the failed ones
+    */
+   BulkWriteResult createDocuments(final String collectionName, final List<DataDocument> documents, final int chunkSize);
+
+   default BulkWriteResult createDocuments(final String collectionName, final List<DataDocument> documents) {
+      return createDocuments(collectionName, documents, DEFAULT_BULK_CHUNK_SIZE);
+   }
+
+   /**
+    * Creates and inserts old documents to specified collection in chunks of the given size.
+    * Id and version of each old document are taken from the document itself.
+    *
+    * @param collectionName
+    *       the name of the collection where the documents will be created
+    * @param documents
+    *       the documents to be created
+    * @param chunkSize
+    *       maximal number of documents sent to the database at once
+    * @return result containing errors of the documents that somebody already updated
+    */
+   BulkWriteResult createOldDocuments(final String collectionName, final List<DataDocument> documents, final int chunkSize);
+
+   default BulkWriteResult createOldDocuments(final String collectionName, final List<DataDocument> documents) {
+      return createOldDocuments(collectionName, documents, DEFAULT_BULK_CHUNK_SIZE);
+   }
+
+   /**
+    * Modifies existing documents in given collection by their ids in chunks of the given size.
+    *
+    * @param collectionName
+    *       the name of the collection where the existing documents are located
+    * @param updatedDocuments
+    *       the documents with changes to update, each must contain id of the existing document
+    * @param chunkSize
+    *       maximal number of documents sent to the database at once
+    * @return result containing errors of the failed updates
+    */
+   BulkWriteResult updateDocuments(final String collectionName, final List<DataDocument> updatedDocuments, final int chunkSize);
+
+   default BulkWriteResult updateDocuments(final String collectionName, final List<DataDocument> updatedDocuments) {
+      return updateDocuments(collectionName, updatedDocuments, DEFAULT_BULK_CHUNK_SIZE);
+   }
+
+   /**
+    * Replaces existing documents in given collection by their ids in chunks of the given size.
+    *
+    * @param collectionName
+    *       the name of the collection where the existing documents are located
+    * @param replaceDocuments
+    *       the replacing documents, each must contain id of the existing document
+    * @param chunkSize
+    *       maximal number of documents sent to the database at once
+    * @return result containing errors of the failed replaces
+    */
+   BulkWriteResult replaceDocuments(final String collectionName, final List<DataDocument> replaceDocuments, final int chunkSize);
+
+   default BulkWriteResult replaceDocuments(final String collectionName, final List<DataDocument> replaceDocuments) {
+      return replaceDocuments(collectionName, replaceDocuments, DEFAULT_BULK_CHUNK_SIZE);
+   }
+
+   /**
+    * Drops existing documents in given collection by their ids in chunks of the given size.
+    *
+    * @param collectionName
+    *       the name of the collection where the documents are located
+    * @param documentIds
+    *       the ids of the documents to drop
+    * @param chunkSize
+    *       maximal number of documents sent to the database at once
+    * @return result containing errors of the failed drops
+    */
+   BulkWriteResult dropDocuments(final String collectionName, final List<String> documentIds, final int chunkSize);
+
+   default BulkWriteResult dropDocuments(final String collectionName, final List<String> documentIds) {
+      return dropDocuments(collectionName, documentIds, DEFAULT_BULK_CHUNK_SIZE);
+   }
+
    /**
     * Updates the name of an attribute which is found in all documents of given collection.
     *
@@ -357,6 +504,70 @@ public interface DataStorage extends Serializable {
     */
    List<DataDocument> search(final String collectionName, final String filter, final String sort, final int skip, final int limit);
 
+   /**
+    * Searches the specified collection like {@link #search(String, String, String, int, int)} but pages the results
+    * by keys instead of skipping. Results are sorted by the given sort specification and by document id, a following page
+    * is read with the token of the previous one and costs the same as the first page.
+    *
+    * @param collectionName
+    *       the name of the collection where the run will be performed
+    * @param filter
+    *       the query predicate. If unspecified, then all documents in the collection will match the predicate.
+    * @param sort
+    *       the sort specification for the ordering of the results. If unspecified, then results are sorted by document id.
+    * @param skip
+    *       the number of documents to skip, applies only when no page token is given
+    * @param pageToken
+    *       the token of the page to read, null to read the first page
+    * @param limit
+    *       the maximum number of documents to return. A limit of 0 is equivalent to setting no limit.
+    * @return the page of the found documents
+    */
+   DataPage searchPage(final String collectionName, final String filter, final String sort, final int skip, final String pageToken, final int limit);
+
+   /**
+    * Searches the specified collection like {@link #search(String, String, String, int, int)} but returns a cursor
+    * that fetches the found documents lazily in batches of the given size.
+    *
+    * @param collectionName
+    *       the name of the collection where the run will be performed
+    * @param filter
+    *       the query predicate. If unspecified, then all documents in the collection will match the predicate.
+    * @param sort
+    *       the sort specification for the ordering of the results. If unspecified, then a sort is equivalent to setting no sort.
+    * @param skip
+    *       the number of documents to skip. A skip of 0 is equivalent to setting no skip.
+    * @param limit
+    *       the maximum number of documents to return. A limit of 0 is equivalent to setting no limit.
+    * @param batchSize
+    *       the number of documents fetched from the database at once
+    * @return the cursor over the found documents, it must be closed by the caller
+    */
+   DataCursor searchCursor(final String collectionName, final String filter, final String sort, final int skip, final int limit, final int batchSize);
+
+   default DataCursor searchCursor(final String collectionName, final String filter, final String sort, final int skip, final int limit) {
+      return searchCursor(collectionName, filter, sort, skip, limit, DEFAULT_CURSOR_BATCH_SIZE);
+   }
+
+   /**
+    * Searches the specified collection like {@link #searchCursor(String, String, String, int, int, int)} but reads only
+    * the given attributes of documents. The cursor does not time out on the server, so it can be used to read
+    * large collections slowly.
+    *
+    * @param collectionName
+    *       the name of the collection where the run will be performed
+    * @param filter
+    *       the query predicate. If unspecified, then all documents in the collection will match the predicate.
+    * @param sort
+    *       the sort specification for the ordering of the results. If unspecified, then a sort is equivalent to setting no sort.
+    * @param attributes
+    *       list of attribute names, all attributes are read when null or empty
+    * @param batchSize
+    *       the number of documents fetched from the database at once
+    * @return the cursor over the found documents, it must be closed by the caller
+    */
+   DataCursor searchCursorIncludeAttrs(final String collectionName, final String filter, final String sort, final List<String> attributes, final int batchSize);
+
    /**
     * Counts the number of document in the collection optionally meeting the filter criteria.
     *
@@ -370,6 +581,9 @@ public interface DataStorage extends Serializable {
 
    /**
     * Executes the provided query and returns its results. The query needs to have real database collection names filled in.
+    * All collections of the query are queried concurrently, their results are merged according to the sorting of the query,
+    * skip and limit apply to the merged results. Each result carries the name of its source collection
+    * in {@link io.lumeer.engine.api.LumeerConst.Document#COLLECTION_NAME}.
     *
     * @param query
     *       Query to execute.
@@ -377,6 +591,33 @@ public interface DataStorage extends Serializable {
     */
    List<DataDocument> query(final Query query);
 
+   /**
+    * Executes the provided query like {@link #query(Query)} but pages the results by keys instead of skipping.
+    * Results are sorted by the sorting of the query and by document id, a following page is read with the token
+    * of the previous one set in {@link Query#setPageToken(String)}.
+    *
+    * @param query
+    *       Query to execute.
+    * @return Page of the query results.
+    */
+   DataPage queryPage(final Query query);
+
+   /**
+    * Executes the provided query like {@link #query(Query)} but returns a cursor that fetches the results lazily
+    * in batches of the given size. Reading stops as soon as the limit of the query is reached.
+    *
+    * @param query
+    *       Query to execute.
+    * @param batchSize
+    *       The number of documents fetched from the database at once.
+    * @return Cursor over the results of the query, it must be closed by the caller.
+    */
+   DataCursor queryCursor(final Query query, final int batchSize);
+
+   default DataCursor queryCursor(final Query query) {
+      return queryCursor(query, DEFAULT_CURSOR_BATCH_SIZE);
+   }
+
    /**
     * Executes series of database operations.
     *
@@ -388,6 +629,20 @@ public interface DataStorage extends Serializable {
     */
    List aggregate(final String collectionName, final DataDocument... stages);
 
+   /**
+    * Executes series of database operations like {@link #aggregate(String, DataDocument...)} but returns a cursor
+    * that fetches the resulting documents lazily in batches of the given size.
+    *
+    * @param collectionName
+    *       Collection on which to execute the operations.
+    * @param batchSize
+    *       The number of documents fetched from the database at once.
+    * @param stages
+    *       Operation stages to execute one by one.
+    * @return Cursor over the resulting documents, it must be closed by the caller.
+    */
+   DataCursor aggregateCursor(final String collectionName, final int batchSize, final DataDocument... stages);
+
    /**
     * Increment attribute value of document by specified amount. If the field does not exist, it creates the field and sets the field to the specified value.
     *
@@ -415,6 +670,22 @@ public interface DataStorage extends Serializable {
     */
    int getNextSequenceNo(final String collectionName, final String indexAttribute, final String index);
 
+   /**
+    * Reserves a block of consecutive values of sequence with a single atomic update. The reserved values are not handed
+    * out by any other call, so they can be used without further synchronization with other nodes.
+    *
+    * @param collectionName
+    *       Name of the collection with sequences.
+    * @param indexAttribute
+    *       Name of the attribute that identifies the sequence document.
+    * @param index
+    *       Value of the index attribute to identify the sequence.
+    * @param blockSize
+    *       Number of values to reserve.
+    * @return The first value of the reserved block, the block ends before the value increased by the block size.
+    */
+   int getNextSequenceBlock(final String collectionName, final String indexAttribute, final String index, final int blockSize);
+
    /**
     * Resets a sequence to zero.
     *
@@ -457,7 +728,20 @@ public interface DataStorage extends Serializable {
    void dropIndex(final String collectionName, final String indexName);
 
    /**
-    * Invalidates all caches.
+    * Invalidates all caches. The caches are reloaded in the background, the call does not wait for it.
     */
    void invalidateCaches();
+
+   /**
+    * Subscribes the listener to the changes of all collections in the database made by any client of the storage,
+    * including other nodes of a cluster. Storages without a change feed return a subscription that never delivers
+    * any change.
+    *
+    * @param resumeToken
+    *       token of the last change the listener has already seen, null to receive only the changes made from now on
+    * @param listener
+    *       listener to receive the changes
+    * @return the subscription to be closed when the listener is no longer interested in the changes
+    */
+   DataChangeSubscription subscribeChanges(final String resumeToken, final DataChangeListener listener);
 }
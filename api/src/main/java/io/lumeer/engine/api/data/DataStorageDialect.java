@@ -22,6 +22,8 @@ package io.lumeer.engine.api.data;
 import io.lumeer.engine.api.LumeerConst;
 
 import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
@@ -29,7 +31,9 @@ import java.io.Serializable;
 public interface DataStorageDialect extends Serializable {
 
    // CollectionMetadataFacade
-   DataDocument updateCollectionAttributeCountQuery(final String metadataCollectionName, final String attributeName);
+   DataDocument updateCollectionAttributeCountsQuery(final String metadataCollectionName, final Map<String, Integer> countChanges);
+
+   DataDocument dropUnusedCollectionAttributesQuery(final String metadataCollectionName);
 
    // LinkingFacade
    String linkingFromTablesColNameFilter(final String collectionName, final String role);
@@ -42,8 +46,26 @@ public interface DataStorageDialect extends Serializable {
 
    String linkingFromDocumentFilter(final String fromId, final LumeerConst.Linking.LinkDirection linkDirection);
 
+   String linkingFromDocumentsFilter(final List<String> fromIds, final LumeerConst.Linking.LinkDirection linkDirection);
+
    String fieldValueFilter(final String fieldName, final Object value);
 
+   String filterWithCondition(final String filter, final DataDocument condition);
+
    String documentIdFilter(final String documentId);
 
+   // VersionFacade
+   String documentVersionFilter(final String documentId, final int minVersion);
+
+   String documentVersionBeforeFilter(final String documentId, final int maxVersion);
+
+   String documentVersionSort(final boolean descending);
+
+   DataDocument documentVersionIndex();
+
+   String documentCreatedBeforeFilter(final String filter, final String timestamp);
+
+   // BatchFacade
+   String documentIdSort();
+
 }
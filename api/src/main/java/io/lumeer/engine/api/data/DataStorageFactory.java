@@ -32,10 +32,62 @@ import java.util.List;
  */
 public interface DataStorageFactory {
 
-   DataStorage getStorage(final CacheProvider cacheProvider, final List<StorageConnection> connections, final String database, final Boolean useSsl);
+   /**
+    * Gets a storage connected to the given database. Storages connected to the same cluster with the same settings
+    * share a single pooled client, only the database differs.
+    *
+    * @param cacheProvider
+    *       cache provider for the storage
+    * @param connections
+    *       cluster members to connect to
+    * @param database
+    *       name of the database
+    * @param useSsl
+    *       whether to use SSL connections
+    * @param settings
+    *       connection pool settings of the shared client
+    * @return storage connected to the database
+    */
+   DataStorage getStorage(final CacheProvider cacheProvider, final List<StorageConnection> connections, final String database, final Boolean useSsl, final DataStorageSettings settings);
+
+   default DataStorage getStorage(final CacheProvider cacheProvider, final List<StorageConnection> connections, final String database, final Boolean useSsl) {
+      return getStorage(cacheProvider, connections, database, useSsl, DataStorageSettings.DEFAULT);
+   }
+
+   default DataStorage getStorage(final CacheProvider cacheProvider, final StorageConnection connection, final String database, final Boolean useSsl, final DataStorageSettings settings) {
+      return getStorage(cacheProvider, Collections.singletonList(connection), database, useSsl, settings);
+   }
 
    default DataStorage getStorage(final CacheProvider cacheProvider, final StorageConnection connection, final String database, final Boolean useSsl) {
       return getStorage(cacheProvider, Collections.singletonList(connection), database, useSsl);
    }
 
+   /**
+    * Gets an asynchronous storage connected to the given database. The client sharing rules are the same as in
+    * {@link #getStorage(CacheProvider, List, String, Boolean, DataStorageSettings)}.
+    *
+    * @param connections
+    *       cluster members to connect to
+    * @param database
+    *       name of the database
+    * @param useSsl
+    *       whether to use SSL connections
+    * @param settings
+    *       connection pool settings of the shared client
+    * @return asynchronous storage connected to the database
+    */
+   AsyncDataStorage getAsyncStorage(final List<StorageConnection> connections, final String database, final Boolean useSsl, final DataStorageSettings settings);
+
+   default AsyncDataStorage getAsyncStorage(final List<StorageConnection> connections, final String database, final Boolean useSsl) {
+      return getAsyncStorage(connections, database, useSsl, DataStorageSettings.DEFAULT);
+   }
+
+   default AsyncDataStorage getAsyncStorage(final StorageConnection connection, final String database, final Boolean useSsl, final DataStorageSettings settings) {
+      return getAsyncStorage(Collections.singletonList(connection), database, useSsl, settings);
+   }
+
+   default AsyncDataStorage getAsyncStorage(final StorageConnection connection, final String database, final Boolean useSsl) {
+      return getAsyncStorage(Collections.singletonList(connection), database, useSsl);
+   }
+
 }
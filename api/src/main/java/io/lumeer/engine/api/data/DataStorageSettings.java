@@ -0,0 +1,145 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.data;
+
+import java.io.Serializable;
+
+/**
+ * Connection pool, timeout and authentication settings of a data storage client. Storages connected to the same
+ * cluster with the same settings share a single pooled client. When the credentials are verified against the database
+ * the storage works with (no authentication database is set), the client is shared only by storages of that database.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class DataStorageSettings implements Serializable {
+
+   private static final long serialVersionUID = 2911526366498167329L;
+
+   /**
+    * Settings used when nothing else is configured.
+    */
+   public static final DataStorageSettings DEFAULT = new DataStorageSettings(100, 0, 500, 120000, 0, 30000, null);
+
+   private final int maxPoolSize;
+   private final int minPoolSize;
+   private final int maxWaitQueueSize;
+   private final int maxWaitTime;
+   private final int maxConnectionIdleTime;
+   private final int connectTimeout;
+   private final String authDatabase;
+
+   /**
+    * Defines new client settings.
+    *
+    * @param maxPoolSize
+    *       The maximum number of connections in the pool.
+    * @param minPoolSize
+    *       The minimum number of connections kept in the pool.
+    * @param maxWaitQueueSize
+    *       The maximum number of threads waiting for a connection.
+    * @param maxWaitTime
+    *       The maximum time in milliseconds a thread waits for a connection.
+    * @param maxConnectionIdleTime
+    *       The maximum idle time in milliseconds of a pooled connection, 0 means no limit.
+    * @param connectTimeout
+    *       The connection timeout in milliseconds.
+    * @param authDatabase
+    *       The database the credentials are verified against, null to verify them against the database the storage
+    *       works with.
+    */
+   public DataStorageSettings(final int maxPoolSize, final int minPoolSize, final int maxWaitQueueSize, final int maxWaitTime, final int maxConnectionIdleTime, final int connectTimeout, final String authDatabase) {
+      this.maxPoolSize = maxPoolSize;
+      this.minPoolSize = minPoolSize;
+      this.maxWaitQueueSize = maxWaitQueueSize;
+      this.maxWaitTime = maxWaitTime;
+      this.maxConnectionIdleTime = maxConnectionIdleTime;
+      this.connectTimeout = connectTimeout;
+      this.authDatabase = authDatabase;
+   }
+
+   public int getMaxPoolSize() {
+      return maxPoolSize;
+   }
+
+   public int getMinPoolSize() {
+      return minPoolSize;
+   }
+
+   public int getMaxWaitQueueSize() {
+      return maxWaitQueueSize;
+   }
+
+   public int getMaxWaitTime() {
+      return maxWaitTime;
+   }
+
+   public int getMaxConnectionIdleTime() {
+      return maxConnectionIdleTime;
+   }
+
+   public int getConnectTimeout() {
+      return connectTimeout;
+   }
+
+   public String getAuthDatabase() {
+      return authDatabase;
+   }
+
+   @Override
+   public String toString() {
+      return "DataStorageSettings{"
+            + "maxPoolSize=" + maxPoolSize
+            + ", minPoolSize=" + minPoolSize
+            + ", maxWaitQueueSize=" + maxWaitQueueSize
+            + ", maxWaitTime=" + maxWaitTime
+            + ", maxConnectionIdleTime=" + maxConnectionIdleTime
+            + ", connectTimeout=" + connectTimeout
+            + ", authDatabase='" + authDatabase + '\''
+            + '}';
+   }
+
+   @Override
+   public boolean equals(final Object o) {
+      if (this == o) {
+         return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+         return false;
+      }
+
+      final DataStorageSettings that = (DataStorageSettings) o;
+
+      return maxPoolSize == that.maxPoolSize && minPoolSize == that.minPoolSize && maxWaitQueueSize == that.maxWaitQueueSize
+            && maxWaitTime == that.maxWaitTime && maxConnectionIdleTime == that.maxConnectionIdleTime && connectTimeout == that.connectTimeout
+            && (authDatabase != null ? authDatabase.equals(that.authDatabase) : that.authDatabase == null);
+   }
+
+   @Override
+   public int hashCode() {
+      int result = maxPoolSize;
+      result = 31 * result + minPoolSize;
+      result = 31 * result + maxWaitQueueSize;
+      result = 31 * result + maxWaitTime;
+      result = 31 * result + maxConnectionIdleTime;
+      result = 31 * result + connectTimeout;
+      result = 31 * result + (authDatabase != null ? authDatabase.hashCode() : 0);
+      return result;
+   }
+}
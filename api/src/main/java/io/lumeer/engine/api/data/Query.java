@@ -48,6 +48,8 @@ public class Query implements Serializable {
 
    private String output = null;
 
+   private String pageToken = null;
+
    public Query() {
    }
 
@@ -198,6 +200,21 @@ public class Query implements Serializable {
       this.output = output;
    }
 
+   public String getPageToken() {
+      return pageToken;
+   }
+
+   /**
+    * Sets the token of the page to read. When set, results start right after the document the token was created for
+    * and skip is ignored.
+    *
+    * @param pageToken
+    *       token from {@link DataPage#getNextPageToken()}
+    */
+   public void setPageToken(final String pageToken) {
+      this.pageToken = pageToken;
+   }
+
    @Override
    public boolean equals(final Object o) {
       if (this == o) {
@@ -230,7 +247,10 @@ public class Query implements Serializable {
       if (skip != null ? !skip.equals(query.skip) : query.skip != null) {
          return false;
       }
-      return output != null ? output.equals(query.output) : query.output == null;
+      if (output != null ? !output.equals(query.output) : query.output != null) {
+         return false;
+      }
+      return pageToken != null ? pageToken.equals(query.pageToken) : query.pageToken == null;
    }
 
    @Override
@@ -243,6 +263,7 @@ public class Query implements Serializable {
       result = 31 * result + (limit != null ? limit.hashCode() : 0);
       result = 31 * result + (skip != null ? skip.hashCode() : 0);
       result = 31 * result + (output != null ? output.hashCode() : 0);
+      result = 31 * result + (pageToken != null ? pageToken.hashCode() : 0);
       return result;
    }
 
@@ -257,6 +278,7 @@ public class Query implements Serializable {
             + ", limit=" + limit
             + ", skip=" + skip
             + ", output=" + output
+            + ", pageToken=" + pageToken
             + '}';
    }
 }
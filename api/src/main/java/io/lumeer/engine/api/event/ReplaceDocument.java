@@ -0,0 +1,35 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.event;
+
+import io.lumeer.engine.api.data.DataDocument;
+
+/**
+ * CDI event that is sent when an {@link DataDocument} is replaced as a whole. The event carries the complete
+ * new document, so attributes it does not contain were removed.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class ReplaceDocument extends UpdateDocument {
+
+   public ReplaceDocument(final String collectionName, final DataDocument document) {
+      super(collectionName, document);
+   }
+}
@@ -0,0 +1,134 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.api.constraint;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class ConstraintManagerTest {
+
+   private static final Locale US = Locale.forLanguageTag("en-US");
+   private static final Locale CZ = Locale.forLanguageTag("cs-CZ");
+   private static final Locale TR = Locale.forLanguageTag("tr-TR");
+
+   private static final List<String> NUMBER = Collections.singletonList("lessThan:2");
+   private static final List<String> UPPER_CASE = Collections.singletonList("case:upper");
+
+   private static final int THREADS = 8;
+   private static final int ITERATIONS = 2000;
+
+   @Test
+   public void testLocales() throws Exception {
+      // comma is a grouping separator in the US, a decimal separator in the Czech Republic
+      assertThat(manager(US).compile(NUMBER).isValid("1,5")).isEqualTo(Constraint.ConstraintResult.INVALID);
+      assertThat(manager(CZ).compile(NUMBER).isValid("1,5")).isEqualTo(Constraint.ConstraintResult.VALID);
+
+      assertThat(manager(US).compile(UPPER_CASE).fix("istanbul")).isEqualTo("ISTANBUL");
+      assertThat(manager(TR).compile(UPPER_CASE).fix("istanbul")).isEqualTo("İSTANBUL");
+   }
+
+   @Test
+   public void testConcurrentValidationInMultipleLocales() throws Exception {
+      final List<Locale> locales = Arrays.asList(US, CZ, TR);
+      final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+      try {
+         final List<Future<Integer>> results = new ArrayList<>();
+         for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            results.add(executor.submit(() -> {
+               int errors = 0;
+               for (int i = 0; i < ITERATIONS; i++) {
+                  // every iteration is like a request of a session with its own manager and locale
+                  final Locale locale = locales.get((thread + i) % locales.size());
+                  final ConstraintManager manager = manager(locale);
+
+                  final Constraint.ConstraintResult number = manager.compile(NUMBER).isValid("1,5");
+                  if (number != (locale == US ? Constraint.ConstraintResult.INVALID : Constraint.ConstraintResult.VALID)) {
+                     errors++;
+                  }
+
+                  final String upperCase = manager.compile(UPPER_CASE).fix("istanbul");
+                  if (!upperCase.equals(locale == TR ? "İSTANBUL" : "ISTANBUL")) {
+                     errors++;
+                  }
+               }
+               return errors;
+            }));
+         }
+
+         for (final Future<Integer> result : results) {
+            assertThat(result.get(1, TimeUnit.MINUTES)).isEqualTo(0);
+         }
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+   @Test
+   public void testCompiledConstraintsAreShared() throws Exception {
+      assertThat(manager(US).compile(NUMBER)).isSameAs(manager(US).compile(new ArrayList<>(NUMBER)));
+      assertThat(manager(US).compile(NUMBER)).isNotSameAs(manager(CZ).compile(NUMBER));
+   }
+
+   @Test
+   public void testLocaleOfConstructor() throws Exception {
+      final ConstraintManager manager = new ConstraintManager(CZ);
+
+      assertThat(manager.getLocale()).isEqualTo(CZ);
+      assertThat(manager.compile(NUMBER)).isSameAs(manager(CZ).compile(NUMBER));
+   }
+
+   @Test
+   public void testCacheIsBounded() {
+      final ConstraintCache<String, Integer> cache = new ConstraintCache<>(100);
+
+      for (int i = 0; i < 1000; i++) {
+         assertThat(cache.computeIfAbsent("key" + i, key -> Integer.parseInt(key.substring(3)))).isEqualTo(i);
+         assertThat(cache.size()).isLessThanOrEqualTo(100);
+      }
+
+      // the values in use are cached again
+      assertThat(cache.computeIfAbsent("key1", key -> -1)).isEqualTo(-1);
+      assertThat(cache.get("key1")).isEqualTo(-1);
+      assertThat(cache.putIfAbsent("key1", 1)).isEqualTo(-1);
+   }
+
+   private static ConstraintManager manager(final Locale locale) throws InvalidConstraintException {
+      final ConstraintManager manager = new ConstraintManager();
+      manager.setLocale(locale);
+
+      return manager;
+   }
+}
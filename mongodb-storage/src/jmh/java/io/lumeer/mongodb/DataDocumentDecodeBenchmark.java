@@ -0,0 +1,121 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataDocument;
+
+import org.bson.BsonBinaryReader;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares decoding of nested documents straight into {@link DataDocument} by {@link DataDocumentCodec} with the former
+ * decoding into {@link Document} followed by {@link MongoUtils#replaceId(Document)} and
+ * {@link MongoUtils#convertNestedAndListDocuments(DataDocument)}. Run with {@code mvn -P benchmark test-compile exec:exec}.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataDocumentDecodeBenchmark {
+
+   /**
+    * Levels of nested documents below the top level document.
+    */
+   @Param({ "0", "2", "4" })
+   private int depth;
+
+   private byte[] bson;
+   private Codec<DataDocument> dataDocumentCodec;
+   private Codec<Document> documentCodec;
+
+   @Setup
+   public void setUp() {
+      final Document document = nested(depth).append(LumeerConst.Document.ID, new ObjectId());
+      final ByteBuffer buffer = new RawBsonDocument(document, MongoDbClients.CODEC_REGISTRY.get(Document.class)).getByteBuffer().asNIO();
+      bson = new byte[buffer.remaining()];
+      buffer.get(bson);
+
+      dataDocumentCodec = MongoDbClients.CODEC_REGISTRY.get(DataDocument.class);
+      documentCodec = MongoDbClients.CODEC_REGISTRY.get(Document.class);
+   }
+
+   @Benchmark
+   public DataDocument codec() {
+      return dataDocumentCodec.decode(reader(), DecoderContext.builder().build());
+   }
+
+   @Benchmark
+   public DataDocument document() {
+      final Document document = documentCodec.decode(reader(), DecoderContext.builder().build());
+      MongoUtils.replaceId(document);
+
+      final DataDocument dataDocument = new DataDocument(document);
+      MongoUtils.convertNestedAndListDocuments(dataDocument);
+
+      return dataDocument;
+   }
+
+   private BsonBinaryReader reader() {
+      return new BsonBinaryReader(ByteBuffer.wrap(bson));
+   }
+
+   // ten attributes of common types, a nested document and a list of two nested documents on each level
+   private static Document nested(final int depth) {
+      final Document document = new Document();
+      for (int i = 0; i < 10; i++) {
+         document.append("string" + i, "value " + i).append("number" + i, i).append("date" + i, new Date(i * 1000L));
+      }
+
+      if (depth > 0) {
+         final List<Document> list = new ArrayList<>();
+         list.add(nested(depth - 1));
+         list.add(nested(depth - 1));
+         document.append("nested", nested(depth - 1)).append("list", list);
+      }
+
+      return document;
+   }
+}
@@ -0,0 +1,154 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Names of the collections in a database. Lookups are answered from a concurrent hash set without any locking,
+ * the set is updated by the create, drop and rename events of the storage and refreshed in the background to see
+ * changes made by other nodes. The refreshing runs on an executor owned by the caller.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class CollectionRegistry {
+
+   private static final Logger log = Logger.getLogger(CollectionRegistry.class.getName());
+
+   private final Supplier<Collection<String>> collectionLister;
+
+   private final ScheduledExecutorService refresher;
+
+   private volatile Set<String> collections;
+
+   private long modifications = 0L;
+
+   private ScheduledFuture<?> refreshTask;
+
+   /**
+    * Creates the registry and loads the collection names.
+    *
+    * @param collectionLister
+    *       lists names of all collections in the database
+    * @param refresher
+    *       executor refreshing the registry in the background
+    */
+   public CollectionRegistry(final Supplier<Collection<String>> collectionLister, final ScheduledExecutorService refresher) {
+      this.collectionLister = collectionLister;
+      this.refresher = refresher;
+      this.collections = newSet(collectionLister.get());
+   }
+
+   /**
+    * Starts periodic refreshing of the registry in the background.
+    *
+    * @param period
+    *       refresh period in milliseconds
+    */
+   public synchronized void start(final long period) {
+      if (refreshTask == null) {
+         refreshTask = refresher.scheduleWithFixedDelay(this::refresh, period, period, TimeUnit.MILLISECONDS);
+      }
+   }
+
+   /**
+    * Stops periodic refreshing of the registry.
+    */
+   public synchronized void stop() {
+      if (refreshTask != null) {
+         refreshTask.cancel(false);
+         refreshTask = null;
+      }
+   }
+
+   public boolean contains(final String collectionName) {
+      return collections.contains(collectionName);
+   }
+
+   public List<String> getAll() {
+      return new ArrayList<>(collections);
+   }
+
+   public void created(final String collectionName) {
+      if (!collections.contains(collectionName)) { // collections are implicitly created on each insert, avoid locking
+         synchronized (this) {
+            collections.add(collectionName);
+            modifications++;
+         }
+      }
+   }
+
+   public synchronized void dropped(final String collectionName) {
+      collections.remove(collectionName);
+      modifications++;
+   }
+
+   public synchronized void renamed(final String oldCollectionName, final String newCollectionName) {
+      collections.remove(oldCollectionName);
+      collections.add(newCollectionName);
+      modifications++;
+   }
+
+   /**
+    * Asks for the registry to be refreshed in the background as soon as possible.
+    */
+   public void refreshLater() {
+      refresher.execute(this::refresh);
+   }
+
+   /**
+    * Reloads the collection names. The result is thrown away when the registry was modified during the reload,
+    * the next refresh will pick the changes up.
+    */
+   void refresh() {
+      try {
+         final long modificationsBefore;
+         synchronized (this) {
+            modificationsBefore = modifications;
+         }
+
+         final Set<String> loaded = newSet(collectionLister.get());
+
+         synchronized (this) {
+            if (modifications == modificationsBefore) {
+               collections = loaded;
+            }
+         }
+      } catch (RuntimeException e) {
+         log.log(Level.WARNING, "Unable to refresh collection names: ", e);
+      }
+   }
+
+   private static Set<String> newSet(final Collection<String> names) {
+      final Set<String> set = ConcurrentHashMap.newKeySet();
+      set.addAll(names);
+      return set;
+   }
+}
@@ -0,0 +1,151 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataDocument;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.BsonTypeClassMap;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads BSON directly into {@link DataDocument} and writes {@link DataDocument} directly to BSON without
+ * converting it to {@link org.bson.Document} first. Nested documents are decoded as {@link DataDocument}s
+ * and the ids of read documents are converted to strings the same way as {@link MongoUtils#replaceId(org.bson.Document)} does.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class DataDocumentCodec implements Codec<DataDocument> {
+
+   private static final BsonTypeClassMap BSON_TYPE_CLASS_MAP = new BsonTypeClassMap();
+
+   private final CodecRegistry registry;
+
+   public DataDocumentCodec(final CodecRegistry registry) {
+      this.registry = registry;
+   }
+
+   @Override
+   public DataDocument decode(final BsonReader reader, final DecoderContext decoderContext) {
+      return readDocument(reader, decoderContext, true);
+   }
+
+   @Override
+   public void encode(final BsonWriter writer, final DataDocument value, final EncoderContext encoderContext) {
+      writeMap(writer, value, encoderContext);
+   }
+
+   @Override
+   public Class<DataDocument> getEncoderClass() {
+      return DataDocument.class;
+   }
+
+   private DataDocument readDocument(final BsonReader reader, final DecoderContext decoderContext, final boolean convertId) {
+      final DataDocument document = new DataDocument();
+
+      reader.readStartDocument();
+      while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+         final String name = reader.readName();
+
+         if (convertId && LumeerConst.Document.ID.equals(name)) {
+            document.put(name, readId(reader, decoderContext));
+         } else {
+            document.put(name, readValue(reader, decoderContext));
+         }
+      }
+      reader.readEndDocument();
+
+      return document;
+   }
+
+   private Object readId(final BsonReader reader, final DecoderContext decoderContext) {
+      if (reader.getCurrentBsonType() == BsonType.OBJECT_ID) { // classic document
+         return reader.readObjectId().toHexString();
+      } else if (reader.getCurrentBsonType() == BsonType.DOCUMENT) { // shadow document
+         return readDocument(reader, decoderContext, true);
+      }
+
+      return readValue(reader, decoderContext);
+   }
+
+   private Object readValue(final BsonReader reader, final DecoderContext decoderContext) {
+      final BsonType type = reader.getCurrentBsonType();
+
+      if (type == BsonType.NULL) {
+         reader.readNull();
+         return null;
+      } else if (type == BsonType.DOCUMENT) {
+         return readDocument(reader, decoderContext, false);
+      } else if (type == BsonType.ARRAY) {
+         return readList(reader, decoderContext);
+      }
+
+      return registry.get(BSON_TYPE_CLASS_MAP.get(type)).decode(reader, decoderContext);
+   }
+
+   private List<Object> readList(final BsonReader reader, final DecoderContext decoderContext) {
+      final List<Object> list = new ArrayList<>();
+
+      reader.readStartArray();
+      while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+         list.add(readValue(reader, decoderContext));
+      }
+      reader.readEndArray();
+
+      return list;
+   }
+
+   private void writeMap(final BsonWriter writer, final Map<?, ?> map, final EncoderContext encoderContext) {
+      writer.writeStartDocument();
+      for (final Map.Entry<?, ?> entry : map.entrySet()) {
+         writer.writeName(entry.getKey().toString());
+         writeValue(writer, entry.getValue(), encoderContext);
+      }
+      writer.writeEndDocument();
+   }
+
+   @SuppressWarnings("unchecked")
+   private void writeValue(final BsonWriter writer, final Object value, final EncoderContext encoderContext) {
+      if (value == null) {
+         writer.writeNull();
+      } else if (value instanceof Map) {
+         writeMap(writer, (Map<?, ?>) value, encoderContext);
+      } else if (value instanceof Iterable) {
+         writer.writeStartArray();
+         for (final Object item : (Iterable<?>) value) {
+            writeValue(writer, item, encoderContext);
+         }
+         writer.writeEndArray();
+      } else {
+         final Codec codec = registry.get(value.getClass());
+         encoderContext.encodeWithChildContext(codec, writer, value);
+      }
+   }
+}
@@ -0,0 +1,157 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import io.lumeer.engine.api.data.DataCursor;
+import io.lumeer.engine.api.data.DataDocument;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merges cursors with results sorted in the same order into a single sorted cursor (k-way merge) and applies
+ * skip and limit to the merged results. Reading stops as soon as the limit is reached.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class MergingCursor implements DataCursor {
+
+   private final List<DataCursor> cursors;
+   private final PriorityQueue<Head> heads;
+   private int nextCursor = 0;
+   private int toSkip;
+   private int remaining;
+   private boolean closed = false;
+
+   /**
+    * Creates a cursor merging the given cursors.
+    *
+    * @param cursors
+    *       cursors to merge, each of them sorted by the comparator
+    * @param comparator
+    *       order of the results, null to read the cursors one after another
+    * @param skip
+    *       number of the merged results to skip
+    * @param limit
+    *       maximum number of the merged results, 0 for no limit
+    */
+   public MergingCursor(final List<DataCursor> cursors, final Comparator<DataDocument> comparator, final int skip, final int limit) {
+      this.cursors = cursors;
+      this.toSkip = skip;
+      this.remaining = limit > 0 ? limit : Integer.MAX_VALUE;
+
+      if (comparator != null) {
+         heads = new PriorityQueue<>(Math.max(1, cursors.size()), (h1, h2) -> {
+            final int result = comparator.compare(h1.document, h2.document);
+            return result != 0 ? result : Integer.compare(h1.cursor, h2.cursor); // keep the order of equal results stable
+         });
+         for (int i = 0; i < cursors.size(); i++) {
+            advance(i);
+         }
+      } else {
+         heads = null;
+      }
+   }
+
+   @Override
+   public boolean hasNext() {
+      while (!closed && toSkip > 0 && hasNextMerged()) {
+         nextMerged();
+         toSkip--;
+      }
+
+      if (closed || remaining <= 0 || !hasNextMerged()) {
+         close();
+         return false;
+      }
+
+      return true;
+   }
+
+   @Override
+   public DataDocument next() {
+      if (!hasNext()) {
+         throw new NoSuchElementException();
+      }
+
+      remaining--;
+      final DataDocument document = nextMerged();
+      if (remaining == 0) { // no more results are needed, release the database cursors early
+         close();
+      }
+
+      return document;
+   }
+
+   @Override
+   public void close() {
+      if (!closed) {
+         closed = true;
+         cursors.forEach(DataCursor::close);
+      }
+   }
+
+   private boolean hasNextMerged() {
+      if (heads != null) {
+         return !heads.isEmpty();
+      }
+
+      while (nextCursor < cursors.size() && !cursors.get(nextCursor).hasNext()) {
+         cursors.get(nextCursor++).close();
+      }
+
+      return nextCursor < cursors.size();
+   }
+
+   private DataDocument nextMerged() {
+      if (heads == null) {
+         return cursors.get(nextCursor).next();
+      }
+
+      final Head head = heads.poll();
+      advance(head.cursor);
+
+      return head.document;
+   }
+
+   private void advance(final int cursor) {
+      if (cursors.get(cursor).hasNext()) {
+         heads.add(new Head(cursors.get(cursor).next(), cursor));
+      } else {
+         cursors.get(cursor).close();
+      }
+   }
+
+   /**
+    * The first unread document of a cursor.
+    */
+   private static final class Head {
+
+      private final DataDocument document;
+      private final int cursor;
+
+      private Head(final DataDocument document, final int cursor) {
+         this.document = document;
+         this.cursor = cursor;
+      }
+   }
+}
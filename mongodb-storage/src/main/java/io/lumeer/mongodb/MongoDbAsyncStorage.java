@@ -0,0 +1,239 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import static com.mongodb.client.model.Updates.inc;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.AsyncDataStorage;
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataStorageSettings;
+import io.lumeer.engine.api.data.StorageConnection;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.async.SingleResultCallback;
+import com.mongodb.async.client.FindIterable;
+import com.mongodb.async.client.MongoClient;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.async.client.MongoDatabase;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWrapper;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+
+/**
+ * MongoDB implementation of {@link AsyncDataStorage} built on the asynchronous driver.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class MongoDbAsyncStorage implements AsyncDataStorage {
+
+   private static final String CURSOR_KEY = "cursor";
+   private static final String FIRST_BATCH_KEY = "firstBatch";
+
+   private MongoClient mongoClient = null;
+   private boolean sharedClient = false;
+   private MongoDatabase database;
+
+   public MongoDbAsyncStorage() {
+   }
+
+   /**
+    * Creates a storage working with the given database of a client shared with other storages. Disconnecting such
+    * a storage leaves the client open, it is closed by its owner.
+    *
+    * @param mongoClient
+    *       shared client
+    * @param database
+    *       name of the database
+    */
+   MongoDbAsyncStorage(final MongoClient mongoClient, final String database) {
+      this.mongoClient = mongoClient;
+      this.database = mongoClient.getDatabase(database);
+      this.sharedClient = true;
+   }
+
+   @Override
+   public void connect(final List<StorageConnection> connections, final String database, final Boolean useSsl) {
+      this.mongoClient = MongoDbClients.createAsyncClient(connections, database, useSsl, DataStorageSettings.DEFAULT);
+      this.database = mongoClient.getDatabase(database);
+      this.sharedClient = false;
+   }
+
+   @Override
+   public void disconnect() {
+      if (mongoClient != null && !sharedClient) {
+         mongoClient.close();
+      }
+   }
+
+   @Override
+   public CompletionStage<String> createDocument(final String collectionName, final DataDocument document) {
+      final DataDocument doc = new DataDocument(document);
+      doc.putIfAbsent(LumeerConst.Document.ID, new ObjectId());
+
+      return this.<Void>execute(callback -> dataCollection(collectionName).insertOne(doc, callback))
+            .thenApply(v -> doc.get(LumeerConst.Document.ID).toString());
+   }
+
+   @Override
+   public CompletionStage<DataDocument> readDocument(final String collectionName, final String documentId) {
+      return execute(callback -> dataCollection(collectionName).find(idFilter(documentId)).first(callback));
+   }
+
+   @Override
+   public CompletionStage<List<DataDocument>> readDocuments(final String collectionName, final List<String> documentIds, final List<String> attributes) {
+      if (documentIds == null || documentIds.isEmpty()) {
+         return CompletableFuture.completedFuture(new ArrayList<>());
+      }
+
+      FindIterable<DataDocument> documents = dataCollection(collectionName).find(MongoDbStorage.idsFilter(documentIds));
+      if (attributes != null && !attributes.isEmpty()) {
+         documents = documents.projection(Projections.include(attributes));
+      }
+
+      final FindIterable<DataDocument> iterable = documents;
+      return this.<List<DataDocument>>execute(callback -> iterable.into(new ArrayList<>(), callback))
+            .thenApply(result -> MongoDbStorage.orderByIds(result, documentIds));
+   }
+
+   @Override
+   public CompletionStage<Void> updateDocument(final String collectionName, final DataDocument updatedDocument, final String documentId) {
+      final DataDocument toUpdate = new DataDocument(updatedDocument);
+      toUpdate.remove(LumeerConst.Document.ID);
+
+      return this.<UpdateResult>execute(callback -> dataCollection(collectionName).updateOne(idFilter(documentId), new BasicDBObject("$set", new BasicDBObject(toUpdate)), callback))
+            .thenApply(result -> null);
+   }
+
+   @Override
+   public CompletionStage<Void> replaceDocument(final String collectionName, final DataDocument replaceDocument, final String documentId) {
+      final DataDocument toReplace = new DataDocument(replaceDocument);
+      toReplace.remove(LumeerConst.Document.ID);
+
+      return this.<UpdateResult>execute(callback -> dataCollection(collectionName).replaceOne(idFilter(documentId), toReplace, callback))
+            .thenApply(result -> null);
+   }
+
+   @Override
+   public CompletionStage<Void> dropDocument(final String collectionName, final String documentId) {
+      return this.<DeleteResult>execute(callback -> dataCollection(collectionName).deleteOne(idFilter(documentId), callback))
+            .thenApply(result -> null);
+   }
+
+   @Override
+   public CompletionStage<Void> incrementAttributeValueBy(final String collectionName, final String documentId, final String attributeName, final int incBy) {
+      return this.<UpdateResult>execute(callback -> dataCollection(collectionName).updateOne(idFilter(documentId), inc(attributeName, incBy), callback))
+            .thenApply(result -> null);
+   }
+
+   @Override
+   public CompletionStage<List<DataDocument>> search(final String collectionName, final String filter, final String sort, final int skip, final int limit) {
+      final MongoCollection<DataDocument> collection = dataCollection(collectionName);
+      FindIterable<DataDocument> documents = filter != null ? collection.find(BsonDocument.parse(filter)) : collection.find();
+      if (sort != null && !sort.isEmpty()) {
+         documents = documents.sort(BsonDocument.parse(sort));
+      }
+      if (skip > 0) {
+         documents = documents.skip(skip);
+      }
+      if (limit > 0) {
+         documents = documents.limit(limit);
+      }
+
+      final FindIterable<DataDocument> iterable = documents;
+      return execute(callback -> iterable.into(new ArrayList<>(), callback));
+   }
+
+   @Override
+   public CompletionStage<Long> count(final String collectionName, final String filter) {
+      return execute(callback -> {
+         if (filter != null) {
+            dataCollection(collectionName).count(BsonDocument.parse(filter), callback);
+         } else {
+            dataCollection(collectionName).count(callback);
+         }
+      });
+   }
+
+   @Override
+   @SuppressWarnings("unchecked")
+   public CompletionStage<List<DataDocument>> run(final DataDocument command) {
+      final BsonDocumentWrapper<DataDocument> bson = new BsonDocumentWrapper<>(command, database.getCodecRegistry().get(DataDocument.class));
+
+      return this.<DataDocument>execute(callback -> database.runCommand(bson, DataDocument.class, callback)).thenApply(response -> {
+         final List<DataDocument> result = new ArrayList<>();
+         final DataDocument cursor = response.getDataDocument(CURSOR_KEY);
+
+         if (cursor != null) {
+            ((List<DataDocument>) cursor.get(FIRST_BATCH_KEY)).forEach(d -> {
+               // only ids of top level documents are converted by the codec
+               if (d.get(LumeerConst.Document.ID) instanceof ObjectId) {
+                  d.setId(d.get(LumeerConst.Document.ID).toString());
+               }
+               result.add(d);
+            });
+         }
+
+         return result;
+      });
+   }
+
+   private BasicDBObject idFilter(final String documentId) {
+      return new BasicDBObject(LumeerConst.Document.ID, new ObjectId(documentId));
+   }
+
+   private MongoCollection<DataDocument> dataCollection(final String collectionName) {
+      return database.getCollection(collectionName, DataDocument.class);
+   }
+
+   /**
+    * Adapts a driver operation that reports its result to a callback into a completion stage.
+    *
+    * @param operation
+    *       starts the operation with the given callback
+    * @return stage completed when the callback is called
+    */
+   private <T> CompletionStage<T> execute(final Consumer<SingleResultCallback<T>> operation) {
+      final CompletableFuture<T> future = new CompletableFuture<>();
+
+      try {
+         operation.accept((result, throwable) -> {
+            if (throwable != null) {
+               future.completeExceptionally(throwable);
+            } else {
+               future.complete(result);
+            }
+         });
+      } catch (RuntimeException e) {
+         future.completeExceptionally(e);
+      }
+
+      return future;
+   }
+}
@@ -0,0 +1,328 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Filters.or;
+import static com.mongodb.client.model.Filters.regex;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataChange;
+import io.lumeer.engine.api.data.DataChangeListener;
+import io.lumeer.engine.api.data.DataChangeSubscription;
+import io.lumeer.engine.api.data.DataDocument;
+
+import com.mongodb.CursorType;
+import com.mongodb.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Sorts;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonTimestamp;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Change feed of a database tailing the replica set oplog. Changes are delivered to the listener from a long running
+ * task of the executor given to the feed, e.g. the managed executor of the container. The feed survives network errors
+ * and fail-overs by reopening the cursor after the last delivered change.
+ *
+ * Resume tokens are the oplog timestamps of the changes in the form {@code <seconds>:<increment>}.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class MongoDbChangeFeed implements DataChangeSubscription {
+
+   private static final Logger log = Logger.getLogger(MongoDbChangeFeed.class.getName());
+
+   private static final String LOCAL_DATABASE = "local";
+   private static final String OPLOG_COLLECTION = "oplog.rs";
+   private static final String COMMAND_COLLECTION = "$cmd";
+   private static final String ADMIN_COMMAND_NAMESPACE = "admin.$cmd"; // collections are renamed by an admin command
+   private static final String SYSTEM_COLLECTION_PREFIX = "system.";
+   private static final long AWAIT_TIME = 1000L;
+   private static final long RETRY_DELAY = 5000L;
+
+   private final MongoClient mongoClient;
+   private final String database;
+   private final DataChangeListener listener;
+   private final Codec<DataDocument> codec = MongoDbClients.CODEC_REGISTRY.get(DataDocument.class);
+   private final ExecutorService executor;
+
+   private Future<?> task;
+
+   private volatile BsonTimestamp lastTimestamp;
+   private volatile boolean running = false;
+
+   /**
+    * Creates the feed, it must be started to deliver any changes.
+    *
+    * @param mongoClient
+    *       client connected to the replica set
+    * @param database
+    *       name of the database to watch
+    * @param resumeToken
+    *       token of the last change already seen, null to deliver only the changes made after the feed is started
+    * @param listener
+    *       listener to receive the changes
+    * @param executor
+    *       executor running the feed, the feed occupies one of its threads until it is closed
+    */
+   public MongoDbChangeFeed(final MongoClient mongoClient, final String database, final String resumeToken, final DataChangeListener listener, final ExecutorService executor) {
+      this.mongoClient = mongoClient;
+      this.database = database;
+      this.listener = listener;
+      this.executor = executor;
+      this.lastTimestamp = parseResumeToken(resumeToken);
+   }
+
+   /**
+    * Starts tailing the oplog in the background. Without a resume token, the position of the feed is read before this
+    * method returns, so all changes made after it are delivered.
+    *
+    * @return this feed
+    */
+   public synchronized MongoDbChangeFeed start() {
+      if (!running) {
+         if (lastTimestamp == null) {
+            lastTimestamp = readLastTimestamp();
+         }
+         running = true;
+         task = executor.submit(this::run);
+      }
+      return this;
+   }
+
+   @Override
+   public boolean isActive() {
+      return running;
+   }
+
+   @Override
+   public String getResumeToken() {
+      final BsonTimestamp timestamp = lastTimestamp;
+      return timestamp != null ? timestamp.getTime() + ":" + timestamp.getInc() : null;
+   }
+
+   @Override
+   public synchronized void close() {
+      running = false;
+      if (task != null) {
+         task.cancel(true);
+      }
+   }
+
+   private void run() {
+      final MongoCollection<BsonDocument> oplog = mongoClient.getDatabase(LOCAL_DATABASE).getCollection(OPLOG_COLLECTION, BsonDocument.class);
+
+      while (running) {
+         try {
+            if (!mongoClient.getDatabase(LOCAL_DATABASE).listCollectionNames().into(new ArrayList<>()).contains(OPLOG_COLLECTION)) {
+               log.warning("Database " + database + " does not run in a replica set, no changes will be delivered.");
+               running = false;
+               return;
+            }
+
+            if (lastTimestamp == null) { // the position could not be read on start
+               lastTimestamp = lastTimestamp(oplog);
+            }
+
+            tail(oplog);
+         } catch (RuntimeException e) {
+            if (running) {
+               log.log(Level.WARNING, "Change feed of database " + database + " interrupted, reconnecting: ", e);
+               sleep(RETRY_DELAY);
+            }
+         }
+      }
+   }
+
+   private BsonTimestamp readLastTimestamp() {
+      try {
+         if (!mongoClient.getDatabase(LOCAL_DATABASE).listCollectionNames().into(new ArrayList<>()).contains(OPLOG_COLLECTION)) {
+            return null;
+         }
+         return lastTimestamp(mongoClient.getDatabase(LOCAL_DATABASE).getCollection(OPLOG_COLLECTION, BsonDocument.class));
+      } catch (RuntimeException e) {
+         log.log(Level.WARNING, "Unable to read the oplog position of database " + database + ", it will be read in the background: ", e);
+         return null;
+      }
+   }
+
+   private static BsonTimestamp lastTimestamp(final MongoCollection<BsonDocument> oplog) {
+      final BsonDocument last = oplog.find().sort(Sorts.descending("$natural")).limit(1).first();
+      return last != null ? last.getTimestamp("ts") : new BsonTimestamp();
+   }
+
+   private void tail(final MongoCollection<BsonDocument> oplog) {
+      final String namespacePattern = "^" + database.replace(".", "\\.") + "\\.";
+      final Bson filter = and(
+            gt("ts", lastTimestamp),
+            or(regex("ns", namespacePattern), and(eq("ns", ADMIN_COMMAND_NAMESPACE), regex("o.renameCollection", namespacePattern))),
+            in("op", Arrays.asList("i", "u", "d", "c")));
+
+      try (final MongoCursor<BsonDocument> cursor = oplog.find(filter)
+                                                         .cursorType(CursorType.TailableAwait)
+                                                         .oplogReplay(true)
+                                                         .noCursorTimeout(true)
+                                                         .maxAwaitTime(AWAIT_TIME, TimeUnit.MILLISECONDS)
+                                                         .iterator()) {
+         while (running) {
+            final BsonDocument entry = cursor.tryNext();
+            if (entry == null) {
+               if (cursor.getServerCursor() == null) { // the cursor is dead, e.g. when the oplog was empty
+                  sleep(AWAIT_TIME);
+                  return;
+               }
+               continue;
+            }
+
+            final BsonTimestamp timestamp = entry.getTimestamp("ts");
+            final DataChange change = toChange(entry, timestamp.getTime() + ":" + timestamp.getInc());
+            if (change != null) {
+               deliver(change);
+            }
+            lastTimestamp = timestamp;
+         }
+      }
+   }
+
+   private void deliver(final DataChange change) {
+      try {
+         listener.onChange(change);
+      } catch (RuntimeException e) {
+         log.log(Level.WARNING, "Unable to handle data change " + change + ": ", e);
+      }
+   }
+
+   /**
+    * Converts an oplog entry to a data change.
+    *
+    * @param entry
+    *       the oplog entry
+    * @param resumeToken
+    *       token of the entry
+    * @return the data change, null when the entry does not represent a change of the data
+    */
+   DataChange toChange(final BsonDocument entry, final String resumeToken) {
+      final String namespace = entry.getString("ns").getValue();
+      final BsonDocument object = entry.getDocument("o");
+
+      if (ADMIN_COMMAND_NAMESPACE.equals(namespace)) {
+         return toCollectionChange(object, resumeToken);
+      }
+
+      if (!namespace.startsWith(database + ".")) {
+         return null;
+      }
+
+      final String collectionName = namespace.substring(database.length() + 1);
+      if (collectionName.startsWith(SYSTEM_COLLECTION_PREFIX)) {
+         return null;
+      }
+
+      switch (entry.getString("op").getValue()) {
+         case "i":
+            final DataDocument inserted = toDataDocument(object);
+            return new DataChange(DataChange.Operation.INSERT, collectionName, toId(inserted), null, inserted, resumeToken);
+         case "u":
+            final String updatedId = toId(toDataDocument(entry.getDocument("o2")));
+            if (object.containsKey("$set") || object.containsKey("$unset")) {
+               final DataDocument delta = object.containsKey("$set") ? toDataDocument(object.getDocument("$set")) : new DataDocument();
+               if (object.containsKey("$unset")) {
+                  object.getDocument("$unset").keySet().forEach(key -> delta.put(key, null));
+               }
+               return new DataChange(DataChange.Operation.UPDATE, collectionName, updatedId, null, delta, resumeToken);
+            }
+            return new DataChange(DataChange.Operation.REPLACE, collectionName, updatedId, null, toDataDocument(object), resumeToken);
+         case "d":
+            return new DataChange(DataChange.Operation.DELETE, collectionName, toId(toDataDocument(object)), null, null, resumeToken);
+         case "c":
+            return COMMAND_COLLECTION.equals(collectionName) ? toCollectionChange(object, resumeToken) : null;
+         default:
+            return null;
+      }
+   }
+
+   private DataChange toCollectionChange(final BsonDocument command, final String resumeToken) {
+      if (command.containsKey("create")) {
+         return new DataChange(DataChange.Operation.CREATE_COLLECTION, command.getString("create").getValue(), null, null, null, resumeToken);
+      }
+      if (command.containsKey("drop")) {
+         return new DataChange(DataChange.Operation.DROP_COLLECTION, command.getString("drop").getValue(), null, null, null, resumeToken);
+      }
+      if (command.containsKey("renameCollection")) {
+         final String prefix = database + ".";
+         final String from = command.getString("renameCollection").getValue();
+         final String to = command.getString("to").getValue();
+         if (from.startsWith(prefix) && to.startsWith(prefix)) {
+            return new DataChange(DataChange.Operation.RENAME_COLLECTION, from.substring(prefix.length()), null, to.substring(prefix.length()), null, resumeToken);
+         }
+      }
+      return null;
+   }
+
+   private DataDocument toDataDocument(final BsonDocument document) {
+      return codec.decode(new BsonDocumentReader(document), DecoderContext.builder().build());
+   }
+
+   private static String toId(final DataDocument document) {
+      final Object id = document.get(LumeerConst.Document.ID);
+      return id != null ? id.toString() : null;
+   }
+
+   private static BsonTimestamp parseResumeToken(final String resumeToken) {
+      if (resumeToken == null || resumeToken.isEmpty()) {
+         return null;
+      }
+
+      final String[] parts = resumeToken.split(":");
+      if (parts.length != 2) {
+         throw new IllegalArgumentException("Invalid resume token: " + resumeToken);
+      }
+      try {
+         return new BsonTimestamp(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+      } catch (NumberFormatException e) {
+         throw new IllegalArgumentException("Invalid resume token: " + resumeToken, e);
+      }
+   }
+
+   private void sleep(final long millis) {
+      try {
+         Thread.sleep(millis);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         running = false;
+      }
+   }
+}
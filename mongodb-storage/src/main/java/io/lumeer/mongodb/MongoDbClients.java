@@ -0,0 +1,160 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import io.lumeer.engine.api.data.DataStorageSettings;
+import io.lumeer.engine.api.data.StorageConnection;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoCredential;
+import com.mongodb.ServerAddress;
+import com.mongodb.async.client.MongoClientSettings;
+import com.mongodb.async.client.MongoClients;
+import com.mongodb.connection.ClusterSettings;
+import com.mongodb.connection.ConnectionPoolSettings;
+import com.mongodb.connection.SocketSettings;
+import com.mongodb.connection.SslSettings;
+import com.mongodb.connection.netty.NettyStreamFactoryFactory;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Creates pooled MongoDB clients for the given cluster and settings.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public final class MongoDbClients {
+
+   static final CodecRegistry CODEC_REGISTRY = CodecRegistries.fromRegistries(CodecRegistries.fromProviders(new DataDocumentCodecProvider()), MongoClient.getDefaultCodecRegistry());
+
+   private MongoDbClients() {
+      // we do not want any instances to be created
+      throw new UnsupportedOperationException(String.format("Creation of %s is forbidden.", this.getClass().getCanonicalName()));
+   }
+
+   /**
+    * Creates a synchronous client.
+    *
+    * @param connections
+    *       cluster members to connect to
+    * @param database
+    *       database the credentials are verified against when the settings name no authentication database
+    * @param useSsl
+    *       whether to use SSL connections
+    * @param settings
+    *       connection pool and authentication settings
+    * @return new client
+    */
+   public static MongoClient createClient(final List<StorageConnection> connections, final String database, final Boolean useSsl, final DataStorageSettings settings) {
+      final MongoClientOptions.Builder optionsBuilder = (new MongoClientOptions.Builder())
+            .connectTimeout(settings.getConnectTimeout())
+            .connectionsPerHost(settings.getMaxPoolSize())
+            .minConnectionsPerHost(settings.getMinPoolSize())
+            // the synchronous driver limits the wait queue as a multiple of the pool size
+            .threadsAllowedToBlockForConnectionMultiplier(Math.max(1, (settings.getMaxWaitQueueSize() + settings.getMaxPoolSize() - 1) / settings.getMaxPoolSize()))
+            .maxWaitTime(settings.getMaxWaitTime())
+            .maxConnectionIdleTime(settings.getMaxConnectionIdleTime())
+            .codecRegistry(CODEC_REGISTRY);
+
+      // both clients trust all certificates and host names
+      if (useSsl) {
+         optionsBuilder.sslEnabled(true).sslContext(NaiveTrustManager.getSslContext()).sslInvalidHostNameAllowed(true);
+      }
+
+      return new MongoClient(addresses(connections), credentials(connections, authDatabase(database, settings)), optionsBuilder.build());
+   }
+
+   /**
+    * Creates an asynchronous client.
+    *
+    * @param connections
+    *       cluster members to connect to
+    * @param database
+    *       database the credentials are verified against when the settings name no authentication database
+    * @param useSsl
+    *       whether to use SSL connections
+    * @param settings
+    *       connection pool and authentication settings
+    * @return new client
+    */
+   public static com.mongodb.async.client.MongoClient createAsyncClient(final List<StorageConnection> connections, final String database, final Boolean useSsl, final DataStorageSettings settings) {
+      final MongoClientSettings.Builder settingsBuilder = MongoClientSettings.builder()
+            .clusterSettings(ClusterSettings.builder().hosts(addresses(connections)).maxWaitQueueSize(settings.getMaxWaitQueueSize()).build())
+            .credentialList(credentials(connections, authDatabase(database, settings)))
+            .connectionPoolSettings(ConnectionPoolSettings.builder()
+                                                          .maxSize(settings.getMaxPoolSize())
+                                                          .minSize(settings.getMinPoolSize())
+                                                          .maxWaitQueueSize(settings.getMaxWaitQueueSize())
+                                                          .maxWaitTime(settings.getMaxWaitTime(), TimeUnit.MILLISECONDS)
+                                                          .maxConnectionIdleTime(settings.getMaxConnectionIdleTime(), TimeUnit.MILLISECONDS)
+                                                          .build())
+            .socketSettings(SocketSettings.builder().connectTimeout(settings.getConnectTimeout(), TimeUnit.MILLISECONDS).build())
+            .codecRegistry(CODEC_REGISTRY);
+
+      // both clients trust all certificates and host names
+      if (useSsl) {
+         // asynchronous SSL connections are supported only by Netty streams
+         settingsBuilder.sslSettings(SslSettings.builder().enabled(true).context(NaiveTrustManager.getSslContext()).invalidHostNameAllowed(true).build())
+                        .streamFactoryFactory(NettyStreamFactoryFactory.builder().build());
+      }
+
+      return MongoClients.create(settingsBuilder.build());
+   }
+
+   /**
+    * Checks whether any of the connections carries credentials.
+    *
+    * @param connections
+    *       cluster members to connect to
+    * @return true if the connections need authentication
+    */
+   static boolean hasCredentials(final List<StorageConnection> connections) {
+      return connections.stream().anyMatch(c -> c.getUserName() != null && !c.getUserName().isEmpty());
+   }
+
+   /**
+    * Gets the database the credentials are verified against.
+    *
+    * @param database
+    *       database the storage works with
+    * @param settings
+    *       connection pool and authentication settings
+    * @return the authentication database of the settings, or the given database when the settings name none
+    */
+   static String authDatabase(final String database, final DataStorageSettings settings) {
+      return settings.getAuthDatabase() != null ? settings.getAuthDatabase() : database;
+   }
+
+   private static List<ServerAddress> addresses(final List<StorageConnection> connections) {
+      return connections.stream().map(c -> new ServerAddress(c.getHost(), c.getPort())).collect(Collectors.toList());
+   }
+
+   private static List<MongoCredential> credentials(final List<StorageConnection> connections, final String authDatabase) {
+      return connections.stream()
+                        .filter(c -> c.getUserName() != null && !c.getUserName().isEmpty())
+                        .map(c -> MongoCredential.createScramSha1Credential(c.getUserName(), authDatabase, c.getPassword()))
+                        .collect(Collectors.toList());
+   }
+}
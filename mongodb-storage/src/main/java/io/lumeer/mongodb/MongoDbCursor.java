@@ -0,0 +1,97 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import io.lumeer.engine.api.data.DataCursor;
+import io.lumeer.engine.api.data.DataDocument;
+
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoIterable;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * Cursor over the results of one or more MongoDB iterables. The iterables are opened lazily one after another
+ * and each read document is converted to {@link DataDocument} only when it is requested.
+ *
+ * @param <T>
+ *       type of the documents read by the driver
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class MongoDbCursor<T> implements DataCursor {
+
+   private final Iterator<? extends MongoIterable<T>> iterables;
+   private final Function<T, DataDocument> converter;
+   private MongoCursor<T> cursor = null;
+   private boolean closed = false;
+
+   /**
+    * Creates a cursor over results of the given iterables.
+    *
+    * @param iterables
+    *       iterables to read in the given order, no database operation is performed before they are reached
+    * @param converter
+    *       converts a read document to DataDocument
+    */
+   public MongoDbCursor(final List<? extends MongoIterable<T>> iterables, final Function<T, DataDocument> converter) {
+      this.iterables = iterables.iterator();
+      this.converter = converter;
+   }
+
+   @Override
+   public boolean hasNext() {
+      while (!closed && (cursor == null || !cursor.hasNext())) {
+         if (cursor != null) {
+            cursor.close();
+            cursor = null;
+         }
+
+         if (!iterables.hasNext()) {
+            closed = true;
+         } else {
+            cursor = iterables.next().iterator();
+         }
+      }
+
+      return !closed;
+   }
+
+   @Override
+   public DataDocument next() {
+      if (!hasNext()) {
+         throw new NoSuchElementException();
+      }
+
+      return converter.apply(cursor.next());
+   }
+
+   @Override
+   public void close() {
+      closed = true;
+
+      if (cursor != null) {
+         cursor.close();
+         cursor = null;
+      }
+   }
+}
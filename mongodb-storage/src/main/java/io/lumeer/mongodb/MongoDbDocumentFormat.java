@@ -0,0 +1,103 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataDocumentFormat;
+
+import org.bson.BSONException;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import javax.enterprise.context.ApplicationScoped;
+
+/**
+ * Writes and reads {@link DataDocument}s as raw BSON using {@link DataDocumentCodec}, so no intermediate
+ * {@link org.bson.Document} or JSON is created.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+@ApplicationScoped
+public class MongoDbDocumentFormat implements DataDocumentFormat {
+
+   private static final int MAX_DOCUMENT_SIZE = 16 * 1024 * 1024;
+
+   private final Codec<DataDocument> codec = MongoDbClients.CODEC_REGISTRY.get(DataDocument.class);
+
+   @Override
+   public String getMediaType() {
+      return LumeerConst.BSON_MEDIA_TYPE;
+   }
+
+   @Override
+   public void write(final DataDocument document, final OutputStream output) throws IOException {
+      final BasicOutputBuffer buffer = new BasicOutputBuffer();
+      try (final BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+         codec.encode(writer, document, EncoderContext.builder().build());
+      }
+      buffer.pipe(output);
+   }
+
+   @Override
+   public DataDocument read(final InputStream input) throws IOException {
+      final byte[] size = new byte[4];
+      final int first = input.read(size, 0, size.length);
+      if (first < 0) {
+         return null;
+      }
+      readFully(input, size, first);
+
+      final int length = (size[0] & 0xff) | (size[1] & 0xff) << 8 | (size[2] & 0xff) << 16 | (size[3] & 0xff) << 24;
+      if (length < 5 || length > MAX_DOCUMENT_SIZE) {
+         throw new IOException("Invalid BSON document size: " + length);
+      }
+
+      final byte[] bytes = new byte[length];
+      System.arraycopy(size, 0, bytes, 0, size.length);
+      readFully(input, bytes, size.length);
+
+      try (final BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(bytes))) {
+         return codec.decode(reader, DecoderContext.builder().build());
+      } catch (BSONException e) {
+         throw new IOException("Invalid BSON document: " + e.getMessage(), e);
+      }
+   }
+
+   private static void readFully(final InputStream input, final byte[] bytes, final int offset) throws IOException {
+      int position = offset;
+      while (position < bytes.length) {
+         final int read = input.read(bytes, position, bytes.length - position);
+         if (read < 0) {
+            throw new EOFException("Incomplete BSON document.");
+         }
+         position += read;
+      }
+   }
+}
@@ -26,41 +26,71 @@ import static com.mongodb.client.model.Sorts.descending;
 import static com.mongodb.client.model.Updates.*;
 
 import io.lumeer.engine.api.LumeerConst;
-import io.lumeer.engine.api.cache.Cache;
 import io.lumeer.engine.api.cache.CacheProvider;
+import io.lumeer.engine.api.data.BulkWriteResult;
+import io.lumeer.engine.api.data.DataChange;
+import io.lumeer.engine.api.data.DataChangeListener;
+import io.lumeer.engine.api.data.DataChangeSubscription;
+import io.lumeer.engine.api.data.DataCursor;
 import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataPage;
 import io.lumeer.engine.api.data.DataStorage;
+import io.lumeer.engine.api.data.DataStorageSettings;
 import io.lumeer.engine.api.data.Query;
 import io.lumeer.engine.api.data.StorageConnection;
 import io.lumeer.engine.api.exception.UnsuccessfulOperationException;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.Block;
 import com.mongodb.ErrorCategory;
 import com.mongodb.MongoClient;
-import com.mongodb.MongoClientOptions;
-import com.mongodb.MongoCredential;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoCommandException;
 import com.mongodb.MongoNamespace;
 import com.mongodb.MongoWriteException;
-import com.mongodb.ServerAddress;
 import com.mongodb.client.AggregateIterable;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertOneModel;
 import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
 import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
 import org.bson.BsonDocument;
+import org.bson.BsonDocumentWrapper;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
@@ -71,145 +101,114 @@ public class MongoDbStorage implements DataStorage {
 
    private static final String CURSOR_KEY = "cursor";
    private static final String FIRST_BATCH_KEY = "firstBatch";
-   private static final String COLLECTION_CACHE = "collections";
+   private static final long COLLECTION_REFRESH_PERIOD = 5000L;
+   private static final int INDEX_OPTIONS_CONFLICT = 85;
 
    private MongoDatabase database;
    private MongoClient mongoClient = null;
-   private long cacheLastUpdated = 0L;
-   private Cache<List<String>> collectionsCache;
+   private boolean sharedClient = false;
 
-   @Override
-   public void setCacheProvider(final CacheProvider cacheProvider) {
-      this.collectionsCache = cacheProvider.getCache(COLLECTION_CACHE);
-   }
+   // runs the queries of multiple collections and refreshes the collection registry
+   private ScheduledExecutorService executor;
+   private boolean sharedExecutor = false;
+   private CollectionRegistry collectionRegistry;
+   private final Set<MongoDbChangeFeed> changeFeeds = ConcurrentHashMap.newKeySet();
+   // collection and attribute pairs of sequences known to have the unique index on the sequence name
+   private final Set<String> sequenceIndexes = ConcurrentHashMap.newKeySet();
 
-   private List<String> getCollectionCache() {
-      return collectionsCache.get();
+   public MongoDbStorage() {
    }
 
-   private void setCollectionCache(final List<String> collections) {
-      collectionsCache.set(collections);
+   /**
+    * Creates a storage working with the given database of a client shared with other storages. Disconnecting such
+    * a storage leaves the client and the executor open, they are closed by their owner.
+    *
+    * @param mongoClient
+    *       shared client
+    * @param database
+    *       name of the database
+    * @param executor
+    *       executor for the queries of multiple collections and for background tasks, e.g. a managed executor
+    *       of the container
+    */
+   MongoDbStorage(final MongoClient mongoClient, final String database, final ScheduledExecutorService executor) {
+      this.mongoClient = mongoClient;
+      this.database = mongoClient.getDatabase(database);
+      this.sharedClient = true;
+      this.executor = executor;
+      this.sharedExecutor = true;
+      initCollectionRegistry();
    }
 
    @Override
-   public void connect(final List<StorageConnection> connections, final String database, final Boolean useSsl) {
-      final List<ServerAddress> addresses = new ArrayList<>();
-      final List<MongoCredential> credentials = new ArrayList<>();
-
-      connections.forEach(c -> {
-         addresses.add(new ServerAddress(c.getHost(), c.getPort()));
-         if (c.getUserName() != null && !c.getUserName().isEmpty()) {
-            credentials.add(MongoCredential.createScramSha1Credential(c.getUserName(), database, c.getPassword()));
-         }
-      });
-
-      final MongoClientOptions.Builder optionsBuilder = (new MongoClientOptions.Builder()).connectTimeout(30000);
+   public void setCacheProvider(final CacheProvider cacheProvider) {
+      // collection names are kept in the collection registry
+   }
 
-      if (useSsl) {
-         optionsBuilder.sslEnabled(true).socketFactory(NaiveTrustManager.getSocketFactory()).sslInvalidHostNameAllowed(true);
-      }
+   private void initCollectionRegistry() {
+      collectionRegistry = new CollectionRegistry(() -> database.listCollectionNames().into(new ArrayList<>()), executor);
+      collectionRegistry.start(COLLECTION_REFRESH_PERIOD);
+   }
 
-      this.mongoClient = new MongoClient(addresses, credentials, optionsBuilder.build());
+   @Override
+   public void connect(final List<StorageConnection> connections, final String database, final Boolean useSsl) {
+      this.mongoClient = MongoDbClients.createClient(connections, database, useSsl, DataStorageSettings.DEFAULT);
       this.database = mongoClient.getDatabase(database);
+      this.sharedClient = false;
+      this.executor = Executors.newScheduledThreadPool(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()), r -> {
+         final Thread thread = new Thread(r, "mongodb-storage-" + database);
+         thread.setDaemon(true);
+         return thread;
+      });
+      this.sharedExecutor = false;
+      initCollectionRegistry();
    }
 
    @Override
    public void disconnect() {
-      if (mongoClient != null) {
+      changeFeeds.forEach(MongoDbChangeFeed::close);
+      changeFeeds.clear();
+      if (collectionRegistry != null) {
+         collectionRegistry.stop();
+      }
+      if (mongoClient != null && !sharedClient) {
          mongoClient.close();
       }
+      if (executor != null && !sharedExecutor) {
+         executor.shutdownNow();
+      }
    }
 
    @Override
-   @SuppressWarnings("unchecked")
    public List<String> getAllCollections() {
-      if (collectionsCache != null) {
-         collectionsCache.lock(COLLECTION_CACHE);
-         try {
-            if (getCollectionCache() == null || cacheLastUpdated + 5000 < System.currentTimeMillis()) {
-               setCollectionCache(database.listCollectionNames().into(new ArrayList<>()));
-               cacheLastUpdated = System.currentTimeMillis();
-            }
-         } finally {
-            collectionsCache.unlock(COLLECTION_CACHE);
-         }
-
-         return getCollectionCache();
-      } else {
-         return database.listCollectionNames().into(new ArrayList<>());
-      }
+      return collectionRegistry.getAll();
    }
 
    @Override
    public void createCollection(final String collectionName) {
-      if (collectionsCache != null) {
-         collectionsCache.lock(COLLECTION_CACHE);
-         try {
-            final List<String> collections = getCollectionCache();
-
-            if (collections != null) {
-               collections.add(collectionName);
-            } else {
-               setCollectionCache(new ArrayList<>(Collections.singletonList(collectionName)));
-            }
-
-            database.createCollection(collectionName);
-         } finally {
-            collectionsCache.unlock(COLLECTION_CACHE);
-         }
-      } else {
-         database.createCollection(collectionName);
-      }
+      database.createCollection(collectionName);
+      collectionRegistry.created(collectionName);
    }
 
    @Override
    public void dropCollection(final String collectionName) {
-      if (collectionsCache != null) {
-         collectionsCache.lock(COLLECTION_CACHE);
-         try {
-            final List<String> collections = getCollectionCache();
-
-            if (collections != null) {
-               collections.remove(collectionName);
-            }
-
-            database.getCollection(collectionName).drop();
-         } finally {
-            collectionsCache.unlock(COLLECTION_CACHE);
-         }
-      } else {
-         database.getCollection(collectionName).drop();
-      }
+      database.getCollection(collectionName).drop();
+      collectionRegistry.dropped(collectionName);
+      forgetSequenceIndexes(collectionName);
    }
 
    @Override
    public void renameCollection(final String oldCollectionName, final String newCollectionName) {
-      if (collectionsCache != null) {
-         collectionsCache.lock(COLLECTION_CACHE);
-         try {
-            final List<String> collections = getCollectionCache();
-
-            if (collections != null) {
-               collections.remove(oldCollectionName);
-               collections.add(newCollectionName);
-            }
-
-            if (hasCollection(oldCollectionName)) {
-               database.getCollection(oldCollectionName).renameCollection(new MongoNamespace(database.getName(), newCollectionName));
-            }
-         } finally {
-            collectionsCache.unlock(COLLECTION_CACHE);
-         }
-      } else {
-         if (hasCollection(oldCollectionName)) {
-            database.getCollection(oldCollectionName).renameCollection(new MongoNamespace(database.getName(), newCollectionName));
-         }
+      if (hasCollection(oldCollectionName)) {
+         database.getCollection(oldCollectionName).renameCollection(new MongoNamespace(database.getName(), newCollectionName));
+         collectionRegistry.renamed(oldCollectionName, newCollectionName);
+         forgetSequenceIndexes(oldCollectionName);
       }
    }
 
    @Override
    public boolean hasCollection(final String collectionName) {
-      return getAllCollections().contains(collectionName);
+      return collectionRegistry.contains(collectionName);
    }
 
    @Override
@@ -219,36 +218,22 @@ public class MongoDbStorage implements DataStorage {
 
    @Override
    public String createDocument(final String collectionName, final DataDocument dataDocument) {
-      Document doc = new Document(dataDocument);
-
-      if (collectionsCache != null) {
-         collectionsCache.lock(COLLECTION_CACHE);
-         try {
-            final List<String> collections = getCollectionCache();
-
-            if (collections != null) {
-               collections.add(collectionName);
-            } else {
-               setCollectionCache(new ArrayList<>(Collections.singletonList(collectionName)));
-            }
+      DataDocument doc = new DataDocument(dataDocument);
+      doc.putIfAbsent(LumeerConst.Document.ID, new ObjectId());
 
-            database.getCollection(collectionName).insertOne(doc);
-         } finally {
-            collectionsCache.unlock(COLLECTION_CACHE);
-         }
-      } else {
-         database.getCollection(collectionName).insertOne(doc);
-      }
+      dataCollection(collectionName).insertOne(doc);
+      collectionRegistry.created(collectionName);
 
-      return doc.containsKey(LumeerConst.Document.ID) ? doc.getObjectId(LumeerConst.Document.ID).toString() : null;
+      return doc.get(LumeerConst.Document.ID).toString();
    }
 
    @Override
    public void createOldDocument(final String collectionName, final DataDocument dataDocument, final String documentId, final int version) throws UnsuccessfulOperationException {
-      Document doc = new Document(dataDocument);
-      doc.put(LumeerConst.Document.ID, new BasicDBObject(LumeerConst.Document.ID, new ObjectId(documentId)).append(LumeerConst.Document.METADATA_VERSION_KEY, version));
+      DataDocument doc = new DataDocument(dataDocument);
+      doc.put(LumeerConst.Document.ID, new DataDocument(LumeerConst.Document.ID, new ObjectId(documentId)).append(LumeerConst.Document.METADATA_VERSION_KEY, version));
       try {
-         database.getCollection(collectionName).insertOne(doc);
+         dataCollection(collectionName).insertOne(doc);
+         collectionRegistry.created(collectionName);
       } catch (MongoWriteException e) {
          if (e.getError().getCategory().equals(ErrorCategory.DUPLICATE_KEY)) {
             throw new UnsuccessfulOperationException(e.getMessage(), e.getCause());
@@ -262,50 +247,42 @@ public class MongoDbStorage implements DataStorage {
    public DataDocument readDocumentIncludeAttrs(final String collectionName, final String documentId, final List<String> attributes) {
       BasicDBObject filter = new BasicDBObject(LumeerConst.Document.ID, new ObjectId(documentId));
       Bson projection = Projections.include(attributes);
-      Document document = database.getCollection(collectionName).find(filter).projection(projection).first();
-
-      if (document == null) {
-         return null;
-      }
 
-      // converts id to string
-      MongoUtils.replaceId(document);
-      DataDocument readed = new DataDocument(document);
-      MongoUtils.convertNestedAndListDocuments(readed);
-
-      return readed;
+      return dataCollection(collectionName).find(filter).projection(projection).first();
    }
 
    @Override
    public DataDocument readDocument(final String collectionName, final String documentId) {
       BasicDBObject filter = new BasicDBObject(LumeerConst.Document.ID, new ObjectId(documentId));
-      Document document = database.getCollection(collectionName).find(filter).first();
 
-      if (document == null) {
-         return null;
+      return dataCollection(collectionName).find(filter).first();
+   }
+
+   @Override
+   public List<DataDocument> readDocuments(final String collectionName, final List<String> documentIds) {
+      return readDocumentsIncludeAttrs(collectionName, documentIds, null);
+   }
+
+   @Override
+   public List<DataDocument> readDocumentsIncludeAttrs(final String collectionName, final List<String> documentIds, final List<String> attributes) {
+      if (documentIds == null || documentIds.isEmpty()) {
+         return new ArrayList<>();
       }
 
-      // converts id to string
-      MongoUtils.replaceId(document);
-      DataDocument readed = new DataDocument(document);
-      MongoUtils.convertNestedAndListDocuments(readed);
+      FindIterable<DataDocument> documents = dataCollection(collectionName).find(idsFilter(documentIds));
+      if (attributes != null && !attributes.isEmpty()) {
+         documents = documents.projection(Projections.include(attributes));
+      }
 
-      return readed;
+      return orderByIds(documents.into(new ArrayList<>()), documentIds);
    }
 
    @Override
    public DataDocument readOldDocument(final String collectionName, final String documentId, final int version) {
       BasicDBObject filter = new BasicDBObject(LumeerConst.Document.ID, new BasicDBObject(LumeerConst.Document.ID, new ObjectId(documentId)).append(
             LumeerConst.Document.METADATA_VERSION_KEY, version));
-      Document document = database.getCollection(collectionName).find(filter).first();
-      if (document == null) {
-         return null;
-      }
-      MongoUtils.replaceId(document);
-      DataDocument readed = new DataDocument(document);
-      MongoUtils.convertNestedAndListDocuments(readed);
 
-      return readed;
+      return dataCollection(collectionName).find(filter).first();
    }
 
    @Override
@@ -326,8 +303,30 @@ public class MongoDbStorage implements DataStorage {
          toReplace.remove(LumeerConst.Document.ID);
       }
       BasicDBObject filter = new BasicDBObject(LumeerConst.Document.ID, new ObjectId(documentId));
-      Document replaceDoc = new Document(toReplace);
-      database.getCollection(collectionName).replaceOne(filter, replaceDoc);
+      dataCollection(collectionName).replaceOne(filter, toReplace);
+   }
+
+   @Override
+   public boolean updateDocument(final String collectionName, final DataDocument updatedDocument, final String documentId, final int expectedVersion) {
+      DataDocument toUpdate = new DataDocument(updatedDocument);
+      toUpdate.remove(LumeerConst.Document.ID);
+      BasicDBObject updateBson = new BasicDBObject("$set", new BasicDBObject(toUpdate));
+      return database.getCollection(collectionName).updateOne(versionFilter(documentId, expectedVersion), updateBson).getMatchedCount() > 0;
+   }
+
+   @Override
+   public boolean replaceDocument(final String collectionName, final DataDocument replaceDocument, final String documentId, final int expectedVersion) {
+      DataDocument toReplace = new DataDocument(replaceDocument);
+      toReplace.remove(LumeerConst.Document.ID);
+      return dataCollection(collectionName).replaceOne(versionFilter(documentId, expectedVersion), toReplace).getMatchedCount() > 0;
+   }
+
+   private static Bson versionFilter(final String documentId, final int expectedVersion) {
+      final Bson version = expectedVersion == 0
+            ? Filters.or(eq(LumeerConst.Document.METADATA_VERSION_KEY, 0), exists(LumeerConst.Document.METADATA_VERSION_KEY, false))
+            : eq(LumeerConst.Document.METADATA_VERSION_KEY, expectedVersion);
+
+      return Filters.and(eq(LumeerConst.Document.ID, new ObjectId(documentId)), version);
    }
 
    @Override
@@ -353,6 +352,120 @@ public class MongoDbStorage implements DataStorage {
       database.getCollection(collectionName).deleteMany(BsonDocument.parse(filter));
    }
 
+   @Override
+   public BulkWriteResult createDocuments(final String collectionName, final List<DataDocument> documents, final int chunkSize) {
+      final List<String> documentIds = new ArrayList<>();
+      final BulkWriteResult result = bulkWrite(collectionName, documents, chunkSize, d -> createInsertModel(d, documentIds));
+      collectionRegistry.created(collectionName);
+
+      for (int i = 0; i < documentIds.size(); i++) {
+         if (!result.isFailed(i)) {
+            result.addInsertedId(documentIds.get(i));
+         }
+      }
+
+      return result;
+   }
+
+   private WriteModel<DataDocument> createInsertModel(final DataDocument dataDocument, final List<String> documentIds) {
+      final DataDocument doc = new DataDocument(dataDocument);
+      final ObjectId id = new ObjectId();
+      doc.put(LumeerConst.Document.ID, id);
+      documentIds.add(id.toString());
+
+      return new InsertOneModel<>(doc);
+   }
+
+   @Override
+   public BulkWriteResult createOldDocuments(final String collectionName, final List<DataDocument> documents, final int chunkSize) {
+      final BulkWriteResult result = bulkWrite(collectionName, documents, chunkSize, d -> {
+         final DataDocument doc = new DataDocument(d);
+         doc.put(LumeerConst.Document.ID, new DataDocument(LumeerConst.Document.ID, new ObjectId(d.getId())).append(
+               LumeerConst.Document.METADATA_VERSION_KEY, d.getInteger(LumeerConst.Document.METADATA_VERSION_KEY)));
+
+         return new InsertOneModel<>(doc);
+      });
+      collectionRegistry.created(collectionName);
+
+      return result;
+   }
+
+   @Override
+   public BulkWriteResult updateDocuments(final String collectionName, final List<DataDocument> updatedDocuments, final int chunkSize) {
+      return bulkWrite(collectionName, updatedDocuments, chunkSize, d -> {
+         final BasicDBObject filter = new BasicDBObject(LumeerConst.Document.ID, new ObjectId(d.getId()));
+         final DataDocument toUpdate = new DataDocument(d);
+         toUpdate.remove(LumeerConst.Document.ID);
+
+         return new UpdateOneModel<>(filter, new BasicDBObject("$set", new BasicDBObject(toUpdate)));
+      });
+   }
+
+   @Override
+   public BulkWriteResult replaceDocuments(final String collectionName, final List<DataDocument> replaceDocuments, final int chunkSize) {
+      return bulkWrite(collectionName, replaceDocuments, chunkSize, d -> {
+         final BasicDBObject filter = new BasicDBObject(LumeerConst.Document.ID, new ObjectId(d.getId()));
+         final DataDocument toReplace = new DataDocument(d);
+         toReplace.remove(LumeerConst.Document.ID);
+
+         return new ReplaceOneModel<>(filter, toReplace);
+      });
+   }
+
+   @Override
+   public BulkWriteResult dropDocuments(final String collectionName, final List<String> documentIds, final int chunkSize) {
+      return bulkWrite(collectionName, documentIds, chunkSize, id -> new DeleteOneModel<>(new BasicDBObject(LumeerConst.Document.ID, new ObjectId(id))));
+   }
+
+   /**
+    * Sends write models created from the given items to the database in unordered chunks.
+    * Items for which the model cannot be created (e.g. because of an invalid id) are reported as failed and skipped.
+    *
+    * @param collectionName
+    *       the name of the collection to write to
+    * @param items
+    *       items to write
+    * @param chunkSize
+    *       maximal number of models sent at once
+    * @param modelFactory
+    *       creates a write model for a single item
+    * @return result of the whole operation with errors indexed by the position of the item in the input list
+    */
+   private <T> BulkWriteResult bulkWrite(final String collectionName, final List<T> items, final int chunkSize, final Function<T, WriteModel<DataDocument>> modelFactory) {
+      final BulkWriteResult result = new BulkWriteResult();
+      final MongoCollection<DataDocument> collection = dataCollection(collectionName);
+      final int size = chunkSize > 0 ? chunkSize : DEFAULT_BULK_CHUNK_SIZE;
+
+      for (int offset = 0; offset < items.size(); offset += size) {
+         final List<T> chunk = items.subList(offset, Math.min(offset + size, items.size()));
+         final List<WriteModel<DataDocument>> models = new ArrayList<>(chunk.size());
+         final List<Integer> modelIndexes = new ArrayList<>(chunk.size());
+
+         for (int i = 0; i < chunk.size(); i++) {
+            try {
+               models.add(modelFactory.apply(chunk.get(i)));
+               modelIndexes.add(offset + i);
+            } catch (IllegalArgumentException e) {
+               result.addError(offset + i, e.getMessage());
+            }
+         }
+
+         if (models.isEmpty()) {
+            continue;
+         }
+
+         try {
+            collection.bulkWrite(models, new BulkWriteOptions().ordered(false));
+            result.addSuccess(models.size());
+         } catch (MongoBulkWriteException e) {
+            e.getWriteErrors().forEach(error -> result.addError(modelIndexes.get(error.getIndex()), error.getMessage()));
+            result.addSuccess(models.size() - e.getWriteErrors().size());
+         }
+      }
+
+      return result;
+   }
+
    @Override
    public void renameAttribute(final String collectionName, final String oldName, final String newName) {
       database.getCollection(collectionName).updateMany(BsonDocument.parse("{}"), rename(oldName, newName));
@@ -444,7 +557,7 @@ public class MongoDbStorage implements DataStorage {
 
    @Override
    public List<DataDocument> run(final DataDocument command) {
-      return run(MongoUtils.dataDocumentToDocument(command));
+      return run(toBson(command));
    }
 
    private List<DataDocument> run(final Bson command) {
@@ -468,8 +581,61 @@ public class MongoDbStorage implements DataStorage {
    public List<DataDocument> search(final String collectionName, final String filter, final String sort, final int skip, final int limit) {
       final List<DataDocument> result = new ArrayList<>();
 
-      MongoCollection<Document> collection = database.getCollection(collectionName);
-      FindIterable<Document> documents = filter != null ? collection.find(BsonDocument.parse(filter)) : collection.find();
+      searchIterable(collectionName, filter, sort, skip, limit).into(result);
+
+      return result;
+   }
+
+   @Override
+   public DataPage searchPage(final String collectionName, final String filter, final String sort, final int skip, final String pageToken, final int limit) {
+      final DataDocument sortWithId = PageToken.sortWithId(sort != null && !sort.isEmpty() ? parseSort(sort) : null);
+
+      final List<Bson> filters = new ArrayList<>();
+      if (filter != null) {
+         filters.add(BsonDocument.parse(filter));
+      }
+      if (pageToken != null) {
+         filters.add(toBson(PageToken.seekFilter(pageToken, sortWithId)));
+      }
+
+      FindIterable<DataDocument> documents = dataCollection(collectionName).find(filters.isEmpty() ? new BsonDocument() : Filters.and(filters)).sort(toBson(sortWithId));
+      if (pageToken == null && skip > 0) {
+         documents = documents.skip(skip);
+      }
+      if (limit > 0) {
+         documents = documents.limit(limit);
+      }
+
+      final List<DataDocument> result = documents.into(new ArrayList<>());
+
+      return new DataPage(result, limit > 0 && result.size() == limit ? PageToken.create(result.get(result.size() - 1), sortWithId) : null);
+   }
+
+   private static DataDocument parseSort(final String sort) {
+      final DataDocument result = new DataDocument();
+      BsonDocument.parse(sort).forEach((field, direction) -> result.put(field, direction.isNumber() ? direction.asNumber().intValue() : 1));
+
+      return result;
+   }
+
+   @Override
+   public DataCursor searchCursor(final String collectionName, final String filter, final String sort, final int skip, final int limit, final int batchSize) {
+      return new MongoDbCursor<>(Collections.singletonList(searchIterable(collectionName, filter, sort, skip, limit).batchSize(batchSize)), Function.identity());
+   }
+
+   @Override
+   public DataCursor searchCursorIncludeAttrs(final String collectionName, final String filter, final String sort, final List<String> attributes, final int batchSize) {
+      FindIterable<DataDocument> documents = searchIterable(collectionName, filter, sort, 0, 0).batchSize(batchSize).noCursorTimeout(true);
+      if (attributes != null && !attributes.isEmpty()) {
+         documents = documents.projection(Projections.include(attributes));
+      }
+
+      return new MongoDbCursor<>(Collections.singletonList(documents), Function.identity());
+   }
+
+   private FindIterable<DataDocument> searchIterable(final String collectionName, final String filter, final String sort, final int skip, final int limit) {
+      MongoCollection<DataDocument> collection = dataCollection(collectionName);
+      FindIterable<DataDocument> documents = filter != null ? collection.find(BsonDocument.parse(filter)) : collection.find();
       if (sort != null && !sort.isEmpty()) {
          documents = documents.sort(BsonDocument.parse(sort));
       }
@@ -480,14 +646,7 @@ public class MongoDbStorage implements DataStorage {
          documents = documents.limit(limit);
       }
 
-      documents.into(new ArrayList<>()).forEach(d -> {
-         MongoUtils.replaceId(d);
-         DataDocument raw = new DataDocument(d);
-         MongoUtils.convertNestedAndListDocuments(raw);
-         result.add(raw);
-      });
-
-      return result;
+      return documents;
    }
 
    @Override
@@ -499,8 +658,128 @@ public class MongoDbStorage implements DataStorage {
 
    @Override
    public List<DataDocument> query(final Query query) {
-      List<DataDocument> result = new LinkedList<>();
-      List<DataDocument> stages = new LinkedList<>();
+      final List<DataDocument> result = new ArrayList<>();
+
+      try (DataCursor cursor = queryCursor(query)) {
+         cursor.forEachRemaining(result::add);
+      }
+
+      return result;
+   }
+
+   @Override
+   public DataCursor queryCursor(final Query query, final int batchSize) {
+      final int skip = query.getSkip() != null && query.getSkip() > 0 ? query.getSkip() : 0;
+      final int limit = query.getLimit() != null && query.getLimit() > 0 ? query.getLimit() : 0;
+
+      if (query.getOutput() != null && !query.getOutput().isEmpty()) {
+         // results are written to the output collection, run the queries one after another
+         return new MongoDbCursor<>(queryIterables(query, buildQueryStages(query, query.getSorting(), null, skip, limit), batchSize), this::convertAggregatedDocument);
+      }
+
+      final DataDocument[] stages = buildQueryStages(query, query.getSorting(), null, 0, limit > 0 ? skip + limit : 0);
+
+      return openMergedCursor(query.getCollections(), stages, batchSize, query.getSorting().size() > 0 ? new SortComparator(query.getSorting()) : null, skip, limit);
+   }
+
+   @Override
+   public DataPage queryPage(final Query query) {
+      final int skip = query.getPageToken() == null && query.getSkip() != null && query.getSkip() > 0 ? query.getSkip() : 0;
+      final int limit = query.getLimit() != null && query.getLimit() > 0 ? query.getLimit() : 0;
+      final DataDocument sort = PageToken.sortWithId(query.getSorting());
+      final DataDocument seek = query.getPageToken() != null ? PageToken.seekFilter(query.getPageToken(), sort) : null;
+
+      final DataDocument[] stages = buildQueryStages(query, sort, seek, 0, limit > 0 ? skip + limit : 0);
+      final List<DataDocument> documents = new ArrayList<>();
+      try (DataCursor cursor = openMergedCursor(query.getCollections(), stages, DEFAULT_CURSOR_BATCH_SIZE, new SortComparator(sort), skip, limit)) {
+         cursor.forEachRemaining(documents::add);
+      }
+
+      return new DataPage(documents, limit > 0 && documents.size() == limit ? PageToken.create(documents.get(documents.size() - 1), sort) : null);
+   }
+
+   // each collection returns its first skip + limit results, the global skip and limit are applied after merging
+   private DataCursor openMergedCursor(final Collection<String> collections, final DataDocument[] stages, final int batchSize, final Comparator<DataDocument> comparator, final int skip, final int limit) {
+      final int collectionBatchSize = limit > 0 ? Math.min(batchSize, skip + limit) : batchSize;
+
+      // tasks that have not started yet do not open their cursors once the query is abandoned
+      final AtomicBoolean abandoned = new AtomicBoolean(false);
+      final List<Future<DataCursor>> futures = new ArrayList<>();
+      if (stages.length > 0) {
+         collections.forEach(collection -> futures.add(executor.submit(() -> abandoned.get() ? null : openCollectionCursor(collection, stages, collectionBatchSize))));
+      }
+
+      final List<DataCursor> cursors = new ArrayList<>();
+      try {
+         for (final Future<DataCursor> future : futures) {
+            cursors.add(future.get());
+         }
+      } catch (InterruptedException | ExecutionException e) {
+         // cancelling would not stop the running tasks, wait for all of them and close every cursor they opened
+         abandoned.set(true);
+         futures.forEach(MongoDbStorage::closeWhenDone);
+
+         if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Query was interrupted.", e);
+         }
+         throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+      }
+
+      return new MergingCursor(cursors, comparator, skip, limit);
+   }
+
+   private List<AggregateIterable<Document>> queryIterables(final Query query, final DataDocument[] stages, final int batchSize) {
+      final List<AggregateIterable<Document>> iterables = new ArrayList<>();
+
+      if (stages.length > 0) {
+         final List<Bson> bsonStages = toBson(stages);
+         query.getCollections().forEach(collection -> {
+            iterables.add(database.getCollection(collection).aggregate(bsonStages).batchSize(batchSize));
+         });
+      }
+
+      return iterables;
+   }
+
+   // opens the cursor and fetches its first batch, results are marked with the name of the collection
+   private DataCursor openCollectionCursor(final String collection, final DataDocument[] stages, final int batchSize) {
+      final DataCursor cursor = new MongoDbCursor<>(Collections.singletonList(database.getCollection(collection).aggregate(toBson(stages)).batchSize(batchSize)), d -> {
+         final DataDocument document = convertAggregatedDocument(d);
+         document.put(LumeerConst.Document.COLLECTION_NAME, collection);
+         return document;
+      });
+      cursor.hasNext();
+
+      return cursor;
+   }
+
+   private static void closeWhenDone(final Future<DataCursor> future) {
+      boolean interrupted = false;
+      try {
+         while (true) {
+            try {
+               final DataCursor cursor = future.get();
+               if (cursor != null) {
+                  cursor.close();
+               }
+               return;
+            } catch (InterruptedException e) {
+               interrupted = true;
+            } catch (ExecutionException | RuntimeException e) {
+               // the cursor was not opened or cannot be closed anymore
+               return;
+            }
+         }
+      } finally {
+         if (interrupted) {
+            Thread.currentThread().interrupt();
+         }
+      }
+   }
+
+   private DataDocument[] buildQueryStages(final Query query, final DataDocument sorting, final DataDocument seek, final int skip, final int limit) {
+      final List<DataDocument> stages = new LinkedList<>();
 
       if (query.getFilters().size() > 0) {
          final DataDocument filters = new DataDocument();
@@ -520,22 +799,28 @@ public class MongoDbStorage implements DataStorage {
          stages.add(projections);
       }
 
-      if (query.getSorting().size() > 0) {
+      if (seek != null) { // sort keys are known only after grouping and projection
+         final DataDocument seekStage = new DataDocument();
+         seekStage.put("$match", seek);
+         stages.add(seekStage);
+      }
+
+      if (sorting.size() > 0) {
          final DataDocument sorts = new DataDocument();
-         sorts.put("$sort", query.getSorting());
+         sorts.put("$sort", sorting);
          stages.add(sorts);
       }
 
-      if (query.getSkip() != null && query.getSkip() > 0) {
-         final DataDocument skip = new DataDocument();
-         skip.put("$skip", query.getSkip());
-         stages.add(skip);
+      if (skip > 0) {
+         final DataDocument skipStage = new DataDocument();
+         skipStage.put("$skip", skip);
+         stages.add(skipStage);
       }
 
-      if (query.getLimit() != null && query.getLimit() > 0) {
-         final DataDocument limit = new DataDocument();
-         limit.put("$limit", query.getLimit());
-         stages.add(limit);
+      if (limit > 0) {
+         final DataDocument limitStage = new DataDocument();
+         limitStage.put("$limit", limit);
+         stages.add(limitStage);
       }
 
       if (query.getOutput() != null && !query.getOutput().isEmpty()) {
@@ -544,11 +829,7 @@ public class MongoDbStorage implements DataStorage {
          stages.add(output);
       }
 
-      query.getCollections().forEach(collection -> {
-         result.addAll(aggregate(collection, stages.toArray(new DataDocument[stages.size()])));
-      });
-
-      return result;
+      return stages.toArray(new DataDocument[stages.size()]);
    }
 
    @Override
@@ -558,26 +839,84 @@ public class MongoDbStorage implements DataStorage {
       }
 
       final List<DataDocument> result = new LinkedList<>();
-      final List<Document> documents = new LinkedList<>();
-      for (final DataDocument d : stages) {
-         documents.add(MongoUtils.dataDocumentToDocument(d));
+
+      database.getCollection(collectionName).aggregate(toBson(stages)).forEach((Block<Document>) d -> result.add(convertAggregatedDocument(d)));
+
+      return result;
+   }
+
+   @Override
+   public DataCursor aggregateCursor(final String collectionName, final int batchSize, final DataDocument... stages) {
+      if (stages == null || stages.length == 0) {
+         return new MongoDbCursor<>(Collections.<AggregateIterable<Document>>emptyList(), this::convertAggregatedDocument);
       }
 
-      AggregateIterable<Document> resultDocuments = database.getCollection(collectionName).aggregate(documents);
-      resultDocuments.into(new LinkedList<>()).forEach(d -> {
-         if (d.get(LumeerConst.Document.ID) instanceof Document) {
-            d.replace(LumeerConst.Document.ID, ((Document) d.get(LumeerConst.Document.ID)).toJson());
-         } else {
-            d.replace(LumeerConst.Document.ID, d.getObjectId(LumeerConst.Document.ID).toString());
-         }
-         DataDocument raw = new DataDocument(d);
-         MongoUtils.convertNestedAndListDocuments(raw);
-         result.add(raw);
-      });
+      return new MongoDbCursor<>(Collections.singletonList(database.getCollection(collectionName).aggregate(toBson(stages)).batchSize(batchSize)), this::convertAggregatedDocument);
+   }
+
+   private List<Bson> toBson(final DataDocument... documents) {
+      final List<Bson> result = new LinkedList<>();
+      for (final DataDocument d : documents) {
+         result.add(toBson(d));
+      }
 
       return result;
    }
 
+   /**
+    * Wraps the document so that the driver encodes it directly using {@link DataDocumentCodec}.
+    *
+    * @param document
+    *       document to wrap
+    * @return the document usable as a filter, command or stage
+    */
+   private Bson toBson(final DataDocument document) {
+      return new BsonDocumentWrapper<>(document, database.getCodecRegistry().get(DataDocument.class));
+   }
+
+   /**
+    * Creates a filter matching all documents with the given ids.
+    *
+    * @param documentIds
+    *       the ids of the documents
+    * @return the filter
+    */
+   static Bson idsFilter(final List<String> documentIds) {
+      return Filters.in(LumeerConst.Document.ID, documentIds.stream().distinct().map(ObjectId::new).collect(Collectors.toList()));
+   }
+
+   /**
+    * Orders the documents read by {@link #idsFilter(List)} the same way as the ids they were read by.
+    *
+    * @param documents
+    *       the read documents
+    * @param documentIds
+    *       the ids the documents were read by
+    * @return the documents in the order of the ids, ids without a document are skipped and repeated ids repeat the document
+    */
+   static List<DataDocument> orderByIds(final List<DataDocument> documents, final List<String> documentIds) {
+      final Map<String, DataDocument> byId = new HashMap<>();
+      documents.forEach(d -> byId.put(d.getId(), d));
+
+      return documentIds.stream().map(byId::get).filter(Objects::nonNull).collect(Collectors.toList());
+   }
+
+   private MongoCollection<DataDocument> dataCollection(final String collectionName) {
+      return database.getCollection(collectionName, DataDocument.class);
+   }
+
+   private DataDocument convertAggregatedDocument(final Document document) {
+      if (document.get(LumeerConst.Document.ID) instanceof Document) {
+         document.replace(LumeerConst.Document.ID, ((Document) document.get(LumeerConst.Document.ID)).toJson());
+      } else {
+         document.replace(LumeerConst.Document.ID, document.getObjectId(LumeerConst.Document.ID).toString());
+      }
+      DataDocument raw = new DataDocument(document);
+      MongoUtils.convertNestedAndListDocuments(raw);
+
+      return raw;
+   }
+
    @Override
    public void incrementAttributeValueBy(final String collectionName, final String documentId, final String attributeName, final int incBy) {
       BasicDBObject filter = new BasicDBObject(LumeerConst.Document.ID, new ObjectId(documentId));
@@ -585,40 +924,91 @@ public class MongoDbStorage implements DataStorage {
    }
 
    @Override
-   public synchronized int getNextSequenceNo(final String collectionName, final String indexAttribute, final String index) {
+   public int getNextSequenceNo(final String collectionName, final String indexAttribute, final String index) {
+      return getNextSequenceBlock(collectionName, indexAttribute, index, 1);
+   }
+
+   @Override
+   public int getNextSequenceBlock(final String collectionName, final String indexAttribute, final String index, final int blockSize) {
       final FindOneAndUpdateOptions options = new FindOneAndUpdateOptions();
       options.returnDocument(ReturnDocument.AFTER);
 
-      final Document doc = database.getCollection(collectionName).findOneAndUpdate(eq(indexAttribute, index), inc("seq", 1),
-            options);
+      final MongoCollection<Document> sequences = sequenceCollection(collectionName, indexAttribute);
+      Document doc = sequences.findOneAndUpdate(eq(indexAttribute, index), inc("seq", blockSize), options);
 
-      if (doc == null) { // the sequence did not exist
-         resetSequence(collectionName, indexAttribute, index);
-         return 0;
-      } else {
-         return doc.getInteger("seq");
+      if (doc == null) { // the sequence did not exist, create it so that the first value is 0 and reserve again
+         upsertSequence(sequences, indexAttribute, index, setOnInsert("seq", -1));
+         doc = sequences.findOneAndUpdate(eq(indexAttribute, index), inc("seq", blockSize), options);
       }
+
+      return doc.getInteger("seq") - blockSize + 1;
    }
 
    @Override
-   public synchronized void resetSequence(final String collectionName, final String indexAttribute, final String index) {
-      final FindOneAndUpdateOptions options = new FindOneAndUpdateOptions();
-      options.returnDocument(ReturnDocument.AFTER);
+   public void resetSequence(final String collectionName, final String indexAttribute, final String index) {
+      upsertSequence(sequenceCollection(collectionName, indexAttribute), indexAttribute, index, set("seq", 0));
+   }
 
-      final Document doc = database.getCollection(collectionName).findOneAndUpdate(eq(indexAttribute, index), set("seq", 0),
-            options);
+   /**
+    * Gets the collection holding sequences and makes sure the sequence names are unique in it. Without the unique
+    * index, concurrent upserts of a new sequence would both insert a document.
+    *
+    * @param collectionName
+    *       name of the collection with sequences
+    * @param indexAttribute
+    *       attribute holding the sequence name
+    * @return the collection with sequences
+    */
+   private MongoCollection<Document> sequenceCollection(final String collectionName, final String indexAttribute) {
+      final MongoCollection<Document> collection = database.getCollection(collectionName);
+
+      final String key = collectionName + "." + indexAttribute;
+      if (sequenceIndexes.add(key)) {
+         try {
+            createUniqueIndex(collection, indexAttribute);
+         } catch (RuntimeException e) {
+            sequenceIndexes.remove(key);
+            throw e;
+         }
+      }
+
+      return collection;
+   }
+
+   private void createUniqueIndex(final MongoCollection<Document> collection, final String attribute) {
+      try {
+         collection.createIndex(Indexes.ascending(attribute), new IndexOptions().unique(true));
+      } catch (MongoCommandException e) {
+         if (e.getErrorCode() != INDEX_OPTIONS_CONFLICT) {
+            throw e;
+         }
 
-      if (doc == null) {
-         Document newSeq = new Document();
-         newSeq.put(indexAttribute, index);
-         newSeq.put("seq", 0);
-         database.getCollection(collectionName).insertOne(newSeq);
+         // replace the non-unique index created by older versions
+         collection.dropIndex(Indexes.ascending(attribute));
+         collection.createIndex(Indexes.ascending(attribute), new IndexOptions().unique(true));
       }
    }
 
+   private void upsertSequence(final MongoCollection<Document> sequences, final String indexAttribute, final String index, final Bson update) {
+      try {
+         sequences.updateOne(eq(indexAttribute, index), update, new UpdateOptions().upsert(true));
+      } catch (MongoWriteException e) {
+         if (!e.getError().getCategory().equals(ErrorCategory.DUPLICATE_KEY)) {
+            throw e;
+         }
+
+         // a concurrent call has just inserted the sequence, the update matches it now
+         sequences.updateOne(eq(indexAttribute, index), update);
+      }
+   }
+
+   private void forgetSequenceIndexes(final String collectionName) {
+      sequenceIndexes.removeIf(key -> key.startsWith(collectionName + "."));
+   }
+
    @Override
    public void createIndex(final String collectionName, final DataDocument indexAttributes) {
-      database.getCollection(collectionName).createIndex(MongoUtils.dataDocumentToDocument(indexAttributes));
+      database.getCollection(collectionName).createIndex(toBson(indexAttributes));
    }
 
    @Override
@@ -637,8 +1027,35 @@ public class MongoDbStorage implements DataStorage {
 
    @Override
    public void invalidateCaches() {
-      if (collectionsCache != null) {
-         collectionsCache.remove(COLLECTION_CACHE);
+      collectionRegistry.refreshLater();
+   }
+
+   @Override
+   public DataChangeSubscription subscribeChanges(final String resumeToken, final DataChangeListener listener) {
+      changeFeeds.removeIf(feed -> !feed.isActive());
+
+      final MongoDbChangeFeed feed = new MongoDbChangeFeed(mongoClient, database.getName(), resumeToken, change -> {
+         updateCollectionRegistry(change);
+         listener.onChange(change);
+      }, executor);
+      changeFeeds.add(feed);
+
+      return feed.start();
+   }
+
+   private void updateCollectionRegistry(final DataChange change) {
+      switch (change.getOperation()) {
+         case CREATE_COLLECTION:
+            collectionRegistry.created(change.getCollectionName());
+            break;
+         case DROP_COLLECTION:
+            collectionRegistry.dropped(change.getCollectionName());
+            break;
+         case RENAME_COLLECTION:
+            collectionRegistry.renamed(change.getCollectionName(), change.getNewCollectionName());
+            break;
+         default:
+            break;
       }
    }
-}
\ No newline at end of file
+}
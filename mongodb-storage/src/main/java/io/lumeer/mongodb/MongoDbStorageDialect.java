@@ -27,10 +27,15 @@ import io.lumeer.engine.api.data.DataDocument;
 import io.lumeer.engine.api.data.DataStorageDialect;
 
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import org.bson.BsonDocument;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.context.SessionScoped;
 
@@ -41,23 +46,41 @@ import javax.enterprise.context.SessionScoped;
 public class MongoDbStorageDialect implements DataStorageDialect {
 
    @Override
-   public DataDocument updateCollectionAttributeCountQuery(final String metadataCollectionName, final String attributeName) {
-      return new DataDocument()
-            .append("findAndModify", metadataCollectionName)
-            .append("query",
+   public DataDocument updateCollectionAttributeCountsQuery(final String metadataCollectionName, final Map<String, Integer> countChanges) {
+      final List<DataDocument> updates = new ArrayList<>();
+      countChanges.forEach((attributeName, change) -> {
+         final DataDocument update = new DataDocument("$inc", new DataDocument(LumeerConst.Collection.COLLECTION_ATTRIBUTE_COUNT_KEY, change));
+         // only attributes with growing count are added to metadata
+         if (change > 0) {
+            update.append("$setOnInsert",
                   new DataDocument(LumeerConst.Collection.META_TYPE_KEY, LumeerConst.Collection.COLLECTION_ATTRIBUTES_META_TYPE_VALUE)
-                        .append(LumeerConst.Collection.COLLECTION_ATTRIBUTE_NAME_KEY, attributeName))
-            .append("update",
-                  new DataDocument("$setOnInsert",
+                        .append(LumeerConst.Collection.COLLECTION_ATTRIBUTE_NAME_KEY, attributeName)
+                        .append(LumeerConst.Collection.COLLECTION_ATTRIBUTE_TYPE_KEY, LumeerConst.Collection.COLLECTION_ATTRIBUTE_TYPE_STRING)
+                        .append(LumeerConst.Collection.COLLECTION_ATTRIBUTE_CONSTRAINTS_KEY, new ArrayList<String>()));
+         }
+
+         updates.add(new DataDocument("q",
+               new DataDocument(LumeerConst.Collection.META_TYPE_KEY, LumeerConst.Collection.COLLECTION_ATTRIBUTES_META_TYPE_VALUE)
+                     .append(LumeerConst.Collection.COLLECTION_ATTRIBUTE_NAME_KEY, attributeName))
+               .append("u", update)
+               .append("upsert", change > 0));
+      });
+
+      return new DataDocument()
+            .append("update", metadataCollectionName)
+            .append("updates", updates)
+            .append("ordered", false);
+   }
+
+   @Override
+   public DataDocument dropUnusedCollectionAttributesQuery(final String metadataCollectionName) {
+      return new DataDocument()
+            .append("delete", metadataCollectionName)
+            .append("deletes", Collections.singletonList(
+                  new DataDocument("q",
                         new DataDocument(LumeerConst.Collection.META_TYPE_KEY, LumeerConst.Collection.COLLECTION_ATTRIBUTES_META_TYPE_VALUE)
-                              .append(LumeerConst.Collection.COLLECTION_ATTRIBUTE_NAME_KEY, attributeName)
-                              .append(LumeerConst.Collection.COLLECTION_ATTRIBUTE_TYPE_KEY, LumeerConst.Collection.COLLECTION_ATTRIBUTE_TYPE_STRING)
-                              .append(LumeerConst.Collection.COLLECTION_ATTRIBUTE_CONSTRAINTS_KEY, new ArrayList<String>())
-                  )
-                        .append("$inc",
-                              new DataDocument(LumeerConst.Collection.COLLECTION_ATTRIBUTE_COUNT_KEY, 1)))
-            .append("new", true)
-            .append("upsert", true);
+                              .append(LumeerConst.Collection.COLLECTION_ATTRIBUTE_COUNT_KEY, new DataDocument("$lte", 0)))
+                        .append("limit", 0)));
    }
 
    @Override
@@ -118,6 +141,14 @@ public class MongoDbStorageDialect implements DataStorageDialect {
       return MongoUtils.convertBsonToJson(filterRaw);
    }
 
+   @Override
+   public String linkingFromDocumentsFilter(final List<String> fromIds, final LumeerConst.Linking.LinkDirection linkDirection) {
+      Bson filterRaw = linkDirection == LumeerConst.Linking.LinkDirection.FROM
+            ? Filters.in(LumeerConst.Linking.LinkingTable.ATTR_FROM_ID, fromIds)
+            : Filters.in(LumeerConst.Linking.LinkingTable.ATTR_TO_ID, fromIds);
+      return MongoUtils.convertBsonToJson(filterRaw);
+   }
+
    @Override
    public String fieldValueFilter(final String fieldName, final Object value) {
       Bson filterRaw = Filters.eq(fieldName, value);
@@ -128,4 +159,53 @@ public class MongoDbStorageDialect implements DataStorageDialect {
    public String documentIdFilter(final String documentId) {
       return fieldValueFilter("_id._id", new ObjectId(documentId));
    }
+
+   @Override
+   public String filterWithCondition(final String filter, final DataDocument condition) {
+      Bson filterRaw = MongoUtils.dataDocumentToDocument(new DataDocument(condition));
+      if (filter != null && !filter.isEmpty()) {
+         filterRaw = and(BsonDocument.parse(filter), filterRaw);
+      }
+      return MongoUtils.convertBsonToJson(filterRaw);
+   }
+
+   @Override
+   public String documentVersionFilter(final String documentId, final int minVersion) {
+      Bson filterRaw = and(eq("_id._id", new ObjectId(documentId)),
+            Filters.gte("_id." + LumeerConst.Document.METADATA_VERSION_KEY, minVersion));
+      return MongoUtils.convertBsonToJson(filterRaw);
+   }
+
+   @Override
+   public String documentVersionBeforeFilter(final String documentId, final int maxVersion) {
+      Bson filterRaw = and(eq("_id._id", new ObjectId(documentId)),
+            Filters.lt("_id." + LumeerConst.Document.METADATA_VERSION_KEY, maxVersion));
+      return MongoUtils.convertBsonToJson(filterRaw);
+   }
+
+   @Override
+   public String documentVersionSort(final boolean descending) {
+      String versionKey = "_id." + LumeerConst.Document.METADATA_VERSION_KEY;
+      return MongoUtils.convertBsonToJson(descending ? Sorts.descending(versionKey) : Sorts.ascending(versionKey));
+   }
+
+   @Override
+   public DataDocument documentVersionIndex() {
+      return new DataDocument("_id._id", 1).append("_id." + LumeerConst.Document.METADATA_VERSION_KEY, 1);
+   }
+
+   @Override
+   public String documentCreatedBeforeFilter(final String filter, final String timestamp) {
+      // documents created before the creation date was recorded are treated as old ones
+      Bson filterRaw = Filters.or(Filters.lte(LumeerConst.Document.CREATE_DATE_KEY, timestamp), Filters.exists(LumeerConst.Document.CREATE_DATE_KEY, false));
+      if (filter != null && !filter.isEmpty()) {
+         filterRaw = and(BsonDocument.parse(filter), filterRaw);
+      }
+      return MongoUtils.convertBsonToJson(filterRaw);
+   }
+
+   @Override
+   public String documentIdSort() {
+      return MongoUtils.convertBsonToJson(Sorts.ascending(LumeerConst.Document.ID));
+   }
 }
@@ -22,26 +22,104 @@ package io.lumeer.mongodb;
 import io.lumeer.engine.api.cache.Cache;
 import io.lumeer.engine.api.cache.CacheFactory;
 import io.lumeer.engine.api.cache.CacheProvider;
+import io.lumeer.engine.api.data.AsyncDataStorage;
 import io.lumeer.engine.api.data.DataDocument;
 import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.api.data.DataStorageFactory;
+import io.lumeer.engine.api.data.DataStorageSettings;
 import io.lumeer.engine.api.data.StorageConnection;
 
+import com.mongodb.MongoClient;
+
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PreDestroy;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
 import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
 
 /**
+ * Keeps a single pooled client per cluster and hands out storages that differ only in the database they work with.
+ * The storages run their background tasks and multi-collection queries on the managed executor of the container.
+ *
  * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
  */
 @ApplicationScoped
 public class MongoDbStorageFactory implements DataStorageFactory {
 
+   @Inject
+   private ManagedScheduledExecutorService executorService;
+
+   private final Map<ClientKey, MongoClient> clients = new ConcurrentHashMap<>();
+
+   private final Map<ClientKey, com.mongodb.async.client.MongoClient> asyncClients = new ConcurrentHashMap<>();
+
    @Override
-   public DataStorage getStorage(final CacheProvider cacheProvider, final List<StorageConnection> connections, final String database, final Boolean useSsl) {
-      final DataStorage storage = new MongoDbStorage();
+   public DataStorage getStorage(final CacheProvider cacheProvider, final List<StorageConnection> connections, final String database, final Boolean useSsl, final DataStorageSettings settings) {
+      final MongoClient client = clients.computeIfAbsent(new ClientKey(connections, database, useSsl, settings),
+            k -> MongoDbClients.createClient(connections, database, useSsl, settings));
+
+      final DataStorage storage = new MongoDbStorage(client, database, executorService);
       storage.setCacheProvider(cacheProvider);
-      storage.connect(connections, database, useSsl);
 
       return storage;
    }
+
+   @Override
+   public AsyncDataStorage getAsyncStorage(final List<StorageConnection> connections, final String database, final Boolean useSsl, final DataStorageSettings settings) {
+      final com.mongodb.async.client.MongoClient client = asyncClients.computeIfAbsent(new ClientKey(connections, database, useSsl, settings),
+            k -> MongoDbClients.createAsyncClient(connections, database, useSsl, settings));
+
+      return new MongoDbAsyncStorage(client, database);
+   }
+
+   @PreDestroy
+   public void closeClients() {
+      clients.values().forEach(MongoClient::close);
+      clients.clear();
+      asyncClients.values().forEach(com.mongodb.async.client.MongoClient::close);
+      asyncClients.clear();
+   }
+
+   /**
+    * Identifies a shared client. Credentials are verified against the authentication database of the settings, or
+    * against the database of the storage when the settings name none, so the database is a part of the key only when
+    * the connections carry credentials verified against it.
+    */
+   private static final class ClientKey {
+
+      private final List<StorageConnection> connections;
+      private final String authDatabase;
+      private final boolean useSsl;
+      private final DataStorageSettings settings;
+
+      private ClientKey(final List<StorageConnection> connections, final String database, final Boolean useSsl, final DataStorageSettings settings) {
+         this.connections = new ArrayList<>(connections);
+         this.authDatabase = MongoDbClients.hasCredentials(connections) ? MongoDbClients.authDatabase(database, settings) : null;
+         this.useSsl = Boolean.TRUE.equals(useSsl);
+         this.settings = settings;
+      }
+
+      @Override
+      public boolean equals(final Object o) {
+         if (this == o) {
+            return true;
+         }
+         if (o == null || getClass() != o.getClass()) {
+            return false;
+         }
+
+         final ClientKey that = (ClientKey) o;
+
+         return useSsl == that.useSsl && connections.equals(that.connections) && Objects.equals(authDatabase, that.authDatabase) && settings.equals(that.settings);
+      }
+
+      @Override
+      public int hashCode() {
+         return Objects.hash(connections, authDatabase, useSsl, settings);
+      }
+   }
 }
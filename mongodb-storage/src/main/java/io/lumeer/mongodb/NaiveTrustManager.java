@@ -35,7 +35,7 @@ import javax.net.ssl.X509TrustManager;
  */
 public class NaiveTrustManager implements X509TrustManager {
 
-   private static SSLSocketFactory sslSocketFactory;
+   private static SSLContext sslContext;
 
    /**
     * Doesn't throw an exception, so this is how it approves a certificate.
@@ -61,17 +61,27 @@ public class NaiveTrustManager implements X509TrustManager {
    }
 
    public static final SSLSocketFactory getSocketFactory() {
-      if (sslSocketFactory == null) {
+      final SSLContext context = getSslContext();
+      return context != null ? context.getSocketFactory() : null;
+   }
+
+   /**
+    * Gets SSL context trusting all certificates, it is shared by synchronous and asynchronous clients.
+    *
+    * @return the SSL context, null when it could not be created
+    */
+   public static synchronized SSLContext getSslContext() {
+      if (sslContext == null) {
          try {
             TrustManager[] tm = new TrustManager[] { new NaiveTrustManager() };
             SSLContext context = SSLContext.getInstance("SSL");
             context.init(new KeyManager[0], tm, new SecureRandom());
 
-            sslSocketFactory = context.getSocketFactory();
+            sslContext = context;
          } catch (KeyManagementException | NoSuchAlgorithmException e) {
             e.printStackTrace();
          }
       }
-      return sslSocketFactory;
+      return sslContext;
    }
 }
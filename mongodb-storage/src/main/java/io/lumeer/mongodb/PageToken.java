@@ -0,0 +1,261 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataDocument;
+
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWrapper;
+import org.bson.BsonRegularExpression;
+import org.bson.BsonTimestamp;
+import org.bson.codecs.DecoderContext;
+import org.bson.json.JsonParseException;
+import org.bson.types.Binary;
+import org.bson.types.Decimal128;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
+import org.bson.types.ObjectId;
+import org.bson.types.Symbol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Creates and reads tokens for keyset pagination. A token holds the sort key and id of the last document of a page,
+ * the following page is read with a filter selecting documents sorted after it. Values of different types are sorted
+ * by the BSON comparison order, array values cannot be paged through as MongoDB sorts them by their elements.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+final class PageToken {
+
+   private static final String VALUES = "v";
+
+   private static final int NULL_RANK = 1;
+   private static final int ARRAY_RANK = 5;
+
+   // $type aliases in the BSON comparison order, nulls and missing values are selected by a null equality instead
+   private static final List<List<String>> TYPE_ORDER = Arrays.asList(
+         Collections.singletonList("minKey"),
+         Collections.emptyList(),
+         Collections.singletonList("number"),
+         Arrays.asList("symbol", "string"),
+         Collections.singletonList("object"),
+         Collections.emptyList(),
+         Collections.singletonList("binData"),
+         Collections.singletonList("objectId"),
+         Collections.singletonList("bool"),
+         Collections.singletonList("date"),
+         Collections.singletonList("timestamp"),
+         Collections.singletonList("regex"),
+         Collections.singletonList("maxKey"));
+
+   private PageToken() {
+      // we do not want any instances to be created
+      throw new UnsupportedOperationException(String.format("Creation of %s is forbidden.", this.getClass().getCanonicalName()));
+   }
+
+   /**
+    * Adds the document id to the sort specification so that the order of documents is total.
+    *
+    * @param sort
+    *       sort specification
+    * @return sort specification ending with the document id
+    */
+   static DataDocument sortWithId(final DataDocument sort) {
+      final DataDocument result = sort != null ? new DataDocument(sort) : new DataDocument();
+      result.putIfAbsent(LumeerConst.Document.ID, 1);
+
+      return result;
+   }
+
+   /**
+    * Creates a token for the page following the given document.
+    *
+    * @param lastDocument
+    *       the last document of the page
+    * @param sort
+    *       sort specification including the document id
+    * @return the token
+    * @throws IllegalArgumentException
+    *       when a sort value of the document cannot be paged through
+    */
+   static String create(final DataDocument lastDocument, final DataDocument sort) {
+      final List<Object> values = new ArrayList<>();
+      sort.keySet().forEach(field -> {
+         Object value = SortComparator.getValue(lastDocument, field);
+         if (LumeerConst.Document.ID.equals(field)) {
+            value = readId(value);
+         }
+         if (typeRank(value) == ARRAY_RANK) {
+            throw new IllegalArgumentException("Documents cannot be paged by the array values of " + field + ".");
+         }
+         values.add(value);
+      });
+
+      final String json = new BsonDocumentWrapper<>(new DataDocument(VALUES, values), MongoDbClients.CODEC_REGISTRY.get(DataDocument.class)).toJson();
+
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+   }
+
+   /**
+    * Creates a filter selecting documents sorted after the document the token was created for.
+    *
+    * @param token
+    *       the token
+    * @param sort
+    *       sort specification including the document id
+    * @return the filter
+    */
+   @SuppressWarnings("unchecked")
+   static DataDocument seekFilter(final String token, final DataDocument sort) {
+      final List<Object> values;
+      try {
+         final BsonDocument bson = BsonDocument.parse(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8));
+         values = (List<Object>) MongoDbClients.CODEC_REGISTRY.get(DataDocument.class).decode(new BsonDocumentReader(bson), DecoderContext.builder().build()).get(VALUES);
+      } catch (IllegalArgumentException | JsonParseException | ClassCastException e) {
+         throw new IllegalArgumentException("Invalid page token.", e);
+      }
+
+      final List<String> fields = new ArrayList<>(sort.keySet());
+      if (values == null || values.size() != fields.size()) {
+         throw new IllegalArgumentException("Page token does not match the sort specification.");
+      }
+
+      // (f1 > v1) or (f1 = v1 and f2 > v2) or ...
+      final List<DataDocument> alternatives = new ArrayList<>();
+      for (int i = 0; i < fields.size(); i++) {
+         final boolean descending = sort.get(fields.get(i)) instanceof Number && ((Number) sort.get(fields.get(i))).intValue() < 0;
+         final DataDocument after = after(fields.get(i), values.get(i), descending);
+         if (after != null) {
+            final List<DataDocument> conditions = new ArrayList<>();
+            for (int j = 0; j < i; j++) {
+               conditions.add(new DataDocument(fields.get(j), values.get(j)));
+            }
+            conditions.add(after);
+            alternatives.add(conditions.size() == 1 ? conditions.get(0) : new DataDocument("$and", conditions));
+         }
+      }
+
+      if (alternatives.isEmpty()) { // nothing can be sorted after the document
+         return new DataDocument(LumeerConst.Document.ID, new DataDocument("$exists", false));
+      }
+
+      return new DataDocument("$or", alternatives);
+   }
+
+   // ids are converted to strings when read, grouped ids to their JSON form
+   private static Object readId(final Object id) {
+      if (!(id instanceof String)) {
+         return id;
+      }
+
+      final String value = (String) id;
+      if (ObjectId.isValid(value)) {
+         return new ObjectId(value);
+      }
+      if (value.startsWith("{")) {
+         try {
+            return MongoDbClients.CODEC_REGISTRY.get(DataDocument.class).decode(new BsonDocumentReader(BsonDocument.parse(value)), DecoderContext.builder().build());
+         } catch (JsonParseException e) {
+            // a plain string id
+         }
+      }
+
+      return value;
+   }
+
+   // $gt and $lt select values of the same type only, values of the types sorted after are selected by their type
+   private static DataDocument after(final String field, final Object value, final boolean descending) {
+      final int rank = typeRank(value);
+      final List<DataDocument> conditions = new ArrayList<>();
+
+      if (value != null) {
+         conditions.add(new DataDocument(field, new DataDocument(descending ? "$lt" : "$gt", value)));
+      }
+      for (int i = descending ? 0 : rank + 1; i < (descending ? rank : TYPE_ORDER.size()); i++) {
+         if (i == NULL_RANK) {
+            conditions.add(new DataDocument(field, null));
+         }
+         for (final String type : TYPE_ORDER.get(i)) {
+            conditions.add(new DataDocument(field, new DataDocument("$type", type)));
+         }
+      }
+
+      if (conditions.isEmpty()) {
+         return null;
+      }
+
+      return conditions.size() == 1 ? conditions.get(0) : new DataDocument("$or", conditions);
+   }
+
+   private static int typeRank(final Object value) {
+      if (value instanceof MinKey) {
+         return 0;
+      }
+      if (value == null) {
+         return NULL_RANK;
+      }
+      if (value instanceof Number || value instanceof Decimal128) {
+         return 2;
+      }
+      if (value instanceof String || value instanceof Symbol) {
+         return 3;
+      }
+      if (value instanceof Map) {
+         return 4;
+      }
+      if (value instanceof List) {
+         return ARRAY_RANK;
+      }
+      if (value instanceof Binary || value instanceof byte[]) {
+         return 6;
+      }
+      if (value instanceof ObjectId) {
+         return 7;
+      }
+      if (value instanceof Boolean) {
+         return 8;
+      }
+      if (value instanceof Date) {
+         return 9;
+      }
+      if (value instanceof BsonTimestamp) {
+         return 10;
+      }
+      if (value instanceof BsonRegularExpression || value instanceof Pattern) {
+         return 11;
+      }
+      if (value instanceof MaxKey) {
+         return 12;
+      }
+
+      throw new IllegalArgumentException("Documents cannot be paged by values of " + value.getClass().getSimpleName() + ".");
+   }
+}
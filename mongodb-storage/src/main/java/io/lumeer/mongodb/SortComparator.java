@@ -0,0 +1,129 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import io.lumeer.engine.api.data.DataDocument;
+
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares documents according to a MongoDB sort specification, so that results sorted by the database can be merged
+ * in the same order. Values of different types are ordered by the BSON comparison order, missing values and nulls
+ * come first in ascending order.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class SortComparator implements Comparator<DataDocument> {
+
+   private final List<String> fields = new ArrayList<>();
+   private final List<Integer> directions = new ArrayList<>();
+
+   /**
+    * Creates a comparator for the given sort specification.
+    *
+    * @param sort
+    *       field names mapped to 1 for ascending or -1 for descending order
+    */
+   public SortComparator(final DataDocument sort) {
+      sort.forEach((field, direction) -> {
+         fields.add(field);
+         directions.add(direction instanceof Number && ((Number) direction).intValue() < 0 ? -1 : 1);
+      });
+   }
+
+   @Override
+   public int compare(final DataDocument d1, final DataDocument d2) {
+      for (int i = 0; i < fields.size(); i++) {
+         final int result = compareValues(getValue(d1, fields.get(i)), getValue(d2, fields.get(i)));
+         if (result != 0) {
+            return result * directions.get(i);
+         }
+      }
+
+      return 0;
+   }
+
+   static Object getValue(final Map<String, Object> document, final String field) {
+      Object value = document;
+      for (final String part : field.split("\\.")) {
+         if (!(value instanceof Map)) {
+            return null;
+         }
+         value = ((Map<?, ?>) value).get(part);
+      }
+
+      return value;
+   }
+
+   @SuppressWarnings("unchecked")
+   private static int compareValues(final Object v1, final Object v2) {
+      final int typeOrder = Integer.compare(typeRank(v1), typeRank(v2));
+      if (typeOrder != 0) {
+         return typeOrder;
+      }
+
+      if (v1 == null) {
+         return 0;
+      }
+      if (v1 instanceof Number) {
+         return Double.compare(((Number) v1).doubleValue(), ((Number) v2).doubleValue());
+      }
+      if (v1 instanceof Comparable && v1.getClass().isInstance(v2)) {
+         return ((Comparable<Object>) v1).compareTo(v2);
+      }
+
+      return v1.toString().compareTo(v2.toString());
+   }
+
+   private static int typeRank(final Object value) {
+      if (value == null) {
+         return 0;
+      }
+      if (value instanceof Number) {
+         return 1;
+      }
+      if (value instanceof String) {
+         return 2;
+      }
+      if (value instanceof Map) {
+         return 3;
+      }
+      if (value instanceof List) {
+         return 4;
+      }
+      if (value instanceof ObjectId) {
+         return 5;
+      }
+      if (value instanceof Boolean) {
+         return 6;
+      }
+      if (value instanceof Date) {
+         return 7;
+      }
+
+      return 8;
+   }
+}
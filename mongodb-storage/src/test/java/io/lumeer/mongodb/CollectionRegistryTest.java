@@ -0,0 +1,100 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class CollectionRegistryTest {
+
+   private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+   @After
+   public void shutdownExecutor() {
+      executor.shutdownNow();
+   }
+
+   @Test
+   public void testEvents() {
+      final CollectionRegistry registry = new CollectionRegistry(() -> Arrays.asList("a", "b"), executor);
+
+      assertThat(registry.contains("a")).isTrue();
+      assertThat(registry.contains("c")).isFalse();
+
+      registry.created("c");
+      registry.dropped("a");
+      registry.renamed("b", "d");
+
+      assertThat(registry.getAll()).containsOnly("c", "d");
+   }
+
+   @Test
+   public void testRefresh() {
+      final List<String> database = new ArrayList<>(Arrays.asList("a", "b"));
+      final CollectionRegistry registry = new CollectionRegistry(() -> new ArrayList<>(database), executor);
+
+      database.add("c");
+      assertThat(registry.contains("c")).isFalse();
+
+      registry.refresh();
+      assertThat(registry.getAll()).containsOnly("a", "b", "c");
+   }
+
+   @Test
+   public void testRefreshDoesNotOverwriteConcurrentEvents() {
+      final List<String> database = new ArrayList<>(Arrays.asList("a"));
+      final CollectionRegistry[] registry = new CollectionRegistry[1];
+      registry[0] = new CollectionRegistry(() -> {
+         final List<String> listed = new ArrayList<>(database);
+         if (registry[0] != null) {
+            registry[0].created("b"); // created while the names are being listed
+         }
+         return listed;
+      }, executor);
+
+      registry[0].refresh();
+      assertThat(registry[0].getAll()).containsOnly("a", "b");
+   }
+
+   @Test
+   public void testRefreshLaterRunsOnTheExecutor() throws Exception {
+      final List<String> database = new ArrayList<>(Arrays.asList("a"));
+      final CollectionRegistry registry = new CollectionRegistry(() -> new ArrayList<>(database), executor);
+
+      database.add("b");
+      registry.refreshLater();
+
+      // the executor has a single thread, so the refresh is done once the next task runs
+      executor.submit(() -> null).get(5, TimeUnit.SECONDS);
+      assertThat(registry.getAll()).containsOnly("a", "b");
+   }
+}
@@ -0,0 +1,109 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataDocument;
+
+import com.mongodb.MongoClient;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class DataDocumentCodecTest {
+
+   private final CodecRegistry registry = CodecRegistries.fromRegistries(CodecRegistries.fromProviders(new DataDocumentCodecProvider()), MongoClient.getDefaultCodecRegistry());
+   private final DataDocumentCodec codec = new DataDocumentCodec(registry);
+
+   @Test
+   public void testDecodeMatchesDocumentConversion() {
+      final ObjectId id = new ObjectId();
+      final Document document = new Document(LumeerConst.Document.ID, id)
+            .append("string", "value")
+            .append("number", 42)
+            .append("date", new Date(0))
+            .append("nested", new Document("a", 1).append("deeper", new Document("b", "c")))
+            .append("list", Arrays.asList(new Document("x", 1), new Document("y", 2)))
+            .append("plainList", Arrays.asList(1, 2, 3))
+            .append("nullValue", null);
+
+      final DataDocument decoded = decode(document);
+
+      MongoUtils.replaceId(document);
+      final DataDocument converted = new DataDocument(document);
+      MongoUtils.convertNestedAndListDocuments(converted);
+
+      assertThat(decoded).isEqualTo(converted);
+      assertThat(decoded.getId()).isEqualTo(id.toHexString());
+      assertThat(decoded.get("nested")).isInstanceOf(DataDocument.class);
+      assertThat(decoded.getDataDocument("nested").get("deeper")).isInstanceOf(DataDocument.class);
+      assertThat((List<?>) decoded.get("list")).hasOnlyElementsOfType(DataDocument.class);
+   }
+
+   @Test
+   public void testDecodeShadowId() {
+      final ObjectId id = new ObjectId();
+      final Document document = new Document(LumeerConst.Document.ID, new Document(LumeerConst.Document.ID, id).append(LumeerConst.Document.METADATA_VERSION_KEY, 3))
+            .append("attribute", "value");
+
+      final DataDocument decoded = decode(document);
+
+      assertThat(decoded.get(LumeerConst.Document.ID)).isInstanceOf(DataDocument.class);
+      assertThat(decoded.getDataDocument(LumeerConst.Document.ID).getId()).isEqualTo(id.toHexString());
+      assertThat(decoded.getDataDocument(LumeerConst.Document.ID).getInteger(LumeerConst.Document.METADATA_VERSION_KEY)).isEqualTo(3);
+   }
+
+   @Test
+   public void testEncode() {
+      final DataDocument dataDocument = new DataDocument("string", "value")
+            .append("nested", new DataDocument("a", 1).append("list", Collections.singletonList(new DataDocument("b", 2L))))
+            .append("nullValue", null);
+
+      final BsonDocument encoded = new BsonDocument();
+      codec.encode(new BsonDocumentWriter(encoded), dataDocument, EncoderContext.builder().build());
+
+      final DataDocument copy = new DataDocument(dataDocument);
+      assertThat(encoded).isEqualTo(MongoUtils.dataDocumentToDocument(copy).toBsonDocument(BsonDocument.class, registry));
+      assertThat(codec.decode(new BsonDocumentReader(encoded), DecoderContext.builder().build())).isEqualTo(dataDocument);
+   }
+
+   private DataDocument decode(final Document document) {
+      final BsonDocument bson = document.toBsonDocument(BsonDocument.class, registry);
+
+      return codec.decode(new BsonDocumentReader(bson), DecoderContext.builder().build());
+   }
+}
@@ -0,0 +1,120 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.lumeer.engine.api.data.DataCursor;
+import io.lumeer.engine.api.data.DataDocument;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class MergingCursorTest {
+
+   @Test
+   public void testSortedMerge() {
+      final TestCursor c1 = cursor(1, 4, 7);
+      final TestCursor c2 = cursor(2, 5, 8);
+      final TestCursor c3 = cursor(3, 6);
+
+      try (DataCursor merged = new MergingCursor(Arrays.asList(c1, c2, c3), new SortComparator(new DataDocument("n", 1)), 0, 0)) {
+         assertThat(values(merged)).containsExactly(1, 2, 3, 4, 5, 6, 7, 8);
+      }
+
+      assertThat(c1.closed && c2.closed && c3.closed).isTrue();
+   }
+
+   @Test
+   public void testDescendingMergeWithSkipAndLimit() {
+      final TestCursor c1 = cursor(9, 5, 1);
+      final TestCursor c2 = cursor(8, 7, 6, 4, 3, 2);
+
+      try (DataCursor merged = new MergingCursor(Arrays.asList(c1, c2), new SortComparator(new DataDocument("n", -1)), 2, 3)) {
+         assertThat(values(merged)).containsExactly(7, 6, 5);
+      }
+
+      // reading stopped as soon as the limit was reached
+      assertThat(c2.read).isLessThan(6);
+      assertThat(c1.closed && c2.closed).isTrue();
+   }
+
+   @Test
+   public void testConcatenationWithoutSort() {
+      try (DataCursor merged = new MergingCursor(Arrays.asList(cursor(3, 1), cursor(), cursor(2)), null, 1, 2)) {
+         assertThat(values(merged)).containsExactly(1, 2);
+      }
+   }
+
+   @Test
+   public void testTypeOrder() {
+      final SortComparator comparator = new SortComparator(new DataDocument("a.b", 1));
+
+      final DataDocument missing = new DataDocument();
+      final DataDocument number = new DataDocument("a", new DataDocument("b", 10L));
+      final DataDocument string = new DataDocument("a", new DataDocument("b", "1"));
+
+      assertThat(comparator.compare(missing, number)).isLessThan(0);
+      assertThat(comparator.compare(number, string)).isLessThan(0);
+      assertThat(comparator.compare(number, new DataDocument("a", new DataDocument("b", 10.0)))).isEqualTo(0);
+   }
+
+   private static List<Integer> values(final DataCursor cursor) {
+      return cursor.stream().map(d -> d.getInteger("n")).collect(Collectors.toList());
+   }
+
+   private static TestCursor cursor(final Integer... values) {
+      return new TestCursor(Arrays.stream(values).map(v -> new DataDocument("n", v)).collect(Collectors.toList()));
+   }
+
+   private static class TestCursor implements DataCursor {
+
+      private final Iterator<DataDocument> iterator;
+      private int read = 0;
+      private boolean closed = false;
+
+      private TestCursor(final List<DataDocument> documents) {
+         this.iterator = documents.iterator();
+      }
+
+      @Override
+      public boolean hasNext() {
+         return !closed && iterator.hasNext();
+      }
+
+      @Override
+      public DataDocument next() {
+         read++;
+         return iterator.next();
+      }
+
+      @Override
+      public void close() {
+         closed = true;
+      }
+   }
+}
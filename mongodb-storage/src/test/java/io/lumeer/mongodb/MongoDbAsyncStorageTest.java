@@ -0,0 +1,247 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.StorageConnection;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.IMongodConfig;
+import de.flapdoodle.embed.mongo.config.MongodConfigBuilder;
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.runtime.Network;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class MongoDbAsyncStorageTest {
+
+   private static final String DB_HOST = System.getProperty("lumeer.db.host", "localhost");
+   private static final String DB_NAME = System.getProperty("lumeer.db.name", "lumeer-test");
+   private static final int DB_PORT = Integer.getInteger("lumeer.db.port", 27017);
+   private static final String DB_USER = System.getProperty("lumeer.db.user", "");
+   private static final String DB_PASSWORD = System.getProperty("lumeer.db.passwd", "");
+   private static final Boolean DB_SSL = Boolean.getBoolean("lumeer.db.ssl");
+
+   private static final long TIMEOUT = 10;
+
+   private final String KEY1 = "key1";
+   private final String KEY2 = "key2";
+   private final String VALUE1 = "param1";
+   private final String VALUE2 = "param2";
+
+   private final String COLLECTION_CREATE_AND_READ = "asyncCollectionCreateAndRead";
+   private final String COLLECTION_READ_DOCUMENTS = "asyncCollectionReadDocuments";
+   private final String COLLECTION_UPDATE = "asyncCollectionUpdate";
+   private final String COLLECTION_REPLACE = "asyncCollectionReplace";
+   private final String COLLECTION_DROP = "asyncCollectionDrop";
+   private final String COLLECTION_INC_ATTR_VALUE_BY = "asyncCollectionIncAttrValueBy";
+   private final String COLLECTION_SEARCH = "asyncCollectionSearch";
+   private final String COLLECTION_RUN = "asyncCollectionRun";
+
+   private static MongodExecutable mongodExecutable;
+
+   private MongoDbStorage mongoDbStorage;
+   private MongoDbAsyncStorage asyncStorage;
+
+   @BeforeClass
+   public static void startEmbeddedMongoDb() throws Exception {
+      if (!"localhost".equals(DB_HOST)) {
+         // do not start embedded MongoDB when remote database is used
+         return;
+      }
+
+      MongodStarter starter = MongodStarter.getDefaultInstance();
+
+      IMongodConfig mongodConfig = new MongodConfigBuilder()
+            .version(Version.Main.V3_4)
+            .net(new Net(DB_HOST, DB_PORT, Network.localhostIsIPv6()))
+            .build();
+
+      mongodExecutable = starter.prepare(mongodConfig);
+      mongodExecutable.start();
+   }
+
+   @AfterClass
+   public static void stopEmbeddedMongoDb() {
+      if (mongodExecutable != null) {
+         mongodExecutable.stop();
+      }
+   }
+
+   @Before
+   public void setUp() throws Exception {
+      final StorageConnection connection = new StorageConnection(DB_HOST, DB_PORT, DB_USER, DB_PASSWORD);
+
+      // the synchronous storage prepares the collections, the asynchronous one has no collection management
+      mongoDbStorage = new MongoDbStorage();
+      mongoDbStorage.connect(connection, DB_NAME, DB_SSL);
+
+      asyncStorage = new MongoDbAsyncStorage();
+      asyncStorage.connect(Collections.singletonList(connection), DB_NAME, DB_SSL);
+
+      Arrays.asList(COLLECTION_CREATE_AND_READ, COLLECTION_READ_DOCUMENTS, COLLECTION_UPDATE, COLLECTION_REPLACE,
+            COLLECTION_DROP, COLLECTION_INC_ATTR_VALUE_BY, COLLECTION_SEARCH, COLLECTION_RUN).forEach(collection -> {
+         mongoDbStorage.dropCollection(collection);
+         mongoDbStorage.createCollection(collection);
+      });
+   }
+
+   @After
+   public void tearDown() {
+      if (asyncStorage != null) {
+         asyncStorage.disconnect();
+      }
+      if (mongoDbStorage != null) {
+         mongoDbStorage.disconnect();
+      }
+   }
+
+   @Test
+   public void testCreateAndReadDocument() throws Exception {
+      final String id = await(asyncStorage.createDocument(COLLECTION_CREATE_AND_READ, createDummyDocument()));
+      assertThat(id).isNotNull().isNotEmpty();
+
+      final DataDocument read = await(asyncStorage.readDocument(COLLECTION_CREATE_AND_READ, id));
+      assertThat(read.getId()).isEqualTo(id);
+      assertThat(read.getString(KEY1)).isEqualTo(VALUE1);
+      assertThat(read.getString(KEY2)).isEqualTo(VALUE2);
+
+      // both storages see the same document
+      assertThat(mongoDbStorage.readDocument(COLLECTION_CREATE_AND_READ, id).getString(KEY1)).isEqualTo(VALUE1);
+   }
+
+   @Test
+   public void testReadDocumentsKeepsOrderOfIds() throws Exception {
+      final List<String> ids = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+         ids.add(await(asyncStorage.createDocument(COLLECTION_READ_DOCUMENTS, createDummyDocument().append(KEY1, "v" + i))));
+      }
+      Collections.reverse(ids);
+
+      final List<DataDocument> documents = await(asyncStorage.readDocuments(COLLECTION_READ_DOCUMENTS, ids, Collections.singletonList(KEY1)));
+      assertThat(documents.stream().map(DataDocument::getId).collect(Collectors.toList())).isEqualTo(ids);
+      assertThat(documents.get(0).getString(KEY1)).isEqualTo("v9");
+      assertThat(documents.get(0)).doesNotContainKey(KEY2);
+
+      assertThat(await(asyncStorage.readDocuments(COLLECTION_READ_DOCUMENTS, Collections.emptyList(), null))).isEmpty();
+   }
+
+   @Test
+   public void testUpdateDocument() throws Exception {
+      final String id = await(asyncStorage.createDocument(COLLECTION_UPDATE, createDummyDocument()));
+
+      await(asyncStorage.updateDocument(COLLECTION_UPDATE, new DataDocument(KEY1, "changed"), id));
+
+      final DataDocument read = await(asyncStorage.readDocument(COLLECTION_UPDATE, id));
+      assertThat(read.getString(KEY1)).isEqualTo("changed");
+      assertThat(read.getString(KEY2)).isEqualTo(VALUE2);
+   }
+
+   @Test
+   public void testReplaceDocument() throws Exception {
+      final String id = await(asyncStorage.createDocument(COLLECTION_REPLACE, createDummyDocument()));
+
+      await(asyncStorage.replaceDocument(COLLECTION_REPLACE, new DataDocument(KEY1, "replaced"), id));
+
+      final DataDocument read = await(asyncStorage.readDocument(COLLECTION_REPLACE, id));
+      assertThat(read.getId()).isEqualTo(id);
+      assertThat(read.getString(KEY1)).isEqualTo("replaced");
+      assertThat(read).doesNotContainKey(KEY2);
+   }
+
+   @Test
+   public void testDropDocument() throws Exception {
+      final String id = await(asyncStorage.createDocument(COLLECTION_DROP, createDummyDocument()));
+      assertThat(await(asyncStorage.readDocument(COLLECTION_DROP, id))).isNotNull();
+
+      await(asyncStorage.dropDocument(COLLECTION_DROP, id));
+      assertThat(await(asyncStorage.readDocument(COLLECTION_DROP, id))).isNull();
+   }
+
+   @Test
+   public void testIncrementAttributeValueBy() throws Exception {
+      final String id = await(asyncStorage.createDocument(COLLECTION_INC_ATTR_VALUE_BY, createDummyDocument()));
+
+      await(asyncStorage.incrementAttributeValueBy(COLLECTION_INC_ATTR_VALUE_BY, id, LumeerConst.Document.METADATA_VERSION_KEY, 1));
+      await(asyncStorage.incrementAttributeValueBy(COLLECTION_INC_ATTR_VALUE_BY, id, LumeerConst.Document.METADATA_VERSION_KEY, 2));
+
+      final DataDocument read = await(asyncStorage.readDocument(COLLECTION_INC_ATTR_VALUE_BY, id));
+      assertThat(read.getInteger(LumeerConst.Document.METADATA_VERSION_KEY)).isEqualTo(3);
+   }
+
+   @Test
+   public void testSearchAndCount() throws Exception {
+      for (int i = 0; i < 20; i++) {
+         await(asyncStorage.createDocument(COLLECTION_SEARCH, createDummyDocument().append("index", i)));
+      }
+
+      assertThat(await(asyncStorage.count(COLLECTION_SEARCH, null))).isEqualTo(20L);
+      assertThat(await(asyncStorage.count(COLLECTION_SEARCH, "{index: {$lt: 5}}"))).isEqualTo(5L);
+
+      final List<DataDocument> page = await(asyncStorage.search(COLLECTION_SEARCH, "{index: {$gte: 5}}", "{index: -1}", 2, 3));
+      assertThat(page.stream().map(d -> d.getInteger("index")).collect(Collectors.toList())).containsExactly(17, 16, 15);
+
+      assertThat(await(asyncStorage.search(COLLECTION_SEARCH, null, null, 0, 0))).hasSize(20);
+   }
+
+   @Test
+   public void testRun() throws Exception {
+      for (int i = 0; i < 200; i++) {
+         await(asyncStorage.createDocument(COLLECTION_RUN, createDummyDocument()));
+      }
+
+      // run() returns the first batch only, which has 101 entries by default
+      final List<DataDocument> documents = await(asyncStorage.run(new DataDocument("find", COLLECTION_RUN)));
+      assertThat(documents).hasSize(101);
+      assertThat(documents.get(0).getId()).isNotNull();
+   }
+
+   private static <T> T await(final CompletionStage<T> stage) throws Exception {
+      return stage.toCompletableFuture().get(TIMEOUT, TimeUnit.SECONDS);
+   }
+
+   private DataDocument createDummyDocument() {
+      DataDocument dataDocument = new DataDocument();
+      dataDocument.put(KEY1, VALUE1);
+      dataDocument.put(KEY2, VALUE2);
+      dataDocument.put(LumeerConst.Document.METADATA_VERSION_KEY, 0);
+      return dataDocument;
+   }
+}
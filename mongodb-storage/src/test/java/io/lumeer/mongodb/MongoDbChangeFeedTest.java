@@ -0,0 +1,244 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataChange;
+import io.lumeer.engine.api.data.DataChangeSubscription;
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.StorageConnection;
+
+import com.mongodb.MongoClient;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.IMongodConfig;
+import de.flapdoodle.embed.mongo.config.MongodConfigBuilder;
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.config.Storage;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.runtime.Network;
+
+/**
+ * Runs against a single node replica set, the oplog is not available on a standalone server.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class MongoDbChangeFeedTest {
+
+   private static final String DB_HOST = System.getProperty("lumeer.db.host", "localhost");
+   private static final String DB_NAME = System.getProperty("lumeer.db.name", "lumeer-test");
+   private static final int DB_PORT = Integer.getInteger("lumeer.db.rs.port", 27018);
+   private static final String DB_USER = System.getProperty("lumeer.db.user", "");
+   private static final String DB_PASSWORD = System.getProperty("lumeer.db.passwd", "");
+   private static final Boolean DB_SSL = Boolean.getBoolean("lumeer.db.ssl");
+   private static final String REPLICA_SET = "rs0";
+   private static final long TIMEOUT = 10L;
+
+   private static final String COLLECTION_DOCUMENTS = "changeFeedDocuments";
+   private static final String COLLECTION_RENAME_OLD = "changeFeedRenameOld";
+   private static final String COLLECTION_RENAME_NEW = "changeFeedRenameNew";
+   private static final String COLLECTION_RESUME = "changeFeedResume";
+
+   private static MongodExecutable mongodExecutable = null;
+
+   private MongoDbStorage mongoDbStorage;
+   private final BlockingQueue<DataChange> changes = new LinkedBlockingQueue<>();
+
+   @BeforeClass
+   public static void startEmbeddedMongoDb() throws Exception {
+      if (!"localhost".equals(DB_HOST)) {
+         // do not start embedded MongoDB when remote database is used, it must run in a replica set
+         return;
+      }
+
+      MongodStarter starter = MongodStarter.getDefaultInstance();
+
+      IMongodConfig mongodConfig = new MongodConfigBuilder()
+            .version(Version.Main.V3_4)
+            .net(new Net(DB_HOST, DB_PORT, Network.localhostIsIPv6()))
+            .replication(new Storage(null, REPLICA_SET, 0))
+            .build();
+
+      mongodExecutable = starter.prepare(mongodConfig);
+      mongodExecutable.start();
+
+      try (final MongoClient client = new MongoClient(DB_HOST, DB_PORT)) {
+         client.getDatabase("admin").runCommand(new Document("replSetInitiate", new Document("_id", REPLICA_SET)
+               .append("members", Collections.singletonList(new Document("_id", 0).append("host", DB_HOST + ":" + DB_PORT)))));
+
+         final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT);
+         while (!client.getDatabase("admin").runCommand(new Document("isMaster", 1)).getBoolean("ismaster", false)) {
+            if (System.currentTimeMillis() > deadline) {
+               throw new IllegalStateException("Replica set " + REPLICA_SET + " has not elected a primary.");
+            }
+            Thread.sleep(100L);
+         }
+      }
+   }
+
+   @AfterClass
+   public static void stopEmbeddedMongoDb() {
+      if (mongodExecutable != null) {
+         mongodExecutable.stop();
+      }
+   }
+
+   @Before
+   public void setUp() throws Exception {
+      mongoDbStorage = new MongoDbStorage();
+      mongoDbStorage.connect(new StorageConnection(DB_HOST, DB_PORT, DB_USER, DB_PASSWORD), DB_NAME, DB_SSL);
+
+      mongoDbStorage.dropCollection(COLLECTION_DOCUMENTS);
+      mongoDbStorage.dropCollection(COLLECTION_RENAME_OLD);
+      mongoDbStorage.dropCollection(COLLECTION_RENAME_NEW);
+      mongoDbStorage.dropCollection(COLLECTION_RESUME);
+   }
+
+   @After
+   public void tearDown() {
+      mongoDbStorage.disconnect();
+   }
+
+   @Test
+   public void testDocumentChanges() throws Exception {
+      try (final DataChangeSubscription subscription = mongoDbStorage.subscribeChanges(null, changes::add)) {
+         final String id = mongoDbStorage.createDocument(COLLECTION_DOCUMENTS, new DataDocument("a", 1));
+         mongoDbStorage.updateDocument(COLLECTION_DOCUMENTS, new DataDocument("b", 2), id);
+         mongoDbStorage.dropAttribute(COLLECTION_DOCUMENTS, id, "a");
+         mongoDbStorage.replaceDocument(COLLECTION_DOCUMENTS, new DataDocument("c", 3), id);
+         mongoDbStorage.dropDocument(COLLECTION_DOCUMENTS, id);
+
+         final DataChange insert = nextChange(COLLECTION_DOCUMENTS);
+         assertThat(insert.getOperation()).isEqualTo(DataChange.Operation.INSERT);
+         assertThat(insert.getDocumentId()).isEqualTo(id);
+         assertThat(insert.getDelta()).containsEntry("a", 1);
+
+         final DataChange update = nextChange(COLLECTION_DOCUMENTS);
+         assertThat(update.getOperation()).isEqualTo(DataChange.Operation.UPDATE);
+         assertThat(update.getDocumentId()).isEqualTo(id);
+         assertThat(update.getDelta()).containsEntry("b", 2);
+
+         final DataChange unset = nextChange(COLLECTION_DOCUMENTS);
+         assertThat(unset.getOperation()).isEqualTo(DataChange.Operation.UPDATE);
+         assertThat(unset.getDelta()).containsEntry("a", null);
+
+         final DataChange replace = nextChange(COLLECTION_DOCUMENTS);
+         assertThat(replace.getOperation()).isEqualTo(DataChange.Operation.REPLACE);
+         assertThat(replace.getDocumentId()).isEqualTo(id);
+         assertThat(replace.getDelta()).containsEntry("c", 3).doesNotContainKey("a");
+
+         final DataChange delete = nextChange(COLLECTION_DOCUMENTS);
+         assertThat(delete.getOperation()).isEqualTo(DataChange.Operation.DELETE);
+         assertThat(delete.getDocumentId()).isEqualTo(id);
+         assertThat(subscription.getResumeToken()).isNotNull();
+      }
+   }
+
+   @Test
+   public void testCollectionChanges() throws Exception {
+      final MongoDbStorage otherNode = new MongoDbStorage();
+      otherNode.connect(new StorageConnection(DB_HOST, DB_PORT, DB_USER, DB_PASSWORD), DB_NAME, DB_SSL);
+
+      try (final DataChangeSubscription subscription = mongoDbStorage.subscribeChanges(null, changes::add)) {
+         otherNode.createCollection(COLLECTION_RENAME_OLD);
+         assertThat(nextChange(COLLECTION_RENAME_OLD).getOperation()).isEqualTo(DataChange.Operation.CREATE_COLLECTION);
+         assertThat(mongoDbStorage.getAllCollections()).contains(COLLECTION_RENAME_OLD);
+
+         otherNode.renameCollection(COLLECTION_RENAME_OLD, COLLECTION_RENAME_NEW);
+         final DataChange rename = nextChange(COLLECTION_RENAME_OLD);
+         assertThat(rename.getOperation()).isEqualTo(DataChange.Operation.RENAME_COLLECTION);
+         assertThat(rename.getNewCollectionName()).isEqualTo(COLLECTION_RENAME_NEW);
+         assertThat(mongoDbStorage.getAllCollections()).contains(COLLECTION_RENAME_NEW).doesNotContain(COLLECTION_RENAME_OLD);
+
+         otherNode.dropCollection(COLLECTION_RENAME_NEW);
+         assertThat(nextChange(COLLECTION_RENAME_NEW).getOperation()).isEqualTo(DataChange.Operation.DROP_COLLECTION);
+         assertThat(mongoDbStorage.getAllCollections()).doesNotContain(COLLECTION_RENAME_NEW);
+      } finally {
+         otherNode.disconnect();
+      }
+   }
+
+   @Test
+   public void testResume() throws Exception {
+      final String resumeToken;
+      try (final DataChangeSubscription subscription = mongoDbStorage.subscribeChanges(null, changes::add)) {
+         mongoDbStorage.createDocument(COLLECTION_RESUME, new DataDocument("a", 1));
+         resumeToken = nextChange(COLLECTION_RESUME).getResumeToken();
+      }
+
+      final String id = mongoDbStorage.createDocument(COLLECTION_RESUME, new DataDocument("a", 2));
+      changes.clear();
+
+      try (final DataChangeSubscription subscription = mongoDbStorage.subscribeChanges(resumeToken, changes::add)) {
+         final DataChange missed = nextChange(COLLECTION_RESUME);
+         assertThat(missed.getOperation()).isEqualTo(DataChange.Operation.INSERT);
+         assertThat(missed.getDocumentId()).isEqualTo(id);
+         assertThat(subscription.getResumeToken()).isEqualTo(missed.getResumeToken());
+      }
+   }
+
+   @Test
+   public void testShadowDocumentChange() {
+      final MongoDbChangeFeed feed = new MongoDbChangeFeed(null, DB_NAME, null, change -> {
+      }, null);
+      final ObjectId id = new ObjectId();
+      final BsonDocument entry = BsonDocument.parse("{op: 'i', ns: '" + DB_NAME + ".shadow', o: {_id: {_id: {$oid: '" + id.toHexString() + "'}, "
+            + "'" + LumeerConst.Document.METADATA_VERSION_KEY + "': 1}, a: 1}}");
+
+      final DataChange change = feed.toChange(entry, "1:1");
+
+      assertThat(change.getOperation()).isEqualTo(DataChange.Operation.INSERT);
+      assertThat(change.getCollectionName()).isEqualTo("shadow");
+      assertThat(change.getDocumentId()).contains(id.toHexString());
+      assertThat(feed.toChange(BsonDocument.parse("{op: 'i', ns: 'other.shadow', o: {_id: 1}}"), "1:2")).isNull();
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testInvalidResumeToken() {
+      new MongoDbChangeFeed(null, DB_NAME, "not a token", change -> {
+      }, null);
+   }
+
+   private DataChange nextChange(final String collectionName) throws InterruptedException {
+      DataChange change;
+      do {
+         change = changes.poll(TIMEOUT, TimeUnit.SECONDS);
+         assertThat(change).as("change of " + collectionName).isNotNull();
+      } while (!collectionName.equals(change.getCollectionName()));
+
+      return change;
+   }
+}
@@ -0,0 +1,71 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.lumeer.engine.api.data.DataDocument;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class MongoDbDocumentFormatTest {
+
+   private final MongoDbDocumentFormat format = new MongoDbDocumentFormat();
+
+   @Test
+   public void testWriteAndReadStream() throws IOException {
+      final DataDocument first = new DataDocument("string", "value")
+            .append("number", 42)
+            .append("date", new Date(0))
+            .append("nested", new DataDocument("a", 1L).append("list", Collections.singletonList(new DataDocument("b", 2.5))))
+            .append("plainList", Arrays.asList(1, 2, 3))
+            .append("nullValue", null);
+      final DataDocument second = new DataDocument("another", true);
+
+      final ByteArrayOutputStream output = new ByteArrayOutputStream();
+      format.write(first, output);
+      format.write(second, output);
+
+      final ByteArrayInputStream input = new ByteArrayInputStream(output.toByteArray());
+      assertThat(format.read(input)).isEqualTo(first);
+      assertThat(format.read(input)).isEqualTo(second);
+      assertThat(format.read(input)).isNull();
+   }
+
+   @Test(expected = EOFException.class)
+   public void testReadTruncated() throws IOException {
+      final ByteArrayOutputStream output = new ByteArrayOutputStream();
+      format.write(new DataDocument("attribute", "value"), output);
+      final byte[] bytes = Arrays.copyOf(output.toByteArray(), output.size() - 3);
+
+      format.read(new ByteArrayInputStream(bytes));
+   }
+}
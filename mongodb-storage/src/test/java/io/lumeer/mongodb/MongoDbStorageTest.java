@@ -22,7 +22,10 @@ package io.lumeer.mongodb;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.BulkWriteResult;
+import io.lumeer.engine.api.data.DataCursor;
 import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataPage;
 import io.lumeer.engine.api.data.Query;
 import io.lumeer.engine.api.data.StorageConnection;
 
@@ -34,10 +37,21 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import de.flapdoodle.embed.mongo.MongodExecutable;
 import de.flapdoodle.embed.mongo.MongodStarter;
@@ -91,6 +105,14 @@ public class MongoDbStorageTest {
    private final String COLLECTION_BASIC_ARRAY_MANIPULATION = "collectionBasicArrayManipulation";
    private final String COLLECTION_COMPLEX_ARRAY_MANIPULATION = "collectionComplexArrayManipulation";
    private final String COLLECTION_AGGREGATE = "collectionAggregate";
+   private final String COLLECTION_BULK_WRITE = "collectionBulkWrite";
+   private final String COLLECTION_CURSOR_I = "collectionCursor_I";
+   private final String COLLECTION_CURSOR_II = "collectionCursor_II";
+   private final String COLLECTION_SEQUENCE = "collectionSequence";
+   private final String COLLECTION_QUERY_I = "collectionQuery_I";
+   private final String COLLECTION_QUERY_II = "collectionQuery_II";
+   private final String COLLECTION_PAGE = "collectionPage";
+   private final String COLLECTION_READ_DOCUMENTS = "collectionReadDocuments";
 
    private static MongodExecutable mongodExecutable;
 
@@ -151,6 +173,14 @@ public class MongoDbStorageTest {
       mongoDbStorage.dropCollection(COLLECTION_BASIC_ARRAY_MANIPULATION);
       mongoDbStorage.dropCollection(COLLECTION_COMPLEX_ARRAY_MANIPULATION);
       mongoDbStorage.dropCollection(COLLECTION_AGGREGATE);
+      mongoDbStorage.dropCollection(COLLECTION_BULK_WRITE);
+      mongoDbStorage.dropCollection(COLLECTION_CURSOR_I);
+      mongoDbStorage.dropCollection(COLLECTION_CURSOR_II);
+      mongoDbStorage.dropCollection(COLLECTION_SEQUENCE);
+      mongoDbStorage.dropCollection(COLLECTION_QUERY_I);
+      mongoDbStorage.dropCollection(COLLECTION_QUERY_II);
+      mongoDbStorage.dropCollection(COLLECTION_PAGE);
+      mongoDbStorage.dropCollection(COLLECTION_READ_DOCUMENTS);
    }
 
    @After
@@ -224,6 +254,30 @@ public class MongoDbStorageTest {
       assertThat(insertedDocument.getString(DUMMY_KEY2)).isEqualTo(readedDocument.getString(DUMMY_KEY2));
    }
 
+   @Test
+   public void testReadDocuments() throws Exception {
+      mongoDbStorage.createCollection(COLLECTION_READ_DOCUMENTS);
+
+      List<String> ids = new ArrayList<>();
+      for (int i = 0; i < 5; i++) {
+         ids.add(mongoDbStorage.createDocument(COLLECTION_READ_DOCUMENTS, createDummyDocument().append("order", i)));
+      }
+      String missingId = "5900a0aa0000000000000000";
+
+      // order of the given ids is preserved, missing documents are skipped
+      List<String> readIds = Arrays.asList(ids.get(3), ids.get(0), missingId, ids.get(4), ids.get(0));
+      List<DataDocument> documents = mongoDbStorage.readDocuments(COLLECTION_READ_DOCUMENTS, readIds);
+      assertThat(documents).extracting(DataDocument::getId).containsExactly(ids.get(3), ids.get(0), ids.get(4), ids.get(0));
+      assertThat(documents.get(0).getInteger("order")).isEqualTo(3);
+      assertThat(documents.get(0).getString(DUMMY_KEY1)).isEqualTo(DUMMY_VALUE1);
+
+      documents = mongoDbStorage.readDocumentsIncludeAttrs(COLLECTION_READ_DOCUMENTS, readIds, Collections.singletonList("order"));
+      assertThat(documents).extracting(d -> d.getInteger("order")).containsExactly(3, 0, 4, 0);
+      assertThat(documents.get(0)).doesNotContainKey(DUMMY_KEY1);
+
+      assertThat(mongoDbStorage.readDocuments(COLLECTION_READ_DOCUMENTS, Collections.emptyList())).isEmpty();
+   }
+
    @Test
    public void testCreateAndReadOldDocument() throws Exception {
       mongoDbStorage.createCollection(COLLECTION_CREATE_AND_READ_OLD_DOCUMENT);
@@ -261,6 +315,14 @@ public class MongoDbStorageTest {
       assertions.assertThat(readedAfterInsDocument.getString(DUMMY_KEY2)).isEqualTo(DUMMY_CHANGED_VALUE2);
       assertions.assertThat(readedAfterInsDocument.getInteger(LumeerConst.Document.METADATA_VERSION_KEY)).isEqualTo(1);
       assertions.assertAll();
+
+      // conditional update
+      assertThat(mongoDbStorage.updateDocument(COLLECTION_UPDATE_DOCUMENT, new DataDocument(DUMMY_KEY1, "stale"), documentId, 0)).isFalse();
+      assertThat(mongoDbStorage.readDocument(COLLECTION_UPDATE_DOCUMENT, documentId).getString(DUMMY_KEY1)).isEqualTo(DUMMY_CHANGED_VALUE1);
+
+      DataDocument conditionalUpdate = new DataDocument(DUMMY_KEY1, "fresh").append(LumeerConst.Document.METADATA_VERSION_KEY, 2);
+      assertThat(mongoDbStorage.updateDocument(COLLECTION_UPDATE_DOCUMENT, conditionalUpdate, documentId, 1)).isTrue();
+      assertThat(mongoDbStorage.readDocument(COLLECTION_UPDATE_DOCUMENT, documentId).getString(DUMMY_KEY1)).isEqualTo("fresh");
    }
 
    @Test
@@ -283,6 +345,11 @@ public class MongoDbStorageTest {
       assertions.assertThat(readedDocument.containsKey("e")).as("e").isTrue();
       assertions.assertThat(readedDocument.containsKey("f")).as("f").isTrue();
       assertions.assertAll();
+
+      // conditional replace, the document has no version yet
+      assertThat(mongoDbStorage.replaceDocument(COLLECTION_REPLACE_DOCUMENT, new DataDocument("g", 7), documentId, 1)).isFalse();
+      assertThat(mongoDbStorage.replaceDocument(COLLECTION_REPLACE_DOCUMENT, new DataDocument("g", 7).append(LumeerConst.Document.METADATA_VERSION_KEY, 1), documentId, 0)).isTrue();
+      assertThat(mongoDbStorage.readDocument(COLLECTION_REPLACE_DOCUMENT, documentId)).containsKey("g").doesNotContainKey("d");
    }
 
    @Test
@@ -301,6 +368,61 @@ public class MongoDbStorageTest {
       assertThat(readedDocument).isNull();
    }
 
+   @Test
+   public void testBulkWrite() throws Exception {
+      mongoDbStorage.createCollection(COLLECTION_BULK_WRITE);
+
+      List<DataDocument> documents = new ArrayList<>();
+      for (int i = 0; i < 25; i++) {
+         documents.add(createDummyDocument());
+      }
+
+      BulkWriteResult result = mongoDbStorage.createDocuments(COLLECTION_BULK_WRITE, documents, 10);
+      assertThat(result.hasErrors()).isFalse();
+      assertThat(result.getSuccessCount()).isEqualTo(25);
+      assertThat(result.getInsertedIds()).hasSize(25);
+      assertThat(mongoDbStorage.documentCount(COLLECTION_BULK_WRITE)).isEqualTo(25);
+
+      List<String> ids = result.getInsertedIds();
+      List<DataDocument> updates = new ArrayList<>();
+      for (String id : ids) {
+         DataDocument update = new DataDocument(DUMMY_KEY1, DUMMY_CHANGED_VALUE1);
+         update.setId(id);
+         updates.add(update);
+      }
+      DataDocument invalid = new DataDocument(DUMMY_KEY1, DUMMY_CHANGED_VALUE1);
+      invalid.setId("invalidId");
+      updates.add(3, invalid);
+
+      result = mongoDbStorage.updateDocuments(COLLECTION_BULK_WRITE, updates, 10);
+      assertThat(result.getSuccessCount()).isEqualTo(25);
+      assertThat(result.getErrors()).containsOnlyKeys(3);
+      assertThat(mongoDbStorage.count(COLLECTION_BULK_WRITE, MongoUtils.convertBsonToJson(Filters.eq(DUMMY_KEY1, DUMMY_CHANGED_VALUE1)))).isEqualTo(25);
+
+      DataDocument replace = new DataDocument(DUMMY_KEY2, DUMMY_CHANGED_VALUE2);
+      replace.setId(ids.get(0));
+      result = mongoDbStorage.replaceDocuments(COLLECTION_BULK_WRITE, Collections.singletonList(replace), 10);
+      assertThat(result.hasErrors()).isFalse();
+
+      DataDocument replaced = mongoDbStorage.readDocument(COLLECTION_BULK_WRITE, ids.get(0));
+      assertThat(replaced).containsOnlyKeys(LumeerConst.Document.ID, DUMMY_KEY2);
+
+      List<DataDocument> oldDocuments = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+         DataDocument oldDocument = createDummyDocument();
+         oldDocument.setId(ids.get(1));
+         oldDocuments.add(oldDocument);
+      }
+      result = mongoDbStorage.createOldDocuments(COLLECTION_BULK_WRITE + "_old", oldDocuments, 10);
+      assertThat(result.getSuccessCount()).isEqualTo(1);
+      assertThat(result.getErrors()).containsOnlyKeys(1);
+      mongoDbStorage.dropCollection(COLLECTION_BULK_WRITE + "_old");
+
+      result = mongoDbStorage.dropDocuments(COLLECTION_BULK_WRITE, ids.subList(0, 20), 7);
+      assertThat(result.hasErrors()).isFalse();
+      assertThat(mongoDbStorage.documentCount(COLLECTION_BULK_WRITE)).isEqualTo(5);
+   }
+
    @Test
    public void testDropManyDocuments() throws Exception {
       mongoDbStorage.createCollection(COLLECTION_DROP_MANY);
@@ -351,6 +473,192 @@ public class MongoDbStorageTest {
       assertThat(searchDocuments).hasSize(10);
    }
 
+   @Test
+   public void testCursors() throws Exception {
+      mongoDbStorage.createCollection(COLLECTION_CURSOR_I);
+      mongoDbStorage.createCollection(COLLECTION_CURSOR_II);
+
+      for (int i = 0; i < 30; i++) {
+         mongoDbStorage.createDocument(COLLECTION_CURSOR_I, getTestDocument("a", String.valueOf(i)));
+         mongoDbStorage.createDocument(COLLECTION_CURSOR_II, getTestDocument("b", String.valueOf(i)));
+      }
+
+      try (DataCursor cursor = mongoDbStorage.searchCursor(COLLECTION_CURSOR_I, null, null, 5, 20, 7)) {
+         List<DataDocument> documents = new ArrayList<>();
+         cursor.forEachRemaining(documents::add);
+
+         assertThat(documents).hasSize(20);
+         assertThat(documents.get(0).getId()).isNotNull();
+         assertThat(cursor.hasNext()).isFalse();
+      }
+
+      try (DataCursor cursor = mongoDbStorage.searchCursorIncludeAttrs(COLLECTION_CURSOR_I, "{\"param2\": {\"$lt\": 10}}", "{\"param2\": -1}", Collections.singletonList("param2"), 4)) {
+         List<DataDocument> documents = new ArrayList<>();
+         cursor.forEachRemaining(documents::add);
+
+         assertThat(documents).extracting(d -> d.getInteger("param2")).containsExactly(9, 8, 7, 6, 5, 4, 3, 2, 1, 0);
+         assertThat(documents).allMatch(d -> !d.containsKey("param1"));
+      }
+
+      final DataDocument filters = new DataDocument("param2", new DataDocument("$lt", 10));
+      final Query query = new Query(filters);
+      query.setCollections(new HashSet<>(Arrays.asList(COLLECTION_CURSOR_I, COLLECTION_CURSOR_II)));
+
+      try (DataCursor cursor = mongoDbStorage.queryCursor(query, 3)) {
+         assertThat(cursor.stream().map(d -> d.getString("param1")).collect(Collectors.toList()))
+               .hasSize(20)
+               .containsOnly("a", "b");
+      }
+
+      try (DataCursor cursor = mongoDbStorage.aggregateCursor(COLLECTION_CURSOR_II, 4, new DataDocument("$match", filters))) {
+         assertThat(cursor.stream().count()).isEqualTo(10);
+      }
+   }
+
+   @Test
+   public void testQueryAcrossCollections() throws Exception {
+      for (int i = 0; i < 10; i++) {
+         mongoDbStorage.createDocument(i % 2 == 0 ? COLLECTION_QUERY_I : COLLECTION_QUERY_II, getTestDocument("a", String.valueOf(i)));
+      }
+
+      final Query query = new Query(new DataDocument("param1", "a"));
+      query.setCollections(new LinkedHashSet<>(Arrays.asList(COLLECTION_QUERY_I, COLLECTION_QUERY_II)));
+      query.setSorting(new DataDocument("param2", -1));
+      query.setSkip(2);
+      query.setLimit(5);
+
+      final List<DataDocument> result = mongoDbStorage.query(query);
+      assertThat(result.stream().map(d -> d.getInteger("param2")).collect(Collectors.toList())).containsExactly(7, 6, 5, 4, 3);
+      assertThat(result.get(0).getString(LumeerConst.Document.COLLECTION_NAME)).isEqualTo(COLLECTION_QUERY_II);
+      assertThat(result.get(1).getString(LumeerConst.Document.COLLECTION_NAME)).isEqualTo(COLLECTION_QUERY_I);
+   }
+
+   @Test
+   public void testPagination() throws Exception {
+      for (int i = 0; i < 25; i++) {
+         mongoDbStorage.createDocument(COLLECTION_PAGE, getTestDocument("a", String.valueOf(i % 10)));
+      }
+
+      final List<DataDocument> searched = new ArrayList<>();
+      String token = null;
+      do {
+         final DataPage page = mongoDbStorage.searchPage(COLLECTION_PAGE, null, "{\"param2\": -1}", 0, token, 7);
+         searched.addAll(page.getDocuments());
+         token = page.getNextPageToken();
+      } while (token != null);
+
+      assertThat(searched).hasSize(25);
+      assertThat(searched.stream().map(DataDocument::getId).distinct().count()).isEqualTo(25);
+      assertThat(searched.get(0).getInteger("param2")).isEqualTo(9);
+      assertThat(searched.get(24).getInteger("param2")).isEqualTo(0);
+
+      final Query query = new Query(new DataDocument("param1", "a"));
+      query.setCollections(Collections.singleton(COLLECTION_PAGE));
+      query.setSorting(new DataDocument("param2", 1));
+      query.setLimit(10);
+
+      final List<DataDocument> queried = new ArrayList<>();
+      do {
+         final DataPage page = mongoDbStorage.queryPage(query);
+         queried.addAll(page.getDocuments());
+         query.setPageToken(page.getNextPageToken());
+      } while (query.getPageToken() != null);
+
+      assertThat(queried.stream().map(DataDocument::getId).collect(Collectors.toList()))
+            .doesNotHaveDuplicates()
+            .hasSize(25);
+      assertThat(queried.get(0).getInteger("param2")).isEqualTo(0);
+   }
+
+   @Test
+   public void testPaginationOfMixedTypes() throws Exception {
+      final List<Object> values = Arrays.asList(3, "b", null, 1.5, new Date(1000L), true, "a", new DataDocument("x", 1), 2L, false, new Date(0L));
+      values.forEach(value -> mongoDbStorage.createDocument(COLLECTION_PAGE, new DataDocument("param1", value)));
+      mongoDbStorage.createDocument(COLLECTION_PAGE, new DataDocument());
+
+      for (final int direction : Arrays.asList(1, -1)) {
+         final String sort = "{\"param1\": " + direction + ", \"_id\": 1}";
+         final List<String> expected = mongoDbStorage.search(COLLECTION_PAGE, null, sort, 0, 0).stream().map(DataDocument::getId).collect(Collectors.toList());
+
+         final List<String> paged = new ArrayList<>();
+         String token = null;
+         do {
+            final DataPage page = mongoDbStorage.searchPage(COLLECTION_PAGE, null, "{\"param1\": " + direction + "}", 0, token, 2);
+            page.getDocuments().forEach(d -> paged.add(d.getId()));
+            token = page.getNextPageToken();
+         } while (token != null);
+
+         assertThat(paged).hasSize(values.size() + 1).isEqualTo(expected);
+      }
+   }
+
+   @Test
+   public void testPaginationOfGroups() throws Exception {
+      for (int i = 0; i < 10; i++) {
+         mongoDbStorage.createDocument(COLLECTION_PAGE, getTestDocument(String.valueOf((char) ('a' + i)), String.valueOf(i)));
+      }
+
+      final Query query = new Query();
+      query.setGrouping(new DataDocument(LumeerConst.Document.ID, new DataDocument("param1", "$param1")).append("count", new DataDocument("$sum", 1)));
+      query.setCollections(Collections.singleton(COLLECTION_PAGE));
+      query.setLimit(3);
+
+      final List<Object> groups = new ArrayList<>();
+      do {
+         final DataPage page = mongoDbStorage.queryPage(query);
+         page.getDocuments().forEach(d -> groups.add(d.get(LumeerConst.Document.ID)));
+         query.setPageToken(page.getNextPageToken());
+      } while (query.getPageToken() != null);
+
+      assertThat(groups).hasSize(10).doesNotHaveDuplicates();
+   }
+
+   @Test
+   public void testSequences() throws Exception {
+      assertThat(mongoDbStorage.getNextSequenceNo(COLLECTION_SEQUENCE, "name", "seq")).isEqualTo(0);
+      assertThat(mongoDbStorage.getNextSequenceNo(COLLECTION_SEQUENCE, "name", "seq")).isEqualTo(1);
+      assertThat(mongoDbStorage.getNextSequenceBlock(COLLECTION_SEQUENCE, "name", "seq", 10)).isEqualTo(2);
+      assertThat(mongoDbStorage.getNextSequenceNo(COLLECTION_SEQUENCE, "name", "seq")).isEqualTo(12);
+
+      assertThat(mongoDbStorage.getNextSequenceBlock(COLLECTION_SEQUENCE, "name", "block", 10)).isEqualTo(0);
+      assertThat(mongoDbStorage.getNextSequenceBlock(COLLECTION_SEQUENCE, "name", "block", 10)).isEqualTo(10);
+
+      mongoDbStorage.resetSequence(COLLECTION_SEQUENCE, "name", "block");
+      assertThat(mongoDbStorage.getNextSequenceNo(COLLECTION_SEQUENCE, "name", "block")).isEqualTo(1);
+      assertThat(mongoDbStorage.search(COLLECTION_SEQUENCE, null, null, 0, 0)).hasSize(2);
+   }
+
+   @Test
+   public void testConcurrentSequenceCreation() throws Exception {
+      // the non-unique index created by older versions is replaced by the unique one
+      mongoDbStorage.createIndex(COLLECTION_SEQUENCE, new DataDocument("name", 1));
+
+      final int threads = 8;
+      final ExecutorService executor = Executors.newFixedThreadPool(threads);
+      try {
+         final CountDownLatch start = new CountDownLatch(1);
+         final List<Future<Integer>> values = new ArrayList<>();
+         for (int i = 0; i < threads; i++) {
+            values.add(executor.submit(() -> {
+               start.await();
+               return mongoDbStorage.getNextSequenceNo(COLLECTION_SEQUENCE, "name", "concurrent");
+            }));
+         }
+         start.countDown();
+
+         final Set<Integer> reserved = new HashSet<>();
+         for (Future<Integer> value : values) {
+            reserved.add(value.get(10, TimeUnit.SECONDS));
+         }
+
+         // every thread got its own value from a single sequence document
+         assertThat(reserved).isEqualTo(IntStream.range(0, threads).boxed().collect(Collectors.toSet()));
+         assertThat(mongoDbStorage.search(COLLECTION_SEQUENCE, null, null, 0, 0)).hasSize(1);
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
    @Test
    public void testRun() throws Exception {
       mongoDbStorage.createCollection(COLLECTION_RUN);
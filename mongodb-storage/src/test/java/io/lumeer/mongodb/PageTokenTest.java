@@ -0,0 +1,119 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.mongodb;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataDocument;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class PageTokenTest {
+
+   @Test
+   public void testSeekFilter() {
+      final ObjectId id = new ObjectId();
+      final Date date = new Date(1000L);
+      final DataDocument sort = PageToken.sortWithId(new DataDocument("a", -1).append("b", 1));
+      final DataDocument last = new DataDocument(LumeerConst.Document.ID, id.toHexString()).append("a", 5L).append("b", date);
+
+      final DataDocument filter = PageToken.seekFilter(PageToken.create(last, sort), sort);
+
+      final DataDocument afterA = new DataDocument("$or", Arrays.asList(new DataDocument("a", new DataDocument("$lt", 5L)), type("a", "minKey"), new DataDocument("a", null)));
+      final DataDocument afterB = new DataDocument("$and", Arrays.asList(new DataDocument("a", 5L), new DataDocument("$or", Arrays.asList(
+            new DataDocument("b", new DataDocument("$gt", date)), type("b", "timestamp"), type("b", "regex"), type("b", "maxKey")))));
+      final DataDocument afterId = new DataDocument("$and", Arrays.asList(new DataDocument("a", 5L), new DataDocument("b", date), new DataDocument("$or", Arrays.asList(
+            new DataDocument(LumeerConst.Document.ID, new DataDocument("$gt", id)), type(LumeerConst.Document.ID, "bool"), type(LumeerConst.Document.ID, "date"),
+            type(LumeerConst.Document.ID, "timestamp"), type(LumeerConst.Document.ID, "regex"), type(LumeerConst.Document.ID, "maxKey")))));
+
+      assertThat(filter).isEqualTo(new DataDocument("$or", Arrays.asList(afterA, afterB, afterId)));
+   }
+
+   @Test
+   public void testNullSortKey() {
+      final ObjectId id = new ObjectId();
+      final DataDocument sort = PageToken.sortWithId(new DataDocument("a", 1));
+      final DataDocument filter = PageToken.seekFilter(PageToken.create(new DataDocument(LumeerConst.Document.ID, id.toHexString()), sort), sort);
+
+      final List<Object> afterA = alternatives((DataDocument) alternatives(filter).get(0));
+      assertThat(afterA).containsExactly(type("a", "number"), type("a", "symbol"), type("a", "string"), type("a", "object"), type("a", "binData"),
+            type("a", "objectId"), type("a", "bool"), type("a", "date"), type("a", "timestamp"), type("a", "regex"), type("a", "maxKey"));
+      assertThat(alternatives(filter).get(1)).isEqualTo(new DataDocument("$and", Arrays.asList(new DataDocument("a", null),
+            new DataDocument("$or", Arrays.asList(new DataDocument(LumeerConst.Document.ID, new DataDocument("$gt", id)), type(LumeerConst.Document.ID, "bool"),
+                  type(LumeerConst.Document.ID, "date"), type(LumeerConst.Document.ID, "timestamp"), type(LumeerConst.Document.ID, "regex"),
+                  type(LumeerConst.Document.ID, "maxKey"))))));
+   }
+
+   @Test
+   public void testMixedTypesDescending() {
+      final DataDocument sort = new DataDocument("a", -1);
+      final DataDocument filter = PageToken.seekFilter(PageToken.create(new DataDocument("a", "text"), sort), sort);
+
+      assertThat(filter).isEqualTo(new DataDocument("$or", Collections.singletonList(new DataDocument("$or", Arrays.asList(
+            new DataDocument("a", new DataDocument("$lt", "text")), type("a", "minKey"), new DataDocument("a", null), type("a", "number"))))));
+   }
+
+   @Test
+   public void testGroupedId() {
+      final DataDocument sort = PageToken.sortWithId(null);
+      final DataDocument filter = PageToken.seekFilter(PageToken.create(new DataDocument(LumeerConst.Document.ID, "{ \"param1\" : \"a\" }"), sort), sort);
+
+      assertThat(alternatives((DataDocument) alternatives(filter).get(0)).get(0))
+            .isEqualTo(new DataDocument(LumeerConst.Document.ID, new DataDocument("$gt", new DataDocument("param1", "a"))));
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testArraySortKey() {
+      final DataDocument sort = PageToken.sortWithId(new DataDocument("a", 1));
+      PageToken.create(new DataDocument(LumeerConst.Document.ID, new ObjectId().toHexString()).append("a", Arrays.asList(1, 2)), sort);
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testTokenNotMatchingSort() {
+      final DataDocument last = new DataDocument(LumeerConst.Document.ID, new ObjectId().toHexString());
+      final String token = PageToken.create(last, PageToken.sortWithId(null));
+
+      PageToken.seekFilter(token, PageToken.sortWithId(new DataDocument("a", 1)));
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testInvalidToken() {
+      PageToken.seekFilter("not a token", PageToken.sortWithId(null));
+   }
+
+   @SuppressWarnings("unchecked")
+   private static List<Object> alternatives(final DataDocument filter) {
+      return (List<Object>) filter.get("$or");
+   }
+
+   private static DataDocument type(final String field, final String type) {
+      return new DataDocument(field, new DataDocument("$type", type));
+   }
+}
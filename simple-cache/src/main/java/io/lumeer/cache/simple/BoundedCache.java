@@ -0,0 +1,503 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.cache.simple;
+
+import io.lumeer.engine.api.cache.Cache;
+import io.lumeer.engine.api.cache.CachePolicy;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache bounded by the total weight of its entries with optional expiration and refreshing after write.
+ *
+ * <p>Eviction follows W-TinyLFU. New entries enter a small LRU admission window. Entries leaving the window go to
+ * the probation segment of the main space. When the cache is full, the newest entry of the probation segment
+ * competes with the oldest one and the one used less often recently is evicted. The usage is estimated by
+ * a {@link FrequencySketch}. Entries used again while in probation are promoted to the protected segment.</p>
+ *
+ * <p>Lookups do not block. They record the use of the entry only when the eviction lock is free, so an occasional
+ * use is not counted under contention.</p>
+ *
+ * <p>Entries are refreshed on the executor given to the cache by calling the function they were computed by
+ * in {@link #computeIfAbsent(String, Function)} again. The function then runs outside of the request that created
+ * the entry, so it must not depend on the request or session context, e.g. on session scoped beans.</p>
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class BoundedCache<T> implements Cache<T> {
+
+   private static final Logger log = Logger.getLogger(BoundedCache.class.getName());
+
+   private static final int WINDOW_PERCENT = 1;
+   private static final int PROTECTED_PERCENT = 80;
+
+   private final CachePolicy policy;
+   private final LongSupplier ticker;
+   private final Executor refresher;
+
+   private final Map<String, Node<T>> data = new ConcurrentHashMap<>();
+   private final KeyLocks locks = new KeyLocks();
+   private final KeyLocks loadingLocks = new KeyLocks();
+
+   // guarded by evictionLock
+   private final ReentrantLock evictionLock = new ReentrantLock();
+   private final NodeList<T> window = new NodeList<>();
+   private final NodeList<T> probation = new NodeList<>();
+   private final NodeList<T> protectedSegment = new NodeList<>();
+   private final LinkedHashMap<String, Node<T>> writeOrder = new LinkedHashMap<>();
+   private final FrequencySketch sketch;
+   private final long windowMaximum;
+   private final long protectedMaximum;
+
+   /**
+    * Creates the cache.
+    *
+    * @param policy
+    *       bounds and expiration of the cache
+    * @param refresher
+    *       executor refreshing the entries, it should be a managed executor of the container
+    */
+   public BoundedCache(final CachePolicy policy, final Executor refresher) {
+      this(policy, () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime()), refresher);
+   }
+
+   /**
+    * Creates the cache measuring time by the given ticker.
+    *
+    * @param policy
+    *       bounds and expiration of the cache
+    * @param ticker
+    *       current time in milliseconds
+    * @param refresher
+    *       executor refreshing the entries
+    */
+   BoundedCache(final CachePolicy policy, final LongSupplier ticker, final Executor refresher) {
+      this.policy = policy;
+      this.ticker = ticker;
+      this.refresher = refresher;
+
+      if (policy.isBounded()) {
+         sketch = new FrequencySketch(policy.getWeigher() != null ? Math.min(policy.getMaximumWeight(), 1 << 16) : policy.getMaximumWeight());
+         windowMaximum = Math.max(1L, policy.getMaximumWeight() * WINDOW_PERCENT / 100);
+         protectedMaximum = (policy.getMaximumWeight() - windowMaximum) * PROTECTED_PERCENT / 100;
+      } else {
+         sketch = null;
+         windowMaximum = Long.MAX_VALUE;
+         protectedMaximum = 0L;
+      }
+   }
+
+   @Override
+   public T get(final String key) {
+      final Node<T> node = data.get(key);
+
+      if (node == null) {
+         recordMiss(key);
+         return null;
+      }
+      if (isExpired(node, ticker.getAsLong())) {
+         removeExpired(node);
+         return null;
+      }
+
+      recordHit(node);
+      return node.value;
+   }
+
+   @Override
+   public T computeIfAbsent(final String key, final Function<String, T> fce) {
+      final T value = getValid(key, fce);
+      if (value != null) {
+         return value;
+      }
+
+      loadingLocks.lock(key);
+      try {
+         final T loaded = getValid(key, fce);
+         if (loaded != null) {
+            return loaded;
+         }
+
+         final T computed = fce.apply(key);
+         if (computed != null) {
+            set(key, computed);
+         }
+
+         return computed;
+      } finally {
+         loadingLocks.unlock(key);
+      }
+   }
+
+   private T getValid(final String key, final Function<String, T> fce) {
+      final Node<T> node = data.get(key);
+      if (node == null) {
+         return null;
+      }
+
+      final long now = ticker.getAsLong();
+      if (isExpired(node, now)) {
+         removeExpired(node);
+         return null;
+      }
+
+      recordHit(node);
+      if (policy.getRefreshAfterWrite() > 0 && now - node.writeTime >= policy.getRefreshAfterWrite() && node.refreshing.compareAndSet(false, true)) {
+         refresher.execute(() -> refresh(node, fce));
+      }
+
+      return node.value;
+   }
+
+   private void refresh(final Node<T> node, final Function<String, T> fce) {
+      try {
+         final T value = fce.apply(node.key);
+
+         evictionLock.lock();
+         try {
+            if (data.get(node.key) == node) { // the entry was not changed in the meantime
+               if (value != null) {
+                  set(node.key, value);
+               } else {
+                  remove(node.key);
+               }
+            }
+         } finally {
+            evictionLock.unlock();
+         }
+      } catch (RuntimeException e) {
+         log.log(Level.WARNING, "Unable to refresh cache entry " + node.key + ": ", e);
+         node.refreshing.set(false);
+      }
+   }
+
+   @Override
+   public void set(final String key, final T t) {
+      final long now = ticker.getAsLong();
+      final Node<T> node = new Node<>(key, t, policy.weigh(key, t), now);
+
+      evictionLock.lock();
+      try {
+         final Node<T> old = data.put(key, node);
+         if (old != null) {
+            detach(old);
+         }
+         attach(node);
+
+         expire(now);
+         evict();
+      } finally {
+         evictionLock.unlock();
+      }
+   }
+
+   @Override
+   public T remove(final String key) {
+      evictionLock.lock();
+      try {
+         final Node<T> node = data.remove(key);
+         if (node == null) {
+            return null;
+         }
+
+         detach(node);
+         return isExpired(node, ticker.getAsLong()) ? null : node.value;
+      } finally {
+         evictionLock.unlock();
+      }
+   }
+
+   @Override
+   public void lock(final String key) {
+      locks.lock(key);
+   }
+
+   @Override
+   public void unlock(final String key) {
+      locks.unlock(key);
+   }
+
+   @Override
+   public boolean tryLock(final String key) {
+      return locks.tryLock(key);
+   }
+
+   @Override
+   public void clear() {
+      evictionLock.lock();
+      try {
+         data.values().forEach(node -> node.segment = null); // lookups in progress must not touch the cleared lists
+         data.clear();
+         window.clear();
+         probation.clear();
+         protectedSegment.clear();
+         writeOrder.clear();
+      } finally {
+         evictionLock.unlock();
+      }
+   }
+
+   /**
+    * Gets the number of entries including the expired ones not removed yet.
+    *
+    * @return the number of entries
+    */
+   int size() {
+      return data.size();
+   }
+
+   /**
+    * Gets the total weight of the entries.
+    *
+    * @return the total weight of the entries
+    */
+   long weight() {
+      evictionLock.lock();
+      try {
+         return window.weight + probation.weight + protectedSegment.weight;
+      } finally {
+         evictionLock.unlock();
+      }
+   }
+
+   /**
+    * Gets the number of keys locked or waited for.
+    *
+    * @return the number of keys locked or waited for
+    */
+   int lockCount() {
+      return locks.size();
+   }
+
+   private boolean isExpired(final Node<T> node, final long now) {
+      return policy.getExpireAfterWrite() > 0 && now - node.writeTime >= policy.getExpireAfterWrite();
+   }
+
+   private void recordMiss(final String key) {
+      if (sketch != null && evictionLock.tryLock()) {
+         try {
+            sketch.increment(key);
+         } finally {
+            evictionLock.unlock();
+         }
+      }
+   }
+
+   private void recordHit(final Node<T> node) {
+      if (sketch != null && evictionLock.tryLock()) {
+         try {
+            if (node.segment != null) { // not removed meanwhile
+               onAccess(node);
+            }
+         } finally {
+            evictionLock.unlock();
+         }
+      }
+   }
+
+   private void removeExpired(final Node<T> node) {
+      evictionLock.lock();
+      try {
+         if (data.remove(node.key, node)) {
+            detach(node);
+         }
+      } finally {
+         evictionLock.unlock();
+      }
+   }
+
+   private void onAccess(final Node<T> node) {
+      sketch.increment(node.key);
+
+      switch (node.segment) {
+         case WINDOW:
+            window.moveToLast(node);
+            break;
+         case PROBATION:
+            probation.remove(node);
+            protectedSegment.addLast(node, Segment.PROTECTED);
+            while (protectedSegment.weight > protectedMaximum && protectedSegment.first != node) {
+               final Node<T> demoted = protectedSegment.first;
+               protectedSegment.remove(demoted);
+               probation.addLast(demoted, Segment.PROBATION);
+            }
+            break;
+         case PROTECTED:
+            protectedSegment.moveToLast(node);
+            break;
+      }
+   }
+
+   private void attach(final Node<T> node) {
+      window.addLast(node, Segment.WINDOW);
+      if (policy.getExpireAfterWrite() > 0) {
+         writeOrder.put(node.key, node);
+      }
+      if (sketch != null) {
+         sketch.increment(node.key);
+      }
+   }
+
+   private void detach(final Node<T> node) {
+      switch (node.segment) {
+         case WINDOW:
+            window.remove(node);
+            break;
+         case PROBATION:
+            probation.remove(node);
+            break;
+         case PROTECTED:
+            protectedSegment.remove(node);
+            break;
+      }
+      node.segment = null;
+      writeOrder.remove(node.key, node);
+   }
+
+   private void expire(final long now) {
+      while (!writeOrder.isEmpty()) {
+         final Node<T> node = writeOrder.values().iterator().next();
+         if (!isExpired(node, now)) {
+            return;
+         }
+
+         data.remove(node.key, node);
+         detach(node);
+      }
+   }
+
+   private void evict() {
+      if (sketch == null) {
+         return;
+      }
+
+      while (window.weight > windowMaximum && window.first != null) {
+         final Node<T> node = window.first;
+         window.remove(node);
+         probation.addLast(node, Segment.PROBATION);
+      }
+
+      while (window.weight + probation.weight + protectedSegment.weight > policy.getMaximumWeight()) {
+         final Node<T> evicted;
+         if (probation.first != null && probation.first != probation.last) {
+            final Node<T> victim = probation.first;
+            final Node<T> candidate = probation.last;
+            evicted = sketch.frequency(candidate.key) > sketch.frequency(victim.key) ? victim : candidate;
+         } else if (probation.first != null) {
+            evicted = probation.first;
+         } else if (protectedSegment.first != null) {
+            evicted = protectedSegment.first;
+         } else {
+            evicted = window.first;
+         }
+
+         data.remove(evicted.key, evicted);
+         detach(evicted);
+      }
+   }
+
+   private enum Segment {
+      WINDOW, PROBATION, PROTECTED
+   }
+
+   private static class Node<T> {
+
+      private final String key;
+      private final T value;
+      private final long weight;
+      private final long writeTime;
+      private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+      // guarded by the eviction lock
+      private Segment segment;
+      private Node<T> previous;
+      private Node<T> next;
+
+      private Node(final String key, final T value, final long weight, final long writeTime) {
+         this.key = key;
+         this.value = value;
+         this.weight = weight;
+         this.writeTime = writeTime;
+      }
+   }
+
+   /**
+    * Doubly linked list of entries from the least to the most recently used one, with their total weight.
+    */
+   private static class NodeList<T> {
+
+      private Node<T> first;
+      private Node<T> last;
+      private long weight = 0L;
+
+      private void addLast(final Node<T> node, final Segment segment) {
+         node.segment = segment;
+         node.previous = last;
+         node.next = null;
+         if (last != null) {
+            last.next = node;
+         } else {
+            first = node;
+         }
+         last = node;
+         weight += node.weight;
+      }
+
+      private void remove(final Node<T> node) {
+         if (node.previous != null) {
+            node.previous.next = node.next;
+         } else {
+            first = node.next;
+         }
+         if (node.next != null) {
+            node.next.previous = node.previous;
+         } else {
+            last = node.previous;
+         }
+         node.previous = null;
+         node.next = null;
+         weight -= node.weight;
+      }
+
+      private void moveToLast(final Node<T> node) {
+         if (node != last) {
+            final Segment segment = node.segment;
+            remove(node);
+            addLast(node, segment);
+         }
+      }
+
+      private void clear() {
+         first = null;
+         last = null;
+         weight = 0L;
+      }
+   }
+}
@@ -0,0 +1,52 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.cache.simple;
+
+import io.lumeer.engine.api.cache.Cache;
+import io.lumeer.engine.api.cache.CacheFactory;
+import io.lumeer.engine.api.cache.CachePolicy;
+
+import java.io.Serializable;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+/**
+ * Creates caches bounded by their {@link CachePolicy}, see {@link BoundedCache}. The entries are refreshed
+ * on the managed executor of the container.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+@ApplicationScoped
+public class BoundedCacheFactory implements CacheFactory, Serializable {
+
+   @Inject
+   private ManagedExecutorService executorService;
+
+   @Override
+   public <T> Cache<T> getCache() {
+      return getCache(CachePolicy.UNBOUNDED);
+   }
+
+   @Override
+   public <T> Cache<T> getCache(final CachePolicy policy) {
+      return new BoundedCache<>(policy, executorService);
+   }
+}
@@ -0,0 +1,98 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.cache.simple;
+
+/**
+ * Count-min sketch estimating how often the keys were used recently. Each key has a counter in every row, its
+ * frequency is the smallest of them. The counters saturate at {@link #MAX_COUNT} and all of them are halved
+ * periodically so that old popularity fades away. Not thread safe.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+class FrequencySketch {
+
+   static final int MAX_COUNT = 15;
+
+   private static final int DEPTH = 4;
+   private static final int MAX_WIDTH = 1 << 24;
+   private static final int[] SEEDS = { 0x97cb3127, 0xb3f0ba47, 0x2fb1d8a5, 0xef8d35b1 };
+
+   private final byte[] counters;
+   private final int mask;
+   private final int sampleSize;
+   private int additions = 0;
+
+   /**
+    * Creates a sketch for a cache of the given capacity.
+    *
+    * @param capacity
+    *       the maximum number of entries of the cache
+    */
+   FrequencySketch(final long capacity) {
+      final int width = Integer.highestOneBit((int) Math.min(MAX_WIDTH, Math.max(16L, capacity)) * 2 - 1);
+      this.counters = new byte[DEPTH * width];
+      this.mask = width - 1;
+      this.sampleSize = 10 * width;
+   }
+
+   int frequency(final String key) {
+      final int hash = spread(key.hashCode());
+      int frequency = MAX_COUNT;
+      for (int i = 0; i < DEPTH; i++) {
+         frequency = Math.min(frequency, counters[index(hash, i)]);
+      }
+
+      return frequency;
+   }
+
+   void increment(final String key) {
+      final int hash = spread(key.hashCode());
+      boolean added = false;
+      for (int i = 0; i < DEPTH; i++) {
+         final int index = index(hash, i);
+         if (counters[index] < MAX_COUNT) {
+            counters[index]++;
+            added = true;
+         }
+      }
+
+      if (added && ++additions >= sampleSize) {
+         reset();
+      }
+   }
+
+   private void reset() {
+      for (int i = 0; i < counters.length; i++) {
+         counters[i] >>>= 1;
+      }
+      additions /= 2;
+   }
+
+   private int index(final int hash, final int row) {
+      int h = (hash + SEEDS[row]) * SEEDS[row];
+      h ^= h >>> 16;
+      return row * (mask + 1) + (h & mask);
+   }
+
+   private static int spread(final int hash) {
+      final int h = hash * 0x9e3779b9;
+      return h ^ (h >>> 16);
+   }
+}
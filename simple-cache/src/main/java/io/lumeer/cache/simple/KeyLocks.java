@@ -0,0 +1,87 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.cache.simple;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reentrant locks of cache keys. A lock exists only while a thread holds it or waits for it, so the locks of keys
+ * that are no longer used do not pile up.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+class KeyLocks {
+
+   private final Map<String, CountedLock> locks = new ConcurrentHashMap<>();
+
+   void lock(final String key) {
+      acquire(key).lock();
+   }
+
+   boolean tryLock(final String key) {
+      final CountedLock l = acquire(key);
+      if (l.tryLock()) {
+         return true;
+      }
+
+      release(key);
+      return false;
+   }
+
+   void unlock(final String key) {
+      final CountedLock l = locks.get(key);
+
+      if (l != null) {
+         l.unlock();
+         release(key);
+      }
+   }
+
+   /**
+    * Gets the number of keys being locked or waited for.
+    *
+    * @return the number of keys being locked or waited for
+    */
+   int size() {
+      return locks.size();
+   }
+
+   private CountedLock acquire(final String key) {
+      return locks.compute(key, (k, l) -> {
+         final CountedLock lock = l != null ? l : new CountedLock();
+         lock.users++;
+         return lock;
+      });
+   }
+
+   private void release(final String key) {
+      locks.computeIfPresent(key, (k, l) -> --l.users == 0 ? null : l);
+   }
+
+   /**
+    * Lock with the number of its holds and of the threads waiting for it, guarded by the map entry.
+    */
+   private static class CountedLock extends ReentrantLock {
+
+      private int users = 0;
+   }
+}
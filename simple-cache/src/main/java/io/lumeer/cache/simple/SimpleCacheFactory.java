@@ -24,10 +24,15 @@ import io.lumeer.engine.api.cache.CacheFactory;
 
 import java.io.Serializable;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Alternative;
 
 /**
+ * Creates unbounded caches ignoring any cache policy. It is an alternative to {@link BoundedCacheFactory} that must be
+ * selected in beans.xml.
+ *
  * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
  */
+@Alternative
 @ApplicationScoped
 public class SimpleCacheFactory implements CacheFactory, Serializable {
 
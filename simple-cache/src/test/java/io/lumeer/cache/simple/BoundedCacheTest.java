@@ -0,0 +1,150 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.cache.simple;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.lumeer.engine.api.cache.CachePolicy;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class BoundedCacheTest {
+
+   private final AtomicLong time = new AtomicLong(0L);
+
+   @Test
+   public void testMaximumSize() {
+      final BoundedCache<Integer> cache = new BoundedCache<>(new CachePolicy(100, 0, 0), time::get, Runnable::run);
+
+      for (int i = 0; i < 1000; i++) {
+         cache.set("key" + i, i);
+      }
+
+      assertThat(cache.size()).isEqualTo(100);
+      assertThat(cache.weight()).isEqualTo(100L);
+   }
+
+   @Test
+   public void testFrequentlyUsedEntriesSurvive() {
+      final BoundedCache<Integer> cache = new BoundedCache<>(new CachePolicy(100, 0, 0), time::get, Runnable::run);
+
+      for (int i = 0; i < 50; i++) {
+         cache.set("hot" + i, i);
+      }
+      for (int round = 0; round < 5; round++) {
+         for (int i = 0; i < 50; i++) {
+            cache.get("hot" + i);
+         }
+      }
+
+      // a scan of entries used only once must not flush the popular ones
+      for (int i = 0; i < 10000; i++) {
+         cache.set("cold" + i, i);
+      }
+
+      int hits = 0;
+      for (int i = 0; i < 50; i++) {
+         if (cache.get("hot" + i) != null) {
+            hits++;
+         }
+      }
+      assertThat(hits).isGreaterThanOrEqualTo(45);
+      assertThat(cache.size()).isEqualTo(100);
+   }
+
+   @Test
+   public void testMaximumWeight() {
+      final BoundedCache<String> cache = new BoundedCache<>(new CachePolicy(100, (key, value) -> ((String) value).length(), 0, 0), time::get, Runnable::run);
+
+      cache.set("a", "0123456789");
+      cache.set("b", new String(new char[95]));
+      assertThat(cache.weight()).isLessThanOrEqualTo(100L);
+
+      cache.set("c", new String(new char[200]));
+      assertThat(cache.get("c")).isNull();
+      assertThat(cache.weight()).isLessThanOrEqualTo(100L);
+   }
+
+   @Test
+   public void testExpireAfterWrite() {
+      final BoundedCache<Integer> cache = new BoundedCache<>(new CachePolicy(0, 1000, 0), time::get, Runnable::run);
+
+      cache.set("a", 1);
+      time.set(500L);
+      cache.set("b", 2);
+      assertThat(cache.get("a")).isEqualTo(1);
+
+      time.set(1000L);
+      assertThat(cache.get("a")).isNull();
+      assertThat(cache.computeIfAbsent("a", key -> 3)).isEqualTo(3);
+
+      // writes remove the expired entries even when they are not read
+      time.set(1500L);
+      cache.set("c", 4);
+      assertThat(cache.size()).isEqualTo(2);
+   }
+
+   @Test
+   public void testRefreshAfterWrite() {
+      final Queue<Runnable> refreshes = new ArrayDeque<>();
+      final BoundedCache<Integer> cache = new BoundedCache<>(new CachePolicy(0, 0, 1000), time::get, refreshes::add);
+      final AtomicInteger loads = new AtomicInteger(0);
+
+      assertThat(cache.computeIfAbsent("a", key -> loads.incrementAndGet())).isEqualTo(1);
+      assertThat(cache.computeIfAbsent("a", key -> loads.incrementAndGet())).isEqualTo(1);
+      assertThat(refreshes).isEmpty();
+
+      // the stale value is returned and the refresh is handed over to the executor only once
+      time.set(1000L);
+      assertThat(cache.computeIfAbsent("a", key -> loads.incrementAndGet())).isEqualTo(1);
+      assertThat(cache.computeIfAbsent("a", key -> loads.incrementAndGet())).isEqualTo(1);
+      assertThat(refreshes).hasSize(1);
+      assertThat(loads.get()).isEqualTo(1);
+
+      refreshes.poll().run();
+      assertThat(loads.get()).isEqualTo(2);
+      assertThat(cache.get("a")).isEqualTo(2);
+   }
+
+   @Test
+   public void testLocksAreReleased() {
+      final BoundedCache<Integer> cache = new BoundedCache<>(CachePolicy.UNBOUNDED, time::get, Runnable::run);
+
+      for (int i = 0; i < 100; i++) {
+         cache.lock("key" + i);
+         cache.lock("key" + i);
+         cache.unlock("key" + i);
+         assertThat(cache.lockCount()).isEqualTo(1);
+         cache.unlock("key" + i);
+      }
+      assertThat(cache.tryLock("key")).isTrue();
+      cache.unlock("key");
+
+      assertThat(cache.lockCount()).isEqualTo(0);
+   }
+}
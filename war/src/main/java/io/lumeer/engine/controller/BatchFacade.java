@@ -23,15 +23,20 @@ import io.lumeer.engine.api.batch.Batch;
 import io.lumeer.engine.api.batch.MergeBatch;
 import io.lumeer.engine.api.batch.SplitBatch;
 import io.lumeer.engine.api.constraint.InvalidConstraintException;
+import io.lumeer.engine.api.data.BulkWriteResult;
+import io.lumeer.engine.api.data.DataCursor;
 import io.lumeer.engine.api.data.DataDocument;
 import io.lumeer.engine.api.data.DataStorage;
+import io.lumeer.engine.api.data.DataStorageDialect;
 import io.lumeer.engine.api.exception.DbException;
 import io.lumeer.engine.provider.DataStorageProvider;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.SessionScoped;
 import javax.inject.Inject;
@@ -51,6 +56,9 @@ public class BatchFacade implements Serializable {
    @Inject
    private DocumentFacade documentFacade;
 
+   @Inject
+   private DataStorageDialect dataStorageDialect;
+
    @Inject
    private DataStorageProvider dataStorageProvider;
 
@@ -59,144 +67,215 @@ public class BatchFacade implements Serializable {
       dataStorage = dataStorageProvider.getUserStorage();
    }
 
-   public void executeBatch(final Batch batch) throws DbException, InvalidConstraintException {
+   /**
+    * Runs the given batch over all documents of its collection. Modified documents are written to the data storage in chunks.
+    * Constraints of all modified documents are checked before the first chunk is written, so an invalid value leaves
+    * the collection untouched.
+    *
+    * @param batch
+    *       The batch operation to run.
+    * @return result of the bulk write with errors indexed by the position of the document in the collection
+    * @throws DbException
+    *       When there was an error working with the data storage.
+    * @throws InvalidConstraintException
+    *       When the new change did not pass the constraint criteria.
+    */
+   public BulkWriteResult executeBatch(final Batch batch) throws DbException, InvalidConstraintException {
       // first check collection size
       if (dataStorage.count(batch.getCollectionName(), null) > 10000) {
          throw new UnsupportedOperationException("Cannot run a batch process on collections with more than 10000 documents.");
       }
 
       if (batch instanceof MergeBatch) {
-         internalExecuteBatch((MergeBatch) batch);
+         return internalExecuteBatch((MergeBatch) batch);
       } else if (batch instanceof SplitBatch) {
-         internalExecuteBatch((SplitBatch) batch);
+         return internalExecuteBatch((SplitBatch) batch);
       }
-   }
 
-   private void internalExecuteBatch(final MergeBatch batch) throws DbException, InvalidConstraintException {
-      List<DataDocument> documents = dataStorage.search(batch.getCollectionName(), null, null, -1, -1);
+      return new BulkWriteResult();
+   }
 
-      for (final DataDocument doc : documents) {
-         if (batch.getMergeType() == MergeBatch.MergeType.JOIN) {
-            final StringBuilder sb = new StringBuilder();
+   private BulkWriteResult internalExecuteBatch(final MergeBatch batch) throws DbException, InvalidConstraintException {
+      return processDocuments(batch.getCollectionName(), batch.isKeepOriginal(), doc -> mergeDocument(batch, doc));
+   }
 
-            batch.getAttributes().forEach(attr -> {
-               final Object value = doc.get(attr);
+   private void mergeDocument(final MergeBatch batch, final DataDocument doc) {
+      if (batch.getMergeType() == MergeBatch.MergeType.JOIN) {
+         final StringBuilder sb = new StringBuilder();
 
-               if (value != null) {
-                  if (sb.length() > 0) {
-                     sb.append(batch.getJoin());
-                  }
+         batch.getAttributes().forEach(attr -> {
+            final Object value = doc.get(attr);
 
-                  sb.append(value);
+            if (value != null) {
+               if (sb.length() > 0) {
+                  sb.append(batch.getJoin());
                }
-            });
-
-            doc.put(batch.getResultAttribute(), sb.toString());
-         } else if (batch.getMergeType() == MergeBatch.MergeType.SUM) {
-            double sum = 0d;
-            long longSum = 0l;
-            BigDecimal bigDecimal = new BigDecimal("0");
-            BigInteger bigInteger = new BigInteger("0");
-            boolean wasFloating = false;
-            boolean onlyBigDecimal = true;
-            boolean onlyBigInteger = true;
-
-            for (final String attr : batch.getAttributes()) {
-               final Object value = doc.get(attr);
-
-               if (value != null) {
-                  if (value instanceof Double) {
-                     sum = sum + (double) value;
-                     wasFloating = true;
-                     onlyBigDecimal = false;
-                  } else if (value instanceof Integer) {
-                     sum = sum + (int) value;
-                     longSum = longSum + (int) value;
-                     onlyBigDecimal = false;
-                  } else if (value instanceof Long) {
-                     sum = sum + (long) value;
-                     longSum = longSum + (long) value;
-                     onlyBigDecimal = false;
-                  } else if (value instanceof Float) {
-                     sum = sum + (float) value;
-                     wasFloating = true;
-                     onlyBigDecimal = false;
-                  } else if (value instanceof Byte) {
-                     sum = sum + (byte) value;
-                     longSum = longSum + (byte) value;
-                     onlyBigDecimal = false;
-                  } else if (value instanceof BigDecimal) {
-                     bigDecimal = bigDecimal.add((BigDecimal) value);
-                     sum = sum + ((BigDecimal) value).doubleValue();
-                     onlyBigInteger = false;
-                  } else if (value instanceof BigInteger) {
-                     bigDecimal = bigDecimal.add(new BigDecimal((BigInteger) value));
-                     bigInteger = bigInteger.add((BigInteger) value);
-                     sum = sum + ((BigInteger) value).longValue();
-                  }
-               }
-            }
 
-            // now see what types we had and try to be as restrictive as possible
-            if (onlyBigInteger) {
-               doc.put(batch.getResultAttribute(), bigInteger);
-            } else if (onlyBigDecimal) {
-               doc.put(batch.getResultAttribute(), bigDecimal);
-            } else if (!wasFloating) {
-               doc.put(batch.getResultAttribute(), longSum);
-            } else {
-               doc.put(batch.getResultAttribute(), sum);
+               sb.append(value);
             }
-         } else {
-            final DataDocument subDoc = new DataDocument();
+         });
+
+         doc.put(batch.getResultAttribute(), sb.toString());
+      } else if (batch.getMergeType() == MergeBatch.MergeType.SUM) {
+         double sum = 0d;
+         long longSum = 0l;
+         BigDecimal bigDecimal = new BigDecimal("0");
+         BigInteger bigInteger = new BigInteger("0");
+         boolean wasFloating = false;
+         boolean onlyBigDecimal = true;
+         boolean onlyBigInteger = true;
 
-            batch.getAttributes().forEach(attr -> {
-               final Object value = doc.get(attr);
+         for (final String attr : batch.getAttributes()) {
+            final Object value = doc.get(attr);
 
-               if (value != null) {
-                  subDoc.put(attr, doc.get(attr));
+            if (value != null) {
+               if (value instanceof Double) {
+                  sum = sum + (double) value;
+                  wasFloating = true;
+                  onlyBigDecimal = false;
+               } else if (value instanceof Integer) {
+                  sum = sum + (int) value;
+                  longSum = longSum + (int) value;
+                  onlyBigDecimal = false;
+               } else if (value instanceof Long) {
+                  sum = sum + (long) value;
+                  longSum = longSum + (long) value;
+                  onlyBigDecimal = false;
+               } else if (value instanceof Float) {
+                  sum = sum + (float) value;
+                  wasFloating = true;
+                  onlyBigDecimal = false;
+               } else if (value instanceof Byte) {
+                  sum = sum + (byte) value;
+                  longSum = longSum + (byte) value;
+                  onlyBigDecimal = false;
+               } else if (value instanceof BigDecimal) {
+                  bigDecimal = bigDecimal.add((BigDecimal) value);
+                  sum = sum + ((BigDecimal) value).doubleValue();
+                  onlyBigInteger = false;
+               } else if (value instanceof BigInteger) {
+                  bigDecimal = bigDecimal.add(new BigDecimal((BigInteger) value));
+                  bigInteger = bigInteger.add((BigInteger) value);
+                  sum = sum + ((BigInteger) value).longValue();
                }
-            });
+            }
+         }
 
-            doc.put(batch.getResultAttribute(), subDoc);
+         // now see what types we had and try to be as restrictive as possible
+         if (onlyBigInteger) {
+            doc.put(batch.getResultAttribute(), bigInteger);
+         } else if (onlyBigDecimal) {
+            doc.put(batch.getResultAttribute(), bigDecimal);
+         } else if (!wasFloating) {
+            doc.put(batch.getResultAttribute(), longSum);
+         } else {
+            doc.put(batch.getResultAttribute(), sum);
          }
+      } else {
+         final DataDocument subDoc = new DataDocument();
 
-         if (!batch.isKeepOriginal()) {
-            batch.getAttributes().forEach(a -> {
-               try {
-                  documentFacade.dropAttribute(batch.getCollectionName(), doc.getId(), a);
-               } catch (DbException e) {
-                  // nps, we cannot do m ore
-               }
-               doc.remove(a); // TODO check - for future compatibility but has no effect now
-            });
+         batch.getAttributes().forEach(attr -> {
+            final Object value = doc.get(attr);
+
+            if (value != null) {
+               subDoc.put(attr, doc.get(attr));
+            }
+         });
+
+         doc.put(batch.getResultAttribute(), subDoc);
+      }
+
+      if (!batch.isKeepOriginal()) {
+         batch.getAttributes().forEach(doc::remove);
+      }
+   }
+
+   private BulkWriteResult internalExecuteBatch(final SplitBatch batch) throws DbException, InvalidConstraintException {
+      return processDocuments(batch.getCollectionName(), batch.isKeepOriginal(), doc -> splitDocument(batch, doc));
+   }
+
+   private void splitDocument(final SplitBatch batch, final DataDocument doc) {
+      final Object value = doc.get(batch.getAttribute());
+
+      if (value != null) {
+         final String original = value instanceof String ? (String) value : value.toString();
+         final String[] parts = original.split(batch.getDelimiter(), batch.getSplitAttributes().size());
+
+         for (int i = 0; i < parts.length; i++) {
+            doc.put(batch.getSplitAttributes().get(i), batch.isTrim() ? parts[i].trim() : parts[i]);
          }
+      }
 
-         documentFacade.updateDocument(batch.getCollectionName(), doc);
+      if (!batch.isKeepOriginal()) {
+         doc.remove(batch.getAttribute());
       }
    }
 
-   private void internalExecuteBatch(final SplitBatch batch) throws DbException, InvalidConstraintException {
-      List<DataDocument> documents = dataStorage.search(batch.getCollectionName(), null, null, -1, -1);
+   /**
+    * Reads all documents of the collection using a cursor, applies the transformation to them and writes them back
+    * in chunks. Only a single chunk of documents is held in memory at a time. The collection is read twice, first
+    * to check constraints of all transformed documents and then to write them, so that a document failing the check
+    * aborts the batch before any chunk is written.
+    *
+    * @param collectionName
+    *       the name of the collection to process
+    * @param keepOriginal
+    *       whether the transformation keeps all original attributes
+    * @param transformation
+    *       modifies the given document in place
+    * @return result of the bulk writes with errors indexed by the position of the document in the collection
+    * @throws DbException
+    *       When there was an error working with the data storage.
+    * @throws InvalidConstraintException
+    *       When the new change did not pass the constraint criteria.
+    */
+   private BulkWriteResult processDocuments(final String collectionName, final boolean keepOriginal, final Consumer<DataDocument> transformation) throws DbException, InvalidConstraintException {
+      final BulkWriteResult result = new BulkWriteResult();
+      final List<DataDocument> originals = new ArrayList<>();
+      final List<DataDocument> documents = new ArrayList<>();
+      int offset = 0;
 
-      for (final DataDocument doc : documents) {
-         final Object value = doc.get(batch.getAttribute());
+      try (final DataCursor cursor = dataStorage.searchCursor(collectionName, null, null, 0, 0, DataStorage.DEFAULT_BULK_CHUNK_SIZE)) {
+         while (cursor.hasNext()) {
+            final DataDocument doc = cursor.next();
+            transformation.accept(doc);
+            documentFacade.checkConstraints(collectionName, doc);
+         }
+      }
 
-         if (value != null) {
-            final String original = value instanceof String ? (String) value : value.toString();
-            final String[] parts = original.split(batch.getDelimiter(), batch.getSplitAttributes().size());
+      // sorted by id so that the rewritten documents are not read again
+      try (final DataCursor cursor = dataStorage.searchCursor(collectionName, null, dataStorageDialect.documentIdSort(), 0, 0, DataStorage.DEFAULT_BULK_CHUNK_SIZE)) {
+         while (cursor.hasNext()) {
+            final DataDocument doc = cursor.next();
+            originals.add(new DataDocument(doc));
+            transformation.accept(doc);
+            documents.add(doc);
 
-            for (int i = 0; i < parts.length; i++) {
-               doc.put(batch.getSplitAttributes().get(i), batch.isTrim() ? parts[i].trim() : parts[i]);
+            if (documents.size() >= DataStorage.DEFAULT_BULK_CHUNK_SIZE) {
+               result.merge(writeDocuments(collectionName, originals, documents, keepOriginal), offset);
+               offset += documents.size();
+               originals.clear();
+               documents.clear();
             }
          }
+      }
 
-         if (!batch.isKeepOriginal()) {
-            documentFacade.dropAttribute(batch.getCollectionName(), doc.getId(), batch.getAttribute());
-            doc.remove(batch.getAttribute()); // TODO check - for future compatibility
-         }
+      if (!documents.isEmpty()) {
+         result.merge(writeDocuments(collectionName, originals, documents, keepOriginal), offset);
+      }
+
+      return result;
+   }
 
-         documentFacade.updateDocument(batch.getCollectionName(), doc);
+   /**
+    * Writes modified documents in a single bulk operation. When original attributes are not kept,
+    * documents are replaced so that the removed attributes disappear within the same new version.
+    */
+   private BulkWriteResult writeDocuments(final String collectionName, final List<DataDocument> originals, final List<DataDocument> documents, final boolean keepOriginal) throws DbException, InvalidConstraintException {
+      if (keepOriginal) {
+         return documentFacade.updateDocuments(collectionName, originals, documents);
+      } else {
+         return documentFacade.replaceDocuments(collectionName, originals, documents);
       }
    }
 
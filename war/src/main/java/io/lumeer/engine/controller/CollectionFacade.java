@@ -20,9 +20,10 @@
 package io.lumeer.engine.controller;
 
 import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.constraint.CompiledConstraints;
 import io.lumeer.engine.api.constraint.Constraint;
-import io.lumeer.engine.api.constraint.ConstraintManager;
 import io.lumeer.engine.api.constraint.InvalidConstraintException;
+import io.lumeer.engine.api.data.BulkWriteResult;
 import io.lumeer.engine.api.data.DataDocument;
 import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.api.event.ChangeCollectionName;
@@ -35,6 +36,7 @@ import io.lumeer.engine.api.exception.CollectionMetadataDocumentNotFoundExceptio
 import io.lumeer.engine.api.exception.CollectionNotFoundException;
 import io.lumeer.engine.api.exception.DbException;
 import io.lumeer.engine.api.exception.UnauthorizedAccessException;
+import io.lumeer.engine.api.exception.UnsuccessfulOperationException;
 import io.lumeer.engine.api.exception.UserCollectionAlreadyExistsException;
 import io.lumeer.engine.provider.DataStorageProvider;
 import io.lumeer.engine.util.ErrorMessageBuilder;
@@ -43,6 +45,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -79,6 +82,9 @@ public class CollectionFacade implements Serializable {
    @Inject
    private VersionFacade versionFacade;
 
+   @Inject
+   private DocumentMetadataFacade documentMetadataFacade;
+
    @Inject
    private Event<CreateCollection> createCollectionEvent;
 
@@ -275,6 +281,7 @@ public class CollectionFacade implements Serializable {
          for (DataDocument document : documents) {
             String id = document.getId();
             dataStorage.dropAttribute(collectionName, id, attributeName);
+            dataStorage.incrementAttributeValueBy(collectionName, id, LumeerConst.Document.METADATA_REVISION_KEY, 1);
          }
       } else {
          throw new CollectionNotFoundException(ErrorMessageBuilder.collectionNotFoundString(collectionName));
@@ -317,15 +324,17 @@ public class CollectionFacade implements Serializable {
     * @return true if retype was successful, false if new type is not valid or some values in collection cannot be converted to new type
     * @throws CollectionNotFoundException
     *       if collection was not found in database
+    * @throws UnsuccessfulOperationException
+    *       when some of the converted values could not be written, the attribute type is left unchanged then
     */
-   public boolean retypeAttribute(final String collectionName, final String attributeName, final String newType) throws CollectionNotFoundException {
+   public boolean retypeAttribute(final String collectionName, final String attributeName, final String newType) throws CollectionNotFoundException, UnsuccessfulOperationException {
       if (dataStorage.hasCollection(collectionName)) {
          if (!LumeerConst.Collection.COLLECTION_ATTRIBUTE_TYPE_VALUES.contains(newType)) { // new type is not from our list
             return false;
          }
 
          List<DataDocument> allDocuments = getAllDocuments(collectionName);
-         List<Object> newValues = new ArrayList<>();
+         List<DataDocument> updates = new ArrayList<>();
          boolean isValid = true;
          for (DataDocument document : allDocuments) {
             Object newValue = collectionMetadataFacade.checkValueTypeAndConvert(document.get(attributeName), newType);
@@ -333,15 +342,21 @@ public class CollectionFacade implements Serializable {
                isValid = false; // we have found invalid value, so the retype cannot be done
                break;
             }
-            newValues.add(newValue);
+            DataDocument update = new DataDocument(attributeName, newValue);
+            update.put(LumeerConst.Document.METADATA_REVISION_KEY, documentMetadataFacade.getDocumentRevision(document) + 1);
+            update.setId(document.getId());
+            updates.add(update);
          }
 
          if (isValid) {
-            collectionMetadataFacade.retypeCollectionAttribute(collectionName, attributeName, newType);
-            // TODO: How to use BatchFacade to retype value in all documents?
-            for (int i = 0; i < allDocuments.size(); i++) {
-               dataStorage.updateDocument(collectionName, new DataDocument(attributeName, newValues.get(i)), allDocuments.get(i).getId());
+            final BulkWriteResult result = dataStorage.updateDocuments(collectionName, updates);
+            if (result.hasErrors()) {
+               final Map<String, String> errors = new LinkedHashMap<>();
+               result.getErrors().forEach((index, message) -> errors.put(updates.get(index).getId(), message));
+               throw new UnsuccessfulOperationException(ErrorMessageBuilder.retypeAttributeUnsuccesfulString(attributeName, errors));
             }
+
+            collectionMetadataFacade.retypeCollectionAttribute(collectionName, attributeName, newType);
             return true;
          } else {
             return false;
@@ -370,7 +385,7 @@ public class CollectionFacade implements Serializable {
       if (dataStorage.hasCollection(collectionName)) {
 
          // we check if attribute value in all existing documents satisfies new constraint
-         ConstraintManager constraintManager = new ConstraintManager(Collections.singletonList(constraintConfiguration));
+         CompiledConstraints constraints = collectionMetadataFacade.getConstraintManager().compile(Collections.singletonList(constraintConfiguration));
 
          List<DataDocument> allDocuments = getAllDocuments(collectionName);
          for (DataDocument document : allDocuments) {
@@ -379,7 +394,7 @@ public class CollectionFacade implements Serializable {
             if (value == null) { // document does not contain given attribute
                continue;
             }
-            if (!(constraintManager.isValid(value) == Constraint.ConstraintResult.VALID)) {
+            if (!(constraints.isValid(value) == Constraint.ConstraintResult.VALID)) {
                return false; // we have found invalid value, so the constraint cannot be added
             }
          }
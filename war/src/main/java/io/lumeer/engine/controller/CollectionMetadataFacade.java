@@ -20,6 +20,9 @@
 package io.lumeer.engine.controller;
 
 import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.cache.Cache;
+import io.lumeer.engine.api.cache.CacheManager;
+import io.lumeer.engine.api.constraint.CompiledConstraints;
 import io.lumeer.engine.api.constraint.Constraint;
 import io.lumeer.engine.api.constraint.ConstraintManager;
 import io.lumeer.engine.api.constraint.InvalidConstraintException;
@@ -33,6 +36,7 @@ import io.lumeer.engine.api.exception.CollectionNotFoundException;
 import io.lumeer.engine.api.exception.UnauthorizedAccessException;
 import io.lumeer.engine.api.exception.UserCollectionAlreadyExistsException;
 import io.lumeer.engine.api.exception.UserCollectionNotFoundException;
+import io.lumeer.engine.provider.AttributeCountAggregator;
 import io.lumeer.engine.provider.DataStorageProvider;
 import io.lumeer.engine.rest.dao.AccessRightsDao;
 import io.lumeer.engine.util.ErrorMessageBuilder;
@@ -40,8 +44,8 @@ import io.lumeer.engine.util.Utils;
 
 import java.io.Serializable;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -49,6 +53,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiFunction;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.SessionScoped;
 import javax.enterprise.event.Event;
@@ -63,6 +68,8 @@ import javax.inject.Named;
 @SessionScoped
 public class CollectionMetadataFacade implements Serializable {
 
+   public static final String SCHEMA_CACHE = "collectionSchema";
+
    private DataStorage dataStorage;
 
    @Inject
@@ -85,6 +92,12 @@ public class CollectionMetadataFacade implements Serializable {
    @Inject
    private DataStorageProvider dataStorageProvider;
 
+   @Inject
+   private AttributeCountAggregator attributeCountAggregator;
+
+   @Inject
+   private CacheManager cacheManager;
+
    @PostConstruct
    public void init() {
       dataStorage = dataStorageProvider.getUserStorage();
@@ -96,8 +109,8 @@ public class CollectionMetadataFacade implements Serializable {
     */
    public void initConstraintManager() {
       try {
-         constraintManager = new ConstraintManager();
-         constraintManager.setLocale(Locale.forLanguageTag(configurationFacade.getConfigurationString(LumeerConst.USER_LOCALE_PROPERTY).orElse("en-US")));
+         // the manager is published only with its final locale, it is never changed afterwards
+         constraintManager = new ConstraintManager(Locale.forLanguageTag(configurationFacade.getConfigurationString(LumeerConst.USER_LOCALE_PROPERTY).orElse("en-US")));
       } catch (InvalidConstraintException e) {
          throw new IllegalStateException("Illegal constraint prefix collision: ", e);
       }
@@ -216,6 +229,9 @@ public class CollectionMetadataFacade implements Serializable {
       dataStorage.createIndex(metadataCollectionName, new DataDocument(LumeerConst.Collection.COLLECTION_ATTRIBUTE_CONSTRAINTS_KEY, indexType));
       dataStorage.createIndex(metadataCollectionName, new DataDocument(LumeerConst.Collection.COLLECTION_ATTRIBUTE_NAME_KEY, indexType));
       dataStorage.createIndex(metadataCollectionName, new DataDocument(LumeerConst.Collection.COLLECTION_ATTRIBUTE_TYPE_KEY, indexType));
+
+      // a schema of the previous collection with the same name might be cached
+      invalidateCollectionSchema(internalCollectionName);
    }
 
    /**
@@ -301,6 +317,7 @@ public class CollectionMetadataFacade implements Serializable {
 
       if (!newName.isEmpty()) {
          dataStorage.updateDocument(metadataCollectionName, new DataDocument(LumeerConst.Collection.COLLECTION_ATTRIBUTE_NAME_KEY, newName), documentId);
+         invalidateCollectionSchema(collectionName);
          return true;
       }
 
@@ -340,6 +357,7 @@ public class CollectionMetadataFacade implements Serializable {
       String documentId = attributeDocument.getId();
 
       dataStorage.updateDocument(metadataCollectionName, new DataDocument(LumeerConst.Collection.COLLECTION_ATTRIBUTE_TYPE_KEY, newType), documentId);
+      invalidateCollectionSchema(collectionName);
 
       return true;
    }
@@ -401,6 +419,7 @@ public class CollectionMetadataFacade implements Serializable {
       DataDocument attributeDocument = attributeInfo.get(0);
       String documentId = attributeDocument.getId();
       dataStorage.dropDocument(metadataCollectionName, documentId);
+      invalidateCollectionSchema(collectionName);
    }
 
    /**
@@ -414,12 +433,19 @@ public class CollectionMetadataFacade implements Serializable {
     *       set of attributes' names
     */
    public void addOrIncrementAttribute(String collectionName, String attribute) {
-      String metadataCollectionName = collectionMetadataCollectionName(collectionName);
-      if (!dataStorage.hasCollection(metadataCollectionName)) { // metadata collection does not exist
-         return;
-      }
+      updateAttributeCounts(collectionName, Collections.singletonList(attribute), Collections.emptyList());
+   }
 
-      dataStorage.run(dialect.updateCollectionAttributeCountQuery(metadataCollectionName, attribute));
+   /**
+    * Adds attributes to metadata or increments their counts the same way as {@link #addOrIncrementAttribute(String, String)}.
+    *
+    * @param collectionName
+    *       internal collection name
+    * @param attributes
+    *       attributes' names
+    */
+   public void addOrIncrementAttributes(String collectionName, Collection<String> attributes) {
+      updateAttributeCounts(collectionName, attributes, Collections.emptyList());
    }
 
    /**
@@ -433,23 +459,48 @@ public class CollectionMetadataFacade implements Serializable {
     *       set of attributes' names
     */
    public void dropOrDecrementAttribute(String collectionName, String attribute) {
-      String metadataCollectionName = collectionMetadataCollectionName(collectionName);
+      updateAttributeCounts(collectionName, Collections.emptyList(), Collections.singletonList(attribute));
+   }
 
+   /**
+    * Drops attributes or decrements their counts the same way as {@link #dropOrDecrementAttribute(String, String)}.
+    *
+    * @param collectionName
+    *       internal collection name
+    * @param attributes
+    *       attributes' names
+    */
+   public void dropOrDecrementAttributes(String collectionName, Collection<String> attributes) {
+      updateAttributeCounts(collectionName, Collections.emptyList(), attributes);
+   }
+
+   /**
+    * Increments counts of added attributes and decrements counts of dropped attributes of a document at once.
+    * Changes made concurrently by other requests are written together with a single update of the metadata collection.
+    * Nothing is done if metadata collection does not exist.
+    *
+    * @param collectionName
+    *       internal collection name
+    * @param addedAttributes
+    *       names of attributes added to a document
+    * @param droppedAttributes
+    *       names of attributes dropped from a document
+    */
+   public void updateAttributeCounts(String collectionName, Collection<String> addedAttributes, Collection<String> droppedAttributes) {
+      String metadataCollectionName = collectionMetadataCollectionName(collectionName);
       if (!dataStorage.hasCollection(metadataCollectionName)) { // metadata collection does not exist
          return;
       }
 
-      List<DataDocument> attributeInfo = dataStorage.run(queryCollectionAttributeInfo(collectionName, attribute));
-      if (!attributeInfo.isEmpty()) { // in case somebody did that sooner, we may have nothing to remove
-         DataDocument attributeDocument = attributeInfo.get(0);
-         String documentId = attributeDocument.getId();
+      Map<String, Integer> countChanges = new HashMap<>();
+      addedAttributes.forEach(attribute -> countChanges.merge(attribute, 1, Integer::sum));
+      droppedAttributes.forEach(attribute -> countChanges.merge(attribute, -1, Integer::sum));
+      attributeCountAggregator.changeCounts(dataStorage, metadataCollectionName, countChanges);
 
-         // we check if this was the last document with the attribute
-         if (attributeDocument.getInteger(LumeerConst.Collection.COLLECTION_ATTRIBUTE_COUNT_KEY) == 1) {
-            dataStorage.dropDocument(metadataCollectionName, documentId);
-         } else {
-            dataStorage.incrementAttributeValueBy(metadataCollectionName, documentId, LumeerConst.Collection.COLLECTION_ATTRIBUTE_COUNT_KEY, -1);
-         }
+      // metadata of attributes with zero count are dropped, the cached type and constraints would outlive them
+      CollectionSchema schema = schemaCache().get(collectionName);
+      if (schema != null && droppedAttributes.stream().anyMatch(schema::isConfigured)) {
+         invalidateCollectionSchema(collectionName);
       }
    }
 
@@ -721,17 +772,33 @@ public class CollectionMetadataFacade implements Serializable {
     * @return null when the value is not valid, fixed value when the value is fixable, original value when the value is valid
     */
    public Object checkAndConvertAttributeValue(String collectionName, String attribute, Object valueObject) {
-      List<String> constraintConfigurations = getAttributeConstraintsConfigurationsWithoutAccessRightsCheck(collectionName, attribute);
-      valueObject = checkAttributeConstraints(valueObject, constraintConfigurations);
+      return checkAndConvertAttributeValue(getCollectionSchema(collectionName), attribute, valueObject);
+   }
+
+   /**
+    * Gets a function that does the same as checkAndConvertAttributeValue for the given collection. The function uses
+    * the schema of the collection at the time of the call, does not access the database and can be called from any thread.
+    *
+    * @param collectionName
+    *       internal collection name
+    * @return function of attribute name and value returning null when the value is not valid, converted value otherwise
+    */
+   public BiFunction<String, Object, Object> getAttributeValueConverter(String collectionName) {
+      CollectionSchema schema = getCollectionSchema(collectionName);
+      return (attribute, valueObject) -> checkAndConvertAttributeValue(schema, attribute, valueObject);
+   }
+
+   private Object checkAndConvertAttributeValue(CollectionSchema schema, String attribute, Object valueObject) {
+      valueObject = checkAttributeConstraints(valueObject, schema, attribute);
       if (valueObject == null) { // value does not satisfy constraints and could not be fixed
          return null;
       }
 
-      String type = getAttributeType(collectionName, attribute);
+      String type = schema.getType(attribute);
 
       // Date type is special - we maintain it with constraint, so we have to do special check here.
       if (type.equals(LumeerConst.Collection.COLLECTION_ATTRIBUTE_TYPE_DATE)) {
-         return checkValueDateAndConvert(valueObject.toString(), constraintConfigurations);
+         return checkValueDateAndConvert(valueObject.toString(), schema.getConstraintConfigurations(attribute));
       }
 
       return checkAttributeTypeAndConvert(valueObject, type);
@@ -747,13 +814,10 @@ public class CollectionMetadataFacade implements Serializable {
             return null;
          }
       } else {
-         // we take the last constraint, because string could be fixed according to that constraint
-         String constraint = constraintConfigurations.get(constraintConfigurations.size() - 1);
-         String format = constraint.split(":", 2)[1];
          try {
-            return new SimpleDateFormat(format).parse(valueString);
-         } catch (ParseException e) { // date could not be parsed
-            return null;
+            return constraintManager.compile(constraintConfigurations).parseDate(valueString);
+         } catch (InvalidConstraintException e) {
+            throw new IllegalStateException("Illegal constraint prefix collision: ", e);
          }
       }
    }
@@ -856,28 +920,28 @@ public class CollectionMetadataFacade implements Serializable {
    }
 
    // checks whether value satisfies all constraints
-   private Object checkAttributeConstraints(Object valueObject, List<String> constraintConfigurations) {
-      if (constraintConfigurations == null || constraintConfigurations.isEmpty()) { // there are no constraints
+   private Object checkAttributeConstraints(Object valueObject, CollectionSchema schema, String attribute) {
+      List<String> constraintConfigurations = schema.getConstraintConfigurations(attribute);
+      if (constraintConfigurations.isEmpty()) { // there are no constraints
          return valueObject;
       }
 
-      ConstraintManager constraintManager = null;
+      CompiledConstraints constraints;
       try {
-         constraintManager = new ConstraintManager(constraintConfigurations);
-         initConstraintManager(constraintManager);
+         constraints = constraintManager.compile(constraintConfigurations);
       } catch (InvalidConstraintException e) {
          throw new IllegalStateException("Illegal constraint prefix collision: ", e);
       }
 
       String valueString = valueObject.toString();
-      Constraint.ConstraintResult result = constraintManager.isValid(valueString);
+      Constraint.ConstraintResult result = constraints.isValid(valueString);
 
       if (result == Constraint.ConstraintResult.INVALID) {
          return null;
       }
 
       if (result == Constraint.ConstraintResult.FIXABLE) {
-         return constraintManager.fix(valueString);
+         return constraints.fix(valueString);
       }
 
       return valueString;
@@ -929,19 +993,20 @@ public class CollectionMetadataFacade implements Serializable {
       // user may be permitted to write, but might not be permitted to read
       List<String> existingConstraints = getAttributeConstraintsConfigurationsWithoutAccessRightsCheck(collectionName, attributeName);
 
-      ConstraintManager constraintManager = null;
+      List<String> constraints = existingConstraints == null ? new ArrayList<>() : new ArrayList<>(existingConstraints);
       try {
-         constraintManager = new ConstraintManager(existingConstraints);
-         initConstraintManager(constraintManager);
+         constraintManager.compile(constraints);
       } catch (InvalidConstraintException e) { // thrown when already existing constraints are in conflict
          throw new IllegalStateException("Illegal constraint prefix collision: ", e);
       }
 
-      constraintManager.registerConstraint(constraintConfiguration); // if this doesn't throw an exception, the constraint is valid
+      constraints.add(constraintConfiguration);
+      constraintManager.compile(constraints); // if this doesn't throw an exception, the constraint is valid
 
       // TODO: update whole array because of concurrent access?
       String attributeDocumentId = getAttributeDocumentId(collectionName, attributeName);
       dataStorage.addItemToArray(collectionMetadataCollectionName(collectionName), attributeDocumentId, LumeerConst.Collection.COLLECTION_ATTRIBUTE_CONSTRAINTS_KEY, constraintConfiguration);
+      invalidateCollectionSchema(collectionName);
    }
 
    /**
@@ -957,6 +1022,7 @@ public class CollectionMetadataFacade implements Serializable {
    public void dropAttributeConstraint(String collectionName, String attributeName, String constraintConfiguration) {
       String attributeDocumentId = getAttributeDocumentId(collectionName, attributeName);
       dataStorage.removeItemFromArray(collectionMetadataCollectionName(collectionName), attributeDocumentId, LumeerConst.Collection.COLLECTION_ATTRIBUTE_CONSTRAINTS_KEY, constraintConfiguration);
+      invalidateCollectionSchema(collectionName);
    }
 
    /**
@@ -1142,7 +1208,6 @@ public class CollectionMetadataFacade implements Serializable {
 
    // checks whether collection with given user name already exists
    private boolean checkIfUserCollectionExists(String originalCollectionName) {
-      dataStorage.invalidateCaches(); // cache can be 5 seconds old, so we firstly invalidate it
       List<String> collections = dataStorage.getAllCollections();
       for (String c : collections) {
          if (isUserCollection(c)) {
@@ -1167,9 +1232,29 @@ public class CollectionMetadataFacade implements Serializable {
       }
    }
 
-   // initializes constraint manager
-   private void initConstraintManager(ConstraintManager constraintManager) {
-      constraintManager.setLocale(Locale.forLanguageTag(configurationFacade.getConfigurationString(LumeerConst.USER_LOCALE_PROPERTY).orElse("en-US")));
+   // returns types and constraints of attributes of the collection, metadata are read only when the schema is not cached
+   private CollectionSchema getCollectionSchema(String collectionName) {
+      // the cache can refresh the schema out of this session, so the function captures all it needs beforehand
+      final DataStorage storage = dataStorage;
+      final String metadataCollectionName = collectionMetadataCollectionName(collectionName);
+      final String filter = dialect.fieldValueFilter(LumeerConst.Collection.META_TYPE_KEY, LumeerConst.Collection.COLLECTION_ATTRIBUTES_META_TYPE_VALUE);
+
+      return schemaCache().computeIfAbsent(collectionName, name -> {
+         if (!storage.hasCollection(metadataCollectionName)) { // metadata collection does not exist
+            return new CollectionSchema(Collections.emptyList());
+         }
+
+         return new CollectionSchema(storage.search(metadataCollectionName, filter, null, 0, 0));
+      });
+   }
+
+   // must be called after every change of attribute types or constraints
+   private void invalidateCollectionSchema(String collectionName) {
+      schemaCache().remove(collectionName);
+   }
+
+   private Cache<CollectionSchema> schemaCache() {
+      return cacheManager.getCache(SCHEMA_CACHE);
    }
 
    // returns current user email
@@ -0,0 +1,199 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.controller;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataChange;
+import io.lumeer.engine.api.data.DataDocument;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Types and constraint configurations of attributes of a collection as stored in its metadata. The schema is immutable
+ * and shared by all sessions through the cache, so values of documents can be checked without reading the metadata.
+ * Constraints are compiled by {@link io.lumeer.engine.api.constraint.ConstraintManager#compile(List)} which caches them
+ * for the locale of the session.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class CollectionSchema {
+
+   private static final AttributeSchema DEFAULT_ATTRIBUTE = new AttributeSchema(null, LumeerConst.Collection.COLLECTION_ATTRIBUTE_TYPE_STRING, Collections.emptyList());
+
+   private final Map<String, AttributeSchema> attributes = new HashMap<>();
+
+   // the same attributes by the ids of their metadata documents
+   private final Map<String, AttributeSchema> attributesById = new HashMap<>();
+
+   /**
+    * Creates the schema from attribute documents of collection metadata.
+    *
+    * @param attributeDocuments
+    *       metadata documents of all attributes of the collection
+    */
+   CollectionSchema(final List<DataDocument> attributeDocuments) {
+      attributeDocuments.forEach(attributeDocument -> {
+         final AttributeSchema attribute = AttributeSchema.of(attributeDocument);
+         attributes.put(attribute.name, attribute);
+
+         final Object id = attributeDocument.get(LumeerConst.Document.ID);
+         if (id != null) {
+            attributesById.put(id.toString(), attribute);
+         }
+      });
+   }
+
+   /**
+    * Checks whether the change of a metadata document may give a different schema. Changes of the attribute counts
+    * and of other metadata do not, neither do the changes already reflected by the schema, e.g. the changes made by
+    * this node before the schema was loaded.
+    *
+    * @param change
+    *       change of a document of the collection metadata
+    * @return true if the schema must be loaded again
+    */
+   public boolean isChangedBy(final DataChange change) {
+      final AttributeSchema attribute = change.getDocumentId() != null ? attributesById.get(change.getDocumentId()) : null;
+      final DataDocument delta = change.getDelta();
+
+      switch (change.getOperation()) {
+         case INSERT:
+         case REPLACE:
+            // new attributes have the default type and no constraints until they are configured
+            final AttributeSchema newAttribute = delta != null && isAttributeDocument(delta) ? AttributeSchema.of(delta) : DEFAULT_ATTRIBUTE;
+            return !(attribute != null ? attribute : DEFAULT_ATTRIBUTE).isSameAs(newAttribute);
+         case UPDATE:
+            return delta != null && (attribute != null ? !attribute.reflects(delta) : affectsAttribute(delta));
+         case DELETE:
+            // attributes of the default type without constraints are the same as missing attributes
+            return attribute != null && !attribute.isSameAs(DEFAULT_ATTRIBUTE);
+         default:
+            return true;
+      }
+   }
+
+   /**
+    * Gets the type of the attribute.
+    *
+    * @param attributeName
+    *       attribute name
+    * @return type of the attribute, default (String) if attribute is not found
+    */
+   String getType(final String attributeName) {
+      return getAttribute(attributeName).type;
+   }
+
+   /**
+    * Gets constraint configurations of the attribute.
+    *
+    * @param attributeName
+    *       attribute name
+    * @return list of constraint configurations, empty list if there are none
+    */
+   List<String> getConstraintConfigurations(final String attributeName) {
+      return getAttribute(attributeName).constraintConfigurations;
+   }
+
+   /**
+    * Checks whether the attribute has other than the default type or some constraints.
+    *
+    * @param attributeName
+    *       attribute name
+    * @return true if the attribute is configured
+    */
+   boolean isConfigured(final String attributeName) {
+      final AttributeSchema attribute = getAttribute(attributeName);
+      return !LumeerConst.Collection.COLLECTION_ATTRIBUTE_TYPE_STRING.equals(attribute.type) || !attribute.constraintConfigurations.isEmpty();
+   }
+
+   private AttributeSchema getAttribute(final String attributeName) {
+      return attributes.getOrDefault(attributeName, DEFAULT_ATTRIBUTE);
+   }
+
+   private static boolean isAttributeDocument(final DataDocument document) {
+      return LumeerConst.Collection.COLLECTION_ATTRIBUTES_META_TYPE_VALUE.equals(document.get(LumeerConst.Collection.META_TYPE_KEY));
+   }
+
+   // whether an update of an unknown document sets the name, type or constraints of an attribute
+   private static boolean affectsAttribute(final DataDocument delta) {
+      return delta.keySet().stream().anyMatch(key -> isSchemaKey(key) || key.startsWith(LumeerConst.Collection.COLLECTION_ATTRIBUTE_CONSTRAINTS_KEY + "."));
+   }
+
+   private static boolean isSchemaKey(final String key) {
+      return LumeerConst.Collection.COLLECTION_ATTRIBUTE_NAME_KEY.equals(key)
+            || LumeerConst.Collection.COLLECTION_ATTRIBUTE_TYPE_KEY.equals(key)
+            || LumeerConst.Collection.COLLECTION_ATTRIBUTE_CONSTRAINTS_KEY.equals(key);
+   }
+
+   /**
+    * Type and constraints of a single attribute.
+    */
+   private static final class AttributeSchema {
+
+      private final String name;
+      private final String type;
+      private final List<String> constraintConfigurations;
+
+      private AttributeSchema(final String name, final String type, final List<String> constraintConfigurations) {
+         this.name = name;
+         this.type = type;
+         this.constraintConfigurations = constraintConfigurations;
+      }
+
+      private static AttributeSchema of(final DataDocument attributeDocument) {
+         final Object type = attributeDocument.get(LumeerConst.Collection.COLLECTION_ATTRIBUTE_TYPE_KEY);
+         final List<String> constraintConfigurations = attributeDocument.getArrayList(LumeerConst.Collection.COLLECTION_ATTRIBUTE_CONSTRAINTS_KEY, String.class);
+
+         return new AttributeSchema(attributeDocument.getString(LumeerConst.Collection.COLLECTION_ATTRIBUTE_NAME_KEY),
+               type == null ? LumeerConst.Collection.COLLECTION_ATTRIBUTE_TYPE_STRING : type.toString(),
+               constraintConfigurations == null ? Collections.emptyList() : Collections.unmodifiableList(constraintConfigurations));
+      }
+
+      // the default attribute has no name and matches an attribute of any name
+      private boolean isSameAs(final AttributeSchema other) {
+         return (name == null || other.name == null || name.equals(other.name)) && type.equals(other.type) && constraintConfigurations.equals(other.constraintConfigurations);
+      }
+
+      // whether the name, type and constraints set by the metadata document or its update are those of this attribute
+      private boolean reflects(final DataDocument delta) {
+         for (final String key : delta.keySet()) {
+            if (key.startsWith(LumeerConst.Collection.COLLECTION_ATTRIBUTE_CONSTRAINTS_KEY + ".")) {
+               return false; // a single item of the constraints changed
+            }
+            if (LumeerConst.Collection.COLLECTION_ATTRIBUTE_NAME_KEY.equals(key) && name != null && !name.equals(delta.get(key))) {
+               return false;
+            }
+            if (LumeerConst.Collection.COLLECTION_ATTRIBUTE_TYPE_KEY.equals(key) && !type.equals(String.valueOf(delta.get(key)))) {
+               return false;
+            }
+            if (LumeerConst.Collection.COLLECTION_ATTRIBUTE_CONSTRAINTS_KEY.equals(key)) {
+               final List<String> constraints = delta.getArrayList(key, String.class);
+               if (!constraintConfigurations.equals(constraints != null ? constraints : Collections.emptyList())) {
+                  return false;
+               }
+            }
+         }
+         return true;
+      }
+   }
+}
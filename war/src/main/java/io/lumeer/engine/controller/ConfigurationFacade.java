@@ -20,7 +20,9 @@
 package io.lumeer.engine.controller;
 
 import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.cache.CachePolicy;
 import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataStorageSettings;
 import io.lumeer.engine.api.data.StorageConnection;
 import io.lumeer.engine.controller.configuration.ConfigurationManipulator;
 import io.lumeer.engine.controller.configuration.DefaultConfigurationProducer;
@@ -47,6 +49,10 @@ public class ConfigurationFacade implements Serializable {
    protected static final String PROJECT_CONFIG_COLLECTION = "_config_project";
    protected static final String ORGANISATION_CONFIG_COLLECTION = "_config_org";
 
+   private static final int DEFAULT_SEQUENCE_BLOCK_SIZE = 20;
+   private static final int DEFAULT_VERSION_SNAPSHOT_INTERVAL = 10;
+   private static final long DEFAULT_CACHE_MAX_SIZE = 10000L;
+
    @Inject
    private UserFacade userFacade;
 
@@ -94,6 +100,102 @@ public class ConfigurationFacade implements Serializable {
       return Boolean.valueOf(defaultConfigurationProducer.get(LumeerConst.SYSTEM_DB_USE_SSL));
    }
 
+   /**
+    * Gets connection pool and authentication settings of the data storage clients. The clients are shared by all
+    * organisations, so the settings are taken from the default configuration only. Credentials are verified against
+    * the configured database (db_name or sys_db_name) unless db_auth_database names a common authentication database,
+    * which lets the storages of all databases share a single client.
+    *
+    * @return connection pool settings
+    */
+   public DataStorageSettings getDataStorageSettings() {
+      final DataStorageSettings defaults = DataStorageSettings.DEFAULT;
+      final String authDatabase = defaultConfigurationProducer.get(LumeerConst.DB_AUTH_DATABASE_PROPERTY);
+      return new DataStorageSettings(
+            getDefaultConfigurationInteger(LumeerConst.DB_POOL_MAX_SIZE_PROPERTY).orElse(defaults.getMaxPoolSize()),
+            getDefaultConfigurationInteger(LumeerConst.DB_POOL_MIN_SIZE_PROPERTY).orElse(defaults.getMinPoolSize()),
+            getDefaultConfigurationInteger(LumeerConst.DB_POOL_MAX_WAIT_QUEUE_SIZE_PROPERTY).orElse(defaults.getMaxWaitQueueSize()),
+            getDefaultConfigurationInteger(LumeerConst.DB_POOL_MAX_WAIT_TIME_PROPERTY).orElse(defaults.getMaxWaitTime()),
+            getDefaultConfigurationInteger(LumeerConst.DB_POOL_MAX_IDLE_TIME_PROPERTY).orElse(defaults.getMaxConnectionIdleTime()),
+            getDefaultConfigurationInteger(LumeerConst.DB_CONNECT_TIMEOUT_PROPERTY).orElse(defaults.getConnectTimeout()),
+            authDatabase == null || authDatabase.isEmpty() ? defaults.getAuthDatabase() : authDatabase);
+   }
+
+   /**
+    * Gets the number of sequence values reserved at once by a node.
+    *
+    * @return size of the reserved block of sequence values
+    */
+   public int getSequenceBlockSize() {
+      return Math.max(1, getDefaultConfigurationInteger(LumeerConst.SEQUENCE_BLOCK_SIZE_PROPERTY).orElse(DEFAULT_SEQUENCE_BLOCK_SIZE));
+   }
+
+   /**
+    * Gets how often a full copy of a document is stored among its old versions, other versions store only changes.
+    *
+    * @return number of versions between two full copies
+    */
+   public int getVersionSnapshotInterval() {
+      return Math.max(1, getDefaultConfigurationInteger(LumeerConst.VERSION_SNAPSHOT_INTERVAL_PROPERTY).orElse(DEFAULT_VERSION_SNAPSHOT_INTERVAL));
+   }
+
+   /**
+    * Gets whether the links are read from the in-memory link index instead of the data storage.
+    *
+    * @return true when the link index is enabled
+    */
+   public boolean isLinkGraphIndexEnabled() {
+      return Boolean.valueOf(Optional.ofNullable(defaultConfigurationProducer.get(LumeerConst.LINK_GRAPH_INDEX_PROPERTY)).orElse("true").trim());
+   }
+
+   /**
+    * Gets bounds and expiration of the caches of the given name. Each setting is taken from the default configuration
+    * property suffixed by the cache name (e.g. {@code cache_max_size.collectionSchema}), or from the property common
+    * to all caches.
+    *
+    * @param cacheName
+    *       name of the caches
+    * @return bounds and expiration of the caches
+    */
+   public CachePolicy getCachePolicy(final String cacheName) {
+      return new CachePolicy(
+            Math.max(0L, getCacheConfigurationLong(LumeerConst.CACHE_MAX_SIZE_PROPERTY, cacheName).orElse(DEFAULT_CACHE_MAX_SIZE)),
+            Math.max(0L, getCacheConfigurationLong(LumeerConst.CACHE_EXPIRE_AFTER_WRITE_PROPERTY, cacheName).orElse(0L)),
+            Math.max(0L, getCacheConfigurationLong(LumeerConst.CACHE_REFRESH_AFTER_WRITE_PROPERTY, cacheName).orElse(0L)));
+   }
+
+   private Optional<Long> getCacheConfigurationLong(final String key, final String cacheName) {
+      final Optional<Long> value = getDefaultConfigurationLong(key + "." + cacheName);
+
+      return value.isPresent() ? value : getDefaultConfigurationLong(key);
+   }
+
+   private Optional<Long> getDefaultConfigurationLong(final String key) {
+      final String value = defaultConfigurationProducer.get(key);
+      if (value == null || value.trim().isEmpty()) {
+         return Optional.empty();
+      }
+
+      try {
+         return Optional.of(Long.valueOf(value.trim()));
+      } catch (NumberFormatException e) {
+         return Optional.empty();
+      }
+   }
+
+   private Optional<Integer> getDefaultConfigurationInteger(final String key) {
+      final String value = defaultConfigurationProducer.get(key);
+      if (value == null || value.trim().isEmpty()) {
+         return Optional.empty();
+      }
+
+      try {
+         return Optional.of(Integer.valueOf(value.trim()));
+      } catch (NumberFormatException e) {
+         return Optional.empty();
+      }
+   }
+
    /**
     * Returns an Optional String value of the given key.
     *
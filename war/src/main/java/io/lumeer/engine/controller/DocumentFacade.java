@@ -21,23 +21,31 @@ package io.lumeer.engine.controller;
 
 import io.lumeer.engine.api.LumeerConst;
 import io.lumeer.engine.api.constraint.InvalidConstraintException;
+import io.lumeer.engine.api.data.BulkWriteResult;
 import io.lumeer.engine.api.data.DataDocument;
 import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.api.event.DropDocument;
+import io.lumeer.engine.api.event.ReplaceDocument;
+import io.lumeer.engine.api.event.UpdateDocument;
 import io.lumeer.engine.api.exception.DbException;
 import io.lumeer.engine.api.exception.InvalidDocumentKeyException;
 import io.lumeer.engine.api.exception.UnauthorizedAccessException;
 import io.lumeer.engine.api.exception.UnsuccessfulOperationException;
+import io.lumeer.engine.api.exception.VersionUpdateConflictException;
 import io.lumeer.engine.provider.DataStorageProvider;
 import io.lumeer.engine.util.ErrorMessageBuilder;
 import io.lumeer.engine.util.Utils;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.SessionScoped;
@@ -50,6 +58,9 @@ import javax.inject.Inject;
 @SessionScoped
 public class DocumentFacade implements Serializable {
 
+   // number of tasks checking documents of a bulk create in parallel
+   private static final int CHECK_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
    private DataStorage dataStorage;
 
    @Inject
@@ -70,6 +81,9 @@ public class DocumentFacade implements Serializable {
    @Inject
    private Event<DropDocument> dropDocumentEvent;
 
+   @Inject
+   private Event<UpdateDocument> updateDocumentEvent;
+
    @Inject
    private UserFacade userFacade;
 
@@ -108,12 +122,92 @@ public class DocumentFacade implements Serializable {
          throw new UnsuccessfulOperationException(ErrorMessageBuilder.createDocumentUnsuccesfulString());
       }
       // we add all document attributes to collection metadata
-      doc.keySet().stream().filter(attribute -> !LumeerConst.Document.METADATA_KEYS.contains(attribute)).forEach(attribute -> {
-         collectionMetadataFacade.addOrIncrementAttribute(collectionName, attribute);
-      });
+      collectionMetadataFacade.addOrIncrementAttributes(collectionName, doc.keySet().stream().filter(attribute -> !LumeerConst.Document.METADATA_KEYS.contains(attribute)).collect(Collectors.toList()));
       return documentId;
    }
 
+   /**
+    * Creates and inserts many new documents to specified collection at once. Keys and values of documents are checked
+    * in parallel, invalid documents are not inserted and are reported in the result. Valid documents are inserted
+    * in bulk and attribute counts in collection metadata are updated only once.
+    *
+    * @param collectionName
+    *       the name of the collection where the documents will be created
+    * @param documents
+    *       the DataDocument objects representing documents to be created
+    * @param executor
+    *       executor to check the documents with
+    * @return result of the operation, errors are indexed by position in the input list
+    * @throws DbException
+    *       When there is an error working with the database.
+    */
+   public BulkWriteResult createDocuments(final String collectionName, final List<DataDocument> documents, final Executor executor) throws DbException {
+      final DataDocument[] checkedDocuments = new DataDocument[documents.size()];
+      final String[] errors = new String[documents.size()];
+
+      // the converter does not need the session, so the documents can be checked by other threads
+      final BiFunction<String, Object, Object> converter = collectionMetadataFacade.getAttributeValueConverter(collectionName);
+      final int sliceSize = Math.max(1, (documents.size() + CHECK_PARALLELISM - 1) / CHECK_PARALLELISM);
+      final List<CompletableFuture<Void>> checks = new ArrayList<>();
+      for (int start = 0; start < documents.size(); start += sliceSize) {
+         final int sliceStart = start;
+         final int sliceEnd = Math.min(start + sliceSize, documents.size());
+         checks.add(CompletableFuture.runAsync(() -> {
+            for (int i = sliceStart; i < sliceEnd; i++) {
+               try {
+                  final DataDocument doc = checkDocumentKeysValidity(documents.get(i));
+                  checkConstraintsAndConvert(converter, doc);
+                  checkedDocuments[i] = doc;
+               } catch (InvalidDocumentKeyException | InvalidConstraintException e) {
+                  errors[i] = e.getMessage();
+               }
+            }
+         }, executor));
+      }
+      CompletableFuture.allOf(checks.toArray(new CompletableFuture[checks.size()])).join();
+
+      final String userEmail = userFacade.getUserEmail();
+      final List<Integer> positions = new ArrayList<>();
+      final List<DataDocument> docs = new ArrayList<>();
+      for (int i = 0; i < checkedDocuments.length; i++) {
+         final DataDocument doc = checkedDocuments[i];
+         if (doc != null) {
+            documentMetadataFacade.putInitDocumentMetadataInternally(doc, userEmail);
+            versionFacade.putInitDocumentVersionInternally(doc);
+            securityFacade.putFullRightsInternally(doc, userEmail);
+            positions.add(i);
+            docs.add(doc);
+         }
+      }
+
+      final BulkWriteResult result = new BulkWriteResult();
+      for (int i = 0; i < errors.length; i++) {
+         if (errors[i] != null) {
+            result.addError(i, errors[i]);
+         }
+      }
+
+      if (docs.isEmpty()) {
+         return result;
+      }
+
+      final BulkWriteResult writeResult = dataStorage.createDocuments(collectionName, docs);
+      result.addSuccess(writeResult.getSuccessCount());
+      writeResult.getInsertedIds().forEach(result::addInsertedId);
+      writeResult.getErrors().forEach((index, message) -> result.addError(positions.get(index), message));
+
+      // we add attributes of all inserted documents to collection metadata at once
+      final List<String> addedAttributes = new ArrayList<>();
+      for (int i = 0; i < docs.size(); i++) {
+         if (!writeResult.isFailed(i)) {
+            docs.get(i).keySet().stream().filter(attribute -> !LumeerConst.Document.METADATA_KEYS.contains(attribute)).forEach(addedAttributes::add);
+         }
+      }
+      collectionMetadataFacade.updateAttributeCounts(collectionName, addedAttributes, Collections.emptyList());
+
+      return result;
+   }
+
    /**
     * Reads the specified document in given collection by its id.
     *
@@ -144,17 +238,39 @@ public class DocumentFacade implements Serializable {
     *       if one of document's value doesn't satisfy constraint or type
     */
    public void updateDocument(final String collectionName, final DataDocument updatedDocument) throws DbException, InvalidConstraintException {
-      DataDocument existingDocument = dataStorage.readDocument(collectionName, updatedDocument.getId());
+      updateDocument(collectionName, updatedDocument, null);
+   }
+
+   /**
+    * Modifies an existing document in given collection by its id only when it is in the expected version.
+    *
+    * @param collectionName
+    *       the name of the collection where the existing document is located
+    * @param updatedDocument
+    *       the DataDocument object representing a document with changes to update
+    * @param expectedVersion
+    *       the version the document must be in, any version when null
+    * @return the new version of the document
+    * @throws DbException
+    *       When there is an error working with the data storage.
+    * @throws VersionUpdateConflictException
+    *       When the document is not in the expected version.
+    * @throws InvalidConstraintException
+    *       if one of document's value doesn't satisfy constraint or type
+    */
+   public int updateDocument(final String collectionName, final DataDocument updatedDocument, final Integer expectedVersion) throws DbException, InvalidConstraintException {
+      DataDocument existingDocument = readExistingDocument(collectionName, updatedDocument.getId(), expectedVersion);
 
       final DataDocument upd = cleanInvalidAttributes(updatedDocument);
       checkConstraintsAndConvert(collectionName, updatedDocument);
       documentMetadataFacade.putUpdateDocumentMetadataInternally(upd, userFacade.getUserEmail());
-      versionFacade.newDocumentVersion(collectionName, existingDocument, upd, false);
+      final int version = versionFacade.newDocumentVersion(collectionName, existingDocument, upd, false);
+      fireDocumentChanged(collectionName, existingDocument.getId(), upd, false);
 
       // we add new attributes of updated document to collection metadata
-      upd.keySet().stream().filter(attribute -> !existingDocument.containsKey(attribute) && !LumeerConst.Document.METADATA_KEYS.contains(attribute)).forEach(attribute -> {
-         collectionMetadataFacade.addOrIncrementAttribute(collectionName, attribute);
-      });
+      collectionMetadataFacade.addOrIncrementAttributes(collectionName, upd.keySet().stream().filter(attribute -> !existingDocument.containsKey(attribute) && !LumeerConst.Document.METADATA_KEYS.contains(attribute)).collect(Collectors.toList()));
+
+      return version;
    }
 
    /**
@@ -170,23 +286,149 @@ public class DocumentFacade implements Serializable {
     *       if one of document's value doesn't satisfy constraint or type
     */
    public void replaceDocument(final String collectionName, final DataDocument replaceDocument) throws DbException, InvalidConstraintException {
-      DataDocument existingDocument = dataStorage.readDocument(collectionName, replaceDocument.getId());
+      replaceDocument(collectionName, replaceDocument, null);
+   }
+
+   /**
+    * Replace an existing document in given collection by its id only when it is in the expected version.
+    *
+    * @param collectionName
+    *       the name of the collection where the existing document is located
+    * @param replaceDocument
+    *       the DataDocument object representing a replace document
+    * @param expectedVersion
+    *       the version the document must be in, any version when null
+    * @return the new version of the document
+    * @throws DbException
+    *       When there is an error working with the data storage.
+    * @throws VersionUpdateConflictException
+    *       When the document is not in the expected version.
+    * @throws InvalidConstraintException
+    *       if one of document's value doesn't satisfy constraint or type
+    */
+   public int replaceDocument(final String collectionName, final DataDocument replaceDocument, final Integer expectedVersion) throws DbException, InvalidConstraintException {
+      DataDocument existingDocument = readExistingDocument(collectionName, replaceDocument.getId(), expectedVersion);
       final DataDocument repl = cleanInvalidAttributes(replaceDocument);
       checkConstraintsAndConvert(collectionName, replaceDocument);
       LumeerConst.Document.METADATA_KEYS.stream().filter(existingDocument::containsKey).forEach(metaKey -> {
          repl.put(metaKey, existingDocument.get(metaKey));
       });
       documentMetadataFacade.putUpdateDocumentMetadataInternally(repl, userFacade.getUserEmail());
-      versionFacade.newDocumentVersion(collectionName, existingDocument, repl, true);
+      final int version = versionFacade.newDocumentVersion(collectionName, existingDocument, repl, true);
+      fireDocumentChanged(collectionName, existingDocument.getId(), repl, true);
 
-      // add new attributes of updated document to collection metadata
-      repl.keySet().stream().filter(attribute -> !existingDocument.containsKey(attribute) && !LumeerConst.Document.METADATA_KEYS.contains(attribute)).forEach(attribute -> {
-         collectionMetadataFacade.addOrIncrementAttribute(collectionName, attribute);
-      });
+      // add new attributes of updated document to collection metadata and drop the missing ones
+      collectionMetadataFacade.updateAttributeCounts(collectionName,
+            repl.keySet().stream().filter(attribute -> !existingDocument.containsKey(attribute) && !LumeerConst.Document.METADATA_KEYS.contains(attribute)).collect(Collectors.toList()),
+            existingDocument.keySet().stream().filter(attribute -> !repl.containsKey(attribute) && !LumeerConst.Document.METADATA_KEYS.contains(attribute)).collect(Collectors.toList()));
 
-      existingDocument.keySet().stream().filter(attribute -> !repl.containsKey(attribute) && !LumeerConst.Document.METADATA_KEYS.contains(attribute)).forEach(attribute -> {
-         collectionMetadataFacade.dropOrDecrementAttribute(collectionName, attribute);
-      });
+      return version;
+   }
+
+   private DataDocument readExistingDocument(final String collectionName, final String documentId, final Integer expectedVersion) throws VersionUpdateConflictException {
+      final DataDocument existingDocument = dataStorage.readDocument(collectionName, documentId);
+      // the stored version is checked again by the conditional write in VersionFacade
+      if (expectedVersion != null && (existingDocument == null || versionFacade.getDocumentVersion(existingDocument) != expectedVersion)) {
+         throw new VersionUpdateConflictException(ErrorMessageBuilder.documentVersionConflictString(expectedVersion));
+      }
+      return existingDocument;
+   }
+
+   /**
+    * Updates many existing documents in given collection at once. Constraints of all given documents are checked
+    * before anything is written, so an invalid value prevents the whole update. The write itself is not atomic,
+    * a document that cannot be written is reported in the result and the other documents are updated anyway.
+    *
+    * @param collectionName
+    *       the name of the collection where the existing documents are located
+    * @param existingDocuments
+    *       the documents as they are currently stored in the collection
+    * @param updatedDocuments
+    *       the DataDocument objects with changes to update, in the same order as existingDocuments
+    * @return result of the operation, errors are indexed by position in the input lists
+    * @throws DbException
+    *       When there is an error working with the data storage.
+    * @throws InvalidConstraintException
+    *       if one of documents' values doesn't satisfy constraint or type
+    */
+   public BulkWriteResult updateDocuments(final String collectionName, final List<DataDocument> existingDocuments, final List<DataDocument> updatedDocuments) throws DbException, InvalidConstraintException {
+      final List<DataDocument> upds = new ArrayList<>();
+      for (final DataDocument updatedDocument : updatedDocuments) {
+         final DataDocument upd = cleanInvalidAttributes(updatedDocument);
+         checkConstraintsAndConvert(collectionName, updatedDocument);
+         documentMetadataFacade.putUpdateDocumentMetadataInternally(upd, userFacade.getUserEmail());
+         upds.add(upd);
+      }
+
+      final BulkWriteResult result = versionFacade.newDocumentVersions(collectionName, existingDocuments, upds, false);
+      updateAttributesMetadata(collectionName, existingDocuments, upds, result, false);
+
+      return result;
+   }
+
+   /**
+    * Replaces many existing documents in given collection at once. Constraints of all given documents are checked
+    * before anything is written, so an invalid value prevents the whole replace. The write itself is not atomic,
+    * a document that cannot be written is reported in the result and the other documents are replaced anyway.
+    *
+    * @param collectionName
+    *       the name of the collection where the existing documents are located
+    * @param existingDocuments
+    *       the documents as they are currently stored in the collection
+    * @param replaceDocuments
+    *       the DataDocument objects representing the replacing documents, in the same order as existingDocuments
+    * @return result of the operation, errors are indexed by position in the input lists
+    * @throws DbException
+    *       When there is an error working with the data storage.
+    * @throws InvalidConstraintException
+    *       if one of documents' values doesn't satisfy constraint or type
+    */
+   public BulkWriteResult replaceDocuments(final String collectionName, final List<DataDocument> existingDocuments, final List<DataDocument> replaceDocuments) throws DbException, InvalidConstraintException {
+      final List<DataDocument> repls = new ArrayList<>();
+      for (int i = 0; i < replaceDocuments.size(); i++) {
+         final DataDocument existingDocument = existingDocuments.get(i);
+         final DataDocument repl = cleanInvalidAttributes(replaceDocuments.get(i));
+         checkConstraintsAndConvert(collectionName, replaceDocuments.get(i));
+         LumeerConst.Document.METADATA_KEYS.stream().filter(existingDocument::containsKey).forEach(metaKey -> {
+            repl.put(metaKey, existingDocument.get(metaKey));
+         });
+         documentMetadataFacade.putUpdateDocumentMetadataInternally(repl, userFacade.getUserEmail());
+         repls.add(repl);
+      }
+
+      final BulkWriteResult result = versionFacade.newDocumentVersions(collectionName, existingDocuments, repls, true);
+      updateAttributesMetadata(collectionName, existingDocuments, repls, result, true);
+
+      return result;
+   }
+
+   private void updateAttributesMetadata(final String collectionName, final List<DataDocument> existingDocuments, final List<DataDocument> newDocuments, final BulkWriteResult result, final boolean replace) {
+      final List<String> addedAttributes = new ArrayList<>();
+      final List<String> droppedAttributes = new ArrayList<>();
+      for (int i = 0; i < existingDocuments.size(); i++) {
+         if (result.isFailed(i)) {
+            continue;
+         }
+
+         final DataDocument existingDocument = existingDocuments.get(i);
+         final DataDocument newDocument = newDocuments.get(i);
+         fireDocumentChanged(collectionName, existingDocument.getId(), newDocument, replace);
+
+         newDocument.keySet().stream().filter(attribute -> !existingDocument.containsKey(attribute) && !LumeerConst.Document.METADATA_KEYS.contains(attribute)).forEach(addedAttributes::add);
+
+         if (replace) {
+            existingDocument.keySet().stream().filter(attribute -> !newDocument.containsKey(attribute) && !LumeerConst.Document.METADATA_KEYS.contains(attribute)).forEach(droppedAttributes::add);
+         }
+      }
+
+      // counts of all documents are changed at once
+      collectionMetadataFacade.updateAttributeCounts(collectionName, addedAttributes, droppedAttributes);
+   }
+
+   private void fireDocumentChanged(final String collectionName, final String documentId, final DataDocument change, final boolean replace) {
+      final DataDocument document = new DataDocument(change);
+      document.setId(documentId);
+      updateDocumentEvent.fire(replace ? new ReplaceDocument(collectionName, document) : new UpdateDocument(collectionName, document));
    }
 
    /**
@@ -210,9 +452,7 @@ public class DocumentFacade implements Serializable {
       } else {
          dropDocumentEvent.fire(new DropDocument(collectionName, dataDocument));
          // we drop all attributes of dropped document from collection metadata
-         for (String attributeName : dataDocument.keySet()) {
-            collectionMetadataFacade.dropOrDecrementAttribute(collectionName, attributeName);
-         }
+         collectionMetadataFacade.dropOrDecrementAttributes(collectionName, dataDocument.keySet());
       }
    }
 
@@ -240,15 +480,12 @@ public class DocumentFacade implements Serializable {
       documentMetadataFacade.putUpdateDocumentMetadataInternally(revertDocument, userFacade.getUserEmail());
 
       versionFacade.revertDocumentVersion(collectionName, existingDocument, revertDocument);
+      fireDocumentChanged(collectionName, documentId, revertDocument, true);
 
-      // add new attributes of updated document to collection metadata
-      revertDocument.keySet().stream().filter(attribute -> !existingDocument.containsKey(attribute) && !LumeerConst.Document.METADATA_KEYS.contains(attribute)).forEach(attribute -> {
-         collectionMetadataFacade.addOrIncrementAttribute(collectionName, attribute);
-      });
-
-      existingDocument.keySet().stream().filter(attribute -> !revertDocument.containsKey(attribute) && !LumeerConst.Document.METADATA_KEYS.contains(attribute)).forEach(attribute -> {
-         collectionMetadataFacade.dropOrDecrementAttribute(collectionName, attribute);
-      });
+      // add new attributes of updated document to collection metadata and drop the missing ones
+      collectionMetadataFacade.updateAttributeCounts(collectionName,
+            revertDocument.keySet().stream().filter(attribute -> !existingDocument.containsKey(attribute) && !LumeerConst.Document.METADATA_KEYS.contains(attribute)).collect(Collectors.toList()),
+            existingDocument.keySet().stream().filter(attribute -> !revertDocument.containsKey(attribute) && !LumeerConst.Document.METADATA_KEYS.contains(attribute)).collect(Collectors.toList()));
    }
 
    /**
@@ -289,9 +526,28 @@ public class DocumentFacade implements Serializable {
       return documentAttributes;
    }
 
+   /**
+    * Checks that the document values satisfy constraints of the collection. Nothing is written and the document
+    * is left unchanged.
+    *
+    * @param collectionName
+    *       the name of the collection the document belongs to
+    * @param document
+    *       the document to check
+    * @throws InvalidConstraintException
+    *       if one of document's values doesn't satisfy constraint or type
+    */
+   public void checkConstraints(final String collectionName, final DataDocument document) throws InvalidConstraintException {
+      checkConstraintsAndConvert(collectionName, new DataDocument(document));
+   }
+
    private void checkConstraintsAndConvert(final String collectionName, final DataDocument doc) throws InvalidConstraintException {
+      checkConstraintsAndConvert((attribute, value) -> collectionMetadataFacade.checkAndConvertAttributeValue(collectionName, attribute, value), doc);
+   }
+
+   private void checkConstraintsAndConvert(final BiFunction<String, Object, Object> converter, final DataDocument doc) throws InvalidConstraintException {
       for (String attribute : doc.keySet()) {
-         Object value = collectionMetadataFacade.checkAndConvertAttributeValue(collectionName, attribute, doc.get(attribute).toString());
+         Object value = converter.apply(attribute, doc.get(attribute).toString());
          if (value == null) {
             throw new InvalidConstraintException(ErrorMessageBuilder.invalidConstraintKeyString(attribute));
          } else {
@@ -27,6 +27,7 @@ import io.lumeer.engine.util.ErrorMessageBuilder;
 import io.lumeer.engine.util.Utils;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collections;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.SessionScoped;
@@ -146,7 +147,53 @@ public class DocumentMetadataFacade implements Serializable {
             throw new IllegalArgumentException(ErrorMessageBuilder.invalidMetadataKeyString(key));
          }
       }
-      dataStorage.updateDocument(collectionName, metadata, documentId);
+      updateDocumentWithoutVersion(collectionName, documentId, metadata);
+   }
+
+   /**
+    * Reads the version and revision of the document, which together identify its content.
+    *
+    * @param collectionName
+    *       the name of the collection where the document is located
+    * @param documentId
+    *       the id of the read document
+    * @return the document with the version and revision only, null when there is no such document
+    */
+   public DataDocument readDocumentRevision(String collectionName, String documentId) {
+      return dataStorage.readDocumentIncludeAttrs(collectionName, documentId, Arrays.asList(LumeerConst.Document.METADATA_VERSION_KEY, LumeerConst.Document.METADATA_REVISION_KEY));
+   }
+
+   /**
+    * Gets the revision of the document.
+    *
+    * @param dataDocument
+    *       the document
+    * @return the revision of the document, 0 when it was never changed without a new version
+    */
+   public int getDocumentRevision(DataDocument dataDocument) {
+      final Integer revision = dataDocument.getInteger(LumeerConst.Document.METADATA_REVISION_KEY);
+      return revision != null ? revision : 0;
+   }
+
+   /**
+    * Writes changes that do not create a new version of the document (access rights, metadata) and increments its revision.
+    * The stored version and revision are kept even when the changes contain them.
+    *
+    * @param collectionName
+    *       the name of the collection where the document is located
+    * @param documentId
+    *       the id of the updated document
+    * @param changes
+    *       the attributes to set
+    */
+   public void updateDocumentWithoutVersion(String collectionName, String documentId, DataDocument changes) {
+      final DataDocument update = new DataDocument(changes);
+      update.remove(LumeerConst.Document.METADATA_VERSION_KEY);
+      update.remove(LumeerConst.Document.METADATA_REVISION_KEY);
+
+      // the revision is incremented after the write, a read in between never pairs the old content with the new revision
+      dataStorage.updateDocument(collectionName, update, documentId);
+      dataStorage.incrementAttributeValueBy(collectionName, documentId, LumeerConst.Document.METADATA_REVISION_KEY, 1);
    }
 
    /**
@@ -166,6 +213,7 @@ public class DocumentMetadataFacade implements Serializable {
          throw new IllegalArgumentException(ErrorMessageBuilder.invalidMetadataKeyString(key));
       }
       dataStorage.dropAttribute(collectionName, documentId, key);
+      dataStorage.incrementAttributeValueBy(collectionName, documentId, LumeerConst.Document.METADATA_REVISION_KEY, 1);
    }
 
    public void putInitDocumentMetadataInternally(DataDocument dataDocument, String userEmail) {
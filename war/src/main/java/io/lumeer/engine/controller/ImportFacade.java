@@ -0,0 +1,112 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.controller;
+
+import io.lumeer.engine.api.data.BulkWriteResult;
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataStorage;
+import io.lumeer.engine.api.exception.DbException;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.context.RequestScoped;
+import javax.inject.Inject;
+
+/**
+ * Imports large amounts of documents read from a stream. Documents are read and inserted in chunks,
+ * so only a single chunk is held in memory at a time.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+@RequestScoped
+public class ImportFacade implements Serializable {
+
+   private static final long serialVersionUID = 3370870453478165328L;
+
+   @Inject
+   private DocumentFacade documentFacade;
+
+   @Inject
+   private ManagedExecutorService executorService;
+
+   /**
+    * Imports all documents to the collection. Documents that cannot be read, have invalid keys or do not satisfy
+    * constraints are rejected, the others are inserted.
+    *
+    * @param collectionName
+    *       internal name of the collection to import documents to
+    * @param documents
+    *       documents to import, {@link IllegalArgumentException} thrown by next() rejects the record
+    * @param progressListener
+    *       called after each chunk with the number of records read so far and the result of the chunk,
+    *       errors of the result are indexed by position of the record in the input
+    * @throws DbException
+    *       When there is an error working with the database.
+    */
+   public void importDocuments(final String collectionName, final Iterator<DataDocument> documents, final BiConsumer<Integer, BulkWriteResult> progressListener) throws DbException {
+      final List<DataDocument> chunk = new ArrayList<>();
+      final List<Integer> positions = new ArrayList<>();
+      final Map<Integer, String> readErrors = new TreeMap<>();
+      int position = 0;
+      int chunkStart = 0;
+
+      while (documents.hasNext()) {
+         try {
+            chunk.add(documents.next());
+            positions.add(position);
+         } catch (IllegalArgumentException e) {
+            readErrors.put(position, e.getMessage());
+         }
+         position++;
+
+         if (position - chunkStart >= DataStorage.DEFAULT_BULK_CHUNK_SIZE) {
+            progressListener.accept(position, importChunk(collectionName, chunk, positions, readErrors));
+            chunk.clear();
+            positions.clear();
+            readErrors.clear();
+            chunkStart = position;
+         }
+      }
+
+      if (position > chunkStart) {
+         progressListener.accept(position, importChunk(collectionName, chunk, positions, readErrors));
+      }
+   }
+
+   private BulkWriteResult importChunk(final String collectionName, final List<DataDocument> chunk, final List<Integer> positions, final Map<Integer, String> readErrors) throws DbException {
+      final BulkWriteResult result = new BulkWriteResult();
+      readErrors.forEach(result::addError);
+
+      if (!chunk.isEmpty()) {
+         final BulkWriteResult chunkResult = documentFacade.createDocuments(collectionName, chunk, executorService);
+         result.addSuccess(chunkResult.getSuccessCount());
+         chunkResult.getInsertedIds().forEach(result::addInsertedId);
+         chunkResult.getErrors().forEach((index, message) -> result.addError(positions.get(index), message));
+      }
+
+      return result;
+   }
+}
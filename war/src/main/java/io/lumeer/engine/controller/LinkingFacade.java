@@ -20,18 +20,30 @@
 package io.lumeer.engine.controller;
 
 import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.AsyncDataStorage;
 import io.lumeer.engine.api.data.DataDocument;
 import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.api.data.DataStorageDialect;
 import io.lumeer.engine.api.event.DropDocument;
 import io.lumeer.engine.api.exception.DbException;
 import io.lumeer.engine.provider.DataStorageProvider;
+import io.lumeer.engine.provider.LinkGraph;
+import io.lumeer.engine.provider.LinkGraphProvider;
 import io.lumeer.engine.rest.dao.LinkDao;
 import io.lumeer.engine.rest.dao.LinkTypeDao;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.SessionScoped;
 import javax.enterprise.event.Observes;
@@ -58,8 +70,15 @@ public class LinkingFacade implements Serializable {
 
     */
 
+   private static final int MAX_TRAVERSAL_DEPTH = 10;
+
    private DataStorage dataStorage;
 
+   private AsyncDataStorage asyncDataStorage;
+
+   // in-memory index of the links, null when disabled
+   private LinkGraph linkGraph;
+
    @Inject
    private DataStorageDialect dataStorageDialect;
 
@@ -72,16 +91,27 @@ public class LinkingFacade implements Serializable {
    @Inject
    private DataStorageProvider dataStorageProvider;
 
+   @Inject
+   private LinkGraphProvider linkGraphProvider;
+
+   @Inject
+   private ConfigurationFacade configurationFacade;
+
    /**
     * Creates main linking table if not exists
     */
    @PostConstruct
    public void init() {
       dataStorage = dataStorageProvider.getUserStorage();
+      asyncDataStorage = dataStorageProvider.getUserAsyncStorage();
 
       if (!dataStorage.hasCollection(LumeerConst.Linking.MainTable.NAME)) {
          dataStorage.createCollection(LumeerConst.Linking.MainTable.NAME);
       }
+
+      if (configurationFacade.isLinkGraphIndexEnabled()) {
+         linkGraph = linkGraphProvider.getLinkGraph(dataStorage);
+      }
    }
 
    public void onDropDocument(@Observes(notifyObserver = Reception.IF_EXISTS) final DropDocument dropDocument) throws DbException {
@@ -136,7 +166,7 @@ public class LinkingFacade implements Serializable {
          String colName = lt.getString(LumeerConst.Linking.MainTable.ATTR_COL_NAME);
          String fromCollection = lt.getString(LumeerConst.Linking.MainTable.ATTR_FROM_COLLECTION);
          String toCollection = lt.getString(LumeerConst.Linking.MainTable.ATTR_TO_COLLECTION);
-         List<DataDocument> ls = dataStorage.search(colName, null, null, 0, 0);
+         List<DataDocument> ls = readAllLinkingDocuments(colName);
          links.addAll(convertLinkDaosFromDocuments(ls, fromCollection, toCollection, role));
       }
       return links;
@@ -192,15 +222,65 @@ public class LinkingFacade implements Serializable {
     *       When there is an error working with the database.
     */
    public List<DataDocument> readDocumentLinksDocs(final String fromCollectionName, final String fromDocumentId, final String role, final LumeerConst.Linking.LinkDirection linkDirection) throws DbException {
+      return readDocumentLinksDocs(fromCollectionName, fromDocumentId, role, linkDirection, null);
+   }
+
+   /**
+    * Read all linking documents for specified document, the linked documents contain only the specified attributes
+    *
+    * @param fromCollectionName
+    *       the name of the document's collection
+    * @param fromDocumentId
+    *       the id of the document to search for links
+    * @param role
+    *       role name
+    * @param linkDirection
+    *       direction of link
+    * @param attributes
+    *       list of attribute names to read, all attributes are read when null or empty
+    * @return list of all linked documents
+    * @throws DbException
+    *       When there is an error working with the database.
+    */
+   public List<DataDocument> readDocumentLinksDocs(final String fromCollectionName, final String fromDocumentId, final String role, final LumeerConst.Linking.LinkDirection linkDirection, final List<String> attributes) throws DbException {
       List<DataDocument> links = new ArrayList<>();
       List<DataDocument> linkingTables = readLinkingTablesFrom(fromCollectionName, role, linkDirection);
 
-      for (DataDocument lt : linkingTables) {
-         links.addAll(getDataDocumentsFromLinks(fromDocumentId, linkDirection, lt));
+      // linking tables are read concurrently, results are collected in the original order
+      List<CompletableFuture<List<DataDocument>>> futures = linkingTables.stream()
+                                                                          .map(lt -> getDataDocumentsFromLinksAsync(fromDocumentId, linkDirection, lt, attributes))
+                                                                          .collect(Collectors.toList());
+      for (CompletableFuture<List<DataDocument>> future : futures) {
+         links.addAll(future.join());
       }
       return links;
    }
 
+   /**
+    * Read ids of all documents linked with specified document
+    *
+    * @param fromCollectionName
+    *       the name of the document's collection
+    * @param fromDocumentId
+    *       the id of the document to search for links
+    * @param role
+    *       role name
+    * @param linkDirection
+    *       direction of link
+    * @return list of ids of all linked documents
+    * @throws DbException
+    *       When there is an error working with the database.
+    */
+   public List<String> readLinkedDocumentIds(final String fromCollectionName, final String fromDocumentId, final String role, final LumeerConst.Linking.LinkDirection linkDirection) throws DbException {
+      List<String> ids = new ArrayList<>();
+      List<DataDocument> linkingTables = readLinkingTablesFrom(fromCollectionName, role, linkDirection);
+      for (DataDocument lt : linkingTables) {
+         String colName = lt.getString(LumeerConst.Linking.MainTable.ATTR_COL_NAME);
+         ids.addAll(readLinkedDocumentIdsFrom(colName, fromDocumentId, linkDirection));
+      }
+      return ids;
+   }
+
    /**
     * Read all linking documents between two documents
     *
@@ -221,13 +301,38 @@ public class LinkingFacade implements Serializable {
     *       When there is an error working with the database.
     */
    public List<DataDocument> readDocByDocLinksDocs(final String fromCollectionName, final String fromId, final String toCollectionName, final String toId, final String role, final LumeerConst.Linking.LinkDirection linkDirection) throws DbException {
+      return readDocByDocLinksDocs(fromCollectionName, fromId, toCollectionName, toId, role, linkDirection, null);
+   }
+
+   /**
+    * Read all linking documents between two documents, the linked documents contain only the specified attributes
+    *
+    * @param fromCollectionName
+    *       the name of the first document's collection
+    * @param fromId
+    *       the id of the first document
+    * @param toCollectionName
+    *       the name of the second document's collection
+    * @param toId
+    *       the id of the second document
+    * @param role
+    *       role name
+    * @param linkDirection
+    *       direction of link
+    * @param attributes
+    *       list of attribute names to read, all attributes are read when null or empty
+    * @return list of all linked documents
+    * @throws DbException
+    *       When there is an error working with the database.
+    */
+   public List<DataDocument> readDocByDocLinksDocs(final String fromCollectionName, final String fromId, final String toCollectionName, final String toId, final String role, final LumeerConst.Linking.LinkDirection linkDirection, final List<String> attributes) throws DbException {
       List<DataDocument> links = new ArrayList<>();
       List<DataDocument> linkingTables = readLinkingTablesFromTo(fromCollectionName, toCollectionName, role, linkDirection);
       for (DataDocument lt : linkingTables) {
          String colName = lt.getString(LumeerConst.Linking.MainTable.ATTR_COL_NAME);
          List<DataDocument> linkingDocuments = readLinkingDocumentsFromTo(colName, fromId, toId, linkDirection);
          String readCollectionName = linkDirection == LumeerConst.Linking.LinkDirection.FROM ? lt.getString(LumeerConst.Linking.MainTable.ATTR_TO_COLLECTION) : lt.getString(LumeerConst.Linking.MainTable.ATTR_FROM_COLLECTION);
-         links.addAll(readDocumentsFromLinkingDocumentsFrom(linkingDocuments, readCollectionName, linkDirection));
+         links.addAll(readDocumentsFromLinkingDocumentsFrom(linkingDocuments, readCollectionName, linkDirection, attributes));
       }
       return links;
    }
@@ -250,14 +355,124 @@ public class LinkingFacade implements Serializable {
     *       When there is an error working with the database.
     */
    public List<DataDocument> readDocWithCollectionLinks(final String fromCollectionName, final String fromDocumentId, final String toCollectionName, final String role, final LumeerConst.Linking.LinkDirection linkDirection) throws DbException {
+      return readDocWithCollectionLinks(fromCollectionName, fromDocumentId, toCollectionName, role, linkDirection, null);
+   }
+
+   /**
+    * Read all linking documents for specified document and collection, the linked documents contain only the specified attributes
+    *
+    * @param fromCollectionName
+    *       the name of the document's collection
+    * @param fromDocumentId
+    *       the id of the document to search for links
+    * @param toCollectionName
+    *       the name of the collection to search for linking documents
+    * @param role
+    *       role name
+    * @param linkDirection
+    *       direction of link
+    * @param attributes
+    *       list of attribute names to read, all attributes are read when null or empty
+    * @return list of all linked documents
+    * @throws DbException
+    *       When there is an error working with the database.
+    */
+   public List<DataDocument> readDocWithCollectionLinks(final String fromCollectionName, final String fromDocumentId, final String toCollectionName, final String role, final LumeerConst.Linking.LinkDirection linkDirection, final List<String> attributes) throws DbException {
       List<DataDocument> links = new ArrayList<>();
       List<DataDocument> linkingTables = readLinkingTablesFromTo(fromCollectionName, toCollectionName, role, linkDirection);
       for (DataDocument lt : linkingTables) {
-         links.addAll(getDataDocumentsFromLinks(fromDocumentId, linkDirection, lt));
+         links.addAll(getDataDocumentsFromLinks(fromDocumentId, linkDirection, lt, attributes));
       }
       return links;
    }
 
+   /**
+    * Read all documents reachable from specified document over links. The links are followed breadth first, each
+    * hop reads the links of the whole frontier and the reached documents in batches. Every document is visited at
+    * most once, so cycles in the links are not followed again. Links into collections the current user cannot read
+    * are not followed, so their documents neither count towards the limits nor lead any further.
+    *
+    * @param fromCollectionName
+    *       the name of the start document's collection
+    * @param fromDocumentId
+    *       the id of the start document
+    * @param roles
+    *       role names of the consecutive hops, links of any role are followed when null or empty
+    * @param maxDepth
+    *       maximal number of hops, the number of roles is used when roles are specified
+    * @param linkDirection
+    *       direction of links, both directions are followed for {@link LumeerConst.Linking.LinkDirection#BOTH}
+    * @param maxFanOut
+    *       maximal number of links followed from a single document
+    * @param maxDocuments
+    *       maximal number of returned documents
+    * @return reached documents in the order of their distance from the start document, each contains the name of its
+    * collection and its distance
+    * @throws DbException
+    *       When there is an error working with the database.
+    */
+   public List<DataDocument> traverseLinks(final String fromCollectionName, final String fromDocumentId, final List<String> roles, final int maxDepth, final LumeerConst.Linking.LinkDirection linkDirection, final int maxFanOut, final int maxDocuments) throws DbException {
+      final int depth = Math.min(roles != null && !roles.isEmpty() ? roles.size() : maxDepth, MAX_TRAVERSAL_DEPTH);
+      final List<LumeerConst.Linking.LinkDirection> directions = linkDirection == null || linkDirection == LumeerConst.Linking.LinkDirection.BOTH
+            ? Arrays.asList(LumeerConst.Linking.LinkDirection.FROM, LumeerConst.Linking.LinkDirection.TO) : Collections.singletonList(linkDirection);
+
+      final List<DataDocument> result = new ArrayList<>();
+      final Set<String> visited = new HashSet<>();
+      visited.add(fromCollectionName + "/" + fromDocumentId);
+      final Map<String, Boolean> readable = new HashMap<>();
+
+      // documents reached in the last hop by collection
+      Map<String, List<String>> frontier = Collections.singletonMap(fromCollectionName, Collections.singletonList(fromDocumentId));
+
+      for (int hop = 1; hop <= depth && !frontier.isEmpty() && result.size() < maxDocuments; hop++) {
+         final String role = roles != null && !roles.isEmpty() ? roles.get(hop - 1) : null;
+         final Map<String, List<String>> reached = new LinkedHashMap<>();
+         final Map<String, Integer> fanOut = new HashMap<>();
+         int reachedCount = 0;
+
+         for (Map.Entry<String, List<String>> collectionFrontier : frontier.entrySet()) {
+            for (LumeerConst.Linking.LinkDirection direction : directions) {
+               for (DataDocument lt : readLinkingTablesFrom(collectionFrontier.getKey(), role, direction)) {
+                  final String readCollectionName = direction == LumeerConst.Linking.LinkDirection.FROM ? lt.getString(LumeerConst.Linking.MainTable.ATTR_TO_COLLECTION) : lt.getString(LumeerConst.Linking.MainTable.ATTR_FROM_COLLECTION);
+                  if (!readable.computeIfAbsent(readCollectionName, c -> collectionMetadataFacade.checkCollectionForRead(c, userFacade.getUserEmail()))) {
+                     continue;
+                  }
+
+                  final Map<String, List<String>> neighbours = readLinkedDocumentIdsFrom(lt.getString(LumeerConst.Linking.MainTable.ATTR_COL_NAME), collectionFrontier.getValue(), direction);
+
+                  for (String documentId : collectionFrontier.getValue()) {
+                     final String source = collectionFrontier.getKey() + "/" + documentId;
+                     for (String neighbourId : neighbours.getOrDefault(documentId, Collections.emptyList())) {
+                        if (result.size() + reachedCount >= maxDocuments || fanOut.getOrDefault(source, 0) >= maxFanOut) {
+                           break;
+                        }
+                        if (visited.add(readCollectionName + "/" + neighbourId)) {
+                           reached.computeIfAbsent(readCollectionName, k -> new ArrayList<>()).add(neighbourId);
+                           fanOut.merge(source, 1, Integer::sum);
+                           reachedCount++;
+                        }
+                     }
+                  }
+               }
+            }
+         }
+
+         // only the documents that still exist are returned and followed further
+         final Map<String, List<String>> nextFrontier = new LinkedHashMap<>();
+         for (Map.Entry<String, List<String>> collectionReached : reached.entrySet()) {
+            for (DataDocument document : dataStorage.readDocuments(collectionReached.getKey(), collectionReached.getValue())) {
+               document.put(LumeerConst.Document.COLLECTION_NAME, collectionReached.getKey());
+               document.put(LumeerConst.Document.LINK_DEPTH, hop);
+               result.add(document);
+               nextFrontier.computeIfAbsent(collectionReached.getKey(), k -> new ArrayList<>()).add(document.getId());
+            }
+         }
+         frontier = nextFrontier;
+      }
+
+      return result;
+   }
+
    /**
     * Drop all links for specified document
     *
@@ -300,6 +515,9 @@ public class LinkingFacade implements Serializable {
       for (DataDocument lt : linkingTables) {
          String colName = lt.getString(LumeerConst.Linking.MainTable.ATTR_COL_NAME);
          dataStorage.dropCollection(colName);
+         if (linkGraph != null) {
+            linkGraph.linkingTableDropped(colName);
+         }
       }
       dataStorage.dropManyDocuments(LumeerConst.Linking.MainTable.NAME, dataStorageDialect.linkingFromTablesFilter(collectionName, role, linkDirection));
    }
@@ -383,7 +601,7 @@ public class LinkingFacade implements Serializable {
    }
 
    private void createLinkIfNotExists(final String collectionName, final String firstDocumentId, final String secondDocumentId, final DataDocument attributes, final LumeerConst.Linking.LinkDirection linkDirection) {
-      List<DataDocument> linkingDocuments = dataStorage.search(collectionName, dataStorageDialect.linkingFromToDocumentFilter(firstDocumentId, secondDocumentId, linkDirection), null, 0, 0);
+      List<DataDocument> linkingDocuments = readLinkingDocumentsFromTo(collectionName, firstDocumentId, secondDocumentId, linkDirection);
       if (linkingDocuments.isEmpty()) {
          String fromId;
          String toId;
@@ -397,7 +615,10 @@ public class LinkingFacade implements Serializable {
          DataDocument dataDocument = new DataDocument(LumeerConst.Linking.LinkingTable.ATTR_FROM_ID, fromId)
                .append(LumeerConst.Linking.LinkingTable.ATTR_TO_ID, toId)
                .append(LumeerConst.Linking.LinkingTable.ATTR_ATTRIBUTES, attributes);
-         dataStorage.createDocument(collectionName, dataDocument);
+         final String linkId = dataStorage.createDocument(collectionName, dataDocument);
+         if (linkGraph != null) {
+            linkGraph.linkCreated(collectionName, linkId, fromId, toId, attributes);
+         }
       }
    }
 
@@ -414,11 +635,23 @@ public class LinkingFacade implements Serializable {
       return collectionName;
    }
 
-   private List<DataDocument> getDataDocumentsFromLinks(final String fromDocumentId, final LumeerConst.Linking.LinkDirection linkDirection, final DataDocument lt) {
+   private List<DataDocument> getDataDocumentsFromLinks(final String fromDocumentId, final LumeerConst.Linking.LinkDirection linkDirection, final DataDocument lt, final List<String> attributes) {
       String colName = lt.getString(LumeerConst.Linking.MainTable.ATTR_COL_NAME);
       List<DataDocument> linkingDocuments = readLinkingDocumentsFrom(colName, fromDocumentId, linkDirection);
       String readCollectionName = linkDirection == LumeerConst.Linking.LinkDirection.FROM ? lt.getString(LumeerConst.Linking.MainTable.ATTR_TO_COLLECTION) : lt.getString(LumeerConst.Linking.MainTable.ATTR_FROM_COLLECTION);
-      return readDocumentsFromLinkingDocumentsFrom(linkingDocuments, readCollectionName, linkDirection);
+      return readDocumentsFromLinkingDocumentsFrom(linkingDocuments, readCollectionName, linkDirection, attributes);
+   }
+
+   private CompletableFuture<List<DataDocument>> getDataDocumentsFromLinksAsync(final String fromDocumentId, final LumeerConst.Linking.LinkDirection linkDirection, final DataDocument lt, final List<String> attributes) {
+      String colName = lt.getString(LumeerConst.Linking.MainTable.ATTR_COL_NAME);
+      String readCollectionName = linkDirection == LumeerConst.Linking.LinkDirection.FROM ? lt.getString(LumeerConst.Linking.MainTable.ATTR_TO_COLLECTION) : lt.getString(LumeerConst.Linking.MainTable.ATTR_FROM_COLLECTION);
+
+      if (linkGraph != null) {
+         return asyncDataStorage.readDocuments(readCollectionName, linkGraph.getLinkedDocumentIds(colName, fromDocumentId, linkDirection), attributes).toCompletableFuture();
+      }
+
+      return asyncDataStorage.search(colName, dataStorageDialect.linkingFromDocumentFilter(fromDocumentId, linkDirection), null, 0, 0).toCompletableFuture()
+                             .thenCompose(linkingDocuments -> asyncDataStorage.readDocuments(readCollectionName, getLinkedDocumentIds(linkingDocuments, linkDirection), attributes));
    }
 
    private List<LinkDao> convertLinkDaosFromDocuments(final List<DataDocument> ls, final String fromCollection, final String toCollection, final String role) {
@@ -434,49 +667,97 @@ public class LinkingFacade implements Serializable {
 
    private void dropAllDocs(final String collectionName, final String documentId, final LumeerConst.Linking.LinkDirection linkDirection) {
       dataStorage.dropManyDocuments(collectionName, dataStorageDialect.linkingFromDocumentFilter(documentId, linkDirection));
+      if (linkGraph != null) {
+         linkGraph.linksDropped(collectionName, documentId, linkDirection);
+      }
    }
 
    private void dropAllDocs(final String collectionName, final String fromId, final String toId, final LumeerConst.Linking.LinkDirection linkDirection) {
       dataStorage.dropManyDocuments(collectionName, dataStorageDialect.linkingFromToDocumentFilter(fromId, toId, linkDirection));
+      if (linkGraph != null) {
+         linkGraph.linkDropped(collectionName, fromId, toId, linkDirection);
+      }
    }
 
    private void checkEmptinessAndRemoveEventually(final String collectionName, String role) {
-      if (dataStorage.documentCount(collectionName) == 0) {
+      long count = linkGraph != null ? linkGraph.countLinks(collectionName) : dataStorage.documentCount(collectionName);
+      if (count == 0) {
          dataStorage.dropCollection(collectionName);
 
          dataStorage.dropManyDocuments(LumeerConst.Linking.MainTable.NAME, dataStorageDialect.linkingFromTablesColNameFilter(collectionName, role));
+         if (linkGraph != null) {
+            linkGraph.linkingTableDropped(collectionName);
+         }
       }
    }
 
    private List<DataDocument> readLinkingTablesFromTo(final String firstCollectionName, final String secondCollectionName, final String role, final LumeerConst.Linking.LinkDirection linkDirection) {
+      if (linkGraph != null) {
+         return linkGraph.getLinkingTables(firstCollectionName, secondCollectionName, role, linkDirection);
+      }
       return dataStorage.search(LumeerConst.Linking.MainTable.NAME, dataStorageDialect.linkingFromToTablesFilter(firstCollectionName, secondCollectionName, role, linkDirection), null, 0, 0);
    }
 
    private List<DataDocument> readLinkingTablesFrom(final String fromCollectionName, final String role, final LumeerConst.Linking.LinkDirection linkDirection) {
+      if (linkGraph != null) {
+         return linkGraph.getLinkingTables(fromCollectionName, role, linkDirection);
+      }
       return dataStorage.search(LumeerConst.Linking.MainTable.NAME, dataStorageDialect.linkingFromTablesFilter(fromCollectionName, role, linkDirection), null, 0, 0);
    }
 
+   private List<DataDocument> readAllLinkingDocuments(final String collectionName) {
+      if (linkGraph != null) {
+         return linkGraph.getLinkingDocuments(collectionName);
+      }
+      return dataStorage.search(collectionName, null, null, 0, 0);
+   }
+
    private List<DataDocument> readLinkingDocumentsFrom(final String collectionName, final String fromId, final LumeerConst.Linking.LinkDirection linkDirection) {
+      if (linkGraph != null) {
+         return linkGraph.getLinkingDocuments(collectionName, fromId, linkDirection);
+      }
       return dataStorage.search(collectionName, dataStorageDialect.linkingFromDocumentFilter(fromId, linkDirection), null, 0, 0);
    }
 
    private List<DataDocument> readLinkingDocumentsFromTo(final String collectionName, final String fromId, final String toId, final LumeerConst.Linking.LinkDirection linkDirection) {
+      if (linkGraph != null) {
+         return linkGraph.getLinkingDocuments(collectionName, fromId, toId, linkDirection);
+      }
       return dataStorage.search(collectionName, dataStorageDialect.linkingFromToDocumentFilter(fromId, toId, linkDirection), null, 0, 0);
    }
 
-   private List<DataDocument> readDocumentsFromLinkingDocumentsFrom(final List<DataDocument> linkingDocuments, final String collectionName, final LumeerConst.Linking.LinkDirection linkDirection) {
-      List<DataDocument> docs = new ArrayList<>();
-      String keyParam = linkDirection == LumeerConst.Linking.LinkDirection.TO ? LumeerConst.Linking.LinkingTable.ATTR_FROM_ID : LumeerConst.Linking.LinkingTable.ATTR_TO_ID;
-      for (DataDocument ld : linkingDocuments) {
-         // check for right id of linking document
-         String linkingDocumentId = ld.getString(keyParam);
+   private List<DataDocument> readDocumentsFromLinkingDocumentsFrom(final List<DataDocument> linkingDocuments, final String collectionName, final LumeerConst.Linking.LinkDirection linkDirection, final List<String> attributes) {
+      // all linked documents are read at once, in the order of the links
+      return dataStorage.readDocumentsIncludeAttrs(collectionName, getLinkedDocumentIds(linkingDocuments, linkDirection), attributes);
+   }
 
-         DataDocument doc = dataStorage.readDocument(collectionName, linkingDocumentId);
-         if (doc != null) {
-            docs.add(doc);
-         }
+   private List<String> readLinkedDocumentIdsFrom(final String collectionName, final String fromId, final LumeerConst.Linking.LinkDirection linkDirection) {
+      if (linkGraph != null) {
+         return linkGraph.getLinkedDocumentIds(collectionName, fromId, linkDirection);
+      }
+      return getLinkedDocumentIds(readLinkingDocumentsFrom(collectionName, fromId, linkDirection), linkDirection);
+   }
+
+   private Map<String, List<String>> readLinkedDocumentIdsFrom(final String collectionName, final List<String> fromIds, final LumeerConst.Linking.LinkDirection linkDirection) {
+      final Map<String, List<String>> neighbours = new HashMap<>();
+      if (linkGraph != null) {
+         fromIds.forEach(id -> neighbours.put(id, linkGraph.getLinkedDocumentIds(collectionName, id, linkDirection)));
+         return neighbours;
+      }
+
+      // links of all the documents are read at once
+      final String fromKey = linkDirection == LumeerConst.Linking.LinkDirection.FROM ? LumeerConst.Linking.LinkingTable.ATTR_FROM_ID : LumeerConst.Linking.LinkingTable.ATTR_TO_ID;
+      final String toKey = linkDirection == LumeerConst.Linking.LinkDirection.FROM ? LumeerConst.Linking.LinkingTable.ATTR_TO_ID : LumeerConst.Linking.LinkingTable.ATTR_FROM_ID;
+      for (DataDocument ld : dataStorage.search(collectionName, dataStorageDialect.linkingFromDocumentsFilter(fromIds, linkDirection), null, 0, 0)) {
+         neighbours.computeIfAbsent(ld.getString(fromKey), k -> new ArrayList<>()).add(ld.getString(toKey));
       }
-      return docs;
+      return neighbours;
+   }
+
+   private List<String> getLinkedDocumentIds(final List<DataDocument> linkingDocuments, final LumeerConst.Linking.LinkDirection linkDirection) {
+      // check for right id of linking document
+      String keyParam = linkDirection == LumeerConst.Linking.LinkDirection.TO ? LumeerConst.Linking.LinkingTable.ATTR_FROM_ID : LumeerConst.Linking.LinkingTable.ATTR_TO_ID;
+      return linkingDocuments.stream().map(ld -> ld.getString(keyParam)).collect(Collectors.toList());
    }
 
    private void createLinkingTable(final String firstCollectionName, final String secondCollectionName, final String role, final String collectionName, final LumeerConst.Linking.LinkDirection linkDirection) {
@@ -496,6 +777,9 @@ public class LinkingFacade implements Serializable {
       doc.put(LumeerConst.Linking.MainTable.ATTR_ROLE, role);
 
       dataStorage.createDocument(LumeerConst.Linking.MainTable.NAME, doc);
+      if (linkGraph != null) {
+         linkGraph.linkingTableCreated(doc);
+      }
 
    }
 
@@ -20,8 +20,11 @@
 package io.lumeer.engine.controller;
 
 import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataCursor;
 import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataPage;
 import io.lumeer.engine.api.data.DataStorage;
+import io.lumeer.engine.api.data.DataStorageDialect;
 import io.lumeer.engine.api.data.Query;
 import io.lumeer.engine.api.exception.CollectionNotFoundException;
 import io.lumeer.engine.api.exception.InvalidQueryException;
@@ -29,7 +32,7 @@ import io.lumeer.engine.provider.DataStorageProvider;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.SessionScoped;
@@ -55,6 +58,9 @@ public class SearchFacade implements Serializable {
    @Inject
    private SecurityFacade securityFacade;
 
+   @Inject
+   private DataStorageDialect dialect;
+
    @Inject
    private DataStorageProvider dataStorageProvider;
 
@@ -84,6 +90,45 @@ public class SearchFacade implements Serializable {
       return dataStorage.search(collectionName, filter, sort, skip, limit);
    }
 
+   /**
+    * Searches the specified collection like {@link #search(String, String, String, int, int)} but pages the results
+    * by keys instead of skipping, so that a deep page costs the same as the first one.
+    *
+    * @param collectionName
+    *       the name of the collection where the run will be performed
+    * @param filter
+    *       the query predicate. If unspecified, then all documents in the collection will match the predicate.
+    * @param sort
+    *       the sort specification for the ordering of the results, document id is always the last sort key
+    * @param skip
+    *       the number of documents to skip, applies only to the first page
+    * @param pageToken
+    *       the token of the page to read, null to read the first page
+    * @param limit
+    *       the maximum number of documents to return
+    * @return the page of the found documents
+    */
+   public DataPage searchPage(String collectionName, String filter, String sort, int skip, String pageToken, int limit) {
+      return dataStorage.searchPage(collectionName, filter, sort, skip, pageToken, limit);
+   }
+
+   /**
+    * Opens a cursor over documents of the collection ordered by their ids, documents are fetched lazily in batches.
+    * The cursor is meant for reading whole collections, e.g. for export, and must be closed by the caller.
+    * Only the documents the current user can read are returned.
+    *
+    * @param collectionName
+    *       the name of the collection to read
+    * @param filter
+    *       the query predicate. If unspecified, then all documents in the collection will match the predicate.
+    * @param attributes
+    *       attributes to read, all attributes are read when null or empty
+    * @return the cursor over the found documents
+    */
+   public DataCursor searchCursor(String collectionName, String filter, List<String> attributes) {
+      return dataStorage.searchCursorIncludeAttrs(collectionName, dialect.filterWithCondition(filter, securityFacade.getReadRightsQueryFilter()), dialect.documentIdSort(), attributes, DataStorage.DEFAULT_CURSOR_BATCH_SIZE);
+   }
+
    /**
     * Executes a query to find and return documents.
     *
@@ -107,8 +152,32 @@ public class SearchFacade implements Serializable {
     *       When it was not possible to execute the query.
     */
    public List<DataDocument> query(final Query query) throws InvalidQueryException {
-      final List<String> collections = new ArrayList<>();
       final List<DataDocument> result = new ArrayList<>();
+
+      // collections are queried concurrently, results are marked with their source collection
+      try (final DataCursor cursor = dataStorage.queryCursor(internalQuery(query))) {
+         cursor.forEachRemaining(result::add);
+      }
+
+      return result;
+   }
+
+   /**
+    * Queries the data storage like {@link #query(Query)} but pages the results by keys instead of skipping.
+    * The following page is read by setting the returned token to {@link Query#setPageToken(String)}.
+    *
+    * @param query
+    *       Query to execute.
+    * @return The page of the query result.
+    * @throws InvalidQueryException
+    *       When it was not possible to execute the query.
+    */
+   public DataPage queryPage(final Query query) throws InvalidQueryException {
+      return dataStorage.queryPage(internalQuery(query));
+   }
+
+   private Query internalQuery(final Query query) throws InvalidQueryException {
+      final List<String> collections = new ArrayList<>();
       final Query internalQuery = new Query();
 
       try {
@@ -141,15 +210,10 @@ public class SearchFacade implements Serializable {
          internalQuery.setSkip(query.getSkip());
       }
 
-      for (final String collection : collections) {
-         internalQuery.setCollections(Collections.singleton(collection));
-         dataStorage.query(internalQuery).stream().forEach(d -> {
-            d.put(LumeerConst.Document.COLLECTION_NAME, collection);
-            result.add(d);
-         });
-      }
+      internalQuery.setPageToken(query.getPageToken());
+      internalQuery.setCollections(new LinkedHashSet<>(collections));
 
-      return result;
+      return internalQuery;
    }
 
 }
@@ -53,17 +53,17 @@ public class SecurityFacade implements Serializable {
    @Inject
    private DocumentMetadataFacade dmf;
 
-   private final int READ_BP = 2;
-   private final int WRITE_BP = 1;
-   private final int EXECUTE_BP = 0;
-   private final int NO_RIGHTS = -1;
-   private final int NOT_FOUND = 0;
+   private static final int READ_BP = 2;
+   private static final int WRITE_BP = 1;
+   private static final int EXECUTE_BP = 0;
+   private static final int NO_RIGHTS = -1;
+   private static final int NOT_FOUND = 0;
 
    /* change EMPTY_LIST to 0 to specify no rights if no user is presented in array of rights but list exists
       change EMPTY_LIST to -1 to specify all rights for all user if no user is presented in array of rights but list exists
     */
-   private final int EMPTY_LIST = 0;
-   private final int NULL_LIST = -1;
+   private static final int EMPTY_LIST = 0;
+   private static final int NULL_LIST = -1;
 
    @Inject
    private DataStorageProvider dataStorageProvider;
@@ -78,7 +78,7 @@ public class SecurityFacade implements Serializable {
       return null;
    }
 
-   private boolean checkBit(int inBit, int bit) {
+   private static boolean checkBit(int inBit, int bit) {
       if (inBit == NO_RIGHTS) {
          return true;
       }
@@ -102,6 +102,19 @@ public class SecurityFacade implements Serializable {
     * @return return true if user can read this document
     */
    public boolean checkForRead(DataDocument dataDocument, String userName) {
+      return canRead(dataDocument, userName);
+   }
+
+   /**
+    * Check in datadocument for userName if can read. Does not need a session, so it can be used out of a request.
+    *
+    * @param dataDocument
+    *       document to check
+    * @param userName
+    *       user name to check
+    * @return return true if user can read this document
+    */
+   public static boolean canRead(DataDocument dataDocument, String userName) {
       return checkBit(recordValue(dataDocument, userName), READ_BP);
    }
 
@@ -281,7 +294,7 @@ public class SecurityFacade implements Serializable {
    public boolean setRightsRead(String collectionName, String documentId, String userName) throws DocumentNotFoundException {
       DataDocument dataDocument = dataStorage.readDocument(collectionName, documentId);
       setRightsRead(dataDocument, userName);
-      dataStorage.updateDocument(collectionName, dataDocument, documentId);
+      dmf.updateDocumentWithoutVersion(collectionName, documentId, dataDocument);
       return checkForRead(collectionName, documentId, userName);
    }
 
@@ -320,7 +333,7 @@ public class SecurityFacade implements Serializable {
    public boolean setRightsWrite(String collectionName, String documentId, String userName) throws DocumentNotFoundException {
       DataDocument dataDocument = dataStorage.readDocument(collectionName, documentId);
       setRightsWrite(dataDocument, userName);
-      dataStorage.updateDocument(collectionName, dataDocument, documentId);
+      dmf.updateDocumentWithoutVersion(collectionName, documentId, dataDocument);
       return checkForWrite(collectionName, documentId, userName);
    }
 
@@ -359,7 +372,7 @@ public class SecurityFacade implements Serializable {
    public boolean setRightsExecute(String collectionName, String documentId, String userName) throws DocumentNotFoundException {
       DataDocument dataDocument = dataStorage.readDocument(collectionName, documentId);
       setRightsExecute(dataDocument, userName);
-      dataStorage.updateDocument(collectionName, dataDocument, documentId);
+      dmf.updateDocumentWithoutVersion(collectionName, documentId, dataDocument);
       return checkForExecute(collectionName, documentId, userName);
    }
 
@@ -398,7 +411,7 @@ public class SecurityFacade implements Serializable {
    public boolean removeRightsExecute(String collectionName, String documentId, String userName) throws DocumentNotFoundException {
       DataDocument dataDocument = dataStorage.readDocument(collectionName, documentId);
       removeRightsExecute(dataDocument, userName);
-      dataStorage.updateDocument(collectionName, dataDocument, documentId);
+      dmf.updateDocumentWithoutVersion(collectionName, documentId, dataDocument);
       return !checkForExecute(collectionName, documentId, userName);
    }
 
@@ -437,7 +450,7 @@ public class SecurityFacade implements Serializable {
    public boolean removeRightsWrite(String collectionName, String documentId, String userName) throws DocumentNotFoundException {
       DataDocument dataDocument = dataStorage.readDocument(collectionName, documentId);
       removeRightsWrite(dataDocument, userName);
-      dataStorage.updateDocument(collectionName, dataDocument, documentId);
+      dmf.updateDocumentWithoutVersion(collectionName, documentId, dataDocument);
       return !checkForWrite(collectionName, documentId, userName);
    }
 
@@ -476,7 +489,7 @@ public class SecurityFacade implements Serializable {
    public boolean removeRightsRead(String collectionName, String documentId, String userName) throws DocumentNotFoundException {
       DataDocument dataDocument = dataStorage.readDocument(collectionName, documentId);
       removeRightsRead(dataDocument, userName);
-      dataStorage.updateDocument(collectionName, dataDocument, documentId);
+      dmf.updateDocumentWithoutVersion(collectionName, documentId, dataDocument);
       return !checkForRead(collectionName, documentId, userName);
    }
 
@@ -488,14 +501,14 @@ public class SecurityFacade implements Serializable {
       dataDocument.put(LumeerConst.Document.USER_RIGHTS, Collections.emptyList());
    }
 
-   private List<DataDocument> readList(DataDocument dataDocument) {
+   private static List<DataDocument> readList(DataDocument dataDocument) {
       if (!(dataDocument.containsKey(LumeerConst.Document.USER_RIGHTS))) {
          return null;
       }
       return dataDocument.getArrayList(LumeerConst.Document.USER_RIGHTS, DataDocument.class);
    }
 
-   private int recordValue(DataDocument dataDocument, String email) {
+   private static int recordValue(DataDocument dataDocument, String email) {
       List<DataDocument> arrayList = readList(dataDocument);
       if (arrayList == null) {
          return NULL_LIST;
@@ -724,7 +737,7 @@ public class SecurityFacade implements Serializable {
     *       data access object
     */
    public void setDao(String collectionName, String documentId, AccessRightsDao accessRightsDao) {
-      dataStorage.updateDocument(collectionName, setDao(dataStorage.readDocument(collectionName, documentId), accessRightsDao), documentId);
+      dmf.updateDocumentWithoutVersion(collectionName, documentId, setDao(dataStorage.readDocument(collectionName, documentId), accessRightsDao));
    }
 
    /**
@@ -740,7 +753,7 @@ public class SecurityFacade implements Serializable {
     * @return true if all data was updated successful
     */
    public boolean setDaoCheck(String collectionName, String documentId, AccessRightsDao accessRightsDao) {
-      dataStorage.updateDocument(collectionName, setDao(dataStorage.readDocument(collectionName, documentId), accessRightsDao), documentId);
+      dmf.updateDocumentWithoutVersion(collectionName, documentId, setDao(dataStorage.readDocument(collectionName, documentId), accessRightsDao));
       DataDocument dataDoc = dataStorage.readDocument(collectionName, documentId);
       return (accessRightsDao.isWrite() == checkForWrite(dataDoc, accessRightsDao.getUserName()))
             & (accessRightsDao.isRead() == checkForRead(dataDoc, accessRightsDao.getUserName()))
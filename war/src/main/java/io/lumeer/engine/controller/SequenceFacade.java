@@ -19,9 +19,9 @@
  */
 package io.lumeer.engine.controller;
 
-import io.lumeer.engine.api.data.DataDocument;
 import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.provider.DataStorageProvider;
+import io.lumeer.engine.provider.SequenceBlockProvider;
 
 import java.io.Serializable;
 import javax.annotation.PostConstruct;
@@ -29,7 +29,8 @@ import javax.enterprise.context.SessionScoped;
 import javax.inject.Inject;
 
 /**
- * Can obtain a new unique number in a named row (sequence).
+ * Can obtain a new unique number in a named row (sequence). The numbers are reserved in blocks, so they are unique
+ * but increasing only within a single node.
  *
  * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
  */
@@ -48,19 +49,28 @@ public class SequenceFacade implements Serializable {
 
    private DataStorage systemDataStorage;
 
+   private int blockSize;
+
    @Inject
    private DataStorageProvider dataStorageProvider;
 
+   @Inject
+   private SequenceBlockProvider sequenceBlockProvider;
+
+   @Inject
+   private ConfigurationFacade configurationFacade;
+
    /**
     * Initializes collections needed for storing sequences.
     */
    @PostConstruct
    public void init() {
       systemDataStorage = dataStorageProvider.getSystemStorage();
+      blockSize = configurationFacade.getSequenceBlockSize();
 
       if (!systemDataStorage.hasCollection(SEQUENCE_COLLECTION)) {
+         // the storage creates the unique index on the sequence name with the first sequence
          systemDataStorage.createCollection(SEQUENCE_COLLECTION);
-         systemDataStorage.createIndex(SEQUENCE_COLLECTION, new DataDocument(SEQUENCE_INDEX_ATTR, 1));
       }
    }
 
@@ -72,7 +82,7 @@ public class SequenceFacade implements Serializable {
     * @return The next value of the sequence.
     */
    public int getNext(final String sequenceName) {
-      return systemDataStorage.getNextSequenceNo(SEQUENCE_COLLECTION, SEQUENCE_INDEX_ATTR, sequenceName);
+      return sequenceBlockProvider.getNext(systemDataStorage, SEQUENCE_COLLECTION, SEQUENCE_INDEX_ATTR, sequenceName, blockSize);
    }
 
    /**
@@ -83,6 +93,7 @@ public class SequenceFacade implements Serializable {
     */
    public void resetSequence(final String sequenceName) {
       systemDataStorage.resetSequence(SEQUENCE_COLLECTION, SEQUENCE_INDEX_ATTR, sequenceName);
+      sequenceBlockProvider.reset(SEQUENCE_COLLECTION, sequenceName);
    }
 
 }
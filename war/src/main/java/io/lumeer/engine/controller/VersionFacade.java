@@ -20,7 +20,9 @@
 package io.lumeer.engine.controller;
 
 import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.BulkWriteResult;
 import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataPage;
 import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.api.data.DataStorageDialect;
 import io.lumeer.engine.api.exception.AttributeNotFoundException;
@@ -29,14 +31,31 @@ import io.lumeer.engine.api.exception.DocumentNotFoundException;
 import io.lumeer.engine.api.exception.VersionUpdateConflictException;
 import io.lumeer.engine.provider.DataStorageProvider;
 import io.lumeer.engine.util.ErrorMessageBuilder;
+import io.lumeer.engine.util.Utils;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.SessionScoped;
 import javax.inject.Inject;
 
 /**
+ * Old versions of documents are kept in shadow collections. Every version that is a multiple of the snapshot interval
+ * is stored as a full copy, the other versions store only the attributes that differ from the preceding full copy (and
+ * the names of attributes missing in them), so small edits of large documents produce small shadow documents. Old
+ * versions are reconstructed from their own shadow document and the full copy it is based on, the current document is
+ * never used, so changes made to it without a new version do not affect the history.
+ *
+ * Shadow collections are indexed by document id and version, so reading the history of a document or its version
+ * valid at a given time reads only the shadow documents of that document.
+ *
  * @author <a href="mailto:kotrady.johnny@gmail.com">Jan Kotrady</a>
  */
 @SessionScoped
@@ -50,9 +69,17 @@ public class VersionFacade implements Serializable {
    @Inject
    private DataStorageProvider dataStorageProvider;
 
+   @Inject
+   private ConfigurationFacade configurationFacade;
+
+   private int snapshotInterval;
+
+   private Set<String> indexedShadowCollections = new HashSet<>();
+
    @PostConstruct
    public void init() {
       dataStorage = dataStorageProvider.getUserStorage();
+      snapshotInterval = configurationFacade.getVersionSnapshotInterval();
    }
 
    public String getVersionMetadataString() {
@@ -60,7 +87,7 @@ public class VersionFacade implements Serializable {
    }
 
    /**
-    * Return document version.
+    * Return document version. Only the version attribute of the document is read.
     *
     * @param collectionName
     *       collection name in which document is stored
@@ -76,7 +103,7 @@ public class VersionFacade implements Serializable {
       if (!dataStorage.hasCollection(collectionName)) {
          throw new CollectionNotFoundException(ErrorMessageBuilder.collectionNotFoundString(collectionName));
       }
-      DataDocument dat = dataStorage.readDocument(collectionName, documentId);
+      DataDocument dat = dataStorage.readDocumentIncludeAttrs(collectionName, documentId, Collections.singletonList(LumeerConst.Document.METADATA_VERSION_KEY));
       if (dat == null) {
          throw new DocumentNotFoundException(ErrorMessageBuilder.documentNotFoundString());
       }
@@ -125,7 +152,8 @@ public class VersionFacade implements Serializable {
     * Create shadow collection if not created. Backup document with
     * same id as document in collection. Then replace document in
     * collection with document from input. This method is atomic.
-    * As lock there is document in shadow collection.
+    * As lock there is document in shadow collection and the new version
+    * is written only when the stored document is still in the backed up version.
     *
     * @param collectionName
     *       collection name, where document is stored
@@ -149,17 +177,77 @@ public class VersionFacade implements Serializable {
       if (id == null) {
          throw new AttributeNotFoundException(ErrorMessageBuilder.idNotFoundString());
       }
+      createMetadata(actualDocument);
       createMetadata(newDocument);
-      int oldVersion = backUp(collectionName, actualDocument);
+      int oldVersion = getDocumentVersion(actualDocument);
       newDocument.replace(LumeerConst.Document.METADATA_VERSION_KEY, oldVersion + 1);
-      if (replace) {
-         dataStorage.replaceDocument(collectionName, newDocument, id);
-      } else {
-         dataStorage.updateDocument(collectionName, newDocument, id);
+      backUp(collectionName, actualDocument);
+      boolean written = replace ? dataStorage.replaceDocument(collectionName, newDocument, id, oldVersion) : dataStorage.updateDocument(collectionName, newDocument, id, oldVersion);
+      if (!written) {
+         dataStorage.dropOldDocument(buildShadowCollectionName(collectionName), id, oldVersion);
+         throw new VersionUpdateConflictException(ErrorMessageBuilder.documentVersionConflictString(oldVersion));
       }
       return oldVersion + 1;
    }
 
+   /**
+    * Bulk variant of {@link #newDocumentVersion(String, DataDocument, DataDocument, boolean)}.
+    * All existing documents are backed up in shadow collection at once and then all
+    * new versions are written at once. Documents that fail to back up are not written.
+    *
+    * @param collectionName
+    *       collection name, where documents are stored
+    * @param actualDocuments
+    *       existing documents, which will be stored in SHADOW collection
+    * @param newDocuments
+    *       new versions of the documents in the same order as actualDocuments
+    * @param replace
+    *       whether perform replace or update
+    * @return result of the operation, errors are indexed by position in the input lists
+    * @throws AttributeNotFoundException
+    *       if some of the documents doesnt contain id
+    */
+   public BulkWriteResult newDocumentVersions(String collectionName, List<DataDocument> actualDocuments, List<DataDocument> newDocuments, boolean replace) throws AttributeNotFoundException {
+      for (DataDocument actualDocument : actualDocuments) {
+         if (actualDocument.getId() == null) {
+            throw new AttributeNotFoundException(ErrorMessageBuilder.idNotFoundString());
+         }
+         createMetadata(actualDocument);
+      }
+      createShadow(collectionName);
+
+      List<DataDocument> shadowDocuments = new ArrayList<>();
+      for (int i = 0; i < actualDocuments.size(); i++) {
+         DataDocument newDocument = newDocuments.get(i);
+         createMetadata(newDocument);
+         newDocument.replace(LumeerConst.Document.METADATA_VERSION_KEY, getDocumentVersion(actualDocuments.get(i)) + 1);
+         DataDocument shadowDocument = shadowDocument(collectionName, actualDocuments.get(i));
+         shadowDocument.setId(actualDocuments.get(i).getId());
+         shadowDocuments.add(shadowDocument);
+      }
+
+      BulkWriteResult result = new BulkWriteResult();
+      BulkWriteResult backUpResult = dataStorage.createOldDocuments(buildShadowCollectionName(collectionName), shadowDocuments);
+      backUpResult.getErrors().forEach(result::addError);
+
+      List<DataDocument> toWrite = new ArrayList<>();
+      List<Integer> indexes = new ArrayList<>();
+      for (int i = 0; i < actualDocuments.size(); i++) {
+         if (!backUpResult.isFailed(i)) {
+            DataDocument newDocument = newDocuments.get(i);
+            newDocument.setId(actualDocuments.get(i).getId());
+            toWrite.add(newDocument);
+            indexes.add(i);
+         }
+      }
+
+      BulkWriteResult writeResult = replace ? dataStorage.replaceDocuments(collectionName, toWrite) : dataStorage.updateDocuments(collectionName, toWrite);
+      writeResult.getErrors().forEach((index, message) -> result.addError(indexes.get(index), message));
+      result.addSuccess(writeResult.getSuccessCount());
+
+      return result;
+   }
+
    /**
     * Create shadow collection if not created. Backup document with
     * same id as document in collection. Then replace document in
@@ -209,13 +297,34 @@ public class VersionFacade implements Serializable {
     *       collection name to imput.
     */
    private void createShadow(String collectionName) {
-      if (!dataStorage.hasCollection(buildShadowCollectionName(collectionName))) {
-         dataStorage.createCollection(buildShadowCollectionName(collectionName));
+      String shadowCollectionName = buildShadowCollectionName(collectionName);
+      if (!dataStorage.hasCollection(shadowCollectionName)) {
+         dataStorage.createCollection(shadowCollectionName);
+         dataStorage.createIndex(shadowCollectionName, dataStorageDialect.documentVersionIndex());
+         indexedShadowCollections.add(shadowCollectionName);
+      } else {
+         ensureShadowIndex(collectionName);
       }
    }
 
    /**
-    * Create in shadow collection backup of document from input
+    * Creates the index on document id and version in shadow collection if it exists.
+    * Shadow collections created by older versions do not have the index.
+    *
+    * @param collectionName
+    *       collection name to imput.
+    */
+   private void ensureShadowIndex(String collectionName) {
+      String shadowCollectionName = buildShadowCollectionName(collectionName);
+      if (!indexedShadowCollections.contains(shadowCollectionName) && dataStorage.hasCollection(shadowCollectionName)) {
+         dataStorage.createIndex(shadowCollectionName, dataStorageDialect.documentVersionIndex());
+         indexedShadowCollections.add(shadowCollectionName);
+      }
+   }
+
+   /**
+    * Create in shadow collection backup of document from input. Only the differences
+    * from the preceding full copy are stored unless a full copy is due.
     *
     * @param collectionName
     *       collection where document is stored
@@ -229,13 +338,50 @@ public class VersionFacade implements Serializable {
       createMetadata(document);
       createShadow(collectionName);
       try {
-         dataStorage.createOldDocument(buildShadowCollectionName(collectionName), document, document.getId(), getDocumentVersion(document));
+         dataStorage.createOldDocument(buildShadowCollectionName(collectionName), shadowDocument(collectionName, document), document.getId(), getDocumentVersion(document));
       } catch (Exception e) {
          throw new VersionUpdateConflictException(e.getMessage(), e.getCause());
       }
       return getDocumentVersion(document);
    }
 
+   /**
+    * Computes the document stored in shadow collection for the given version. The differences are computed
+    * against the full copy of the first version backed up since the last multiple of the snapshot interval.
+    *
+    * @param collectionName
+    *       collection where document is stored
+    * @param document
+    *       the version to back up
+    * @return full copy of the document or its differences from the preceding full copy
+    */
+   private DataDocument shadowDocument(String collectionName, DataDocument document) {
+      int version = getDocumentVersion(document);
+      if (version % snapshotInterval == 0) {
+         return document;
+      }
+
+      List<DataDocument> base = dataStorage.search(buildShadowCollectionName(collectionName), dataStorageDialect.documentVersionFilter(document.getId(), version - version % snapshotInterval), dataStorageDialect.documentVersionSort(false), 0, 1);
+      if (base.isEmpty() || isDelta(base.get(0)) || getShadowVersion(base.get(0)) >= version) {
+         return document;
+      }
+      DataDocument baseDocument = base.get(0);
+
+      DataDocument delta = new DataDocument();
+      document.forEach((key, value) -> {
+         if (!LumeerConst.Document.ID.equals(key) && (!baseDocument.containsKey(key) || !Objects.equals(value, baseDocument.get(key)))) {
+            delta.put(key, value);
+         }
+      });
+
+      List<String> missing = new ArrayList<>();
+      baseDocument.keySet().stream().filter(key -> !LumeerConst.Document.ID.equals(key) && !document.containsKey(key)).forEach(missing::add);
+      delta.put(LumeerConst.Document.SHADOW_DELTA_KEY, missing);
+      delta.put(LumeerConst.Document.SHADOW_BASE_KEY, getShadowVersion(baseDocument));
+
+      return delta;
+   }
+
    /**
     * Create new version from input document. Read document from shadow collection
     * as old version and replace document in collection with document from shadow
@@ -258,8 +404,9 @@ public class VersionFacade implements Serializable {
       if (id == null) {
          throw new AttributeNotFoundException(ErrorMessageBuilder.idNotFoundString());
       }
-      int oldVersion = backUp(collectionName, actualDocument);
-      newDocument.replace(LumeerConst.Document.METADATA_VERSION_KEY, oldVersion + 1);
+      createMetadata(actualDocument);
+      newDocument.put(LumeerConst.Document.METADATA_VERSION_KEY, getDocumentVersion(actualDocument) + 1);
+      backUp(collectionName, actualDocument);
       dataStorage.replaceDocument(collectionName, newDocument, id);
    }
 
@@ -301,7 +448,7 @@ public class VersionFacade implements Serializable {
     *       if document cannot be found
     */
    public DataDocument readOldDocumentVersion(String collectionName, String documentId, int version) throws DocumentNotFoundException {
-      DataDocument data = dataStorage.readOldDocument(buildShadowCollectionName(collectionName), documentId, version);
+      DataDocument data = reconstructVersion(collectionName, documentId, dataStorage.readOldDocument(buildShadowCollectionName(collectionName), documentId, version), new HashMap<>());
       if (data == null) {
          throw new DocumentNotFoundException(ErrorMessageBuilder.documentNotFoundString());
       }
@@ -310,7 +457,7 @@ public class VersionFacade implements Serializable {
 
    /**
     * Read all version from shadow collection and normal collection,
-    * return it as list.
+    * return it as list ordered by version.
     *
     * @param collectionName
     *       collection where document is stored
@@ -321,13 +468,281 @@ public class VersionFacade implements Serializable {
     *       if collection does not exists
     */
    public List<DataDocument> getDocumentVersions(String collectionName, String documentId) throws CollectionNotFoundException {
-      String filter = dataStorageDialect.documentIdFilter(documentId);
-      List<DataDocument> dataDocuments = dataStorage.search(buildShadowCollectionName(collectionName), filter, null, 0, 100);
+      return getDocumentVersions(collectionName, documentId, null, 0).getDocuments();
+   }
+
+   /**
+    * Read a page of versions of document ordered from the oldest one.
+    * The last page ends with the current document.
+    *
+    * @param collectionName
+    *       collection where document is stored
+    * @param documentId
+    *       id of document
+    * @param pageToken
+    *       token from {@link DataPage#getNextPageToken()} of the previous page, null for the first page
+    * @param limit
+    *       maximum number of versions in the page, 0 for all versions
+    * @return page of documents from shadow with same id
+    */
+   public DataPage getDocumentVersions(String collectionName, String documentId, String pageToken, int limit) {
+      int fromVersion = 0;
+      if (pageToken != null) {
+         try {
+            fromVersion = Integer.parseInt(pageToken);
+         } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid page token.", e);
+         }
+      }
+
+      ensureShadowIndex(collectionName);
+      List<DataDocument> shadowDocuments = dataStorage.search(buildShadowCollectionName(collectionName), dataStorageDialect.documentVersionFilter(documentId, fromVersion), dataStorageDialect.documentVersionSort(false), 0, limit);
+      List<DataDocument> dataDocuments = reconstructVersions(collectionName, documentId, shadowDocuments);
+      if (limit > 0 && shadowDocuments.size() == limit) {
+         String nextPageToken = String.valueOf(getShadowVersion(shadowDocuments.get(shadowDocuments.size() - 1)) + 1);
+         return new DataPage(dataDocuments, nextPageToken);
+      }
+
+      DataDocument main = dataStorage.readDocument(collectionName, documentId);
+      if (main != null && getDocumentVersion(main) >= fromVersion) {
+         dataDocuments.add(main);
+      }
+      return new DataPage(dataDocuments, null);
+   }
+
+   /**
+    * Read document as it was at the given time, that is its last version updated
+    * at the time or before it. Dropped documents are read in their last version.
+    *
+    * @param collectionName
+    *       collection where document is stored
+    * @param documentId
+    *       id of document
+    * @param timestamp
+    *       the time in format yyyy.MM.dd HH.mm.ss.SSS
+    * @return the version of document with its id as in collection
+    * @throws DocumentNotFoundException
+    *       if the document did not exist at the time
+    * @throws IllegalArgumentException
+    *       if the time is not in the expected format
+    */
+   public DataDocument readDocumentAsOf(String collectionName, String documentId, String timestamp) throws DocumentNotFoundException {
+      checkTimestamp(timestamp);
+      DataDocument document = documentAsOf(collectionName, documentId, dataStorage.readDocument(collectionName, documentId), timestamp);
+      if (document == null) {
+         throw new DocumentNotFoundException(ErrorMessageBuilder.documentNotFoundString());
+      }
+      return document;
+   }
+
+   /**
+    * Read the given version of document, either the current one or an old one.
+    *
+    * @param collectionName
+    *       collection where document is stored
+    * @param documentId
+    *       id of document
+    * @param version
+    *       version of document
+    * @return the version of document with its id as in collection
+    * @throws DocumentNotFoundException
+    *       if the version cannot be found
+    */
+   public DataDocument readDocumentAsOf(String collectionName, String documentId, int version) throws DocumentNotFoundException {
       DataDocument main = dataStorage.readDocument(collectionName, documentId);
-      dataDocuments.add(main);
+      if (main != null && getDocumentVersion(main) == version) {
+         return main;
+      }
+      return withDocumentId(readOldDocumentVersion(collectionName, documentId, version), documentId);
+   }
+
+   /**
+    * Read a page of documents as they were at the given time. Documents are selected by
+    * the filter on their current values and ordered by their ids. Documents created
+    * after the time are skipped, dropped documents are not read.
+    *
+    * @param collectionName
+    *       collection where documents are stored
+    * @param filter
+    *       filter on current values of documents, null for all documents
+    * @param timestamp
+    *       the time in format yyyy.MM.dd HH.mm.ss.SSS
+    * @param pageToken
+    *       token from {@link DataPage#getNextPageToken()} of the previous page, null for the first page
+    * @param limit
+    *       maximum number of documents in the page, 0 for all documents
+    * @return page of documents as they were at the time
+    * @throws IllegalArgumentException
+    *       if the time is not in the expected format
+    */
+   public DataPage readDocumentsAsOf(String collectionName, String filter, String timestamp, String pageToken, int limit) {
+      checkTimestamp(timestamp);
+      DataPage page = dataStorage.searchPage(collectionName, dataStorageDialect.documentCreatedBeforeFilter(filter, timestamp), null, 0, pageToken, limit);
+
+      List<DataDocument> dataDocuments = new ArrayList<>();
+      for (DataDocument document : page.getDocuments()) {
+         DataDocument oldDocument = documentAsOf(collectionName, document.getId(), document, timestamp);
+         if (oldDocument != null) {
+            dataDocuments.add(oldDocument);
+         }
+      }
+      return new DataPage(dataDocuments, page.getNextPageToken());
+   }
+
+   /**
+    * Finds the last version of document updated at the given time or before it.
+    * Versions are read from the newest one in batches of snapshot interval size.
+    *
+    * @param collectionName
+    *       collection where document is stored
+    * @param documentId
+    *       id of document
+    * @param main
+    *       the current document, null when it was dropped
+    * @param timestamp
+    *       the time to read document at
+    * @return the version of document with its id as in collection, null when the document did not exist at the time
+    */
+   private DataDocument documentAsOf(String collectionName, String documentId, DataDocument main, String timestamp) {
+      if (main != null) {
+         if (isNotNewerThan(main, timestamp)) {
+            return main;
+         }
+         String createDate = main.getString(LumeerConst.Document.CREATE_DATE_KEY);
+         if (createDate != null && createDate.compareTo(timestamp) > 0) {
+            return null;
+         }
+      }
+
+      ensureShadowIndex(collectionName);
+      String shadowCollectionName = buildShadowCollectionName(collectionName);
+      int beforeVersion = main != null ? getDocumentVersion(main) : Integer.MAX_VALUE;
+      while (true) {
+         List<DataDocument> shadowDocuments = dataStorage.search(shadowCollectionName, dataStorageDialect.documentVersionBeforeFilter(documentId, beforeVersion), dataStorageDialect.documentVersionSort(true), 0, snapshotInterval + 1);
+         if (shadowDocuments.isEmpty()) {
+            return null;
+         }
+
+         for (DataDocument version : reconstructVersions(collectionName, documentId, shadowDocuments)) {
+            if (isNotNewerThan(version, timestamp)) {
+               return withDocumentId(version, documentId);
+            }
+         }
+
+         beforeVersion = getShadowVersion(shadowDocuments.get(shadowDocuments.size() - 1));
+      }
+   }
+
+   /**
+    * Reconstructs versions of document from its shadow documents.
+    *
+    * @param collectionName
+    *       collection where document is stored
+    * @param documentId
+    *       id of document
+    * @param shadowDocuments
+    *       shadow documents of the document
+    * @return the versions that could be reconstructed in the order of shadow documents
+    */
+   private List<DataDocument> reconstructVersions(String collectionName, String documentId, List<DataDocument> shadowDocuments) {
+      Map<Integer, DataDocument> baseDocuments = new HashMap<>();
+      shadowDocuments.stream().filter(shadowDocument -> !isDelta(shadowDocument)).forEach(shadowDocument -> baseDocuments.put(getShadowVersion(shadowDocument), shadowDocument));
+
+      List<DataDocument> dataDocuments = new ArrayList<>();
+      for (DataDocument shadowDocument : shadowDocuments) {
+         DataDocument document = reconstructVersion(collectionName, documentId, shadowDocument, baseDocuments);
+         if (document != null) {
+            dataDocuments.add(document);
+         }
+      }
       return dataDocuments;
    }
 
+   /**
+    * Reconstructs a version of document from its shadow document.
+    *
+    * @param collectionName
+    *       collection where document is stored
+    * @param documentId
+    *       id of document
+    * @param shadowDocument
+    *       shadow document of the version, may be null
+    * @param baseDocuments
+    *       full copies already read by their versions, full copies read by this method are added
+    * @return the old version in the same form as stored in shadow collection, null when it cannot be reconstructed
+    */
+   private DataDocument reconstructVersion(String collectionName, String documentId, DataDocument shadowDocument, Map<Integer, DataDocument> baseDocuments) {
+      if (shadowDocument == null || !isDelta(shadowDocument)) {
+         return shadowDocument;
+      }
+
+      int baseVersion = shadowDocument.getInteger(LumeerConst.Document.SHADOW_BASE_KEY);
+      DataDocument baseDocument = baseDocuments.get(baseVersion);
+      if (baseDocument == null) {
+         baseDocument = dataStorage.readOldDocument(buildShadowCollectionName(collectionName), documentId, baseVersion);
+         if (baseDocument == null || isDelta(baseDocument)) {
+            return null;
+         }
+         baseDocuments.put(baseVersion, baseDocument);
+      }
+
+      DataDocument document = new DataDocument(baseDocument);
+      shadowDocument.forEach((key, value) -> {
+         if (!LumeerConst.Document.SHADOW_DELTA_KEY.equals(key) && !LumeerConst.Document.SHADOW_BASE_KEY.equals(key)) {
+            document.put(key, value);
+         }
+      });
+      Object missing = shadowDocument.get(LumeerConst.Document.SHADOW_DELTA_KEY);
+      if (missing instanceof List) {
+         ((List<?>) missing).forEach(document::remove);
+      }
+
+      // the copied composite id carries the version of the base, the version must be the one of the delta
+      DataDocument id = new DataDocument(baseDocument.getDataDocument(LumeerConst.Document.ID));
+      DataDocument shadowId = shadowDocument.getDataDocument(LumeerConst.Document.ID);
+      id.put(LumeerConst.Document.METADATA_VERSION_KEY, shadowId != null ? shadowId.getInteger(LumeerConst.Document.METADATA_VERSION_KEY) : getDocumentVersion(document));
+      document.put(LumeerConst.Document.ID, id);
+      return document;
+   }
+
+   /**
+    * Checks whether the version of document was created at the given time or before it.
+    * The time of the first version is the creation date of document.
+    *
+    * @param document
+    *       the version of document
+    * @param timestamp
+    *       the time in format yyyy.MM.dd HH.mm.ss.SSS
+    * @return true when the version is not newer than the time
+    */
+   private boolean isNotNewerThan(DataDocument document, String timestamp) {
+      String versionDate = document.getString(LumeerConst.Document.UPDATE_DATE_KEY);
+      if (versionDate == null) {
+         versionDate = document.getString(LumeerConst.Document.CREATE_DATE_KEY);
+      }
+      return versionDate == null || versionDate.compareTo(timestamp) <= 0;
+   }
+
+   private void checkTimestamp(String timestamp) {
+      if (timestamp == null || !Utils.isValidDateFormat(timestamp)) {
+         throw new IllegalArgumentException("Invalid timestamp " + timestamp + ", expected format is yyyy.MM.dd HH.mm.ss.SSS.");
+      }
+   }
+
+   private DataDocument withDocumentId(DataDocument shadowDocument, String documentId) {
+      DataDocument document = new DataDocument(shadowDocument);
+      document.setId(documentId);
+      return document;
+   }
+
+   private boolean isDelta(DataDocument shadowDocument) {
+      return shadowDocument.containsKey(LumeerConst.Document.SHADOW_DELTA_KEY);
+   }
+
+   private int getShadowVersion(DataDocument shadowDocument) {
+      return shadowDocument.getDataDocument(LumeerConst.Document.ID).getInteger(LumeerConst.Document.METADATA_VERSION_KEY);
+   }
+
    public void putInitDocumentVersionInternally(DataDocument dataDocument) {
       dataDocument.put(LumeerConst.Document.METADATA_VERSION_KEY, 0);
    }
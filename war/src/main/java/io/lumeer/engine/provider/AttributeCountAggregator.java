@@ -0,0 +1,154 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.provider;
+
+import io.lumeer.engine.api.data.DataStorage;
+import io.lumeer.engine.api.data.DataStorageDialect;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+/**
+ * Coalesces changes of attribute counts in collection metadata. Concurrent requests add their changes to striped
+ * in-memory counters of the metadata collection, one of the waiting requests then writes all pending changes with
+ * a single bulk update (group commit). A request returns only after its changes are written, so no counts are lost
+ * when the server stops. Attributes whose count drops to zero are removed from the metadata.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+@ApplicationScoped
+public class AttributeCountAggregator {
+
+   private final Map<DataStorage, Map<String, Counters>> counters = new ConcurrentHashMap<>();
+
+   @Inject
+   private DataStorageDialect dialect;
+
+   /**
+    * Changes counts of the given attributes and waits until the change is written to the storage together with
+    * changes made concurrently by other requests.
+    *
+    * @param dataStorage
+    *       storage holding the metadata collection
+    * @param metadataCollectionName
+    *       name of the metadata collection
+    * @param countChanges
+    *       changes of counts by attribute names
+    */
+   public void changeCounts(final DataStorage dataStorage, final String metadataCollectionName, final Map<String, Integer> countChanges) {
+      if (countChanges.isEmpty()) {
+         return;
+      }
+
+      final Counters collectionCounters = counters.computeIfAbsent(dataStorage, storage -> new ConcurrentHashMap<>())
+                                                  .computeIfAbsent(metadataCollectionName, name -> new Counters());
+
+      final Batch batch;
+      collectionCounters.batchLock.readLock().lock();
+      try {
+         batch = collectionCounters.open;
+         countChanges.forEach((attribute, change) -> batch.changes.computeIfAbsent(attribute, a -> new LongAdder()).add(change));
+      } finally {
+         collectionCounters.batchLock.readLock().unlock();
+      }
+
+      // the batch is either written by a concurrent request or it is still open and we write it
+      while (!batch.written.isDone()) {
+         collectionCounters.writeLock.lock();
+         try {
+            if (!batch.written.isDone()) {
+               write(dataStorage, metadataCollectionName, collectionCounters);
+            }
+         } finally {
+            collectionCounters.writeLock.unlock();
+         }
+      }
+
+      try {
+         batch.written.join();
+      } catch (CompletionException e) {
+         throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+      }
+   }
+
+   private void write(final DataStorage dataStorage, final String metadataCollectionName, final Counters collectionCounters) {
+      final Batch batch;
+      collectionCounters.batchLock.writeLock().lock();
+      try {
+         batch = collectionCounters.open;
+         collectionCounters.open = new Batch();
+      } finally {
+         collectionCounters.batchLock.writeLock().unlock();
+      }
+
+      try {
+         final Map<String, Integer> countChanges = new HashMap<>();
+         batch.changes.forEach((attribute, change) -> {
+            if (change.intValue() != 0) {
+               countChanges.put(attribute, change.intValue());
+            }
+         });
+
+         if (!countChanges.isEmpty()) {
+            dataStorage.run(dialect.updateCollectionAttributeCountsQuery(metadataCollectionName, countChanges));
+            if (countChanges.values().stream().anyMatch(change -> change < 0)) {
+               dataStorage.run(dialect.dropUnusedCollectionAttributesQuery(metadataCollectionName));
+            }
+         }
+         batch.written.complete(null);
+      } catch (RuntimeException e) {
+         batch.written.completeExceptionally(e);
+      }
+   }
+
+   /**
+    * Pending changes of a metadata collection.
+    */
+   private static final class Counters {
+
+      // shared by requests adding their changes, exclusive when the open batch is taken for writing
+      private final ReadWriteLock batchLock = new ReentrantReadWriteLock();
+
+      // only one batch of a metadata collection is written at a time
+      private final Lock writeLock = new ReentrantLock();
+
+      private Batch open = new Batch();
+   }
+
+   /**
+    * Changes of counts written at once.
+    */
+   private static final class Batch {
+
+      private final Map<String, LongAdder> changes = new ConcurrentHashMap<>();
+
+      private final CompletableFuture<Void> written = new CompletableFuture<>();
+   }
+}
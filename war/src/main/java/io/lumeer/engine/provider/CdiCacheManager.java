@@ -22,7 +22,9 @@ package io.lumeer.engine.provider;
 import io.lumeer.engine.api.cache.Cache;
 import io.lumeer.engine.api.cache.CacheFactory;
 import io.lumeer.engine.api.cache.CacheManager;
+import io.lumeer.engine.api.cache.CachePolicy;
 import io.lumeer.engine.api.cache.CacheProvider;
+import io.lumeer.engine.controller.ConfigurationFacade;
 import io.lumeer.engine.controller.OrganisationFacade;
 import io.lumeer.engine.controller.ProjectFacade;
 
@@ -43,12 +45,17 @@ public class CdiCacheManager implements CacheManager, Serializable {
 
    private Map<String, Map<String, Cache>> caches = new ConcurrentHashMap<>();
 
+   private Map<String, CachePolicy> policies = new ConcurrentHashMap<>();
+
    @Inject
    private OrganisationFacade organisationFacade;
 
    @Inject
    private ProjectFacade projectFacade;
 
+   @Inject
+   private ConfigurationFacade configurationFacade;
+
    @Override
    public CacheProvider getCacheProvider(final String namespace) {
       final CacheProvider provider = new DefaultCacheProvider();
@@ -60,9 +67,31 @@ public class CdiCacheManager implements CacheManager, Serializable {
    public <T> Cache<T> getCache(final String name) {
       final String key = organisationFacade.getOrganisationId() + "/" + projectFacade.getCurrentProjectId();
       final Map<String, Cache> localCaches = caches.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
-      final Cache<T> cache = localCaches.computeIfAbsent(name, k -> cacheFactory.getCache());
+      final Cache<T> cache = localCaches.computeIfAbsent(name, k -> cacheFactory.getCache(getCachePolicy(name)));
 
       return cache;
    }
 
+   /**
+    * Gets the configured policy of the caches of the given name. All caches of the same name share the policy,
+    * each of them is bounded separately.
+    *
+    * @param name
+    *       name of the caches
+    * @return policy of the caches
+    */
+   public CachePolicy getCachePolicy(final String name) {
+      return policies.computeIfAbsent(name, configurationFacade::getCachePolicy);
+   }
+
+   @Override
+   public void invalidate(final String cacheName, final String key) {
+      caches.values().forEach(localCaches -> {
+         final Cache<?> cache = localCaches.get(cacheName);
+         if (cache != null) {
+            cache.remove(key);
+         }
+      });
+   }
+
 }
@@ -0,0 +1,136 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.provider;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.cache.Cache;
+import io.lumeer.engine.api.cache.CacheManager;
+import io.lumeer.engine.api.data.DataChange;
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataStorage;
+import io.lumeer.engine.controller.CollectionMetadataFacade;
+import io.lumeer.engine.controller.CollectionSchema;
+import io.lumeer.engine.push.ChangeNotifications;
+
+import java.util.Collection;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+/**
+ * Reacts to the changes reported by the change feed of the user data storage, including the changes made by other
+ * nodes of a cluster. Invalidates the cached collection schemas, updates the link indexes and fans the changes out as
+ * push notifications.
+ *
+ * <p>The feed reports the changes made by this node too, they have already been applied to the caches. A cached schema
+ * is only invalidated when the change gives a different schema than the cached one, so changes of the attribute
+ * counts made by every document write and changes already reflected by the schema keep it cached. Links are added to
+ * and removed from the link indexes one by one, applying a change again does not change an index.</p>
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+@ApplicationScoped
+public class ChangeFeedDispatcher {
+
+   @Inject
+   private CacheManager cacheManager;
+
+   @Inject
+   private ChangeNotifications changeNotifications;
+
+   @Inject
+   private LinkGraphProvider linkGraphProvider;
+
+   /**
+    * Handles a change of a database.
+    *
+    * @param database
+    *       name of the changed database
+    * @param change
+    *       the change
+    * @param storages
+    *       storages working with the changed database
+    */
+   public void onChange(final String database, final DataChange change, final Collection<DataStorage> storages) {
+      invalidateCollectionSchema(change);
+      updateLinkGraphs(change, storages);
+      changeNotifications.onDataChange(database, change, storages);
+   }
+
+   private void invalidateCollectionSchema(final DataChange change) {
+      final String collectionName = change.getCollectionName();
+
+      if (collectionName.startsWith(LumeerConst.Collection.COLLECTION_METADATA_PREFIX)) {
+         final String schemaCollectionName = collectionName.substring(LumeerConst.Collection.COLLECTION_METADATA_PREFIX.length());
+         final Cache<CollectionSchema> schemas = cacheManager.getCache(CollectionMetadataFacade.SCHEMA_CACHE);
+         final CollectionSchema schema = schemas.get(schemaCollectionName);
+         if (schema != null && (change.getDocumentId() == null || schema.isChangedBy(change))) {
+            schemas.remove(schemaCollectionName);
+         }
+      } else if (change.getOperation() == DataChange.Operation.DROP_COLLECTION || change.getOperation() == DataChange.Operation.RENAME_COLLECTION) {
+         cacheManager.invalidate(CollectionMetadataFacade.SCHEMA_CACHE, collectionName);
+      }
+   }
+
+   private void updateLinkGraphs(final DataChange change, final Collection<DataStorage> storages) {
+      final String collectionName = change.getCollectionName();
+      if (!isLinkCollection(collectionName) && (change.getNewCollectionName() == null || !isLinkCollection(change.getNewCollectionName()))) {
+         return;
+      }
+
+      final boolean mainTable = collectionName.equals(LumeerConst.Linking.MainTable.NAME);
+      final DataDocument document = change.getDelta();
+      switch (change.getOperation()) {
+         case INSERT:
+            if (document == null) {
+               storages.forEach(linkGraphProvider::invalidate);
+            } else if (mainTable) {
+               storages.forEach(storage -> linkGraphProvider.update(storage, graph -> graph.linkingTableCreated(document)));
+            } else {
+               storages.forEach(storage -> linkGraphProvider.update(storage, graph -> graph.linkCreated(collectionName, change.getDocumentId(),
+                     document.getString(LumeerConst.Linking.LinkingTable.ATTR_FROM_ID), document.getString(LumeerConst.Linking.LinkingTable.ATTR_TO_ID),
+                     document.getDataDocument(LumeerConst.Linking.LinkingTable.ATTR_ATTRIBUTES))));
+            }
+            break;
+         case DELETE:
+            // linking tables are forgotten together with their linking collections
+            if (!mainTable) {
+               storages.forEach(storage -> linkGraphProvider.update(storage, graph -> graph.linkDropped(collectionName, change.getDocumentId())));
+            }
+            break;
+         case CREATE_COLLECTION:
+            break;
+         case DROP_COLLECTION:
+            if (mainTable) {
+               storages.forEach(linkGraphProvider::invalidate);
+            } else {
+               storages.forEach(storage -> linkGraphProvider.update(storage, graph -> graph.linkingTableDropped(collectionName)));
+            }
+            break;
+         default:
+            // links are never updated in place nor renamed by this application, the index is loaded again
+            storages.forEach(linkGraphProvider::invalidate);
+            break;
+      }
+   }
+
+   private static boolean isLinkCollection(final String collectionName) {
+      return collectionName.equals(LumeerConst.Linking.MainTable.NAME) || collectionName.startsWith(LumeerConst.Linking.PREFIX);
+   }
+}
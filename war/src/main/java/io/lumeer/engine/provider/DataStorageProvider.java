@@ -21,13 +21,20 @@ package io.lumeer.engine.provider;
 
 import io.lumeer.engine.api.cache.CacheManager;
 import io.lumeer.engine.api.cache.CacheProvider;
+import io.lumeer.engine.api.data.AsyncDataStorage;
+import io.lumeer.engine.api.data.DataChange;
+import io.lumeer.engine.api.data.DataChangeSubscription;
 import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.api.data.DataStorageFactory;
 import io.lumeer.engine.controller.ConfigurationFacade;
 import io.lumeer.engine.controller.OrganisationFacade;
 
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
@@ -40,8 +47,17 @@ public class DataStorageProvider {
 
    private static final String SYSTEM_CONNECTION = "/SYSTEM/"; // organisation cannot have / in its name
 
+   private static final Set<DataChange.Operation> COLLECTION_OPERATIONS = EnumSet.of(DataChange.Operation.CREATE_COLLECTION, DataChange.Operation.DROP_COLLECTION, DataChange.Operation.RENAME_COLLECTION);
+
    private Map<String, DataStorage> connections = new ConcurrentHashMap<>();
 
+   private Map<String, AsyncDataStorage> asyncConnections = new ConcurrentHashMap<>();
+
+   private Map<String, DataChangeSubscription> changeSubscriptions = new ConcurrentHashMap<>();
+
+   // databases of the connections
+   private Map<String, String> databases = new ConcurrentHashMap<>();
+
    @Inject
    private DataStorageFactory dataStorageFactory;
 
@@ -54,18 +70,76 @@ public class DataStorageProvider {
    @Inject
    private CacheManager cacheManager;
 
+   @Inject
+   private ChangeFeedDispatcher changeFeedDispatcher;
+
    public DataStorage getUserStorage() {
       return connections.computeIfAbsent(organisationFacade.getOrganisationId(),
-            k -> dataStorageFactory.getStorage(cacheManager.getCacheProvider("userDataStorage"), configurationFacade.getDataStorage(), configurationFacade.getDataStorageDatabase(), configurationFacade.getDataStorageUseSsl()));
+            k -> subscribeChanges(k, configurationFacade.getDataStorageDatabase(), dataStorageFactory.getStorage(cacheManager.getCacheProvider("userDataStorage"), configurationFacade.getDataStorage(), configurationFacade.getDataStorageDatabase(), configurationFacade.getDataStorageUseSsl(), configurationFacade.getDataStorageSettings())));
+   }
+
+   /**
+    * Gets the name of the database of the current organisation.
+    *
+    * @return the name of the database the user data storage works with
+    */
+   public String getUserDatabase() {
+      return configurationFacade.getDataStorageDatabase();
+   }
+
+   /**
+    * Checks whether the change feed of the database delivers changes.
+    *
+    * @param database
+    *       name of the database
+    * @return true if the database is subscribed to and its feed has not stopped
+    */
+   public boolean isChangeFeedActive(final String database) {
+      final DataChangeSubscription subscription = changeSubscriptions.get(database);
+      return subscription != null && subscription.isActive();
+   }
+
+   public AsyncDataStorage getUserAsyncStorage() {
+      return asyncConnections.computeIfAbsent(organisationFacade.getOrganisationId(),
+            k -> dataStorageFactory.getAsyncStorage(configurationFacade.getDataStorage(), configurationFacade.getDataStorageDatabase(), configurationFacade.getDataStorageUseSsl(), configurationFacade.getDataStorageSettings()));
    }
 
    public DataStorage getSystemStorage() {
-      return connections.computeIfAbsent(SYSTEM_CONNECTION,
-            k -> dataStorageFactory.getStorage(cacheManager.getCacheProvider("systemDataStorage"), configurationFacade.getSystemDataStorage(), configurationFacade.getSystemDataStorageDatabase(), configurationFacade.getSystemDataStorageUseSsl()));
+      return connections.computeIfAbsent(SYSTEM_CONNECTION, k -> {
+         databases.put(k, configurationFacade.getSystemDataStorageDatabase());
+         return dataStorageFactory.getStorage(cacheManager.getCacheProvider("systemDataStorage"), configurationFacade.getSystemDataStorage(), configurationFacade.getSystemDataStorageDatabase(), configurationFacade.getSystemDataStorageUseSsl(), configurationFacade.getDataStorageSettings());
+      });
+   }
+
+   /**
+    * Subscribes to the changes of the database, unless there already is a subscription through a storage of another
+    * organisation using the same database. Changes of collections refresh the collection names of all storages
+    * working with the database.
+    */
+   private DataStorage subscribeChanges(final String connection, final String database, final DataStorage storage) {
+      databases.put(connection, database);
+      changeSubscriptions.computeIfAbsent(database, k -> storage.subscribeChanges(null, change -> {
+         final List<DataStorage> storages = getStorages(database);
+         changeFeedDispatcher.onChange(database, change, storages);
+         if (COLLECTION_OPERATIONS.contains(change.getOperation())) {
+            storages.stream().filter(other -> other != storage).forEach(DataStorage::invalidateCaches);
+         }
+      }));
+
+      return storage;
+   }
+
+   private List<DataStorage> getStorages(final String database) {
+      return connections.entrySet().stream()
+                        .filter(entry -> database.equals(databases.get(entry.getKey())))
+                        .map(Map.Entry::getValue)
+                        .collect(Collectors.toList());
    }
 
    @PreDestroy
    public void closeConnections() {
+      changeSubscriptions.forEach((k, v) -> v.close());
       connections.forEach((k, v) -> v.disconnect());
+      asyncConnections.forEach((k, v) -> v.disconnect());
    }
 }
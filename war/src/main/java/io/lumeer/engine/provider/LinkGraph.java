@@ -0,0 +1,643 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.provider;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataStorage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * In-memory index of all links in a data storage. Linking tables are indexed by the name of their linking collection,
+ * links of each table are kept in adjacency lists of document ordinals in both directions, so that links and neighbours
+ * of a document are found without contacting the storage. Document ids are interned to int ordinals to keep the lists
+ * compact. An ordinal is released together with the last link of its document and reused for another document.
+ *
+ * <p>The index is loaded lazily on the first use and must be notified about every change of the links made through
+ * this node, including linking collections dropped directly in the storage. Changes made by other nodes are applied
+ * as the change feed of the storage reports them. The feed reports the changes of this node as well, applying a change
+ * again does not change the index. Links are remembered with the ids of their linking documents, as the feed
+ * identifies removed links by the ids only. Answers use the same semantics as the linking filters of
+ * {@link io.lumeer.engine.api.data.DataStorageDialect}.</p>
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class LinkGraph {
+
+   private final DataStorage dataStorage;
+
+   private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+   private final Map<String, Integer> ordinals = new HashMap<>();
+   private final List<String> documentIds = new ArrayList<>();
+
+   // number of links of each document ordinal, a document without links gives its ordinal away
+   private final IntList references = new IntList();
+   private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+
+   // linking tables by the name of the linking collection, in the order of creation
+   private final Map<String, LinkTable> tables = new LinkedHashMap<>();
+
+   private volatile boolean loaded = false;
+
+   public LinkGraph(final DataStorage dataStorage) {
+      this.dataStorage = dataStorage;
+   }
+
+   /**
+    * Gets the linking tables of the given collection.
+    *
+    * @param collectionName
+    *       the name of the collection
+    * @param role
+    *       role name, all roles are matched when null or empty
+    * @param linkDirection
+    *       direction of link
+    * @return the linking tables in the form of documents of the main linking table
+    */
+   public List<DataDocument> getLinkingTables(final String collectionName, final String role, final LumeerConst.Linking.LinkDirection linkDirection) {
+      final boolean anyRole = role == null || role.isEmpty();
+
+      return readTables(table -> (linkDirection == LumeerConst.Linking.LinkDirection.FROM ? table.fromCollection : table.toCollection).equals(collectionName)
+            && (anyRole || role.equals(table.role)));
+   }
+
+   /**
+    * Gets the linking tables between the two given collections.
+    *
+    * @param firstCollectionName
+    *       the name of the first collection
+    * @param secondCollectionName
+    *       the name of the second collection
+    * @param role
+    *       role name, all roles are matched when null
+    * @param linkDirection
+    *       direction of link
+    * @return the linking tables in the form of documents of the main linking table
+    */
+   public List<DataDocument> getLinkingTables(final String firstCollectionName, final String secondCollectionName, final String role, final LumeerConst.Linking.LinkDirection linkDirection) {
+      final String fromCollectionName = linkDirection == LumeerConst.Linking.LinkDirection.FROM ? firstCollectionName : secondCollectionName;
+      final String toCollectionName = linkDirection == LumeerConst.Linking.LinkDirection.FROM ? secondCollectionName : firstCollectionName;
+
+      return readTables(table -> table.fromCollection.equals(fromCollectionName) && table.toCollection.equals(toCollectionName)
+            && (role == null || role.equals(table.role)));
+   }
+
+   /**
+    * Gets all links of the given linking table.
+    *
+    * @param collectionName
+    *       the name of the linking collection
+    * @return the links in the form of linking documents
+    */
+   public List<DataDocument> getLinkingDocuments(final String collectionName) {
+      ensureLoaded();
+      lock.readLock().lock();
+      try {
+         final LinkTable table = tables.get(collectionName);
+         final List<DataDocument> documents = new ArrayList<>();
+         if (table != null) {
+            table.links.forEach((key, attributes) -> documents.add(toLinkingDocument(fromOrdinal(key), toOrdinal(key), attributes)));
+         }
+         return documents;
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * Gets all links of the given document in the given linking table.
+    *
+    * @param collectionName
+    *       the name of the linking collection
+    * @param documentId
+    *       the id of the document
+    * @param linkDirection
+    *       direction of link
+    * @return the links in the form of linking documents
+    */
+   public List<DataDocument> getLinkingDocuments(final String collectionName, final String documentId, final LumeerConst.Linking.LinkDirection linkDirection) {
+      ensureLoaded();
+      lock.readLock().lock();
+      try {
+         final LinkTable table = tables.get(collectionName);
+         final Integer ordinal = ordinals.get(documentId);
+         final List<DataDocument> documents = new ArrayList<>();
+         if (table != null && ordinal != null) {
+            final boolean from = linkDirection == LumeerConst.Linking.LinkDirection.FROM;
+            final IntList neighbours = (from ? table.outgoing : table.incoming).get(ordinal);
+            if (neighbours != null) {
+               for (int i = 0; i < neighbours.size(); i++) {
+                  final long key = from ? key(ordinal, neighbours.get(i)) : key(neighbours.get(i), ordinal);
+                  documents.add(toLinkingDocument(fromOrdinal(key), toOrdinal(key), table.links.get(key)));
+               }
+            }
+         }
+         return documents;
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * Gets the link between two documents in the given linking table.
+    *
+    * @param collectionName
+    *       the name of the linking collection
+    * @param fromId
+    *       the id of the first document
+    * @param toId
+    *       the id of the second document
+    * @param linkDirection
+    *       direction of link
+    * @return the link in the form of linking document or an empty list when the documents are not linked
+    */
+   public List<DataDocument> getLinkingDocuments(final String collectionName, final String fromId, final String toId, final LumeerConst.Linking.LinkDirection linkDirection) {
+      ensureLoaded();
+      lock.readLock().lock();
+      try {
+         final LinkTable table = tables.get(collectionName);
+         final Long key = key(fromId, toId, linkDirection);
+         final List<DataDocument> documents = new ArrayList<>();
+         if (table != null && key != null && table.links.containsKey(key)) {
+            documents.add(toLinkingDocument(fromOrdinal(key), toOrdinal(key), table.links.get(key)));
+         }
+         return documents;
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * Gets ids of the documents linked with the given document in the given linking table.
+    *
+    * @param collectionName
+    *       the name of the linking collection
+    * @param documentId
+    *       the id of the document
+    * @param linkDirection
+    *       direction of link
+    * @return ids of the linked documents in the order of creation of the links
+    */
+   public List<String> getLinkedDocumentIds(final String collectionName, final String documentId, final LumeerConst.Linking.LinkDirection linkDirection) {
+      ensureLoaded();
+      lock.readLock().lock();
+      try {
+         final LinkTable table = tables.get(collectionName);
+         final Integer ordinal = ordinals.get(documentId);
+         final List<String> ids = new ArrayList<>();
+         if (table != null && ordinal != null) {
+            final IntList neighbours = (linkDirection == LumeerConst.Linking.LinkDirection.FROM ? table.outgoing : table.incoming).get(ordinal);
+            if (neighbours != null) {
+               for (int i = 0; i < neighbours.size(); i++) {
+                  ids.add(documentIds.get(neighbours.get(i)));
+               }
+            }
+         }
+         return ids;
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * Gets the number of links in the given linking table.
+    *
+    * @param collectionName
+    *       the name of the linking collection
+    * @return the number of links
+    */
+   public long countLinks(final String collectionName) {
+      ensureLoaded();
+      lock.readLock().lock();
+      try {
+         final LinkTable table = tables.get(collectionName);
+         return table != null ? table.links.size() : 0;
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * Records a new linking table.
+    *
+    * @param linkingTable
+    *       the document of the main linking table describing the new linking table
+    */
+   public void linkingTableCreated(final DataDocument linkingTable) {
+      write(() -> {
+         final String collectionName = linkingTable.getString(LumeerConst.Linking.MainTable.ATTR_COL_NAME);
+         if (!tables.containsKey(collectionName)) {
+            tables.put(collectionName, new LinkTable(linkingTable));
+         }
+      });
+   }
+
+   /**
+    * Forgets the given linking table together with all its links.
+    *
+    * @param collectionName
+    *       the name of the linking collection
+    */
+   public void linkingTableDropped(final String collectionName) {
+      write(() -> {
+         final LinkTable table = tables.remove(collectionName);
+         if (table != null) {
+            table.links.keySet().forEach(this::release);
+         }
+      });
+   }
+
+   /**
+    * Records a new link.
+    *
+    * @param collectionName
+    *       the name of the linking collection
+    * @param fromId
+    *       the id of the source document
+    * @param toId
+    *       the id of the target document
+    * @param attributes
+    *       attributes of the link
+    */
+   public void linkCreated(final String collectionName, final String fromId, final String toId, final DataDocument attributes) {
+      linkCreated(collectionName, null, fromId, toId, attributes);
+   }
+
+   /**
+    * Records a new link together with the id of its linking document.
+    *
+    * @param collectionName
+    *       the name of the linking collection
+    * @param linkId
+    *       the id of the linking document, null when not known
+    * @param fromId
+    *       the id of the source document
+    * @param toId
+    *       the id of the target document
+    * @param attributes
+    *       attributes of the link
+    */
+   public void linkCreated(final String collectionName, final String linkId, final String fromId, final String toId, final DataDocument attributes) {
+      write(() -> {
+         final LinkTable table = tables.get(collectionName);
+         if (table != null) {
+            addLink(table, linkId, fromId, toId, attributes);
+         }
+      });
+   }
+
+   /**
+    * Forgets all links of the given document in the given linking table.
+    *
+    * @param collectionName
+    *       the name of the linking collection
+    * @param documentId
+    *       the id of the document
+    * @param linkDirection
+    *       direction of link
+    */
+   public void linksDropped(final String collectionName, final String documentId, final LumeerConst.Linking.LinkDirection linkDirection) {
+      write(() -> {
+         final LinkTable table = tables.get(collectionName);
+         final Integer ordinal = ordinals.get(documentId);
+         if (table != null && ordinal != null) {
+            final boolean from = linkDirection == LumeerConst.Linking.LinkDirection.FROM;
+            final IntList neighbours = (from ? table.outgoing : table.incoming).get(ordinal);
+            if (neighbours != null) {
+               for (int neighbour : neighbours.toArray()) {
+                  removeLink(table, from ? key(ordinal, neighbour) : key(neighbour, ordinal));
+               }
+            }
+         }
+      });
+   }
+
+   /**
+    * Forgets the link between two documents in the given linking table.
+    *
+    * @param collectionName
+    *       the name of the linking collection
+    * @param fromId
+    *       the id of the first document
+    * @param toId
+    *       the id of the second document
+    * @param linkDirection
+    *       direction of link
+    */
+   public void linkDropped(final String collectionName, final String fromId, final String toId, final LumeerConst.Linking.LinkDirection linkDirection) {
+      write(() -> {
+         final LinkTable table = tables.get(collectionName);
+         final Long key = key(fromId, toId, linkDirection);
+         if (table != null && key != null) {
+            removeLink(table, key);
+         }
+      });
+   }
+
+   /**
+    * Forgets the link stored in the given linking document. Links created without the id of their linking document are
+    * not found.
+    *
+    * @param collectionName
+    *       the name of the linking collection
+    * @param linkId
+    *       the id of the linking document
+    */
+   public void linkDropped(final String collectionName, final String linkId) {
+      write(() -> {
+         final LinkTable table = tables.get(collectionName);
+         final Long key = table != null ? table.linkKeys.get(linkId) : null;
+         if (key != null) {
+            removeLink(table, key);
+         }
+      });
+   }
+
+   /**
+    * Discards the index, it is loaded again from the storage on the next use.
+    */
+   public void invalidate() {
+      lock.writeLock().lock();
+      try {
+         loaded = false;
+         tables.clear();
+         ordinals.clear();
+         documentIds.clear();
+         references.clear();
+         freeOrdinals.clear();
+      } finally {
+         lock.writeLock().unlock();
+      }
+   }
+
+   private List<DataDocument> readTables(final Predicate<LinkTable> filter) {
+      ensureLoaded();
+      lock.readLock().lock();
+      try {
+         final List<DataDocument> result = new ArrayList<>();
+         tables.values().stream().filter(filter).forEach(table -> result.add(table.toDocument()));
+         return result;
+      } finally {
+         lock.readLock().unlock();
+      }
+   }
+
+   private void ensureLoaded() {
+      if (!loaded) {
+         lock.writeLock().lock();
+         try {
+            if (!loaded) {
+               load();
+               loaded = true;
+            }
+         } finally {
+            lock.writeLock().unlock();
+         }
+      }
+   }
+
+   private void load() {
+      for (final DataDocument linkingTable : dataStorage.search(LumeerConst.Linking.MainTable.NAME, null, null, 0, 0)) {
+         final LinkTable table = new LinkTable(linkingTable);
+         if (tables.putIfAbsent(table.collectionName, table) != null) {
+            continue;
+         }
+
+         for (final DataDocument link : dataStorage.search(table.collectionName, null, null, 0, 0)) {
+            final Object linkId = link.get(LumeerConst.Document.ID);
+            addLink(table, linkId != null ? linkId.toString() : null, link.getString(LumeerConst.Linking.LinkingTable.ATTR_FROM_ID),
+                  link.getString(LumeerConst.Linking.LinkingTable.ATTR_TO_ID), link.getDataDocument(LumeerConst.Linking.LinkingTable.ATTR_ATTRIBUTES));
+         }
+      }
+   }
+
+   private void write(final Runnable change) {
+      // the lock waits for a running load, which may have missed the change, changes are idempotent so the change
+      // is applied again; changes made before the index is loaded are already in the storage
+      lock.writeLock().lock();
+      try {
+         if (loaded) {
+            change.run();
+         }
+      } finally {
+         lock.writeLock().unlock();
+      }
+   }
+
+   private void addLink(final LinkTable table, final String linkId, final String fromId, final String toId, final DataDocument attributes) {
+      final int from = ordinal(fromId);
+      final int to = ordinal(toId);
+      if (table.add(from, to, attributes, linkId)) {
+         references.set(from, references.get(from) + 1);
+         references.set(to, references.get(to) + 1);
+      }
+   }
+
+   private void removeLink(final LinkTable table, final long key) {
+      if (table.remove(key)) {
+         release(key);
+      }
+   }
+
+   private void release(final long key) {
+      release(fromOrdinal(key));
+      release(toOrdinal(key));
+   }
+
+   private void release(final int ordinal) {
+      final int count = references.get(ordinal) - 1;
+      references.set(ordinal, count);
+      if (count == 0) {
+         ordinals.remove(documentIds.get(ordinal));
+         documentIds.set(ordinal, null);
+         freeOrdinals.push(ordinal);
+      }
+   }
+
+   private int ordinal(final String documentId) {
+      return ordinals.computeIfAbsent(documentId, id -> {
+         if (!freeOrdinals.isEmpty()) {
+            final int ordinal = freeOrdinals.pop();
+            documentIds.set(ordinal, id);
+            return ordinal;
+         }
+         documentIds.add(id);
+         references.add(0);
+         return documentIds.size() - 1;
+      });
+   }
+
+   private Long key(final String fromId, final String toId, final LumeerConst.Linking.LinkDirection linkDirection) {
+      final Integer from = ordinals.get(linkDirection == LumeerConst.Linking.LinkDirection.FROM ? fromId : toId);
+      final Integer to = ordinals.get(linkDirection == LumeerConst.Linking.LinkDirection.FROM ? toId : fromId);
+      return from != null && to != null ? key(from, to) : null;
+   }
+
+   private static long key(final int from, final int to) {
+      return ((long) from << 32) | (to & 0xFFFFFFFFL);
+   }
+
+   private static int fromOrdinal(final long key) {
+      return (int) (key >>> 32);
+   }
+
+   private static int toOrdinal(final long key) {
+      return (int) key;
+   }
+
+   private DataDocument toLinkingDocument(final int from, final int to, final DataDocument attributes) {
+      return new DataDocument(LumeerConst.Linking.LinkingTable.ATTR_FROM_ID, documentIds.get(from))
+            .append(LumeerConst.Linking.LinkingTable.ATTR_TO_ID, documentIds.get(to))
+            .append(LumeerConst.Linking.LinkingTable.ATTR_ATTRIBUTES, attributes != null ? new DataDocument(attributes) : null);
+   }
+
+   /**
+    * Links of a single linking table.
+    */
+   private static final class LinkTable {
+
+      private final String fromCollection;
+      private final String toCollection;
+      private final String role;
+      private final String collectionName;
+
+      // attributes of links keyed by the pair of document ordinals, in the order of creation
+      private final Map<Long, DataDocument> links = new LinkedHashMap<>();
+      private final Map<Integer, IntList> outgoing = new HashMap<>();
+      private final Map<Integer, IntList> incoming = new HashMap<>();
+
+      // ids of the linking documents, when known
+      private final Map<Long, String> linkIds = new HashMap<>();
+      private final Map<String, Long> linkKeys = new HashMap<>();
+
+      private LinkTable(final DataDocument linkingTable) {
+         this.fromCollection = linkingTable.getString(LumeerConst.Linking.MainTable.ATTR_FROM_COLLECTION);
+         this.toCollection = linkingTable.getString(LumeerConst.Linking.MainTable.ATTR_TO_COLLECTION);
+         this.role = linkingTable.getString(LumeerConst.Linking.MainTable.ATTR_ROLE);
+         this.collectionName = linkingTable.getString(LumeerConst.Linking.MainTable.ATTR_COL_NAME);
+      }
+
+      private boolean add(final int from, final int to, final DataDocument attributes, final String linkId) {
+         final long key = key(from, to);
+         final boolean added = !links.containsKey(key);
+         if (added) {
+            links.put(key, attributes);
+            outgoing.computeIfAbsent(from, k -> new IntList()).add(to);
+            incoming.computeIfAbsent(to, k -> new IntList()).add(from);
+         }
+         if (linkId != null && !linkKeys.containsKey(linkId)) {
+            final String previousId = linkIds.put(key, linkId);
+            if (previousId != null) {
+               linkKeys.remove(previousId);
+            }
+            linkKeys.put(linkId, key);
+         }
+         return added;
+      }
+
+      private boolean remove(final long key) {
+         if (links.containsKey(key)) {
+            links.remove(key);
+            final String linkId = linkIds.remove(key);
+            if (linkId != null) {
+               linkKeys.remove(linkId);
+            }
+            remove(outgoing, fromOrdinal(key), toOrdinal(key));
+            remove(incoming, toOrdinal(key), fromOrdinal(key));
+            return true;
+         }
+         return false;
+      }
+
+      private static void remove(final Map<Integer, IntList> adjacency, final int ordinal, final int neighbour) {
+         final IntList neighbours = adjacency.get(ordinal);
+         if (neighbours != null && neighbours.remove(neighbour) && neighbours.size() == 0) {
+            adjacency.remove(ordinal);
+         }
+      }
+
+      private DataDocument toDocument() {
+         return new DataDocument(LumeerConst.Linking.MainTable.ATTR_FROM_COLLECTION, fromCollection)
+               .append(LumeerConst.Linking.MainTable.ATTR_TO_COLLECTION, toCollection)
+               .append(LumeerConst.Linking.MainTable.ATTR_COL_NAME, collectionName)
+               .append(LumeerConst.Linking.MainTable.ATTR_ROLE, role);
+      }
+   }
+
+   /**
+    * Growable list of primitive ints keeping the insertion order.
+    */
+   private static final class IntList {
+
+      private int[] values = new int[4];
+      private int size = 0;
+
+      private void add(final int value) {
+         if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+         }
+         values[size++] = value;
+      }
+
+      private boolean remove(final int value) {
+         for (int i = 0; i < size; i++) {
+            if (values[i] == value) {
+               System.arraycopy(values, i + 1, values, i, size - i - 1);
+               size--;
+               return true;
+            }
+         }
+         return false;
+      }
+
+      private int get(final int index) {
+         return values[index];
+      }
+
+      private void set(final int index, final int value) {
+         values[index] = value;
+      }
+
+      private void clear() {
+         values = new int[4];
+         size = 0;
+      }
+
+      private int size() {
+         return size;
+      }
+
+      private int[] toArray() {
+         return Arrays.copyOf(values, size);
+      }
+   }
+}
@@ -0,0 +1,77 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.provider;
+
+import io.lumeer.engine.api.data.DataStorage;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import javax.enterprise.context.ApplicationScoped;
+
+/**
+ * Keeps a single {@link LinkGraph} per data storage so that the index is shared by all sessions of an organisation.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+@ApplicationScoped
+public class LinkGraphProvider {
+
+   private final Map<DataStorage, LinkGraph> graphs = new ConcurrentHashMap<>();
+
+   /**
+    * Gets the link index of the given storage, the index is loaded on its first use.
+    *
+    * @param dataStorage
+    *       storage holding the links
+    * @return the link index
+    */
+   public LinkGraph getLinkGraph(final DataStorage dataStorage) {
+      return graphs.computeIfAbsent(dataStorage, LinkGraph::new);
+   }
+
+   /**
+    * Applies a change to the link index of the given storage if there is one.
+    *
+    * @param dataStorage
+    *       storage holding the links
+    * @param change
+    *       the change to apply
+    */
+   public void update(final DataStorage dataStorage, final Consumer<LinkGraph> change) {
+      final LinkGraph graph = graphs.get(dataStorage);
+      if (graph != null) {
+         change.accept(graph);
+      }
+   }
+
+   /**
+    * Discards the link index of the given storage if it was loaded, it is loaded again on its next use.
+    *
+    * @param dataStorage
+    *       storage holding the links
+    */
+   public void invalidate(final DataStorage dataStorage) {
+      final LinkGraph graph = graphs.get(dataStorage);
+      if (graph != null) {
+         graph.invalidate();
+      }
+   }
+}
@@ -0,0 +1,111 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.provider;
+
+import io.lumeer.engine.api.data.DataStorage;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.enterprise.context.ApplicationScoped;
+
+/**
+ * Hands out sequence values from blocks reserved in the data storage (hi/lo allocation). Values of a reserved block are
+ * taken from an in-memory counter without locking, the storage is contacted only when the block is exhausted.
+ * Values are unique across all nodes and increasing on each node.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+@ApplicationScoped
+public class SequenceBlockProvider {
+
+   private final Map<String, AtomicReference<Block>> blocks = new ConcurrentHashMap<>();
+
+   /**
+    * Gets the next value of the given sequence, reserving a new block in the storage when needed.
+    *
+    * @param dataStorage
+    *       storage holding the sequences
+    * @param collectionName
+    *       name of the collection with sequences
+    * @param indexAttribute
+    *       name of the attribute that identifies the sequence document
+    * @param index
+    *       value of the index attribute to identify the sequence
+    * @param blockSize
+    *       number of values reserved at once
+    * @return the next value of the sequence
+    */
+   public int getNext(final DataStorage dataStorage, final String collectionName, final String indexAttribute, final String index, final int blockSize) {
+      final AtomicReference<Block> current = blocks.computeIfAbsent(collectionName + "/" + index, k -> new AtomicReference<>(Block.empty()));
+
+      while (true) {
+         final Block block = current.get();
+         final int value = block.next.getAndIncrement();
+         if (value < block.end) {
+            return value;
+         }
+
+         synchronized (current) {
+            if (current.get() == block) { // nobody has reserved a new block in the meantime
+               final int start = dataStorage.getNextSequenceBlock(collectionName, indexAttribute, index, blockSize);
+               current.set(new Block(start, start + blockSize));
+            }
+         }
+      }
+   }
+
+   /**
+    * Forgets the block reserved for the given sequence. Must be called whenever the sequence is reset in the storage.
+    * Blocks already reserved on other nodes are used up before they see the reset.
+    *
+    * @param collectionName
+    *       name of the collection with sequences
+    * @param index
+    *       value of the index attribute to identify the sequence
+    */
+   public void reset(final String collectionName, final String index) {
+      final AtomicReference<Block> current = blocks.get(collectionName + "/" + index);
+      if (current != null) {
+         synchronized (current) {
+            current.set(Block.empty());
+         }
+      }
+   }
+
+   /**
+    * Range of reserved values, the upper bound is exclusive.
+    */
+   private static final class Block {
+
+      private final AtomicInteger next;
+      private final int end;
+
+      private Block(final int start, final int end) {
+         this.next = new AtomicInteger(start);
+         this.end = end;
+      }
+
+      private static Block empty() {
+         return new Block(0, 0);
+      }
+   }
+}
@@ -0,0 +1,372 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.push;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataChange;
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataStorage;
+import io.lumeer.engine.api.event.CollectionEvent;
+import io.lumeer.engine.api.event.CreateCollection;
+import io.lumeer.engine.api.event.DropCollection;
+import io.lumeer.engine.api.event.DropDocument;
+import io.lumeer.engine.api.event.ReplaceDocument;
+import io.lumeer.engine.api.event.UpdateDocument;
+import io.lumeer.engine.controller.SecurityFacade;
+import io.lumeer.engine.provider.DataStorageProvider;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.Reception;
+import javax.inject.Inject;
+
+/**
+ * Turns document and collection events into push notifications for the WebSocket clients observing the changed object.
+ * Changes of the same document or collection made within {@link #COALESCE_WINDOW} milliseconds are merged
+ * into a single message carrying the resulting delta.
+ *
+ * <p>A message is a JSON object with the id of the changed object, its collection, the kind of the resulting change
+ * ({@code update}, {@code replace}, {@code drop} or {@code create}), the number of merged changes and the delta of
+ * updated attributes, or the whole new document for {@code replace} and created documents.</p>
+ *
+ * <p>A client is only notified about the changes in the data storage of the organisation it authenticated for.
+ * Changes of a document are only sent to the clients whose user can read the document. The rights are read from
+ * the data storage when the message is sent, as there is no request of the user at that time.</p>
+ *
+ * <p>Once the change feed of a database delivers its first change, the notifications about the database are driven
+ * by the feed only. It reports the changes made by all nodes of a cluster including this one, so the local events
+ * are ignored from then on not to notify twice. When the feed stops, the local events are used again.</p>
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+@ApplicationScoped
+public class ChangeNotifications {
+
+   /**
+    * Time in milliseconds for which changes are collected before they are sent.
+    */
+   public static final long COALESCE_WINDOW = 200L;
+
+   private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+
+   @Inject
+   private PushService pushService;
+
+   @Inject
+   private DataStorageProvider dataStorageProvider;
+
+   @Inject
+   private ManagedScheduledExecutorService scheduledExecutorService;
+
+   @Inject
+   private Logger log;
+
+   /**
+    * Changes waiting to be sent by the database and the id of the changed object. Collection names repeat across
+    * the databases of organisations, so the id alone does not identify the object.
+    */
+   private final Map<PendingKey, PendingChange> pendingChanges = new ConcurrentHashMap<>();
+
+   private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+   // databases whose change feed has delivered a change
+   private final Set<String> feedDatabases = ConcurrentHashMap.newKeySet();
+
+   public void onUpdateDocument(@Observes(notifyObserver = Reception.ALWAYS) final UpdateDocument event) {
+      final Object id = event.getDocument().get("_id");
+      if (id != null && !isChangeFeedActive()) {
+         addChange(null, id.toString(), event.getCollectionName(), event instanceof ReplaceDocument ? ChangeType.REPLACE : ChangeType.UPDATE, event.getDocument(), null);
+      }
+   }
+
+   public void onDropDocument(@Observes(notifyObserver = Reception.ALWAYS) final DropDocument event) {
+      final Object id = event.getDocument() != null ? event.getDocument().get("_id") : null;
+      if (id != null && !isChangeFeedActive()) {
+         addChange(null, id.toString(), event.getCollectionName(), ChangeType.DROP, null, null);
+      }
+   }
+
+   public void onCreateCollection(@Observes(notifyObserver = Reception.ALWAYS) final CreateCollection event) {
+      addCollectionChange(event, ChangeType.CREATE);
+   }
+
+   public void onDropCollection(@Observes(notifyObserver = Reception.ALWAYS) final DropCollection event) {
+      addCollectionChange(event, ChangeType.DROP);
+   }
+
+   private void addCollectionChange(final CollectionEvent event, final ChangeType type) {
+      if (event.getInternalName() != null && !isChangeFeedActive()) {
+         addChange(null, event.getInternalName(), event.getInternalName(), type, null, null);
+      }
+   }
+
+   /**
+    * Handles a change delivered by the change feed of the data storage.
+    *
+    * @param database
+    *       name of the changed database
+    * @param change
+    *       the change of the data
+    * @param storages
+    *       storages working with the changed database
+    */
+   public void onDataChange(final String database, final DataChange change, final Collection<DataStorage> storages) {
+      feedDatabases.add(database);
+
+      final String collectionName = change.getCollectionName();
+      switch (change.getOperation()) {
+         case INSERT:
+            addChange(database, change.getDocumentId(), collectionName, ChangeType.CREATE, change.getDelta(), storages);
+            break;
+         case UPDATE:
+            addChange(database, change.getDocumentId(), collectionName, ChangeType.UPDATE, change.getDelta(), storages);
+            break;
+         case REPLACE:
+            addChange(database, change.getDocumentId(), collectionName, ChangeType.REPLACE, change.getDelta(), storages);
+            break;
+         case DELETE:
+            addChange(database, change.getDocumentId(), collectionName, ChangeType.DROP, null, storages);
+            break;
+         case CREATE_COLLECTION:
+            addChange(database, collectionName, collectionName, ChangeType.CREATE, null, storages);
+            break;
+         case DROP_COLLECTION:
+         case RENAME_COLLECTION:
+            addChange(database, collectionName, collectionName, ChangeType.DROP, null, storages);
+            break;
+         default:
+            break;
+      }
+   }
+
+   // whether the changes of the database of the current organisation are delivered by its change feed
+   private boolean isChangeFeedActive() {
+      final String database = dataStorageProvider.getUserDatabase();
+      if (!feedDatabases.contains(database)) {
+         return false;
+      }
+      if (!dataStorageProvider.isChangeFeedActive(database)) {
+         feedDatabases.remove(database);
+         return false;
+      }
+      return true;
+   }
+
+   /**
+    * Adds a change to be sent to the observers of the object.
+    *
+    * @param database
+    *       name of the changed database, null for the database of the current organisation
+    * @param objectId
+    *       id of the changed object
+    * @param collectionName
+    *       collection of the changed object
+    * @param type
+    *       kind of the change
+    * @param document
+    *       updated attributes or the new document
+    * @param storages
+    *       storages working with the changed database, null for the storage of the current organisation
+    */
+   private void addChange(final String database, final String objectId, final String collectionName, final ChangeType type, final DataDocument document, final Collection<DataStorage> storages) {
+      if (objectId == null || !pushService.isObserved(objectId)) {
+         return;
+      }
+
+      // local events are fired in the request that made the change
+      final String changedDatabase = database != null ? database : dataStorageProvider.getUserDatabase();
+      final Collection<DataStorage> changedStorages = storages != null ? storages : Collections.singleton(dataStorageProvider.getUserStorage());
+
+      pendingChanges.compute(new PendingKey(changedDatabase, objectId), (key, pending) -> {
+         final PendingChange change = pending != null ? pending : new PendingChange(collectionName, changedStorages);
+         change.merge(type, document);
+         return change;
+      });
+
+      if (flushScheduled.compareAndSet(false, true)) {
+         scheduledExecutorService.schedule(this::flush, COALESCE_WINDOW, TimeUnit.MILLISECONDS);
+      }
+   }
+
+   private void flush() {
+      // changes added from now on are sent by the next flush
+      flushScheduled.set(false);
+
+      pendingChanges.keySet().forEach(key -> {
+         final PendingChange change = pendingChanges.remove(key);
+         if (change != null) {
+            final String objectId = key.objectId;
+            try {
+               final String message = JSON_MAPPER.writeValueAsString(change.toMessage(objectId));
+
+               // rights of the document read from the storages of the observers
+               final Map<DataStorage, Optional<DataDocument>> rights = new HashMap<>();
+               pushService.getObservers(objectId).stream()
+                          .filter(observer -> canSee(observer, objectId, change, rights))
+                          .forEach(observer -> observer.send(message));
+            } catch (JsonProcessingException e) {
+               log.log(Level.WARNING, "Unable to serialize change notification: ", e);
+            }
+         }
+      });
+   }
+
+   private boolean canSee(final PushSession observer, final String objectId, final PendingChange change, final Map<DataStorage, Optional<DataDocument>> rights) {
+      final DataStorage dataStorage = observer.getDataStorage();
+      if (dataStorage == null || !change.getStorages().contains(dataStorage)) {
+         return false;
+      }
+
+      // changes of collections and dropped documents carry no data
+      if (objectId.equals(change.getCollectionName()) || change.getType() == ChangeType.DROP) {
+         return true;
+      }
+
+      final Optional<DataDocument> document = rights.computeIfAbsent(dataStorage, storage -> readRights(storage, change.getCollectionName(), objectId));
+
+      return document.isPresent() && SecurityFacade.canRead(document.get(), observer.getUserEmail());
+   }
+
+   private Optional<DataDocument> readRights(final DataStorage dataStorage, final String collectionName, final String documentId) {
+      try {
+         return Optional.ofNullable(dataStorage.readDocumentIncludeAttrs(collectionName, documentId, Collections.singletonList(LumeerConst.Document.USER_RIGHTS)));
+      } catch (RuntimeException e) {
+         log.log(Level.FINE, "Unable to read rights of the changed document: ", e);
+         return Optional.empty();
+      }
+   }
+
+   /**
+    * Identifies a changed object within its database.
+    */
+   private static final class PendingKey {
+
+      private final String database;
+
+      private final String objectId;
+
+      private PendingKey(final String database, final String objectId) {
+         this.database = database;
+         this.objectId = objectId;
+      }
+
+      @Override
+      public boolean equals(final Object o) {
+         if (this == o) {
+            return true;
+         }
+         if (o == null || getClass() != o.getClass()) {
+            return false;
+         }
+
+         final PendingKey that = (PendingKey) o;
+         return database.equals(that.database) && objectId.equals(that.objectId);
+      }
+
+      @Override
+      public int hashCode() {
+         return 31 * database.hashCode() + objectId.hashCode();
+      }
+   }
+
+   enum ChangeType {
+      UPDATE, REPLACE, DROP, CREATE
+   }
+
+   /**
+    * Changes of a single object merged together.
+    */
+   static class PendingChange {
+
+      private final String collectionName;
+
+      private final Collection<DataStorage> storages;
+
+      private ChangeType type;
+
+      private DataDocument delta;
+
+      private int count = 0;
+
+      PendingChange(final String collectionName, final Collection<DataStorage> storages) {
+         this.collectionName = collectionName;
+         this.storages = storages;
+      }
+
+      String getCollectionName() {
+         return collectionName;
+      }
+
+      Collection<DataStorage> getStorages() {
+         return storages;
+      }
+
+      ChangeType getType() {
+         return type;
+      }
+
+      DataDocument getDelta() {
+         return delta;
+      }
+
+      int getCount() {
+         return count;
+      }
+
+      void merge(final ChangeType newType, final DataDocument document) {
+         count++;
+
+         if (newType == ChangeType.UPDATE && delta != null && (type == ChangeType.UPDATE || type == ChangeType.REPLACE || type == ChangeType.CREATE)) {
+            delta.putAll(document);
+            return;
+         }
+
+         type = newType;
+         delta = document != null ? new DataDocument(document) : null;
+      }
+
+      DataDocument toMessage(final String objectId) {
+         final DataDocument message = new DataDocument("object", objectId)
+               .append("collection", collectionName)
+               .append("change", type.name().toLowerCase())
+               .append("changes", count);
+         if (delta != null) {
+            message.append("delta", delta);
+         }
+
+         return message;
+      }
+   }
+}
@@ -19,6 +19,10 @@
  */
 package io.lumeer.engine.push;
 
+import io.lumeer.engine.controller.OrganisationFacade;
+import io.lumeer.engine.controller.UserFacade;
+import io.lumeer.engine.provider.DataStorageProvider;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -27,6 +31,7 @@ import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 
 /**
@@ -34,6 +39,8 @@ import javax.ws.rs.core.Context;
  * We need to make sure we only send push notifications via WebSockets to the clients that can
  * pass HTTP authentication. Each JavaScript client first asks for this secured resource and gets back its
  * security token. It then connects via WebSockets passing the security token. This validates the client.
+ * The token remembers the user and the organisation it was issued for, the client is only notified about the changes
+ * the user can read in the organisation.
  *
  * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
  */
@@ -46,9 +53,22 @@ public class PushAuthenticator {
    @Inject
    private PushService pushService;
 
+   @Inject
+   private UserFacade userFacade;
+
+   @Inject
+   private OrganisationFacade organisationFacade;
+
+   @Inject
+   private DataStorageProvider dataStorageProvider;
+
    @GET
    @Path("/")
-   public String authenticate(@Context HttpServletRequest httpServletRequest) {
+   public String authenticate(@Context HttpServletRequest httpServletRequest, @QueryParam("organisation") final String organisationId) {
+      if (organisationId != null && !organisationId.isEmpty()) {
+         organisationFacade.setOrganisationId(organisationId);
+      }
+
       final String token = httpServletRequest.getSession().getId() + ":" + UUID.randomUUID();
       registerToken(token);
 
@@ -72,9 +92,9 @@ public class PushAuthenticator {
          }
       });
 
-      tokensToRemove.forEach(pushService.getTokens()::remove);
+      tokensToRemove.forEach(pushService::removeToken);
 
       // register a new one
-      pushService.getTokens().put(token, System.nanoTime());
+      pushService.registerToken(token, userFacade.getUserEmail(), dataStorageProvider.getUserStorage());
    }
 }
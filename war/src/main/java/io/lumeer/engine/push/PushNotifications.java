@@ -19,8 +19,6 @@
  */
 package io.lumeer.engine.push;
 
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import javax.ejb.Stateless;
 import javax.inject.Inject;
 import javax.websocket.CloseReason;
@@ -49,9 +47,7 @@ public class PushNotifications {
          if (message.startsWith("auth ")) {
             final String token = message.substring(5);
 
-            if (pushService.getTokens().containsKey(token)) {
-               session.getUserProperties().put(PushService.LUMEER_AUTH_HEADER, token);
-
+            if (pushService.authenticateSession(session, token)) {
                return "authenticated";
             }
          }
@@ -59,18 +55,13 @@ public class PushNotifications {
          // all other services need an authenticated client
          if (session.getUserProperties().containsKey(PushService.LUMEER_AUTH_HEADER)) {
             if (message.startsWith("observe ")) {
-               final String objectId = message.substring(8);
-               pushService.getObservedObjects().computeIfAbsent(objectId, k -> ConcurrentHashMap.newKeySet()).add(session);
+               pushService.observe(session, message.substring(8));
 
                return "observing";
             }
 
             if (message.startsWith("unobserve ")) {
-               final String objectId = message.substring(10);
-               final Set<Session> sessions = pushService.getObservedObjects().get(objectId);
-               if (sessions != null) {
-                  sessions.remove(session);
-               }
+               pushService.unobserve(session, message.substring(10));
 
                return "not observing";
             }
@@ -82,21 +73,12 @@ public class PushNotifications {
 
    @OnOpen
    public void open(final Session session) {
-      pushService.getSessions().add(session);
+      pushService.openSession(session);
    }
 
    @OnClose
    public void close(final Session session, final CloseReason c) {
-      // remove token from authenticated tokens
-      final String token = (String) session.getUserProperties().get(PushService.LUMEER_AUTH_HEADER);
-      if (token != null && !token.isEmpty()) {
-         pushService.getTokens().remove(token);
-      }
-
-      // un-register all observations
-      pushService.getObservedObjects().forEach((k, v) -> v.remove(session));
-
-      // delete the session
-      pushService.getSessions().remove(session);
+      // remove token, observations and the session
+      pushService.closeSession(session);
    }
 }
\ No newline at end of file
@@ -19,25 +19,23 @@
  */
 package io.lumeer.engine.push;
 
-import io.lumeer.engine.api.event.DocumentEvent;
+import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.api.push.PushMessage;
 import io.lumeer.engine.controller.UserFacade;
 
-import java.io.IOException;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.enterprise.context.ApplicationScoped;
-import javax.enterprise.event.Observes;
-import javax.enterprise.event.Reception;
 import javax.inject.Inject;
-import javax.websocket.EncodeException;
 import javax.websocket.Session;
 
 /**
- * Sends message to clients using web sockets.
+ * Sends message to clients using web sockets. Authenticated clients are indexed by their channel, HTTP session
+ * and observed objects, so a message is only handed over to the clients interested in it. Messages are sent
+ * asynchronously through a bounded queue of each client, see {@link PushSession}.
  *
  * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
  */
@@ -49,8 +47,10 @@ public class PushService {
     */
    public static final String LUMEER_AUTH_HEADER = "lumeer.auth";
 
-   @Inject
-   private PushNotifications pushNotifications;
+   /**
+    * Maximum number of messages waiting to be sent to a single client before the client is disconnected.
+    */
+   public static final int MAX_PENDING_MESSAGES = 256;
 
    @Inject
    private Logger log;
@@ -59,9 +59,19 @@ public class PushService {
    private UserFacade userFacade;
 
    /**
-    * Currently opened sessions with clients.
+    * Currently opened sessions with clients by WebSocket session id.
+    */
+   private Map<String, PushSession> sessions = new ConcurrentHashMap<>();
+
+   /**
+    * Authenticated clients by channel.
     */
-   private Set<Session> sessions = ConcurrentHashMap.newKeySet();
+   private Map<String, Set<PushSession>> channels = new ConcurrentHashMap<>();
+
+   /**
+    * Authenticated clients by the id of the HTTP session they authenticated from.
+    */
+   private Map<String, Set<PushSession>> clients = new ConcurrentHashMap<>();
 
    /**
     * Authentication tokens of clients authenticated via HTTP.
@@ -69,98 +79,198 @@ public class PushService {
    private Map<String, Long> tokens = new ConcurrentHashMap<>();
 
    /**
-    * Clients registered to observe given objects.
+    * Users the authentication tokens were issued to.
     */
-   private Map<String, Set<Session>> observedObjects = new ConcurrentHashMap<>();
+   private Map<String, TokenOwner> tokenOwners = new ConcurrentHashMap<>();
 
-   public Set<Session> getSessions() {
-      return sessions;
-   }
+   /**
+    * Clients registered to observe given objects.
+    */
+   private Map<String, Set<PushSession>> observedObjects = new ConcurrentHashMap<>();
 
    public Map<String, Long> getTokens() {
       return tokens;
    }
 
-   public Map<String, Set<Session>> getObservedObjects() {
-      return observedObjects;
+   /**
+    * Registers an authentication token issued via HTTP. The client authenticated with the token only gets notified
+    * about the changes in the data storage of the organisation it authenticated for that the user can read.
+    *
+    * @param token
+    *       The authentication token.
+    * @param userEmail
+    *       Email of the user the token was issued to.
+    * @param dataStorage
+    *       Data storage of the organisation the token was issued for.
+    */
+   public void registerToken(final String token, final String userEmail, final DataStorage dataStorage) {
+      tokenOwners.put(token, new TokenOwner(userEmail, dataStorage));
+      tokens.put(token, System.nanoTime());
+   }
+
+   /**
+    * Removes an authentication token.
+    *
+    * @param token
+    *       The authentication token.
+    */
+   public void removeToken(final String token) {
+      tokens.remove(token);
+      tokenOwners.remove(token);
+   }
+
+   /**
+    * Registers a newly opened client session.
+    *
+    * @param session
+    *       The opened WebSocket session.
+    */
+   public void openSession(final Session session) {
+      sessions.put(session.getId(), new PushSession(session, MAX_PENDING_MESSAGES, log));
+   }
+
+   /**
+    * Authenticates the client session with a token obtained via HTTP.
+    *
+    * @param session
+    *       The WebSocket session of the client.
+    * @param token
+    *       The authentication token.
+    * @return True when the token was valid.
+    */
+   public boolean authenticateSession(final Session session, final String token) {
+      final PushSession pushSession = sessions.get(session.getId());
+      final TokenOwner tokenOwner = tokenOwners.get(token);
+      if (pushSession == null || tokenOwner == null || !tokens.containsKey(token)) {
+         return false;
+      }
+
+      session.getUserProperties().put(LUMEER_AUTH_HEADER, token);
+      if (!pushSession.isAuthenticated()) {
+         pushSession.setUser(tokenOwner.userEmail, tokenOwner.dataStorage);
+         pushSession.setClientId(token.substring(0, Math.max(token.indexOf(':'), 0)));
+         channels.computeIfAbsent(pushSession.getChannel(), k -> ConcurrentHashMap.newKeySet()).add(pushSession);
+         clients.computeIfAbsent(pushSession.getClientId(), k -> ConcurrentHashMap.newKeySet()).add(pushSession);
+      }
+
+      return true;
+   }
+
+   /**
+    * Registers the client to observe changes of the given object.
+    *
+    * @param session
+    *       The WebSocket session of the client.
+    * @param objectId
+    *       Id of the object to observe.
+    */
+   public void observe(final Session session, final String objectId) {
+      final PushSession pushSession = sessions.get(session.getId());
+      if (pushSession != null) {
+         pushSession.getObservedObjects().add(objectId);
+         observedObjects.computeIfAbsent(objectId, k -> ConcurrentHashMap.newKeySet()).add(pushSession);
+      }
+   }
+
+   /**
+    * Stops the client from observing changes of the given object.
+    *
+    * @param session
+    *       The WebSocket session of the client.
+    * @param objectId
+    *       Id of the observed object.
+    */
+   public void unobserve(final Session session, final String objectId) {
+      final PushSession pushSession = sessions.get(session.getId());
+      if (pushSession != null) {
+         pushSession.getObservedObjects().remove(objectId);
+         removeFromIndex(observedObjects, objectId, pushSession);
+      }
+   }
+
+   /**
+    * Unregisters the closed client session together with its token and observations.
+    *
+    * @param session
+    *       The closed WebSocket session.
+    */
+   public void closeSession(final Session session) {
+      // remove token from authenticated tokens
+      final String token = (String) session.getUserProperties().get(LUMEER_AUTH_HEADER);
+      if (token != null && !token.isEmpty()) {
+         removeToken(token);
+      }
+
+      final PushSession pushSession = sessions.remove(session.getId());
+      if (pushSession == null) {
+         return;
+      }
+
+      pushSession.close();
+      pushSession.getObservedObjects().forEach(objectId -> removeFromIndex(observedObjects, objectId, pushSession));
+      if (pushSession.isAuthenticated()) {
+         removeFromIndex(channels, pushSession.getChannel(), pushSession);
+         removeFromIndex(clients, pushSession.getClientId(), pushSession);
+      }
    }
 
    /**
     * Sends push-notification message to WebSocket clients listening on the given channel.
     *
     * @param channel
-    *       Channel suffix to send to or empty to send to all channels.
+    *       Channel to send to or empty to send to all channels.
     * @param message
     *       The message to be sent.
     */
    public void publishMessage(final String channel, final String message) {
-      sessions.forEach(session -> {
-         try {
-            log.info(session.getRequestURI().toString());
-            if (channel == null || channel.isEmpty() || session.getRequestURI().toString().endsWith(channel)) {
-               if (session.getUserProperties().containsKey(LUMEER_AUTH_HEADER)) {
-                  session.getBasicRemote().sendText(message);
-               }
-            }
-         } catch (IOException e) {
-            log.log(Level.FINE, "Unable to send push notification: ", e);
-         }
-      });
+      send(channel, message);
    }
 
    /**
     * Sends push-notification message to WebSocket clients listening on the given channel.
     *
     * @param channel
-    *       Channel suffix to send to or empty to send to all channels.
+    *       Channel to send to or empty to send to all channels.
     * @param message
     *       The message to be sent.
     */
    public void publishMessage(final String channel, final Object message) {
-      sessions.forEach(session -> {
-         try {
-            if (channel == null || channel.isEmpty() || session.getRequestURI().toString().endsWith(channel)) {
-               if (session.getUserProperties().containsKey(LUMEER_AUTH_HEADER)) {
-                  session.getBasicRemote().sendObject(message);
-               }
-            }
-         } catch (IOException | EncodeException e) {
-            log.log(Level.FINE, "Unable to send push notification: ", e);
-         }
-      });
+      send(channel, message);
    }
 
    /**
     * Sends push-notification message to a single WebSocket client listening on the given channel.
     *
     * @param clientSession
-    *       Session ID of the client to send the message to.
+    *       HTTP session ID the client authenticated from or WebSocket session ID of the client to send the message to.
     * @param channel
-    *       Channel suffix to send to or empty to send to all channels.
+    *       Channel to send to or empty to send to all channels.
     * @param message
     *       The message to be sent.
     */
    public void publishMessage(final String clientSession, final String channel, final PushMessage message) {
-      sessions.forEach(session -> {
-         if (session.getId() != null && session.getId().equals(clientSession)) {
-            try {
-               if (channel == null || channel.isEmpty() || session.getRequestURI().toString().endsWith(channel)) {
-                  if (session.getUserProperties().containsKey(LUMEER_AUTH_HEADER)) {
-                     session.getBasicRemote().sendText(message.toString());
-                  }
-               }
-            } catch (IOException e) {
-               log.log(Level.FINE, "Unable to send push notification: ", e);
-            }
+      if (clientSession == null) {
+         return;
+      }
+
+      final String text = message.toString();
+      clients.getOrDefault(clientSession, Collections.emptySet()).forEach(pushSession -> {
+         if (isOnChannel(pushSession, channel)) {
+            pushSession.send(text);
          }
       });
+
+      final PushSession pushSession = sessions.get(clientSession);
+      if (pushSession != null && pushSession.isAuthenticated() && !clientSession.equals(pushSession.getClientId()) && isOnChannel(pushSession, channel)) {
+         pushSession.send(text);
+      }
    }
 
    /**
     * Sends push-notification message to the current WebSocket client listening on the given channel.
     *
     * @param channel
-    *       Channel suffix to send to or empty to send to all channels.
+    *       Channel to send to or empty to send to all channels.
     * @param message
     *       The message to be sent.
     */
@@ -169,22 +279,59 @@ public class PushService {
    }
 
    /**
-    * Notifies all WebSocket clients observing given document.
+    * Checks whether any WebSocket client observes the given object.
     *
-    * @param event
-    *       The document event with information about change.
-    */
-   public void onDocumentEvent(@Observes(notifyObserver = Reception.ALWAYS) final DocumentEvent event) {
-      final String objectId = event.getDocument().get("_id").toString();
-
-      if (objectId != null && !objectId.isEmpty() && observedObjects.containsKey(objectId)) {
-         observedObjects.get(objectId).forEach(session -> {
-            try {
-               session.getBasicRemote().sendObject(event);
-            } catch (IOException | EncodeException e) {
-               log.log(Level.SEVERE, "Unable to notify WebSocket client: ", e);
-            }
-         });
+    * @param objectId
+    *       Id of the object.
+    * @return True when the object is observed.
+    */
+   public boolean isObserved(final String objectId) {
+      return observedObjects.containsKey(objectId);
+   }
+
+   /**
+    * Gets all WebSocket clients observing the given object. It is up to the caller to check what the clients
+    * are allowed to see.
+    *
+    * @param objectId
+    *       Id of the observed object.
+    * @return The clients observing the object.
+    */
+   Set<PushSession> getObservers(final String objectId) {
+      return observedObjects.getOrDefault(objectId, Collections.emptySet());
+   }
+
+   private void send(final String channel, final Object message) {
+      if (channel == null || channel.isEmpty()) {
+         channels.values().forEach(channelSessions -> channelSessions.forEach(pushSession -> pushSession.send(message)));
+      } else {
+         channels.getOrDefault(channel, Collections.emptySet()).forEach(pushSession -> pushSession.send(message));
       }
    }
+
+   private static boolean isOnChannel(final PushSession pushSession, final String channel) {
+      return channel == null || channel.isEmpty() || channel.equals(pushSession.getChannel());
+   }
+
+   /**
+    * The user and organisation an authentication token was issued to.
+    */
+   private static class TokenOwner {
+
+      private final String userEmail;
+
+      private final DataStorage dataStorage;
+
+      private TokenOwner(final String userEmail, final DataStorage dataStorage) {
+         this.userEmail = userEmail;
+         this.dataStorage = dataStorage;
+      }
+   }
+
+   private static void removeFromIndex(final Map<String, Set<PushSession>> index, final String key, final PushSession pushSession) {
+      index.computeIfPresent(key, (k, indexed) -> {
+         indexed.remove(pushSession);
+         return indexed.isEmpty() ? null : indexed;
+      });
+   }
 }
@@ -0,0 +1,215 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.push;
+
+import io.lumeer.engine.api.data.DataStorage;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.websocket.CloseReason;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+/**
+ * A WebSocket client with a bounded queue of outgoing messages. Messages are sent asynchronously one by one,
+ * so a slow client never blocks the publisher. A client that does not keep up with the messages and lets its queue
+ * fill up is disconnected, it is supposed to reconnect and re-read the state.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+class PushSession {
+
+   private final Session session;
+
+   private final int capacity;
+
+   private final Logger log;
+
+   private final Queue<Object> queue = new ArrayDeque<>();
+
+   private boolean sending = false;
+
+   private boolean closed = false;
+
+   private volatile String clientId;
+
+   private volatile String userEmail;
+
+   private volatile DataStorage dataStorage;
+
+   private final String channel;
+
+   private final Set<String> observedObjects = ConcurrentHashMap.newKeySet();
+
+   PushSession(final Session session, final int capacity, final Logger log) {
+      this.session = session;
+      this.capacity = capacity;
+      this.log = log;
+
+      final String channel = session.getPathParameters().get("channel");
+      this.channel = channel != null ? channel : "";
+   }
+
+   public Session getSession() {
+      return session;
+   }
+
+   public String getId() {
+      return session.getId();
+   }
+
+   public String getChannel() {
+      return channel;
+   }
+
+   /**
+    * Gets the id of the HTTP session the client authenticated from.
+    *
+    * @return the id of the HTTP session, null when the client is not authenticated
+    */
+   public String getClientId() {
+      return clientId;
+   }
+
+   public void setClientId(final String clientId) {
+      this.clientId = clientId;
+   }
+
+   /**
+    * Gets the email of the user the client authenticated as.
+    *
+    * @return the email of the user, null when the client is not authenticated
+    */
+   public String getUserEmail() {
+      return userEmail;
+   }
+
+   /**
+    * Gets the data storage of the organisation the client authenticated for.
+    *
+    * @return the data storage, null when the client is not authenticated
+    */
+   public DataStorage getDataStorage() {
+      return dataStorage;
+   }
+
+   public void setUser(final String userEmail, final DataStorage dataStorage) {
+      this.userEmail = userEmail;
+      this.dataStorage = dataStorage;
+   }
+
+   public boolean isAuthenticated() {
+      return clientId != null;
+   }
+
+   public Set<String> getObservedObjects() {
+      return observedObjects;
+   }
+
+   /**
+    * Queues the message for sending. The client is disconnected when its queue is full.
+    *
+    * @param message
+    *       text or an object to be encoded by the endpoint's encoders
+    * @return true when the message was queued, false when it was dropped
+    */
+   public boolean send(final Object message) {
+      final boolean overflow;
+      synchronized (queue) {
+         if (closed) {
+            return false;
+         }
+
+         overflow = queue.size() >= capacity;
+         if (overflow) {
+            closed = true;
+            queue.clear();
+         } else {
+            queue.add(message);
+            if (sending) {
+               return true;
+            }
+            sending = true;
+         }
+      }
+
+      if (overflow) {
+         disconnect();
+         return false;
+      }
+
+      sendNext();
+      return true;
+   }
+
+   /**
+    * Drops all queued messages, no more messages are accepted.
+    */
+   public void close() {
+      synchronized (queue) {
+         closed = true;
+         queue.clear();
+      }
+   }
+
+   private void sendNext() {
+      final Object message;
+      synchronized (queue) {
+         message = queue.poll();
+         if (message == null) {
+            sending = false;
+            return;
+         }
+      }
+
+      try {
+         if (message instanceof String) {
+            session.getAsyncRemote().sendText((String) message, this::onSent);
+         } else {
+            session.getAsyncRemote().sendObject(message, this::onSent);
+         }
+      } catch (RuntimeException e) {
+         // the session is already closed
+         log.log(Level.FINE, "Unable to send push notification: ", e);
+         close();
+      }
+   }
+
+   private void onSent(final SendResult result) {
+      if (!result.isOK()) {
+         log.log(Level.FINE, "Unable to send push notification: ", result.getException());
+      }
+      sendNext();
+   }
+
+   private void disconnect() {
+      log.log(Level.FINE, "Disconnecting slow push notification client {0}.", session.getId());
+      try {
+         session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "Too many pending messages."));
+      } catch (IOException e) {
+         log.log(Level.FINE, "Unable to close push notification session: ", e);
+      }
+   }
+}
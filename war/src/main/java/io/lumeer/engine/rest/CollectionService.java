@@ -21,8 +21,11 @@ package io.lumeer.engine.rest;
 
 import io.lumeer.engine.api.LumeerConst;
 import io.lumeer.engine.api.constraint.InvalidConstraintException;
+import io.lumeer.engine.api.data.DataCursor;
 import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataPage;
 import io.lumeer.engine.api.data.DataStorage;
+import io.lumeer.engine.api.data.DataStorageDialect;
 import io.lumeer.engine.api.exception.AttributeAlreadyExistsException;
 import io.lumeer.engine.api.exception.CollectionAlreadyExistsException;
 import io.lumeer.engine.api.exception.CollectionMetadataDocumentNotFoundException;
@@ -42,9 +45,18 @@ import io.lumeer.engine.controller.UserFacade;
 import io.lumeer.engine.controller.VersionFacade;
 import io.lumeer.engine.provider.DataStorageProvider;
 import io.lumeer.engine.rest.dao.AccessRightsDao;
+import io.lumeer.engine.util.DocumentExportWriter;
 import io.lumeer.engine.util.ErrorMessageBuilder;
 
+import org.jboss.resteasy.annotations.GZIP;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import javax.annotation.PostConstruct;
@@ -60,6 +72,8 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 /**
  * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
@@ -86,6 +100,9 @@ public class CollectionService implements Serializable {
    @Inject
    private VersionFacade versionFacade;
 
+   @Inject
+   private DataStorageDialect dataStorageDialect;
+
    @Inject
    private UserFacade userFacade;
 
@@ -243,7 +260,9 @@ public class CollectionService implements Serializable {
     *       number of documents to skip
     * @param limit
     *       maximum number of documents to return
-    * @return list of the found documents
+    * @param pageToken
+    *       token of the page to read taken from the {@code X-Next-Page-Token} header of the previous page, skip is ignored when set
+    * @return list of the found documents, the token of the following page is sent in the {@code X-Next-Page-Token} header
     * @throws CollectionNotFoundException
     *       When the collection in which we want to search does not exist.
     * @throws CollectionMetadataDocumentNotFoundException
@@ -251,8 +270,9 @@ public class CollectionService implements Serializable {
     */
    @POST
    @Path("/{collectionName}/search/")
-   @Produces(MediaType.APPLICATION_JSON)
-   public List<DataDocument> search(final @PathParam("collectionName") String collectionName, final @QueryParam("filter") String filter, final @QueryParam("sort") String sort, final @QueryParam("skip") int skip, final @QueryParam("limit") int limit) throws CollectionNotFoundException, CollectionMetadataDocumentNotFoundException {
+   @Produces({ MediaType.APPLICATION_JSON, LumeerConst.BSON_MEDIA_TYPE })
+   @GZIP
+   public Response search(final @PathParam("collectionName") String collectionName, final @QueryParam("filter") String filter, final @QueryParam("sort") String sort, final @QueryParam("skip") int skip, final @QueryParam("limit") int limit, final @QueryParam("pageToken") String pageToken) throws CollectionNotFoundException, CollectionMetadataDocumentNotFoundException {
       if (collectionName == null) {
          throw new IllegalArgumentException();
       }
@@ -261,7 +281,135 @@ public class CollectionService implements Serializable {
       if (!dataStorage.hasCollection(internalCollectionName)) {
          throw new CollectionNotFoundException(ErrorMessageBuilder.collectionNotFoundString(collectionName));
       }
-      return searchFacade.search(internalCollectionName, filter, sort, skip, limit);
+      final DataPage page = searchFacade.searchPage(internalCollectionName, filter, sort, skip, pageToken, limit);
+      return Response.ok(page.getDocuments()).header(LumeerConst.NEXT_PAGE_TOKEN_HEADER, page.getNextPageToken()).build();
+   }
+
+   /**
+    * Exports documents of the specified collection as JSON Lines, each document on a single line. Documents are written
+    * as they are read from the database, so the whole collection is never held in memory.
+    *
+    * @param collectionName
+    *       name of the collection to export
+    * @param filter
+    *       query predicate. If unspecified, then all documents in the collection are exported.
+    * @param attributes
+    *       attributes to export, all attributes are exported when not specified
+    * @return stream of the exported documents ordered by their ids
+    * @throws CollectionNotFoundException
+    *       When the collection does not exist.
+    * @throws UnauthorizedAccessException
+    *       When current user is not allowed to read the collection.
+    */
+   @GET
+   @Path("/{collectionName}/export/")
+   @Produces(LumeerConst.JSON_LINES_MEDIA_TYPE)
+   public StreamingOutput exportJsonLines(final @PathParam("collectionName") String collectionName, final @QueryParam("filter") String filter, final @QueryParam("attribute") List<String> attributes) throws CollectionNotFoundException, UnauthorizedAccessException {
+      final String internalCollectionName = getExportedCollection(collectionName);
+
+      return output -> exportDocuments(internalCollectionName, filter, attributes, DocumentExportWriter.jsonLines(exportWriter(output)));
+   }
+
+   /**
+    * Exports documents of the specified collection as CSV with a header. Documents are written as they are read from
+    * the database, so the whole collection is never held in memory.
+    *
+    * @param collectionName
+    *       name of the collection to export
+    * @param filter
+    *       query predicate. If unspecified, then all documents in the collection are exported.
+    * @param attributes
+    *       attributes to export in this order, the document id and all attributes of the collection are exported when not specified
+    * @return stream of the exported documents ordered by their ids
+    * @throws CollectionNotFoundException
+    *       When the collection does not exist.
+    * @throws UnauthorizedAccessException
+    *       When current user is not allowed to read the collection.
+    */
+   @GET
+   @Path("/{collectionName}/export/")
+   @Produces(LumeerConst.CSV_MEDIA_TYPE)
+   public StreamingOutput exportCsv(final @PathParam("collectionName") String collectionName, final @QueryParam("filter") String filter, final @QueryParam("attribute") List<String> attributes) throws CollectionNotFoundException, UnauthorizedAccessException {
+      final String internalCollectionName = getExportedCollection(collectionName);
+      final List<String> header = new ArrayList<>();
+      if (attributes == null || attributes.isEmpty()) {
+         header.add(LumeerConst.Document.ID);
+         header.addAll(collectionMetadataFacade.getCollectionAttributesNames(internalCollectionName));
+      } else {
+         header.addAll(attributes);
+      }
+
+      return output -> exportDocuments(internalCollectionName, filter, attributes, DocumentExportWriter.csv(exportWriter(output), header));
+   }
+
+   private String getExportedCollection(final String collectionName) throws CollectionNotFoundException, UnauthorizedAccessException {
+      if (collectionName == null) {
+         throw new IllegalArgumentException();
+      }
+      if (!checkCollectionForRead(collectionName)) {
+         throw new UnauthorizedAccessException();
+      }
+      String internalCollectionName = getInternalName(collectionName);
+      if (!dataStorage.hasCollection(internalCollectionName)) {
+         throw new CollectionNotFoundException(ErrorMessageBuilder.collectionNotFoundString(collectionName));
+      }
+
+      return internalCollectionName;
+   }
+
+   private void exportDocuments(final String collectionName, final String filter, final List<String> attributes, final DocumentExportWriter writer) throws IOException {
+      try (final DataCursor cursor = searchFacade.searchCursor(collectionName, filter, attributes)) {
+         while (cursor.hasNext()) {
+            writer.write(cursor.next());
+         }
+      }
+      writer.flush();
+   }
+
+   private static Writer exportWriter(final OutputStream output) {
+      return new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+   }
+
+   /**
+    * Reads documents of the specified collection as they were at the given time. Documents are selected by the filter on
+    * their current values and ordered by their ids.
+    *
+    * @param collectionName
+    *       name of the collection to read
+    * @param filter
+    *       query predicate on current values of documents. If unspecified, then all documents in the collection are read.
+    * @param timestamp
+    *       the time in format yyyy.MM.dd HH.mm.ss.SSS
+    * @param limit
+    *       maximum number of documents to return
+    * @param pageToken
+    *       token of the page to read taken from the {@code X-Next-Page-Token} header of the previous page
+    * @return list of documents as they were at the time, the token of the following page is sent in the {@code X-Next-Page-Token} header
+    * @throws CollectionNotFoundException
+    *       When the collection does not exist.
+    * @throws CollectionMetadataDocumentNotFoundException
+    *       When the metadata collection of the given collection does not exist.
+    * @throws UnauthorizedAccessException
+    *       When current user is not allowed to read the collection.
+    */
+   @GET
+   @Path("/{collectionName}/asof/")
+   @Produces(MediaType.APPLICATION_JSON)
+   public Response readDocumentsAsOf(final @PathParam("collectionName") String collectionName, final @QueryParam("filter") String filter, final @QueryParam("timestamp") String timestamp, final @QueryParam("limit") int limit, final @QueryParam("pageToken") String pageToken) throws CollectionNotFoundException, CollectionMetadataDocumentNotFoundException, UnauthorizedAccessException {
+      if (collectionName == null || timestamp == null) {
+         throw new IllegalArgumentException();
+      }
+      if (!checkCollectionForRead(collectionName)) {
+         throw new UnauthorizedAccessException();
+      }
+      String internalCollectionName = getInternalName(collectionName);
+      if (!dataStorage.hasCollection(internalCollectionName)) {
+         throw new CollectionNotFoundException(ErrorMessageBuilder.collectionNotFoundString(collectionName));
+      }
+      // only the documents the user can read now are read
+      final String readableFilter = dataStorageDialect.filterWithCondition(filter, securityFacade.getReadRightsQueryFilter());
+      final DataPage page = versionFacade.readDocumentsAsOf(internalCollectionName, readableFilter, timestamp, pageToken, limit);
+      return Response.ok(page.getDocuments()).header(LumeerConst.NEXT_PAGE_TOKEN_HEADER, page.getNextPageToken()).build();
    }
 
    /**
@@ -274,7 +422,8 @@ public class CollectionService implements Serializable {
     */
    @POST
    @Path("/{collectionName}/run/")
-   @Produces(MediaType.APPLICATION_JSON)
+   @Produces({ MediaType.APPLICATION_JSON, LumeerConst.BSON_MEDIA_TYPE })
+   @GZIP
    public List<DataDocument> search(final @QueryParam("query") String query) {
       if (query == null) {
          throw new IllegalArgumentException();
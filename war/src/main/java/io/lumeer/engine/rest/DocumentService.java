@@ -19,17 +19,21 @@
  */
 package io.lumeer.engine.rest;
 
+import io.lumeer.engine.api.LumeerConst;
 import io.lumeer.engine.api.constraint.InvalidConstraintException;
 import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataPage;
 import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.api.exception.CollectionNotFoundException;
 import io.lumeer.engine.api.exception.DbException;
 import io.lumeer.engine.api.exception.DocumentNotFoundException;
 import io.lumeer.engine.api.exception.UnauthorizedAccessException;
 import io.lumeer.engine.api.exception.UserCollectionNotFoundException;
+import io.lumeer.engine.api.exception.VersionUpdateConflictException;
 import io.lumeer.engine.controller.CollectionMetadataFacade;
 import io.lumeer.engine.controller.DocumentFacade;
 import io.lumeer.engine.controller.DocumentMetadataFacade;
+import io.lumeer.engine.controller.ImportFacade;
 import io.lumeer.engine.controller.OrganisationFacade;
 import io.lumeer.engine.controller.ProjectFacade;
 import io.lumeer.engine.controller.SecurityFacade;
@@ -37,9 +41,21 @@ import io.lumeer.engine.controller.UserFacade;
 import io.lumeer.engine.controller.VersionFacade;
 import io.lumeer.engine.provider.DataStorageProvider;
 import io.lumeer.engine.rest.dao.AccessRightsDao;
+import io.lumeer.engine.util.DocumentImportReader;
 import io.lumeer.engine.util.ErrorMessageBuilder;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jboss.resteasy.annotations.GZIP;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -54,7 +70,15 @@ import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 /**
  * @author <a href="mailto:mat.per.vt@gmail.com">Matej Perejda</a>
@@ -66,12 +90,17 @@ public class DocumentService implements Serializable {
 
    private static final long serialVersionUID = 5645433756019847986L;
 
+   private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+
    @Inject
    private CollectionMetadataFacade collectionMetadataFacade;
 
    @Inject
    private DocumentFacade documentFacade;
 
+   @Inject
+   private ImportFacade importFacade;
+
    @Inject
    private DocumentMetadataFacade documentMetadataFacade;
 
@@ -125,7 +154,7 @@ public class DocumentService implements Serializable {
    @POST
    @Path("/")
    @Produces(MediaType.APPLICATION_JSON)
-   @Consumes(MediaType.APPLICATION_JSON)
+   @Consumes({ MediaType.APPLICATION_JSON, LumeerConst.BSON_MEDIA_TYPE })
    public String createDocument(final @PathParam("collectionName") String collectionName, final DataDocument document) throws DbException, InvalidConstraintException {
       if (collectionName == null || document == null) {
          throw new IllegalArgumentException();
@@ -135,6 +164,87 @@ public class DocumentService implements Serializable {
       return documentFacade.createDocument(internalCollectionName, document);
    }
 
+   /**
+    * Imports documents from CSV. The first record is a header with attribute names. The input is read and inserted
+    * in chunks, progress of the import is streamed back as described in {@link #importJsonLinesDocuments(String, InputStream)}.
+    *
+    * @param collectionName
+    *       the name of the collection where the documents will be created
+    * @param input
+    *       CSV data in UTF-8
+    * @return stream of JSON lines with progress of the import
+    * @throws DbException
+    *       When there is an error working with the database.
+    */
+   @POST
+   @Path("/import/")
+   @Produces(LumeerConst.JSON_LINES_MEDIA_TYPE)
+   @Consumes(LumeerConst.CSV_MEDIA_TYPE)
+   public StreamingOutput importCsvDocuments(final @PathParam("collectionName") String collectionName, final InputStream input) throws DbException {
+      return importDocuments(collectionName, DocumentImportReader.csv(new InputStreamReader(input, StandardCharsets.UTF_8)));
+   }
+
+   /**
+    * Imports documents from JSON Lines, each line is a single document. The input is read and inserted in chunks.
+    * After each chunk, a JSON line with the number of records read so far (processed), the number of inserted documents
+    * (imported) and the list of rejected records of the chunk (rejected) is streamed back. Rejected records are identified
+    * by their position in the input starting from 0. The last line contains the totals and the finished flag.
+    *
+    * @param collectionName
+    *       the name of the collection where the documents will be created
+    * @param input
+    *       JSON Lines data in UTF-8
+    * @return stream of JSON lines with progress of the import
+    * @throws DbException
+    *       When there is an error working with the database.
+    */
+   @POST
+   @Path("/import/")
+   @Produces(LumeerConst.JSON_LINES_MEDIA_TYPE)
+   @Consumes(LumeerConst.JSON_LINES_MEDIA_TYPE)
+   public StreamingOutput importJsonLinesDocuments(final @PathParam("collectionName") String collectionName, final InputStream input) throws DbException {
+      return importDocuments(collectionName, DocumentImportReader.jsonLines(new InputStreamReader(input, StandardCharsets.UTF_8)));
+   }
+
+   private StreamingOutput importDocuments(final String collectionName, final DocumentImportReader reader) throws DbException {
+      if (collectionName == null) {
+         throw new IllegalArgumentException();
+      }
+      final String internalCollectionName = getInternalName(collectionName);
+      checkCollectionExistency(internalCollectionName);
+
+      return output -> {
+         final Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+         final int[] totals = new int[3]; // processed, imported, rejected
+
+         try {
+            importFacade.importDocuments(internalCollectionName, reader, (processed, result) -> {
+               totals[0] = processed;
+               totals[1] += result.getSuccessCount();
+               totals[2] += result.getErrors().size();
+
+               final List<DataDocument> rejected = new ArrayList<>();
+               result.getErrors().forEach((position, error) -> rejected.add(new DataDocument("record", position).append("error", error)));
+               writeJsonLine(writer, new DataDocument("processed", totals[0]).append("imported", totals[1]).append("rejected", rejected));
+            });
+         } catch (DbException e) {
+            throw new WebApplicationException(e);
+         }
+
+         writeJsonLine(writer, new DataDocument("processed", totals[0]).append("imported", totals[1]).append("rejectedCount", totals[2]).append("finished", true));
+      };
+   }
+
+   private static void writeJsonLine(final Writer writer, final DataDocument line) {
+      try {
+         writer.write(JSON_MAPPER.writeValueAsString(line));
+         writer.write('\n');
+         writer.flush();
+      } catch (IOException e) {
+         throw new UncheckedIOException(e);
+      }
+   }
+
    /**
     * Drops an existing document in given collection by its id.
     *
@@ -159,20 +269,27 @@ public class DocumentService implements Serializable {
    }
 
    /**
-    * Reads the specified document in given collection by its id.
+    * Reads the specified document in given collection by its id. The entity tag of the response is made of the document version
+    * and revision, which is incremented when the document is modified without a new version (e.g. its access rights or metadata).
+    * A client sending the tag in {@code If-None-Match} gets 304 without the document being read when it was not changed.
     *
     * @param collectionName
     *       the name of the collection where the document is located
     * @param documentId
     *       the id of the read document
+    * @param request
+    *       the request to evaluate the conditional headers against
+    * @param headers
+    *       the request headers
     * @return the DataDocument object representing the read document
     * @throws DbException
     *       When there is an error working with the database.
     */
    @GET
    @Path("/{documentId}")
-   @Produces(MediaType.APPLICATION_JSON)
-   public DataDocument readDocument(final @PathParam("collectionName") String collectionName, final @PathParam("documentId") String documentId) throws DbException {
+   @Produces({ MediaType.APPLICATION_JSON, LumeerConst.BSON_MEDIA_TYPE })
+   @GZIP
+   public Response readDocument(final @PathParam("collectionName") String collectionName, final @PathParam("documentId") String documentId, final @Context Request request, final @Context HttpHeaders headers) throws DbException {
       if (collectionName == null || documentId == null) {
          throw new IllegalArgumentException();
       }
@@ -180,16 +297,34 @@ public class DocumentService implements Serializable {
       checkCollectionExistency(internalCollectionName);
       checkDocumentForRead(internalCollectionName, documentId);
 
-      return documentFacade.readDocument(internalCollectionName, documentId);
+      if (headers.getHeaderString(HttpHeaders.IF_NONE_MATCH) != null) {
+         final DataDocument revision = documentMetadataFacade.readDocumentRevision(internalCollectionName, documentId);
+         final Response.ResponseBuilder notModified = revision != null ? request.evaluatePreconditions(documentTag(revision)) : null;
+         if (notModified != null) {
+            return notModified.build();
+         }
+      }
+
+      final DataDocument document = documentFacade.readDocument(internalCollectionName, documentId);
+      if (document == null) {
+         return Response.noContent().build();
+      }
+      return Response.ok(document).tag(documentTag(document)).build();
    }
 
    /**
     * Modifies an existing document in given collection by its id and create collection if not exists.
+    * When the {@code If-Match} header is sent, the document is modified only when its version matches the tag.
     *
     * @param collectionName
     *       the name of the collection where the existing document is located
     * @param updatedDocument
     *       the DataDocument object representing a document with changes to update
+    * @param request
+    *       the request to evaluate the conditional headers against
+    * @param headers
+    *       the request headers
+    * @return no content with the tag of the new document, 412 when the document was changed since the tag in {@code If-Match}
     * @throws DbException
     *       When there is an error working with the data storage.
     * @throws InvalidConstraintException
@@ -197,8 +332,8 @@ public class DocumentService implements Serializable {
     */
    @PUT
    @Path("/update/")
-   @Consumes(MediaType.APPLICATION_JSON)
-   public void updateDocument(final @PathParam("collectionName") String collectionName, final DataDocument updatedDocument) throws DbException, InvalidConstraintException {
+   @Consumes({ MediaType.APPLICATION_JSON, LumeerConst.BSON_MEDIA_TYPE })
+   public Response updateDocument(final @PathParam("collectionName") String collectionName, final DataDocument updatedDocument, final @Context Request request, final @Context HttpHeaders headers) throws DbException, InvalidConstraintException {
       if (collectionName == null || updatedDocument == null || updatedDocument.getId() == null) {
          throw new IllegalArgumentException();
       }
@@ -206,16 +341,22 @@ public class DocumentService implements Serializable {
       checkCollectionExistency(internalCollectionName);
       checkDocumentForWrite(internalCollectionName, updatedDocument.getId());
 
-      documentFacade.updateDocument(internalCollectionName, updatedDocument);
+      return writeDocument(internalCollectionName, updatedDocument.getId(), request, headers, expectedVersion -> documentFacade.updateDocument(internalCollectionName, updatedDocument, expectedVersion));
    }
 
    /**
     * Replace an existing document in given collection by its id and create collection if not exists.
+    * When the {@code If-Match} header is sent, the document is replaced only when its version matches the tag.
     *
     * @param collectionName
     *       the name of the collection where the existing document is located
     * @param replaceDocument
     *       the DataDocument object representing a replacing document
+    * @param request
+    *       the request to evaluate the conditional headers against
+    * @param headers
+    *       the request headers
+    * @return no content with the tag of the new document, 412 when the document was changed since the tag in {@code If-Match}
     * @throws DbException
     *       When there is an error working with the data storage.
     * @throws InvalidConstraintException
@@ -223,8 +364,8 @@ public class DocumentService implements Serializable {
     */
    @PUT
    @Path("/replace/")
-   @Consumes(MediaType.APPLICATION_JSON)
-   public void replaceDocument(final @PathParam("collectionName") String collectionName, final DataDocument replaceDocument) throws DbException, InvalidConstraintException {
+   @Consumes({ MediaType.APPLICATION_JSON, LumeerConst.BSON_MEDIA_TYPE })
+   public Response replaceDocument(final @PathParam("collectionName") String collectionName, final DataDocument replaceDocument, final @Context Request request, final @Context HttpHeaders headers) throws DbException, InvalidConstraintException {
       if (collectionName == null || replaceDocument == null || replaceDocument.getId() == null) {
          throw new IllegalArgumentException();
       }
@@ -232,7 +373,7 @@ public class DocumentService implements Serializable {
       checkCollectionExistency(internalCollectionName);
       checkDocumentForWrite(internalCollectionName, replaceDocument.getId());
 
-      documentFacade.replaceDocument(internalCollectionName, replaceDocument);
+      return writeDocument(internalCollectionName, replaceDocument.getId(), request, headers, expectedVersion -> documentFacade.replaceDocument(internalCollectionName, replaceDocument, expectedVersion));
    }
 
    /**
@@ -315,20 +456,25 @@ public class DocumentService implements Serializable {
    }
 
    /**
-    * Read all versions of the given document and returns it as a list.
+    * Read versions of the given document ordered from the oldest one and returns them as a list.
     *
     * @param collectionName
     *       collection name where document is stored
     * @param documentId
     *       id of the document
-    * @return list of documents in different version
+    * @param limit
+    *       maximum number of versions to return, all versions are returned when not set
+    * @param pageToken
+    *       token of the page to read taken from the {@code X-Next-Page-Token} header of the previous page
+    * @return list of documents in different version, the token of the following page is sent in the {@code X-Next-Page-Token} header
     * @throws DbException
     *       When there is an error working with the data storage.
     */
    @GET
    @Path("/{documentId}/versions")
-   @Produces(MediaType.APPLICATION_JSON)
-   public List<DataDocument> searchHistoryChanges(final @PathParam("collectionName") String collectionName, final @PathParam("documentId") String documentId) throws DbException {
+   @Produces({ MediaType.APPLICATION_JSON, LumeerConst.BSON_MEDIA_TYPE })
+   @GZIP
+   public Response searchHistoryChanges(final @PathParam("collectionName") String collectionName, final @PathParam("documentId") String documentId, final @QueryParam("limit") int limit, final @QueryParam("pageToken") String pageToken) throws DbException {
       if (collectionName == null || documentId == null) {
          throw new IllegalArgumentException();
       }
@@ -336,7 +482,41 @@ public class DocumentService implements Serializable {
       checkCollectionExistency(internalCollectionName);
       checkDocumentForRead(internalCollectionName, documentId);
 
-      return versionFacade.getDocumentVersions(getInternalName(collectionName), documentId);
+      final DataPage page = versionFacade.getDocumentVersions(internalCollectionName, documentId, pageToken, limit);
+      return Response.ok(page.getDocuments()).header(LumeerConst.NEXT_PAGE_TOKEN_HEADER, page.getNextPageToken()).build();
+   }
+
+   /**
+    * Reads the given document as it was at the given time or in the given version.
+    *
+    * @param collectionName
+    *       collection name where document is stored
+    * @param documentId
+    *       id of the document
+    * @param timestamp
+    *       the time in format yyyy.MM.dd HH.mm.ss.SSS
+    * @param version
+    *       the version of document, used when the time is not set
+    * @return the document as it was at the time or in the version
+    * @throws DbException
+    *       When there is an error working with the data storage.
+    */
+   @GET
+   @Path("/{documentId}/asof")
+   @Produces({ MediaType.APPLICATION_JSON, LumeerConst.BSON_MEDIA_TYPE })
+   @GZIP
+   public DataDocument readDocumentAsOf(final @PathParam("collectionName") String collectionName, final @PathParam("documentId") String documentId, final @QueryParam("timestamp") String timestamp, final @QueryParam("version") Integer version) throws DbException {
+      if (collectionName == null || documentId == null || (timestamp == null && version == null)) {
+         throw new IllegalArgumentException();
+      }
+      String internalCollectionName = getInternalName(collectionName);
+      checkCollectionExistency(internalCollectionName);
+      checkDocumentForRead(internalCollectionName, documentId);
+
+      if (timestamp != null) {
+         return versionFacade.readDocumentAsOf(internalCollectionName, documentId, timestamp);
+      }
+      return versionFacade.readDocumentAsOf(internalCollectionName, documentId, version);
    }
 
    /**
@@ -503,6 +683,48 @@ public class DocumentService implements Serializable {
       }
    }
 
+   private Response writeDocument(final String collectionName, final String documentId, final Request request, final HttpHeaders headers, final DocumentWrite write) throws DbException, InvalidConstraintException {
+      // the revision is not changed by the write, it is read with the version so that the new tag is known without reading the document again
+      final DataDocument revision = documentMetadataFacade.readDocumentRevision(collectionName, documentId);
+      if (revision == null) {
+         throw new DocumentNotFoundException(ErrorMessageBuilder.documentNotFoundString());
+      }
+
+      if (headers.getHeaderString(HttpHeaders.IF_MATCH) == null) {
+         return Response.noContent().tag(documentTag(write.apply(null), revision)).build();
+      }
+
+      final Response.ResponseBuilder preconditionFailed = request.evaluatePreconditions(documentTag(revision));
+      if (preconditionFailed != null) {
+         return preconditionFailed.build();
+      }
+
+      try {
+         return Response.noContent().tag(documentTag(write.apply(versionFacade.getDocumentVersion(revision)), revision)).build();
+      } catch (VersionUpdateConflictException e) {
+         // the document was changed after the precondition was evaluated
+         return Response.status(Response.Status.PRECONDITION_FAILED).build();
+      }
+   }
+
+   private EntityTag documentTag(final DataDocument document) {
+      return documentTag(versionFacade.getDocumentVersion(document), document);
+   }
+
+   /**
+    * Builds the entity tag of the document from its version and revision. Access rights and metadata are written
+    * without a new version, they increment the revision instead.
+    *
+    * @param version
+    *       the version of the document
+    * @param revision
+    *       the document holding the revision
+    * @return the entity tag of the document
+    */
+   private EntityTag documentTag(final int version, final DataDocument revision) {
+      return new EntityTag(version + "." + documentMetadataFacade.getDocumentRevision(revision));
+   }
+
    private void checkDocumentForWrite(final String collectionName, final String documentId) throws UnauthorizedAccessException, DocumentNotFoundException {
       if (!securityFacade.checkForWrite(collectionName, documentId, userFacade.getUserEmail())) {
          throw new UnauthorizedAccessException();
@@ -521,4 +743,12 @@ public class DocumentService implements Serializable {
       }
    }
 
+   /**
+    * Writes a document expecting it to be in the given version.
+    */
+   @FunctionalInterface
+   private interface DocumentWrite {
+
+      int apply(final Integer expectedVersion) throws DbException, InvalidConstraintException;
+   }
 }
@@ -36,8 +36,11 @@ import io.lumeer.engine.rest.dao.LinkDao;
 import io.lumeer.engine.rest.dao.LinkTypeDao;
 import io.lumeer.engine.util.ErrorMessageBuilder;
 
+import org.jboss.resteasy.annotations.GZIP;
+
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.ws.rs.Consumes;
@@ -108,6 +111,7 @@ public class LinkingService {
    @GET
    @Path("/")
    @Produces(MediaType.APPLICATION_JSON)
+   @GZIP
    public List<LinkTypeDao> getLinkTypes(final @PathParam("collectionName") String collectionName, final @QueryParam("direction") @DefaultValue("FROM") LumeerConst.Linking.LinkDirection linkDirection) throws DbException {
       String internalCollectionName = getInternalName(collectionName);
       checkCollectionForRead(internalCollectionName);
@@ -146,6 +150,7 @@ public class LinkingService {
    @GET
    @Path("/{role}")
    @Produces(MediaType.APPLICATION_JSON)
+   @GZIP
    public List<LinkDao> getLinks(final @PathParam("collectionName") String collectionName, final @PathParam("role") String role, final @QueryParam("direction") @DefaultValue("FROM") LumeerConst.Linking.LinkDirection linkDirection) throws DbException {
       String internalCollectionName = getInternalName(collectionName);
       checkCollectionForRead(internalCollectionName);
@@ -185,7 +190,8 @@ public class LinkingService {
     */
    @GET
    @Path("/{role}/documents/{id}")
-   @Produces(MediaType.APPLICATION_JSON)
+   @Produces({ MediaType.APPLICATION_JSON, LumeerConst.BSON_MEDIA_TYPE })
+   @GZIP
    public List<DataDocument> getLinkedDocuments(final @PathParam("collectionName") String collectionName, final @PathParam("role") String role, final @PathParam("id") String documentId, final @QueryParam("direction") @DefaultValue("FROM") LumeerConst.Linking.LinkDirection linkDirection) throws DbException {
       String internalCollectionName = getInternalName(collectionName);
       checkCollectionForRead(internalCollectionName);
@@ -202,6 +208,48 @@ public class LinkingService {
       return links;
    }
 
+   /**
+    * Gets all documents reachable from the given document over several links. The traversal runs in the engine, so
+    * the whole dependency graph is read in a single request.
+    *
+    * @param collectionName
+    *       The collection of the start document.
+    * @param documentId
+    *       The start document id.
+    * @param roles
+    *       The link roles of the consecutive hops, links of any role are followed when not specified.
+    * @param depth
+    *       The maximal number of hops when no roles are specified.
+    * @param linkDirection
+    *       Which link direction to work with.
+    * @param fanOut
+    *       The maximal number of links followed from a single document.
+    * @param limit
+    *       The maximal number of returned documents.
+    * @return Reached documents ordered by their distance from the start document, each with its collection name and distance.
+    * @throws DbException
+    *       When there is an issue when communicating with the data storage.
+    */
+   @GET
+   @Path("/documents/{id}/traversal")
+   @Produces({ MediaType.APPLICATION_JSON, LumeerConst.BSON_MEDIA_TYPE })
+   @GZIP
+   public List<DataDocument> traverseLinks(final @PathParam("collectionName") String collectionName, final @PathParam("id") String documentId, final @QueryParam("role") List<String> roles, final @QueryParam("depth") @DefaultValue("2") int depth,
+         final @QueryParam("direction") @DefaultValue("FROM") LumeerConst.Linking.LinkDirection linkDirection, final @QueryParam("fanOut") @DefaultValue("100") int fanOut, final @QueryParam("limit") @DefaultValue("1000") int limit) throws DbException {
+      String internalCollectionName = getInternalName(collectionName);
+      checkCollectionForRead(internalCollectionName);
+
+      // the traversal only follows links into the collections the user can read
+      final List<DataDocument> documents = linkingFacade.traverseLinks(internalCollectionName, documentId, roles, depth, linkDirection, fanOut, limit);
+
+      // translate internal collection names
+      for (DataDocument document : documents) {
+         document.put(LumeerConst.Document.COLLECTION_NAME, getOriginalName(document.getString(LumeerConst.Document.COLLECTION_NAME)));
+      }
+
+      return documents;
+   }
+
    /**
     * Get links between source and target documents of the given role.
     *
@@ -224,6 +272,7 @@ public class LinkingService {
    @GET
    @Path("/{role}/collections/{targetCollection}/documents/{id}/target/{targetId}")
    @Produces(MediaType.APPLICATION_JSON)
+   @GZIP
    public List<LinkDao> getDocumentsLinks(final @PathParam("collectionName") String collectionName, final @PathParam("targetCollection") String targetCollection, final @PathParam("role") String role, final @PathParam("id") String documentId, final @PathParam("targetId") String targetDocumentId, final @QueryParam("direction") @DefaultValue("FROM") LumeerConst.Linking.LinkDirection linkDirection)
          throws DbException {
       String internalCollectionName = getInternalName(collectionName);
@@ -19,15 +19,17 @@
  */
 package io.lumeer.engine.rest;
 
-import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataPage;
 import io.lumeer.engine.api.data.Query;
 import io.lumeer.engine.api.exception.InvalidQueryException;
 import io.lumeer.engine.controller.OrganisationFacade;
 import io.lumeer.engine.controller.ProjectFacade;
 import io.lumeer.engine.controller.SearchFacade;
 
+import org.jboss.resteasy.annotations.GZIP;
+
 import java.io.Serializable;
-import java.util.List;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
@@ -37,6 +39,7 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
 /**
  * @author <a href="mailto:mat.per.vt@gmail.com">Matej Perejda</a>
@@ -73,19 +76,21 @@ public class SearchService implements Serializable {
     * automatically sets limit to default values.
     *
     * @param query
-    *       Query to execute
-    * @return The query result.
+    *       Query to execute, the page token is taken from the {@code X-Next-Page-Token} header of the previous page
+    * @return The query result, the token of the following page is sent in the {@code X-Next-Page-Token} header.
     * @throws InvalidQueryException
     *       When it was not possible to execute the query.
     */
    @POST
    @Path("/")
-   @Produces(MediaType.APPLICATION_JSON)
+   @Produces({ MediaType.APPLICATION_JSON, LumeerConst.BSON_MEDIA_TYPE })
    @Consumes(MediaType.APPLICATION_JSON)
-   public List<DataDocument> runQuery(final Query query) throws InvalidQueryException {
+   @GZIP
+   public Response runQuery(final Query query) throws InvalidQueryException {
       if (query == null) {
          throw new IllegalArgumentException();
       }
-      return searchFacade.query(query);
+      final DataPage page = searchFacade.queryPage(query);
+      return Response.ok(page.getDocuments()).header(LumeerConst.NEXT_PAGE_TOKEN_HEADER, page.getNextPageToken()).build();
    }
 }
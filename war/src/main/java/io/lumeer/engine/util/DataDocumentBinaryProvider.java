@@ -0,0 +1,115 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.util;
+
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataDocumentFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import javax.inject.Inject;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Writes and reads {@link DataDocument}s and lists of them directly in the binary format of the data storage,
+ * bypassing the JSON serialization. A list is sent as its documents one after another.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+@Provider
+@Produces(LumeerConst.BSON_MEDIA_TYPE)
+@Consumes(LumeerConst.BSON_MEDIA_TYPE)
+public class DataDocumentBinaryProvider implements MessageBodyWriter<Object>, MessageBodyReader<Object> {
+
+   @Inject
+   private DataDocumentFormat documentFormat;
+
+   @Override
+   public boolean isWriteable(final Class<?> type, final Type genericType, final Annotation[] annotations, final MediaType mediaType) {
+      return DataDocument.class.isAssignableFrom(type) || (Collection.class.isAssignableFrom(type) && isDocumentCollection(genericType));
+   }
+
+   @Override
+   public long getSize(final Object value, final Class<?> type, final Type genericType, final Annotation[] annotations, final MediaType mediaType) {
+      return -1;
+   }
+
+   @Override
+   public void writeTo(final Object value, final Class<?> type, final Type genericType, final Annotation[] annotations, final MediaType mediaType, final MultivaluedMap<String, Object> httpHeaders, final OutputStream entityStream) throws IOException {
+      if (value instanceof DataDocument) {
+         documentFormat.write((DataDocument) value, entityStream);
+         return;
+      }
+
+      for (final Object document : (Collection<?>) value) {
+         if (!(document instanceof DataDocument)) {
+            throw new IllegalArgumentException("Only documents can be written in " + mediaType + " format.");
+         }
+         documentFormat.write((DataDocument) document, entityStream);
+      }
+   }
+
+   @Override
+   public boolean isReadable(final Class<?> type, final Type genericType, final Annotation[] annotations, final MediaType mediaType) {
+      return DataDocument.class.equals(type) || (List.class.equals(type) && isDocumentCollection(genericType));
+   }
+
+   @Override
+   public Object readFrom(final Class<Object> type, final Type genericType, final Annotation[] annotations, final MediaType mediaType, final MultivaluedMap<String, String> httpHeaders, final InputStream entityStream) throws IOException {
+      if (DataDocument.class.equals(type)) {
+         final DataDocument document = documentFormat.read(entityStream);
+         if (document == null) {
+            throw new IllegalArgumentException("Missing document in the request body.");
+         }
+         return document;
+      }
+
+      final List<DataDocument> documents = new ArrayList<>();
+      DataDocument document;
+      while ((document = documentFormat.read(entityStream)) != null) {
+         documents.add(document);
+      }
+      return documents;
+   }
+
+   private static boolean isDocumentCollection(final Type genericType) {
+      // entities of a Response lose their type arguments, the elements are checked when written
+      if (!(genericType instanceof ParameterizedType)) {
+         return true;
+      }
+
+      final Type[] arguments = ((ParameterizedType) genericType).getActualTypeArguments();
+      return arguments.length == 1 && arguments[0] instanceof Class && DataDocument.class.isAssignableFrom((Class<?>) arguments[0]);
+   }
+}
@@ -0,0 +1,173 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.util;
+
+import io.lumeer.engine.api.data.DataDocument;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes exported documents one by one as CSV or JSON Lines, so that nothing but the current document is held in memory.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public abstract class DocumentExportWriter {
+
+   private static final ObjectMapper MAPPER = new ObjectMapper();
+
+   protected final Writer writer;
+
+   private DocumentExportWriter(final Writer writer) {
+      this.writer = writer;
+   }
+
+   /**
+    * Creates writer of CSV output with a header. Nested documents and lists are written as JSON, dates in the format
+    * yyyy.MM.dd HH.mm.ss.SSS.
+    *
+    * @param writer
+    *       CSV output
+    * @param attributes
+    *       attributes to write in this order, the header of the output
+    * @return the document writer
+    * @throws IOException
+    *       When it was not possible to write the header.
+    */
+   public static DocumentExportWriter csv(final Writer writer, final List<String> attributes) throws IOException {
+      return new CsvWriter(writer, attributes);
+   }
+
+   /**
+    * Creates writer of JSON Lines output, each document is written as JSON on a single line.
+    *
+    * @param writer
+    *       JSON Lines output
+    * @return the document writer
+    */
+   public static DocumentExportWriter jsonLines(final Writer writer) {
+      return new JsonLinesWriter(writer);
+   }
+
+   /**
+    * Writes the document.
+    *
+    * @param document
+    *       the document to write
+    * @throws IOException
+    *       When it was not possible to write the document.
+    */
+   public abstract void write(final DataDocument document) throws IOException;
+
+   /**
+    * Flushes all written documents to the underlying writer.
+    *
+    * @throws IOException
+    *       When it was not possible to flush the documents.
+    */
+   public void flush() throws IOException {
+      writer.flush();
+   }
+
+   /**
+    * Writes values of the given attributes as CSV records.
+    */
+   private static class CsvWriter extends DocumentExportWriter {
+
+      private final List<String> attributes;
+
+      private CsvWriter(final Writer writer, final List<String> attributes) throws IOException {
+         super(writer);
+         this.attributes = attributes;
+
+         for (int i = 0; i < attributes.size(); i++) {
+            writeValue(i, attributes.get(i));
+         }
+         writer.write("\r\n");
+      }
+
+      @Override
+      public void write(final DataDocument document) throws IOException {
+         for (int i = 0; i < attributes.size(); i++) {
+            writeValue(i, getValue(document, attributes.get(i)));
+         }
+         writer.write("\r\n");
+      }
+
+      // attributes of nested documents are separated by dots
+      private static Object getValue(final Map<?, ?> document, final String attribute) {
+         final Object value = document.get(attribute);
+         final int dot = attribute.indexOf('.');
+         if (value != null || dot < 0) {
+            return value;
+         }
+
+         final Object nested = document.get(attribute.substring(0, dot));
+         return nested instanceof Map ? getValue((Map<?, ?>) nested, attribute.substring(dot + 1)) : null;
+      }
+
+      private void writeValue(final int index, final Object value) throws IOException {
+         if (index > 0) {
+            writer.write(',');
+         }
+         if (value == null) {
+            return;
+         }
+
+         final String string;
+         if (value instanceof Map || value instanceof List) {
+            string = MAPPER.writeValueAsString(value);
+         } else if (value instanceof Date) {
+            string = Utils.getTimeString((Date) value);
+         } else {
+            string = value.toString();
+         }
+
+         if (string.indexOf(',') >= 0 || string.indexOf('"') >= 0 || string.indexOf('\n') >= 0 || string.indexOf('\r') >= 0) {
+            writer.write('"');
+            writer.write(string.replace("\"", "\"\""));
+            writer.write('"');
+         } else {
+            writer.write(string);
+         }
+      }
+   }
+
+   /**
+    * Writes each document as JSON on a single line.
+    */
+   private static class JsonLinesWriter extends DocumentExportWriter {
+
+      private JsonLinesWriter(final Writer writer) {
+         super(writer);
+      }
+
+      @Override
+      public void write(final DataDocument document) throws IOException {
+         writer.write(MAPPER.writeValueAsString(document));
+         writer.write('\n');
+      }
+   }
+}
@@ -0,0 +1,240 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.util;
+
+import io.lumeer.engine.api.data.DataDocument;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads documents to import one by one from CSV or JSON Lines input, so the whole input is never held in memory.
+ * When a record is malformed, {@link #next()} throws {@link IllegalArgumentException} and reading can continue with
+ * the following record.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public abstract class DocumentImportReader implements Iterator<DataDocument> {
+
+   private static final ObjectMapper MAPPER = new ObjectMapper();
+
+   protected final BufferedReader reader;
+
+   private DocumentImportReader(final Reader reader) {
+      this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+   }
+
+   /**
+    * Creates reader of CSV input. The first record is a header with attribute names, empty values are skipped.
+    *
+    * @param reader
+    *       CSV input
+    * @return the document reader
+    */
+   public static DocumentImportReader csv(final Reader reader) {
+      return new CsvReader(reader);
+   }
+
+   /**
+    * Creates reader of JSON Lines input, each non-empty line is a single JSON document.
+    *
+    * @param reader
+    *       JSON Lines input
+    * @return the document reader
+    */
+   public static DocumentImportReader jsonLines(final Reader reader) {
+      return new JsonLinesReader(reader);
+   }
+
+   /**
+    * Reads CSV records as described by RFC 4180.
+    */
+   private static class CsvReader extends DocumentImportReader {
+
+      private List<String> header;
+      private List<String> nextRecord;
+      private String nextError;
+      private boolean finished = false;
+
+      private CsvReader(final Reader reader) {
+         super(reader);
+      }
+
+      @Override
+      public boolean hasNext() {
+         if (nextRecord == null && !finished) {
+            if (header == null) {
+               header = readRecord();
+               if (header == null) {
+                  return false;
+               }
+               if (nextError != null) { // the error is reported with the first record
+                  nextRecord = header;
+                  return true;
+               }
+            }
+            nextRecord = readRecord();
+         }
+
+         return nextRecord != null;
+      }
+
+      @Override
+      public DataDocument next() {
+         if (!hasNext()) {
+            throw new NoSuchElementException();
+         }
+
+         final List<String> record = nextRecord;
+         final String error = nextError;
+         nextRecord = null;
+         nextError = null;
+
+         if (error != null) {
+            throw new IllegalArgumentException(error);
+         }
+         if (record.size() > header.size()) {
+            throw new IllegalArgumentException("The record has more values than the header.");
+         }
+
+         final DataDocument document = new DataDocument();
+         for (int i = 0; i < record.size(); i++) {
+            if (!record.get(i).isEmpty()) {
+               document.put(header.get(i).trim(), record.get(i));
+            }
+         }
+
+         return document;
+      }
+
+      // reads values of a single record, null at the end of input, sets nextError when the record is malformed
+      private List<String> readRecord() {
+         try {
+            final List<String> values = new ArrayList<>();
+            final StringBuilder value = new StringBuilder();
+            boolean quoted = false;
+
+            int c;
+            while ((c = reader.read()) >= 0) {
+               if (quoted) {
+                  if (c == '"') {
+                     reader.mark(1);
+                     if (reader.read() == '"') { // escaped quote
+                        value.append('"');
+                     } else {
+                        reader.reset();
+                        quoted = false;
+                     }
+                  } else {
+                     value.append((char) c);
+                  }
+               } else if (c == '"') {
+                  quoted = true;
+               } else if (c == ',') {
+                  values.add(value.toString());
+                  value.setLength(0);
+               } else if (c == '\n' || c == '\r') {
+                  if (c == '\r') {
+                     reader.mark(1);
+                     if (reader.read() != '\n') {
+                        reader.reset();
+                     }
+                  }
+                  if (values.isEmpty() && value.length() == 0) { // skip empty lines
+                     continue;
+                  }
+                  break;
+               } else {
+                  value.append((char) c);
+               }
+            }
+
+            if (c < 0) {
+               finished = true;
+               if (quoted) {
+                  nextError = "Unterminated quoted value at the end of input.";
+               } else if (values.isEmpty() && value.length() == 0) {
+                  return null;
+               }
+            }
+
+            values.add(value.toString());
+            return values;
+         } catch (IOException e) {
+            throw new UncheckedIOException(e);
+         }
+      }
+   }
+
+   /**
+    * Reads a JSON document from each non-empty line.
+    */
+   private static class JsonLinesReader extends DocumentImportReader {
+
+      private String nextLine;
+
+      private JsonLinesReader(final Reader reader) {
+         super(reader);
+      }
+
+      @Override
+      public boolean hasNext() {
+         try {
+            while (nextLine == null) {
+               final String line = reader.readLine();
+               if (line == null) {
+                  return false;
+               }
+               if (!line.trim().isEmpty()) {
+                  nextLine = line;
+               }
+            }
+         } catch (IOException e) {
+            throw new UncheckedIOException(e);
+         }
+
+         return true;
+      }
+
+      @Override
+      public DataDocument next() {
+         if (!hasNext()) {
+            throw new NoSuchElementException();
+         }
+
+         final String line = nextLine;
+         nextLine = null;
+
+         try {
+            return MAPPER.readValue(line, DataDocument.class);
+         } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid JSON document: " + e.getMessage(), e);
+         }
+      }
+   }
+}
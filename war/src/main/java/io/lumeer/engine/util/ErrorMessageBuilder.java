@@ -21,6 +21,7 @@ package io.lumeer.engine.util;
 
 import java.text.MessageFormat;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author <a href="mailto:kubedo8@gmail.com">Jakub Rodák</a>
@@ -40,6 +41,7 @@ public class ErrorMessageBuilder {
    private static final String ERROR_CREATE_UNSUCCESFUL = "The document could not be created.";
    private static final String ERROR_DROP_UNSUCCESFUL = "The document could not be deleted.";
    private static final String ERROR_UPDATE_UNSUCCESFUL = "The document was not successfully updated.";
+   private static final String ERROR_DOCUMENT_VERSION_CONFLICT = "The document is not in version \"{0}\" anymore.";
    private static final String ERROR_INVALID_METADATA_KEY = "The key  \"{0}\" is not metadata attribute";
    private static final String ERROR_INVALID_DOCUMENT_KEY = "The key  \"{0}\" is not valid";
    private static final String ERROR_INVALID_CONSTRAINT_KEY = "Invalid value for attribute: \"{0}\"";
@@ -47,6 +49,7 @@ public class ErrorMessageBuilder {
    private static final String ERROR_LINK_ALREADY_EXISTS = "Link between documents already exists";
    private static final String ERROR_PARAM_CANNOT_BE_NULL = "The param  \"{0}\" can not be null.";
    private static final String ERROR_INVALID_COLLECTION_ATTRIBUTE_TYPE = "The type \"{0}\" is invalid. Valid types are: \"{1}\".";
+   private static final String ERROR_RETYPE_ATTRIBUTE_UNSUCCESFUL = "The attribute \"{0}\" could not be converted in {1} document(s): {2}";
 
    private static final String ERROR_USER_COLLECTION_NOT_FOUND = "The user collection \"{0}\" does not exist.";
    private static final String ERROR_USER_COLLECTION_ALREADY_EXISTS = "The user collection \"{0}\" already exists.";
@@ -160,8 +163,16 @@ public class ErrorMessageBuilder {
       return MessageFormat.format(ERROR_INVALID_COLLECTION_ATTRIBUTE_TYPE, newType, types);
    }
 
+   public static String retypeAttributeUnsuccesfulString(String attribute, Map<String, String> errors) {
+      return MessageFormat.format(ERROR_RETYPE_ATTRIBUTE_UNSUCCESFUL, attribute, errors.size(), errors);
+   }
+
    public static String idNotFoundString() {
       return ERROR_ID_NOT_FOUND;
    }
 
+   public static String documentVersionConflictString(int version) {
+      return MessageFormat.format(ERROR_DOCUMENT_VERSION_CONFLICT, version);
+   }
+
 }
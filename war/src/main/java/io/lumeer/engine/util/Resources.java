@@ -25,6 +25,7 @@ import io.lumeer.engine.controller.configuration.DefaultConfigurationProducer;
 import java.util.logging.Logger;
 import javax.annotation.Resource;
 import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
 import javax.enterprise.context.Dependent;
 import javax.enterprise.inject.Produces;
 import javax.enterprise.inject.spi.InjectionPoint;
@@ -47,6 +48,10 @@ public class Resources {
    @Produces
    private ManagedExecutorService managedExecutorService;
 
+   @Resource
+   @Produces
+   private ManagedScheduledExecutorService managedScheduledExecutorService;
+
    @Produces
    @Dependent
    public Logger produceLog(InjectionPoint injectionPoint) {
@@ -33,14 +33,15 @@ import java.util.Date;
 public class Utils {
 
    private static final String DATE_FORMAT = "yyyy.MM.dd HH.mm.ss.SSS";
-   private static final DateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
+   // date formats are not thread safe
+   private static final ThreadLocal<DateFormat> dateFormat = ThreadLocal.withInitial(() -> new SimpleDateFormat(DATE_FORMAT));
 
    private Utils() {
       // to prevent initialization
    }
 
    public static String getCurrentTimeString() {
-      return dateFormat.format(new Date());
+      return dateFormat.get().format(new Date());
    }
 
    /**
@@ -49,7 +50,7 @@ public class Utils {
     * @return String representation of Date
     */
    public static String getTimeString(Date date) {
-      return dateFormat.format(date);
+      return dateFormat.get().format(date);
    }
 
    /**
@@ -60,7 +61,7 @@ public class Utils {
     *       when string cannot be parsed
     */
    public static Date getDate(String date) throws ParseException {
-      return dateFormat.parse(date);
+      return dateFormat.get().parse(date);
    }
 
    /**
@@ -72,8 +73,8 @@ public class Utils {
     */
    public static boolean isValidDateFormat(String dateString) {
       try {
-         Date date = dateFormat.parse(dateString);
-         if (!dateString.equals(dateFormat.format(date))) {
+         Date date = dateFormat.get().parse(dateString);
+         if (!dateString.equals(dateFormat.get().format(date))) {
             return false;
          }
       } catch (ParseException ex) {
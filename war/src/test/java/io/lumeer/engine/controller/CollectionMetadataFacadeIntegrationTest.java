@@ -29,6 +29,7 @@ import io.lumeer.engine.api.data.DataDocument;
 import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.api.exception.AttributeAlreadyExistsException;
 import io.lumeer.engine.api.exception.UserCollectionAlreadyExistsException;
+import io.lumeer.engine.provider.AttributeCountAggregator;
 import io.lumeer.engine.provider.DataStorageProvider;
 import io.lumeer.engine.util.Utils;
 
@@ -40,7 +41,11 @@ import org.junit.runner.RunWith;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.inject.Inject;
 
 /**
@@ -60,6 +65,9 @@ public class CollectionMetadataFacadeIntegrationTest extends IntegrationTestBase
    @Inject
    private DataStorageProvider dataStorageProvider;
 
+   @Inject
+   private AttributeCountAggregator attributeCountAggregator;
+
    // do not change collection names, because it can mess up internal name creation in method internalName()
    private final String CREATE_INTERNAL_NAME_ORIGINAL_NAME1 = "CollectionMetadataFacadeCollečťion&-./ 1";
    private final String CREATE_INTERNAL_NAME_ORIGINAL_NAME2 = "CollectionMetadataFacadeCollečtion&-./ 1";
@@ -75,6 +83,7 @@ public class CollectionMetadataFacadeIntegrationTest extends IntegrationTestBase
    private final String COLLECTION_SET_LOCK_TIME = "CollectionMetadataFacadeCollectionSetLockTime";
    private final String COLLECTION_ADD_OR_INCREMENT_ATTRIBUTE = "CollectionMetadataFacadeCollectionAddOrIncrementAttribute";
    private final String COLLECTION_DROP_OR_DECREMENT_ATTRIBUTE = "CollectionMetadataFacadeCollectionDropOrDecrementAttribute";
+   private final String COLLECTION_CONCURRENT_ATTRIBUTE_COUNTS = "CollectionMetadataFacadeCollectionConcurrentAttributeCounts";
    private final String COLLECTION_CHECK_ATTRIBUTE_VALUE = "CollectionMetadataFacadeCollectionCheckAttributeValue";
    private final String COLLECTION_SET_GET_DROP_CUSTOM_METADATA = "CollectionMetadataFacadeCollectionSetGetDropCustomMetadata";
    private final String COLLECTION_ADD_ATTRIBUTE_CONSTRAINT = "CollectionMetadataFacadeCollectionAddAttributeConstraint";
@@ -309,6 +318,42 @@ public class CollectionMetadataFacadeIntegrationTest extends IntegrationTestBase
       assertThat(attributeInfo).isEmpty();
    }
 
+   @Test
+   public void testConcurrentAttributeCounts() throws Exception {
+      setUpCollection(COLLECTION_CONCURRENT_ATTRIBUTE_COUNTS);
+
+      collectionFacade.createCollection(COLLECTION_CONCURRENT_ATTRIBUTE_COUNTS);
+      String collection = internalName(COLLECTION_CONCURRENT_ATTRIBUTE_COUNTS);
+      String metadataCollection = collectionMetadataFacade.collectionMetadataCollectionName(collection);
+
+      String kept = "attribute 1";
+      String dropped = "attribute 2";
+      collectionMetadataFacade.updateAttributeCounts(collection, Arrays.asList(kept, kept, dropped), Collections.emptyList());
+
+      ExecutorService executor = Executors.newFixedThreadPool(8);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+         futures.add(executor.submit(() -> {
+            for (int j = 0; j < 50; j++) {
+               attributeCountAggregator.changeCounts(dataStorage, metadataCollection, Collections.singletonMap(kept, 1));
+               attributeCountAggregator.changeCounts(dataStorage, metadataCollection, Collections.singletonMap(kept, -1));
+               attributeCountAggregator.changeCounts(dataStorage, metadataCollection, Collections.singletonMap(kept, 1));
+            }
+         }));
+      }
+      for (Future<?> future : futures) {
+         future.get();
+      }
+      executor.shutdown();
+
+      assertThat(collectionMetadataFacade.getAttributeCount(collection, kept)).isEqualTo(402);
+      assertThat(collectionMetadataFacade.getAttributeCount(collection, dropped)).isEqualTo(1);
+
+      collectionMetadataFacade.updateAttributeCounts(collection, Collections.singletonList(kept), Arrays.asList(kept, dropped));
+      assertThat(collectionMetadataFacade.getAttributeCount(collection, kept)).isEqualTo(402);
+      assertThat(collectionMetadataFacade.getCollectionAttributesNames(collection)).containsOnly(kept);
+   }
+
    @Test
    public void testCheckAttributeValue() throws Exception {
       setUpCollection(COLLECTION_CHECK_ATTRIBUTE_VALUE);
@@ -485,6 +530,7 @@ public class CollectionMetadataFacadeIntegrationTest extends IntegrationTestBase
 
       List<String> constraints = collectionMetadataFacade.getAttributeConstraintsConfigurations(collection, attribute);
       assertThat(constraints).isEmpty();
+      assertThat(collectionMetadataFacade.checkAndConvertAttributeValue(collection, attribute, "5")).isEqualTo("5");
 
       String constraint1 = "isNumber";
       String constraint2 = "lessThan:3";
@@ -493,6 +539,7 @@ public class CollectionMetadataFacadeIntegrationTest extends IntegrationTestBase
       collectionMetadataFacade.addAttributeConstraint(collection, attribute, constraint2);
       constraints = collectionMetadataFacade.getAttributeConstraintsConfigurations(collection, attribute);
       assertThat(constraints).containsOnly(constraint1, constraint2);
+      assertThat(collectionMetadataFacade.checkAndConvertAttributeValue(collection, attribute, "5")).isNull(); // cached schema is invalidated
 
       collectionMetadataFacade.dropAttributeConstraint(collection, attribute, constraint1);
       constraints = collectionMetadataFacade.getAttributeConstraintsConfigurations(collection, attribute);
@@ -501,6 +548,7 @@ public class CollectionMetadataFacadeIntegrationTest extends IntegrationTestBase
       collectionMetadataFacade.dropAttributeConstraint(collection, attribute, constraint2);
       constraints = collectionMetadataFacade.getAttributeConstraintsConfigurations(collection, attribute);
       assertThat(constraints).isEmpty();
+      assertThat(collectionMetadataFacade.checkAndConvertAttributeValue(collection, attribute, "5")).isEqualTo("5");
 
       // we try to add dummy constraint
       String constraint3 = "dummy";
@@ -23,17 +23,22 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 import io.lumeer.engine.IntegrationTestBase;
 import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.BulkWriteResult;
 import io.lumeer.engine.api.data.DataDocument;
 import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.api.exception.DbException;
 import io.lumeer.engine.provider.DataStorageProvider;
+import io.lumeer.engine.util.DocumentImportReader;
 
 import org.jboss.arquillian.junit.Arquillian;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import javax.inject.Inject;
@@ -49,6 +54,7 @@ public class DocumentFacadeIntegrationTest extends IntegrationTestBase {
    private final String COLLECTION_REVERT = "collectionRevert";
    private final String COLLECTION_READ_AND_UPDATE = "collectionReadAndUpdate";
    private final String COLLECTION_GETATTRS_AND_DROPATTR = "collectionGetAttrsAndDropAttr";
+   private final String COLLECTION_IMPORT = "collectionImport";
 
    private final String DUMMY_KEY1 = "key1";
    private final String DUMMY_VALUE1 = "param1";
@@ -63,6 +69,9 @@ public class DocumentFacadeIntegrationTest extends IntegrationTestBase {
    @Inject
    private CollectionFacade collectionFacade;
 
+   @Inject
+   private ImportFacade importFacade;
+
    private DataStorage dataStorage;
 
    @Inject
@@ -234,6 +243,41 @@ public class DocumentFacadeIntegrationTest extends IntegrationTestBase {
       assertThat(attrs).contains("x");
    }
 
+   @Test
+   public void testImportDocuments() throws Exception {
+      String coll = setUpCollection(COLLECTION_IMPORT);
+      collectionMetadataFacade.addOrIncrementAttribute(coll, "n");
+      collectionMetadataFacade.retypeCollectionAttribute(coll, "n", LumeerConst.Collection.COLLECTION_ATTRIBUTE_TYPE_INT);
+
+      String csv = "n,name\n1,a\nx,b\r\n3,\"c, \"\"quoted\"\"\"\n4,d,extra\n\n\"5";
+      List<Integer> processed = new ArrayList<>();
+      List<BulkWriteResult> results = new ArrayList<>();
+      importFacade.importDocuments(coll, DocumentImportReader.csv(new StringReader(csv)), (count, result) -> {
+         processed.add(count);
+         results.add(result);
+      });
+
+      assertThat(processed).containsExactly(5);
+      assertThat(results.get(0).getSuccessCount()).isEqualTo(2);
+      assertThat(results.get(0).getErrors()).containsOnlyKeys(1, 3, 4);
+      assertThat(dataStorage.search(coll, null, null, 0, 0)).extracting(document -> document.get("n")).containsOnly(1, 3);
+      assertThat(dataStorage.search(coll, null, null, 0, 0)).extracting(document -> document.get("name")).containsOnly("a", "c, \"quoted\"");
+
+      String jsonLines = "{\"n\": 6, \"other\": \"o\"}\n\nnot json\n{\"n\": \"7\"}\n{\"n\": \"eight\"}\n";
+      processed.clear();
+      results.clear();
+      importFacade.importDocuments(coll, DocumentImportReader.jsonLines(new StringReader(jsonLines)), (count, result) -> {
+         processed.add(count);
+         results.add(result);
+      });
+
+      assertThat(processed).containsExactly(4);
+      assertThat(results.get(0).getSuccessCount()).isEqualTo(2);
+      assertThat(results.get(0).getErrors()).containsOnlyKeys(1, 3);
+      assertThat(dataStorage.count(coll, null)).isEqualTo(4);
+      assertThat(collectionMetadataFacade.getCollectionAttributesNames(coll)).contains("n", "name", "other");
+   }
+
    private String setUpCollection(final String collection) {
       try {
          collectionFacade.dropCollection(collectionMetadataFacade.getInternalCollectionName(collection));
@@ -99,6 +99,9 @@ public class DocumentMetadataFacadeIntegrationTest extends IntegrationTestBase {
 
       documentMetadataFacade.dropDocumentMetadata(COLLECTION_PUT_AND_UPDATE_METADATA, documentId, LumeerConst.Document.CREATE_BY_USER_KEY);
       assertThat(documentMetadataFacade.readDocumentMetadata(COLLECTION_PUT_AND_UPDATE_METADATA, documentId)).doesNotContainKey(LumeerConst.Document.CREATE_BY_USER_KEY);
+
+      // every write without a new version increments the revision
+      assertThat(documentMetadataFacade.getDocumentRevision(documentMetadataFacade.readDocumentRevision(COLLECTION_PUT_AND_UPDATE_METADATA, documentId))).isEqualTo(3);
    }
 
    private String setupCollectionAndCreateNewDocument(final String collection) throws DbException, InvalidConstraintException {
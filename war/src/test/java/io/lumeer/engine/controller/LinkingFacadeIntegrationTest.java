@@ -26,6 +26,7 @@ import io.lumeer.engine.api.LumeerConst;
 import io.lumeer.engine.api.data.DataDocument;
 import io.lumeer.engine.api.data.DataStorage;
 import io.lumeer.engine.provider.DataStorageProvider;
+import io.lumeer.engine.provider.LinkGraphProvider;
 import io.lumeer.engine.rest.dao.LinkDao;
 import io.lumeer.engine.rest.dao.LinkTypeDao;
 
@@ -65,17 +66,29 @@ public class LinkingFacadeIntegrationTest extends IntegrationTestBase {
    private final String COLLECTION_READ_DROP_ALL_I = "collectionCreateDropAllI";
    private final String COLLECTION_READ_DROP_ALL_II = "collectionCreateDropAllII";
    private final String COLLECTION_READ_DROP_ALL_III = "collectionCreateDropAllIII";
+   private final String COLLECTION_TRAVERSE_I = "collectionTraverseI";
+   private final String COLLECTION_TRAVERSE_II = "collectionTraverseII";
+   private final String COLLECTION_TRAVERSE_III = "collectionTraverseIII";
+   private final String COLLECTION_TRAVERSE_RIGHTS_I = "collectionTraverseRightsI";
+   private final String COLLECTION_TRAVERSE_RIGHTS_II = "collectionTraverseRightsII";
+   private final String COLLECTION_TRAVERSE_RIGHTS_III = "collectionTraverseRightsIII";
 
    private final int NUM_DOCUMENTS = 3;
 
    @Inject
    private LinkingFacade linkingFacade;
 
+   @Inject
+   private CollectionMetadataFacade collectionMetadataFacade;
+
    private DataStorage dataStorage;
 
    @Inject
    private DataStorageProvider dataStorageProvider;
 
+   @Inject
+   private LinkGraphProvider linkGraphProvider;
+
    @Before
    public void init() {
       dataStorage = dataStorageProvider.getUserStorage();
@@ -161,6 +174,13 @@ public class LinkingFacadeIntegrationTest extends IntegrationTestBase {
 
       linkTypes = linkingFacade.readDocByDocLinks(COLLECTION_GETDOCUMENTSLINKS_I, col1Id2, COLLECTION_GETDOCUMENTSLINKS_II, col2Id2, role1, LumeerConst.Linking.LinkDirection.TO);
       assertThat(linkTypes).isEmpty();
+
+      assertThat(linkingFacade.readLinkedDocumentIds(COLLECTION_GETDOCUMENTSLINKS_I, col1Id1, role1, LumeerConst.Linking.LinkDirection.FROM)).containsExactly(col2Id1);
+      assertThat(linkingFacade.readLinkedDocumentIds(COLLECTION_GETDOCUMENTSLINKS_I, col1Id2, role1, LumeerConst.Linking.LinkDirection.FROM)).containsExactly(col2Id2);
+      assertThat(linkingFacade.readLinkedDocumentIds(COLLECTION_GETDOCUMENTSLINKS_II, col2Id2, role1, LumeerConst.Linking.LinkDirection.TO)).containsExactly(col1Id2);
+
+      linkingFacade.dropDocWithDocLink(COLLECTION_GETDOCUMENTSLINKS_I, col1Id2, COLLECTION_GETDOCUMENTSLINKS_II, col2Id2, role1, LumeerConst.Linking.LinkDirection.FROM);
+      assertThat(linkingFacade.readLinkedDocumentIds(COLLECTION_GETDOCUMENTSLINKS_I, col1Id2, role1, LumeerConst.Linking.LinkDirection.FROM)).isEmpty();
    }
 
    @Test
@@ -344,6 +364,82 @@ public class LinkingFacadeIntegrationTest extends IntegrationTestBase {
       assertThat(links).isEmpty();
    }
 
+   @Test
+   public void testTraverseLinks() throws Exception {
+      List<String> collections = Arrays.asList(COLLECTION_TRAVERSE_I, COLLECTION_TRAVERSE_II, COLLECTION_TRAVERSE_III);
+      Map<String, List<String>> ids = createTestData(collections);
+
+      String col1Id1 = ids.get(COLLECTION_TRAVERSE_I).get(0);
+      String col2Id1 = ids.get(COLLECTION_TRAVERSE_II).get(0);
+      String col2Id2 = ids.get(COLLECTION_TRAVERSE_II).get(1);
+      String col3Id1 = ids.get(COLLECTION_TRAVERSE_III).get(0);
+
+      String role1 = "role1";
+      String role2 = "role2";
+
+      dropLinkingCollections(Arrays.asList(role1, role2), collections);
+
+      // I -> II -> III -> I forms a cycle
+      linkingFacade.createDocWithDocLink(COLLECTION_TRAVERSE_I, col1Id1, COLLECTION_TRAVERSE_II, col2Id1, new DataDocument(), role1, LumeerConst.Linking.LinkDirection.FROM);
+      linkingFacade.createDocWithDocLink(COLLECTION_TRAVERSE_I, col1Id1, COLLECTION_TRAVERSE_II, col2Id2, new DataDocument(), role1, LumeerConst.Linking.LinkDirection.FROM);
+      linkingFacade.createDocWithDocLink(COLLECTION_TRAVERSE_II, col2Id1, COLLECTION_TRAVERSE_III, col3Id1, new DataDocument(), role2, LumeerConst.Linking.LinkDirection.FROM);
+      linkingFacade.createDocWithDocLink(COLLECTION_TRAVERSE_III, col3Id1, COLLECTION_TRAVERSE_I, col1Id1, new DataDocument(), role1, LumeerConst.Linking.LinkDirection.FROM);
+
+      List<DataDocument> documents = linkingFacade.traverseLinks(COLLECTION_TRAVERSE_I, col1Id1, null, 5, LumeerConst.Linking.LinkDirection.FROM, 100, 100);
+      assertThat(documents).extracting(DataDocument::getId).containsExactly(col2Id1, col2Id2, col3Id1);
+      assertThat(documents).extracting(d -> d.getInteger(LumeerConst.Document.LINK_DEPTH)).containsExactly(1, 1, 2);
+      assertThat(documents.get(2).getString(LumeerConst.Document.COLLECTION_NAME)).isEqualTo(COLLECTION_TRAVERSE_III);
+
+      documents = linkingFacade.traverseLinks(COLLECTION_TRAVERSE_I, col1Id1, Arrays.asList(role1, role1), 0, LumeerConst.Linking.LinkDirection.FROM, 100, 100);
+      assertThat(documents).extracting(DataDocument::getId).containsExactly(col2Id1, col2Id2);
+
+      documents = linkingFacade.traverseLinks(COLLECTION_TRAVERSE_I, col1Id1, null, 1, LumeerConst.Linking.LinkDirection.BOTH, 100, 100);
+      assertThat(documents).extracting(DataDocument::getId).containsExactlyInAnyOrder(col2Id1, col2Id2, col3Id1);
+
+      documents = linkingFacade.traverseLinks(COLLECTION_TRAVERSE_I, col1Id1, null, 5, LumeerConst.Linking.LinkDirection.FROM, 1, 100);
+      assertThat(documents).extracting(DataDocument::getId).containsExactly(col2Id1, col3Id1);
+
+      documents = linkingFacade.traverseLinks(COLLECTION_TRAVERSE_I, col1Id1, null, 5, LumeerConst.Linking.LinkDirection.FROM, 100, 1);
+      assertThat(documents).hasSize(1);
+   }
+
+   @Test
+   public void testTraverseLinksSkipsUnreadableCollections() throws Exception {
+      List<String> collections = Arrays.asList(COLLECTION_TRAVERSE_RIGHTS_I, COLLECTION_TRAVERSE_RIGHTS_II, COLLECTION_TRAVERSE_RIGHTS_III);
+      Map<String, List<String>> ids = createTestData(collections);
+
+      String col1Id1 = ids.get(COLLECTION_TRAVERSE_RIGHTS_I).get(0);
+      String col2Id1 = ids.get(COLLECTION_TRAVERSE_RIGHTS_II).get(0);
+      String col2Id2 = ids.get(COLLECTION_TRAVERSE_RIGHTS_II).get(1);
+      String col3Id1 = ids.get(COLLECTION_TRAVERSE_RIGHTS_III).get(0);
+      String col3Id2 = ids.get(COLLECTION_TRAVERSE_RIGHTS_III).get(1);
+
+      String role = "role1";
+      dropLinkingCollections(Collections.singletonList(role), collections);
+
+      // nobody can read collection III, an empty list of rights denies all users
+      String hiddenMetadata = collectionMetadataFacade.collectionMetadataCollectionName(COLLECTION_TRAVERSE_RIGHTS_III);
+      dataStorage.dropCollection(hiddenMetadata);
+      dataStorage.createCollection(hiddenMetadata);
+      dataStorage.createDocument(hiddenMetadata, new DataDocument(LumeerConst.Collection.META_TYPE_KEY, LumeerConst.Collection.COLLECTION_RIGHTS_META_TYPE_VALUE)
+            .append(LumeerConst.Document.USER_RIGHTS, new ArrayList<DataDocument>()));
+
+      // I -> III -> II and I -> II
+      linkingFacade.createDocWithDocLink(COLLECTION_TRAVERSE_RIGHTS_I, col1Id1, COLLECTION_TRAVERSE_RIGHTS_III, col3Id1, new DataDocument(), role, LumeerConst.Linking.LinkDirection.FROM);
+      linkingFacade.createDocWithDocLink(COLLECTION_TRAVERSE_RIGHTS_I, col1Id1, COLLECTION_TRAVERSE_RIGHTS_III, col3Id2, new DataDocument(), role, LumeerConst.Linking.LinkDirection.FROM);
+      linkingFacade.createDocWithDocLink(COLLECTION_TRAVERSE_RIGHTS_III, col3Id1, COLLECTION_TRAVERSE_RIGHTS_II, col2Id2, new DataDocument(), role, LumeerConst.Linking.LinkDirection.FROM);
+      linkingFacade.createDocWithDocLink(COLLECTION_TRAVERSE_RIGHTS_I, col1Id1, COLLECTION_TRAVERSE_RIGHTS_II, col2Id1, new DataDocument(), role, LumeerConst.Linking.LinkDirection.FROM);
+
+      // the hidden documents neither use up the limit nor lead to the documents behind them
+      List<DataDocument> documents = linkingFacade.traverseLinks(COLLECTION_TRAVERSE_RIGHTS_I, col1Id1, null, 5, LumeerConst.Linking.LinkDirection.FROM, 100, 1);
+      assertThat(documents).extracting(DataDocument::getId).containsExactly(col2Id1);
+
+      documents = linkingFacade.traverseLinks(COLLECTION_TRAVERSE_RIGHTS_I, col1Id1, null, 5, LumeerConst.Linking.LinkDirection.FROM, 100, 100);
+      assertThat(documents).extracting(DataDocument::getId).containsExactly(col2Id1);
+
+      dataStorage.dropCollection(hiddenMetadata);
+   }
+
    private Map<String, List<String>> createTestData(List<String> collections) {
       Map<String, List<String>> ids = new HashMap<>();
       for (String col : collections) {
@@ -370,6 +466,9 @@ public class LinkingFacadeIntegrationTest extends IntegrationTestBase {
             }
          }
       }
+
+      // the collections are dropped directly in the storage, bypassing the link index
+      linkGraphProvider.invalidate(dataStorage);
    }
 
    private String buildCollectionName(final String firstCollectionName, final String secondCollectionName, final String role) {
@@ -20,11 +20,14 @@
 package io.lumeer.engine.controller;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import io.lumeer.engine.IntegrationTestBase;
 import io.lumeer.engine.api.LumeerConst;
 import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataPage;
 import io.lumeer.engine.api.data.DataStorage;
+import io.lumeer.engine.api.exception.DocumentNotFoundException;
 import io.lumeer.engine.api.exception.VersionUpdateConflictException;
 import io.lumeer.engine.provider.DataStorageProvider;
 
@@ -33,6 +36,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+import java.util.List;
 import javax.inject.Inject;
 
 /**
@@ -50,6 +55,8 @@ public class VersionFacadeIntegrationTest extends IntegrationTestBase {
    private final String TEST_GET_OLD_DOC = "versionTestGetOldDocuments";
    private final String TEST_REVERT = "versionTestRevert";
    private final String TEST_EXCEPTION = "versionTestException";
+   private final String TEST_DELTA = "versionTestDelta";
+   private final String TEST_AS_OF = "versionTestAsOf";
 
    @Inject
    public VersionFacade versionFacade;
@@ -175,6 +182,111 @@ public class VersionFacadeIntegrationTest extends IntegrationTestBase {
       assertThat(dataStorage.readOldDocument(shadow, documentId, 2).getString("dog")).isEqualTo("pig");
    }
 
+   @Test
+   public void testDeltaVersions() throws Exception {
+      String shadow = createCollection(TEST_DELTA);
+      DataDocument dataDocument = createTestDocument();
+      dataDocument.put("large", "unchanged value");
+      String documentId = dataStorage.createDocument(TEST_DELTA, dataDocument);
+
+      // versions 1 to 24 are backed up, the new attribute appears in version 5 and disappears in version 20
+      for (int i = 1; i < 25; i++) {
+         DataDocument actual = dataStorage.readDocument(TEST_DELTA, documentId);
+         DataDocument newDocument = new DataDocument(actual);
+         newDocument.replace("dog", "dog" + i);
+         if (i == 4) {
+            newDocument.put("added", "value");
+         }
+         if (i == 19) {
+            newDocument.remove("added");
+         }
+         versionFacade.newDocumentVersion(TEST_DELTA, actual, newDocument, true);
+      }
+
+      assertThat(dataStorage.readOldDocument(shadow, documentId, 10).getString("large")).isEqualTo("unchanged value");
+      assertThat(dataStorage.readOldDocument(shadow, documentId, 11)).doesNotContainKey("large");
+      assertThat(dataStorage.readOldDocument(shadow, documentId, 11).getInteger(LumeerConst.Document.SHADOW_BASE_KEY)).isEqualTo(10);
+
+      // changes of the current document without a new version do not affect old versions
+      dataStorage.dropAttribute(TEST_DELTA, documentId, "large");
+
+      for (int version = 1; version < 25; version++) {
+         DataDocument oldDocument = versionFacade.readOldDocumentVersion(TEST_DELTA, documentId, version);
+         assertThat(versionFacade.getDocumentVersion(oldDocument)).isEqualTo(version);
+         assertThat(oldDocument.getDataDocument(LumeerConst.Document.ID).getInteger(LumeerConst.Document.METADATA_VERSION_KEY)).isEqualTo(version);
+         assertThat(oldDocument.getString("dog")).isEqualTo(version == 1 ? "cat" : "dog" + (version - 1));
+         assertThat(oldDocument.getString("large")).isEqualTo("unchanged value");
+         assertThat(oldDocument.containsKey("added")).isEqualTo(version >= 5 && version < 20);
+         assertThat(oldDocument).doesNotContainKey(LumeerConst.Document.SHADOW_DELTA_KEY);
+      }
+
+      List<DataDocument> versions = versionFacade.getDocumentVersions(TEST_DELTA, documentId);
+      assertThat(versions).hasSize(25);
+      for (int version = 1; version < 25; version++) {
+         assertThat(versions.get(version - 1).getString("dog")).isEqualTo(version == 1 ? "cat" : "dog" + (version - 1));
+         assertThat(versions.get(version - 1).getString("large")).isEqualTo("unchanged value");
+         assertThat(versions.get(version - 1).getDataDocument(LumeerConst.Document.ID).getInteger(LumeerConst.Document.METADATA_VERSION_KEY)).isEqualTo(version);
+      }
+   }
+
+   @Test
+   public void testVersionPagesAndAsOf() throws Exception {
+      String shadow = createCollection(TEST_AS_OF);
+      DataDocument dataDocument = createTestDocument();
+      dataDocument.put(LumeerConst.Document.CREATE_DATE_KEY, "2017.01.01 00.00.00.000");
+      String documentId = dataStorage.createDocument(TEST_AS_OF, dataDocument);
+
+      // version n is updated on n-th January
+      for (int i = 1; i < 15; i++) {
+         DataDocument actual = dataStorage.readDocument(TEST_AS_OF, documentId);
+         DataDocument newDocument = new DataDocument("dog", "dog" + i).append(LumeerConst.Document.UPDATE_DATE_KEY, String.format("2017.01.%02d 00.00.00.000", i + 1));
+         versionFacade.newDocumentVersion(TEST_AS_OF, actual, newDocument, false);
+      }
+
+      DataDocument otherDocument = createTestDocument();
+      otherDocument.put(LumeerConst.Document.CREATE_DATE_KEY, "2017.01.10 00.00.00.000");
+      String otherDocumentId = dataStorage.createDocument(TEST_AS_OF, otherDocument);
+
+      assertThat(dataStorage.listIndexes(shadow).stream().map(index -> index.getDataDocument("key")).anyMatch(key -> key.containsKey("_id._id") && key.containsKey("_id." + VERSION_STRING))).isTrue();
+
+      List<DataDocument> versions = new ArrayList<>();
+      DataPage page = versionFacade.getDocumentVersions(TEST_AS_OF, documentId, null, 4);
+      versions.addAll(page.getDocuments());
+      while (page.getNextPageToken() != null) {
+         assertThat(page.getDocuments()).hasSize(4);
+         page = versionFacade.getDocumentVersions(TEST_AS_OF, documentId, page.getNextPageToken(), 4);
+         versions.addAll(page.getDocuments());
+      }
+      assertThat(versions).hasSize(15);
+      for (int version = 1; version <= 15; version++) {
+         assertThat(versionFacade.getDocumentVersion(versions.get(version - 1))).isEqualTo(version);
+         assertThat(versions.get(version - 1).getString("dog")).isEqualTo(version == 1 ? "cat" : "dog" + (version - 1));
+      }
+
+      DataDocument asOf = versionFacade.readDocumentAsOf(TEST_AS_OF, documentId, "2017.01.07 12.00.00.000");
+      assertThat(asOf.getId()).isEqualTo(documentId);
+      assertThat(versionFacade.getDocumentVersion(asOf)).isEqualTo(7);
+      assertThat(asOf.getString("dog")).isEqualTo("dog6");
+      assertThat(versionFacade.readDocumentAsOf(TEST_AS_OF, documentId, "2017.01.01 12.00.00.000").getString("dog")).isEqualTo("cat");
+      assertThat(versionFacade.readDocumentAsOf(TEST_AS_OF, documentId, "2017.02.01 00.00.00.000").getString("dog")).isEqualTo("dog14");
+      assertThatThrownBy(() -> versionFacade.readDocumentAsOf(TEST_AS_OF, documentId, "2016.12.31 00.00.00.000")).isInstanceOf(DocumentNotFoundException.class);
+
+      assertThat(versionFacade.readDocumentAsOf(TEST_AS_OF, documentId, 3).getString("dog")).isEqualTo("dog2");
+      assertThat(versionFacade.readDocumentAsOf(TEST_AS_OF, documentId, 15).getString("dog")).isEqualTo("dog14");
+
+      List<DataDocument> documents = versionFacade.readDocumentsAsOf(TEST_AS_OF, null, "2017.01.05 12.00.00.000", null, 0).getDocuments();
+      assertThat(documents).hasSize(1);
+      assertThat(documents.get(0).getId()).isEqualTo(documentId);
+      assertThat(documents.get(0).getString("dog")).isEqualTo("dog4");
+
+      page = versionFacade.readDocumentsAsOf(TEST_AS_OF, null, "2017.01.12 00.00.00.000", null, 1);
+      assertThat(page.getDocuments()).extracting(document -> document.getString("dog")).containsExactly("dog11");
+      page = versionFacade.readDocumentsAsOf(TEST_AS_OF, null, "2017.01.12 00.00.00.000", page.getNextPageToken(), 1);
+      assertThat(page.getDocuments()).extracting(DataDocument::getId).containsExactly(otherDocumentId);
+      assertThatThrownBy(() -> versionFacade.readDocumentAsOf(TEST_AS_OF, documentId, "2017-01-05")).isInstanceOf(IllegalArgumentException.class);
+      assertThatThrownBy(() -> versionFacade.readDocumentsAsOf(TEST_AS_OF, null, "yesterday", null, 0)).isInstanceOf(IllegalArgumentException.class);
+   }
+
    @Test(expected = VersionUpdateConflictException.class)
    public void testExceptionUpdateDouble() throws Exception {
       createCollection(TEST_EXCEPTION);
@@ -0,0 +1,176 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.provider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.lumeer.engine.IntegrationTestBase;
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.cache.Cache;
+import io.lumeer.engine.api.cache.CacheManager;
+import io.lumeer.engine.api.data.DataChange;
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataStorage;
+import io.lumeer.engine.api.data.DataStorageDialect;
+import io.lumeer.engine.controller.CollectionFacade;
+import io.lumeer.engine.controller.CollectionMetadataFacade;
+import io.lumeer.engine.controller.CollectionSchema;
+import io.lumeer.engine.controller.DocumentFacade;
+
+import org.jboss.arquillian.junit.Arquillian;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import javax.inject.Inject;
+
+/**
+ * Feeds the dispatcher with the changes the change feed reports for the writes of this node.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+@RunWith(Arquillian.class)
+public class ChangeFeedDispatcherIntegrationTest extends IntegrationTestBase {
+
+   private static final String COLLECTION_SCHEMA = "ChangeFeedDispatcherCollectionSchema";
+   private static final String LINKING_FEED = LumeerConst.Linking.PREFIX + "_changeFeedI_changeFeedII_role";
+
+   private static final LumeerConst.Linking.LinkDirection FROM = LumeerConst.Linking.LinkDirection.FROM;
+
+   @Inject
+   private ChangeFeedDispatcher changeFeedDispatcher;
+
+   @Inject
+   private DataStorageProvider dataStorageProvider;
+
+   @Inject
+   private LinkGraphProvider linkGraphProvider;
+
+   @Inject
+   private CacheManager cacheManager;
+
+   @Inject
+   private CollectionFacade collectionFacade;
+
+   @Inject
+   private CollectionMetadataFacade collectionMetadataFacade;
+
+   @Inject
+   private DocumentFacade documentFacade;
+
+   @Inject
+   private DataStorageDialect dataStorageDialect;
+
+   private DataStorage dataStorage;
+
+   @Before
+   public void init() {
+      dataStorage = dataStorageProvider.getUserStorage();
+   }
+
+   @Test
+   public void testSchemaSurvivesDocumentInsert() throws Exception {
+      dataStorage.dropCollection(internalName(COLLECTION_SCHEMA));
+      dataStorage.dropCollection(LumeerConst.Collection.COLLECTION_METADATA_PREFIX + internalName(COLLECTION_SCHEMA));
+      collectionFacade.createCollection(COLLECTION_SCHEMA);
+      final String collection = internalName(COLLECTION_SCHEMA);
+      final String metadataCollection = collectionMetadataFacade.collectionMetadataCollectionName(collection);
+
+      collectionMetadataFacade.addOrIncrementAttribute(collection, "number");
+      collectionMetadataFacade.retypeCollectionAttribute(collection, "number", LumeerConst.Collection.COLLECTION_ATTRIBUTE_TYPE_INT);
+      collectionMetadataFacade.checkAndConvertAttributeValue(collection, "number", "1"); // loads the schema
+
+      final Cache<CollectionSchema> schemas = cacheManager.getCache(CollectionMetadataFacade.SCHEMA_CACHE);
+      final CollectionSchema schema = schemas.get(collection);
+      assertThat(schema).isNotNull();
+
+      // the feed reports the document, the count of the existing attribute and the new attribute
+      final String documentId = documentFacade.createDocument(collection, new DataDocument("number", 2).append("text", "a"));
+      final DataDocument number = attributeDocument(metadataCollection, "number");
+      final DataDocument text = attributeDocument(metadataCollection, "text");
+      dispatch(DataChange.Operation.INSERT, collection, documentId, dataStorage.readDocument(collection, documentId));
+      dispatch(DataChange.Operation.UPDATE, metadataCollection, id(number), new DataDocument(LumeerConst.Collection.COLLECTION_ATTRIBUTE_COUNT_KEY, 2));
+      dispatch(DataChange.Operation.INSERT, metadataCollection, id(text), text);
+
+      assertThat(schemas.get(collection)).isSameAs(schema);
+
+      // the type changed by another node
+      dispatch(DataChange.Operation.UPDATE, metadataCollection, id(number), new DataDocument(LumeerConst.Collection.COLLECTION_ATTRIBUTE_TYPE_KEY, LumeerConst.Collection.COLLECTION_ATTRIBUTE_TYPE_DOUBLE));
+
+      assertThat(schemas.get(collection)).isNull();
+   }
+
+   @Test
+   public void testLinksAppliedOneByOne() throws Exception {
+      if (!dataStorage.hasCollection(LumeerConst.Linking.MainTable.NAME)) {
+         dataStorage.createCollection(LumeerConst.Linking.MainTable.NAME);
+      }
+      dataStorage.dropManyDocuments(LumeerConst.Linking.MainTable.NAME, dataStorageDialect.fieldValueFilter(LumeerConst.Linking.MainTable.ATTR_COL_NAME, LINKING_FEED));
+      dataStorage.dropCollection(LINKING_FEED);
+      linkGraphProvider.invalidate(dataStorage);
+
+      final LinkGraph linkGraph = linkGraphProvider.getLinkGraph(dataStorage);
+      assertThat(linkGraph.countLinks(LINKING_FEED)).isEqualTo(0); // loads the index
+
+      // a linking table and a link created by another node
+      final DataDocument linkingTable = new DataDocument(LumeerConst.Linking.MainTable.ATTR_FROM_COLLECTION, "changeFeedI")
+            .append(LumeerConst.Linking.MainTable.ATTR_TO_COLLECTION, "changeFeedII")
+            .append(LumeerConst.Linking.MainTable.ATTR_ROLE, "role")
+            .append(LumeerConst.Linking.MainTable.ATTR_COL_NAME, LINKING_FEED);
+      final String linkingTableId = dataStorage.createDocument(LumeerConst.Linking.MainTable.NAME, linkingTable);
+      dataStorage.createCollection(LINKING_FEED);
+      final DataDocument link = new DataDocument(LumeerConst.Linking.LinkingTable.ATTR_FROM_ID, "a1")
+            .append(LumeerConst.Linking.LinkingTable.ATTR_TO_ID, "b1")
+            .append(LumeerConst.Linking.LinkingTable.ATTR_ATTRIBUTES, new DataDocument());
+      final String linkId = dataStorage.createDocument(LINKING_FEED, link);
+
+      dispatch(DataChange.Operation.INSERT, LumeerConst.Linking.MainTable.NAME, linkingTableId, linkingTable);
+      dispatch(DataChange.Operation.CREATE_COLLECTION, LINKING_FEED, null, null);
+      dispatch(DataChange.Operation.INSERT, LINKING_FEED, linkId, link);
+      dispatch(DataChange.Operation.INSERT, LINKING_FEED, linkId, link); // reported twice
+
+      assertThat(linkGraph.getLinkingTables("changeFeedI", "role", FROM)).hasSize(1);
+      assertThat(linkGraph.getLinkedDocumentIds(LINKING_FEED, "a1", FROM)).containsExactly("b1");
+
+      dataStorage.dropDocument(LINKING_FEED, linkId);
+      dispatch(DataChange.Operation.DELETE, LINKING_FEED, linkId, null);
+
+      assertThat(linkGraph.countLinks(LINKING_FEED)).isEqualTo(0);
+      assertThat(linkGraph.getLinkingTables("changeFeedI", "role", FROM)).hasSize(1);
+   }
+
+   private void dispatch(final DataChange.Operation operation, final String collectionName, final String documentId, final DataDocument document) {
+      changeFeedDispatcher.onChange(dataStorageProvider.getUserDatabase(), new DataChange(operation, collectionName, documentId, null, document, null),
+            Collections.singletonList(dataStorage));
+   }
+
+   private DataDocument attributeDocument(final String metadataCollection, final String attributeName) {
+      return dataStorage.search(metadataCollection, dataStorageDialect.fieldValueFilter(LumeerConst.Collection.COLLECTION_ATTRIBUTE_NAME_KEY, attributeName), null, 0, 0).get(0);
+   }
+
+   private static String id(final DataDocument document) {
+      return document.get(LumeerConst.Document.ID).toString();
+   }
+
+   private static String internalName(final String collectionOriginalName) {
+      return "collection." + collectionOriginalName.toLowerCase() + "_0";
+   }
+}
@@ -0,0 +1,169 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.provider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.lumeer.engine.IntegrationTestBase;
+import io.lumeer.engine.api.LumeerConst;
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.api.data.DataStorage;
+import io.lumeer.engine.api.data.DataStorageDialect;
+
+import org.jboss.arquillian.junit.Arquillian;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.inject.Inject;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+@RunWith(Arquillian.class)
+public class LinkGraphIntegrationTest extends IntegrationTestBase {
+
+   private static final String LINKING_ADD = LumeerConst.Linking.PREFIX + "_linkGraphAddI_linkGraphAddII_role";
+   private static final String LINKING_REMOVE = LumeerConst.Linking.PREFIX + "_linkGraphRemoveI_linkGraphRemoveII_role";
+   private static final String LINKING_DROP = LumeerConst.Linking.PREFIX + "_linkGraphDropI_linkGraphDropII_role";
+   private static final String LINKING_INVALIDATE = LumeerConst.Linking.PREFIX + "_linkGraphInvalidateI_linkGraphInvalidateII_role";
+
+   private static final LumeerConst.Linking.LinkDirection FROM = LumeerConst.Linking.LinkDirection.FROM;
+   private static final LumeerConst.Linking.LinkDirection TO = LumeerConst.Linking.LinkDirection.TO;
+
+   @Inject
+   private DataStorageProvider dataStorageProvider;
+
+   @Inject
+   private DataStorageDialect dataStorageDialect;
+
+   private DataStorage dataStorage;
+
+   @Before
+   public void init() {
+      dataStorage = dataStorageProvider.getUserStorage();
+   }
+
+   @Test
+   public void testAddLinks() throws Exception {
+      createLinkingTable(LINKING_ADD, "linkGraphAddI", "linkGraphAddII");
+      createLink(LINKING_ADD, "a1", "b1");
+
+      final LinkGraph linkGraph = new LinkGraph(dataStorage);
+      assertThat(linkGraph.getLinkingTables("linkGraphAddI", "role", FROM)).hasSize(1);
+      assertThat(linkGraph.getLinkingTables("linkGraphAddI", "linkGraphAddII", null, FROM)).hasSize(1);
+      assertThat(linkGraph.getLinkedDocumentIds(LINKING_ADD, "a1", FROM)).containsExactly("b1");
+
+      linkGraph.linkCreated(LINKING_ADD, "a1", "b2", new DataDocument("weight", 2));
+      linkGraph.linkCreated(LINKING_ADD, "a2", "b2", new DataDocument());
+      linkGraph.linkCreated(LINKING_ADD, "a1", "b2", new DataDocument("weight", 3)); // already linked
+
+      assertThat(linkGraph.countLinks(LINKING_ADD)).isEqualTo(3);
+      assertThat(linkGraph.getLinkedDocumentIds(LINKING_ADD, "a1", FROM)).containsExactly("b1", "b2");
+      assertThat(linkGraph.getLinkedDocumentIds(LINKING_ADD, "b2", TO)).containsExactly("a1", "a2");
+      assertThat(linkGraph.getLinkingDocuments(LINKING_ADD, "a1", "b2", FROM)).hasSize(1);
+      assertThat(linkGraph.getLinkingDocuments(LINKING_ADD, "a1", "b2", FROM).get(0).getDataDocument(LumeerConst.Linking.LinkingTable.ATTR_ATTRIBUTES).getInteger("weight")).isEqualTo(2);
+      assertThat(linkGraph.getLinkingDocuments(LINKING_ADD, "b2", "a2", TO)).hasSize(1);
+      assertThat(linkGraph.getLinkingDocuments(LINKING_ADD, "b2", "a2", FROM)).isEmpty();
+   }
+
+   @Test
+   public void testRemoveLinks() throws Exception {
+      createLinkingTable(LINKING_REMOVE, "linkGraphRemoveI", "linkGraphRemoveII");
+      createLink(LINKING_REMOVE, "a1", "b1");
+      createLink(LINKING_REMOVE, "a1", "b2");
+      createLink(LINKING_REMOVE, "a2", "b2");
+      createLink(LINKING_REMOVE, "a3", "b2");
+
+      final LinkGraph linkGraph = new LinkGraph(dataStorage);
+      assertThat(linkGraph.countLinks(LINKING_REMOVE)).isEqualTo(4);
+
+      linkGraph.linkDropped(LINKING_REMOVE, "a1", "b1", FROM);
+      assertThat(linkGraph.getLinkedDocumentIds(LINKING_REMOVE, "a1", FROM)).containsExactly("b2");
+      assertThat(linkGraph.getLinkedDocumentIds(LINKING_REMOVE, "b1", TO)).isEmpty();
+
+      linkGraph.linkDropped(LINKING_REMOVE, "b2", "a2", TO);
+      assertThat(linkGraph.getLinkedDocumentIds(LINKING_REMOVE, "b2", TO)).containsExactly("a1", "a3");
+
+      linkGraph.linksDropped(LINKING_REMOVE, "b2", TO);
+      assertThat(linkGraph.countLinks(LINKING_REMOVE)).isEqualTo(0);
+      assertThat(linkGraph.getLinkedDocumentIds(LINKING_REMOVE, "a1", FROM)).isEmpty();
+      assertThat(linkGraph.getLinkingDocuments(LINKING_REMOVE)).isEmpty();
+   }
+
+   @Test
+   public void testCollectionDrop() throws Exception {
+      createLinkingTable(LINKING_DROP, "linkGraphDropI", "linkGraphDropII");
+      createLink(LINKING_DROP, "a1", "b1");
+
+      final LinkGraph linkGraph = new LinkGraph(dataStorage);
+      assertThat(linkGraph.countLinks(LINKING_DROP)).isEqualTo(1);
+
+      // the linking collection dropped directly in the storage is forgotten once the graph is notified
+      dataStorage.dropCollection(LINKING_DROP);
+      linkGraph.linkingTableDropped(LINKING_DROP);
+      assertThat(linkGraph.countLinks(LINKING_DROP)).isEqualTo(0);
+      assertThat(linkGraph.getLinkedDocumentIds(LINKING_DROP, "a1", FROM)).isEmpty();
+      assertThat(linkGraph.getLinkingTables("linkGraphDropI", "role", FROM)).isEmpty();
+   }
+
+   @Test
+   public void testInvalidate() throws Exception {
+      createLinkingTable(LINKING_INVALIDATE, "linkGraphInvalidateI", "linkGraphInvalidateII");
+      createLink(LINKING_INVALIDATE, "a1", "b1");
+
+      final LinkGraph linkGraph = new LinkGraph(dataStorage);
+      assertThat(linkGraph.getLinkedDocumentIds(LINKING_INVALIDATE, "a1", FROM)).containsExactly("b1");
+
+      // a link created by another node is not seen until the index is invalidated
+      createLink(LINKING_INVALIDATE, "a1", "b2");
+      assertThat(linkGraph.getLinkedDocumentIds(LINKING_INVALIDATE, "a1", FROM)).containsExactly("b1");
+
+      linkGraph.invalidate();
+      assertThat(linkGraph.getLinkedDocumentIds(LINKING_INVALIDATE, "a1", FROM)).containsExactly("b1", "b2");
+
+      // changes made before the index is loaded again are read from the storage
+      linkGraph.invalidate();
+      linkGraph.linkCreated(LINKING_INVALIDATE, "a1", "b3", new DataDocument());
+      assertThat(linkGraph.countLinks(LINKING_INVALIDATE)).isEqualTo(2);
+   }
+
+   private void createLinkingTable(final String collectionName, final String fromCollection, final String toCollection) {
+      if (!dataStorage.hasCollection(LumeerConst.Linking.MainTable.NAME)) {
+         dataStorage.createCollection(LumeerConst.Linking.MainTable.NAME);
+      }
+      dataStorage.dropManyDocuments(LumeerConst.Linking.MainTable.NAME, dataStorageDialect.fieldValueFilter(LumeerConst.Linking.MainTable.ATTR_COL_NAME, collectionName));
+      dataStorage.createDocument(LumeerConst.Linking.MainTable.NAME, new DataDocument(LumeerConst.Linking.MainTable.ATTR_FROM_COLLECTION, fromCollection)
+            .append(LumeerConst.Linking.MainTable.ATTR_TO_COLLECTION, toCollection)
+            .append(LumeerConst.Linking.MainTable.ATTR_ROLE, "role")
+            .append(LumeerConst.Linking.MainTable.ATTR_COL_NAME, collectionName));
+
+      if (dataStorage.hasCollection(collectionName)) {
+         dataStorage.dropCollection(collectionName);
+      }
+      dataStorage.createCollection(collectionName);
+   }
+
+   private void createLink(final String collectionName, final String fromId, final String toId) {
+      dataStorage.createDocument(collectionName, new DataDocument(LumeerConst.Linking.LinkingTable.ATTR_FROM_ID, fromId)
+            .append(LumeerConst.Linking.LinkingTable.ATTR_TO_ID, toId)
+            .append(LumeerConst.Linking.LinkingTable.ATTR_ATTRIBUTES, new DataDocument()));
+   }
+}
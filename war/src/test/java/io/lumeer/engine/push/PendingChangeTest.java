@@ -0,0 +1,109 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.push;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.lumeer.engine.api.data.DataDocument;
+import io.lumeer.engine.push.ChangeNotifications.ChangeType;
+import io.lumeer.engine.push.ChangeNotifications.PendingChange;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class PendingChangeTest {
+
+   private static final String COLLECTION = "collection.pendingchange";
+
+   @Test
+   public void testUpdateAfterUpdate() {
+      final PendingChange change = new PendingChange(COLLECTION, Collections.emptySet());
+      change.merge(ChangeType.UPDATE, new DataDocument("a", 1).append("b", 2));
+      change.merge(ChangeType.UPDATE, new DataDocument("b", 3).append("c", 4));
+
+      assertThat(change.getType()).isEqualTo(ChangeType.UPDATE);
+      assertThat(change.getDelta()).containsEntry("a", 1).containsEntry("b", 3).containsEntry("c", 4);
+      assertThat(change.getCount()).isEqualTo(2);
+   }
+
+   @Test
+   public void testUpdateAfterReplace() {
+      final PendingChange change = new PendingChange(COLLECTION, Collections.emptySet());
+      change.merge(ChangeType.REPLACE, new DataDocument("a", 1).append("b", 2));
+      change.merge(ChangeType.UPDATE, new DataDocument("b", 3));
+
+      assertThat(change.getType()).isEqualTo(ChangeType.REPLACE);
+      assertThat(change.getDelta()).hasSize(2).containsEntry("a", 1).containsEntry("b", 3);
+      assertThat(change.getCount()).isEqualTo(2);
+   }
+
+   @Test
+   public void testUpdateAfterCreate() {
+      final PendingChange change = new PendingChange(COLLECTION, Collections.emptySet());
+      change.merge(ChangeType.CREATE, new DataDocument("a", 1));
+      change.merge(ChangeType.UPDATE, new DataDocument("b", 2));
+      change.merge(ChangeType.UPDATE, new DataDocument("a", 3));
+
+      assertThat(change.getType()).isEqualTo(ChangeType.CREATE);
+      assertThat(change.getDelta()).hasSize(2).containsEntry("a", 3).containsEntry("b", 2);
+      assertThat(change.getCount()).isEqualTo(3);
+   }
+
+   @Test
+   public void testDropAfterUpdate() {
+      final PendingChange change = new PendingChange(COLLECTION, Collections.emptySet());
+      change.merge(ChangeType.UPDATE, new DataDocument("a", 1));
+      change.merge(ChangeType.DROP, null);
+
+      assertThat(change.getType()).isEqualTo(ChangeType.DROP);
+      assertThat(change.getDelta()).isNull();
+      assertThat(change.getCount()).isEqualTo(2);
+
+      final DataDocument message = change.toMessage("id");
+      assertThat(message).containsEntry("object", "id").containsEntry("collection", COLLECTION).containsEntry("change", "drop").containsEntry("changes", 2);
+      assertThat(message).doesNotContainKey("delta");
+   }
+
+   @Test
+   public void testUpdateAfterDrop() {
+      final PendingChange change = new PendingChange(COLLECTION, Collections.emptySet());
+      change.merge(ChangeType.DROP, null);
+      change.merge(ChangeType.UPDATE, new DataDocument("a", 1));
+
+      assertThat(change.getType()).isEqualTo(ChangeType.UPDATE);
+      assertThat(change.getDelta()).hasSize(1).containsEntry("a", 1);
+      assertThat(change.getCount()).isEqualTo(2);
+   }
+
+   @Test
+   public void testDeltaIsCopied() {
+      final DataDocument update = new DataDocument("a", 1);
+      final PendingChange change = new PendingChange(COLLECTION, Collections.emptySet());
+      change.merge(ChangeType.UPDATE, update);
+      change.merge(ChangeType.UPDATE, new DataDocument("b", 2));
+
+      assertThat(update).hasSize(1);
+      assertThat(change.getDelta()).hasSize(2);
+   }
+}
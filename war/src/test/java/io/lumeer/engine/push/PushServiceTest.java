@@ -0,0 +1,201 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.push;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.lumeer.engine.api.push.PushMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.logging.Logger;
+import javax.websocket.CloseReason;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class PushServiceTest {
+
+   private static final String USER = "user@lumeer.io";
+
+   private PushService pushService;
+
+   @Before
+   public void setUp() throws Exception {
+      pushService = new PushService();
+      setField("log", Logger.getLogger(PushServiceTest.class.getName()));
+   }
+
+   @Test
+   public void testAuthentication() {
+      final SessionStub stub = open("1", "documents", false);
+
+      assertThat(pushService.authenticateSession(stub.getSession(), "http1:token")).isFalse();
+
+      pushService.registerToken("http1:token", USER, null);
+      assertThat(pushService.authenticateSession(stub.getSession(), "http1:token")).isTrue();
+      assertThat(stub.getSession().getUserProperties()).containsEntry(PushService.LUMEER_AUTH_HEADER, "http1:token");
+
+      pushService.removeToken("http1:token");
+      assertThat(pushService.authenticateSession(open("2", "documents", false).getSession(), "http1:token")).isFalse();
+   }
+
+   @Test
+   public void testChannelFanOut() {
+      final SessionStub first = authenticated("1", "documents", "http1:a");
+      final SessionStub second = authenticated("2", "documents", "http2:b");
+      final SessionStub other = authenticated("3", "collections", "http3:c");
+      final SessionStub anonymous = open("4", "documents", false);
+
+      pushService.publishMessage("documents", "document changed");
+      assertThat(first.getSent()).containsExactly("document changed");
+      assertThat(second.getSent()).containsExactly("document changed");
+      assertThat(other.getSent()).isEmpty();
+      assertThat(anonymous.getSent()).isEmpty();
+
+      pushService.publishMessage("", "everybody");
+      assertThat(first.getSent()).containsExactly("document changed", "everybody");
+      assertThat(second.getSent()).containsExactly("document changed", "everybody");
+      assertThat(other.getSent()).containsExactly("everybody");
+      assertThat(anonymous.getSent()).isEmpty();
+   }
+
+   @Test
+   public void testPublishToClientSession() {
+      final SessionStub first = authenticated("1", "documents", "http1:a");
+      final SessionStub second = authenticated("2", "collections", "http1:b");
+      final SessionStub other = authenticated("3", "documents", "http2:c");
+      final PushMessage message = new PushMessage("info", "document:1", "changed");
+
+      // by the HTTP session the clients authenticated from
+      pushService.publishMessage("http1", "", message);
+      assertThat(first.getSent()).containsExactly(message.toString());
+      assertThat(second.getSent()).containsExactly(message.toString());
+      assertThat(other.getSent()).isEmpty();
+
+      // by the WebSocket session id
+      pushService.publishMessage("3", "documents", message);
+      assertThat(other.getSent()).containsExactly(message.toString());
+
+      pushService.publishMessage("http1", "collections", message);
+      assertThat(first.getSent()).hasSize(1);
+      assertThat(second.getSent()).hasSize(2);
+   }
+
+   @Test
+   public void testObservers() {
+      final SessionStub first = authenticated("1", "documents", "http1:a");
+      authenticated("2", "documents", "http2:b");
+
+      pushService.observe(first.getSession(), "document1");
+      assertThat(pushService.isObserved("document1")).isTrue();
+      assertThat(pushService.isObserved("document2")).isFalse();
+      assertThat(pushService.getObservers("document1")).extracting(PushSession::getId).containsExactly("1");
+      assertThat(pushService.getObservers("document1").iterator().next().getUserEmail()).isEqualTo(USER);
+
+      pushService.unobserve(first.getSession(), "document1");
+      assertThat(pushService.isObserved("document1")).isFalse();
+      assertThat(pushService.getObservers("document1")).isEmpty();
+   }
+
+   @Test
+   public void testCloseSessionCleansIndexes() throws Exception {
+      final SessionStub first = authenticated("1", "documents", "http1:a");
+      final SessionStub second = authenticated("2", "documents", "http2:b");
+      pushService.observe(first.getSession(), "document1");
+      pushService.observe(first.getSession(), "document2");
+      pushService.observe(second.getSession(), "document2");
+
+      pushService.closeSession(first.getSession());
+
+      assertThat(pushService.getTokens()).containsOnlyKeys("http2:b");
+      assertThat(pushService.isObserved("document1")).isFalse();
+      assertThat(pushService.getObservers("document2")).extracting(PushSession::getId).containsExactly("2");
+      assertThat(index("clients")).containsOnlyKeys("http2");
+      assertThat(index("sessions")).containsOnlyKeys("2");
+
+      pushService.publishMessage("documents", "after close");
+      assertThat(first.getSent()).isEmpty();
+      assertThat(second.getSent()).containsExactly("after close");
+
+      pushService.closeSession(second.getSession());
+
+      assertThat(pushService.getTokens()).isEmpty();
+      assertThat(index("sessions")).isEmpty();
+      assertThat(index("channels")).isEmpty();
+      assertThat(index("clients")).isEmpty();
+      assertThat(index("observedObjects")).isEmpty();
+   }
+
+   @Test
+   public void testOverflowDisconnectsSlowClient() throws Exception {
+      final SessionStub slow = open("1", "documents", true);
+      pushService.registerToken("http1:a", USER, null);
+      pushService.authenticateSession(slow.getSession(), "http1:a");
+      final SessionStub fast = authenticated("2", "documents", "http2:b");
+
+      // one message is in flight, the rest fills the queue
+      for (int i = 0; i <= PushService.MAX_PENDING_MESSAGES; i++) {
+         pushService.publishMessage("documents", "message " + i);
+      }
+      assertThat(slow.getCloseReason()).isNull();
+
+      pushService.publishMessage("documents", "overflow");
+      assertThat(slow.getCloseReason()).isNotNull();
+      assertThat(slow.getCloseReason().getCloseCode()).isEqualTo(CloseReason.CloseCodes.TRY_AGAIN_LATER);
+      assertThat(slow.getSent()).containsExactly("message 0");
+
+      // the fast client is not affected
+      assertThat(fast.getCloseReason()).isNull();
+      assertThat(fast.getSent()).hasSize(PushService.MAX_PENDING_MESSAGES + 2).endsWith("overflow");
+
+      // the container closes the session afterwards
+      pushService.closeSession(slow.getSession());
+      assertThat(index("sessions")).containsOnlyKeys("2");
+   }
+
+   private SessionStub open(final String id, final String channel, final boolean slow) {
+      final SessionStub stub = new SessionStub(id, channel, slow);
+      pushService.openSession(stub.getSession());
+      return stub;
+   }
+
+   private SessionStub authenticated(final String id, final String channel, final String token) {
+      final SessionStub stub = open(id, channel, false);
+      pushService.registerToken(token, USER, null);
+      assertThat(pushService.authenticateSession(stub.getSession(), token)).isTrue();
+      return stub;
+   }
+
+   private void setField(final String name, final Object value) throws Exception {
+      final Field field = PushService.class.getDeclaredField(name);
+      field.setAccessible(true);
+      field.set(pushService, value);
+   }
+
+   private Map<?, ?> index(final String name) throws Exception {
+      final Field field = PushService.class.getDeclaredField(name);
+      field.setAccessible(true);
+      return (Map<?, ?>) field.get(pushService);
+   }
+}
@@ -0,0 +1,114 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.push;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.lumeer.engine.api.data.DataDocument;
+
+import org.junit.Test;
+
+import java.util.logging.Logger;
+import javax.websocket.CloseReason;
+
+/**
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+public class PushSessionTest {
+
+   private static final Logger log = Logger.getLogger(PushSessionTest.class.getName());
+
+   @Test
+   public void testChannel() {
+      assertThat(new PushSession(new SessionStub("1", "documents", false).getSession(), 1, log).getChannel()).isEqualTo("documents");
+      assertThat(new PushSession(new SessionStub("2", null, false).getSession(), 1, log).getChannel()).isEmpty();
+   }
+
+   @Test
+   public void testMessagesAreSentInOrder() {
+      final SessionStub stub = new SessionStub("1", "", false);
+      final PushSession pushSession = new PushSession(stub.getSession(), 2, log);
+      final DataDocument object = new DataDocument("a", 1);
+
+      assertThat(pushSession.send("first")).isTrue();
+      assertThat(pushSession.send(object)).isTrue();
+      assertThat(pushSession.send("third")).isTrue();
+
+      assertThat(stub.getSent()).containsExactly("first", object, "third");
+      assertThat(stub.getCloseReason()).isNull();
+   }
+
+   @Test
+   public void testSlowClientGetsOneMessageAtATime() {
+      final SessionStub stub = new SessionStub("1", "", true);
+      final PushSession pushSession = new PushSession(stub.getSession(), 2, log);
+
+      pushSession.send("first");
+      pushSession.send("second");
+      pushSession.send("third");
+      assertThat(stub.getSent()).containsExactly("first");
+
+      stub.completeSend();
+      assertThat(stub.getSent()).containsExactly("first", "second");
+
+      stub.completeSend();
+      stub.completeSend();
+      assertThat(stub.getSent()).containsExactly("first", "second", "third");
+
+      // the queue is empty, the next message is sent right away
+      pushSession.send("fourth");
+      assertThat(stub.getSent()).containsExactly("first", "second", "third", "fourth");
+   }
+
+   @Test
+   public void testOverflowDisconnects() {
+      final SessionStub stub = new SessionStub("1", "", true);
+      final PushSession pushSession = new PushSession(stub.getSession(), 2, log);
+
+      assertThat(pushSession.send("in flight")).isTrue();
+      assertThat(pushSession.send("queued 1")).isTrue();
+      assertThat(pushSession.send("queued 2")).isTrue();
+      assertThat(stub.getCloseReason()).isNull();
+
+      assertThat(pushSession.send("overflow")).isFalse();
+      assertThat(stub.getCloseReason()).isNotNull();
+      assertThat(stub.getCloseReason().getCloseCode()).isEqualTo(CloseReason.CloseCodes.TRY_AGAIN_LATER);
+
+      // the queued messages are dropped and no more are accepted
+      stub.completeSend();
+      assertThat(pushSession.send("after overflow")).isFalse();
+      assertThat(stub.getSent()).containsExactly("in flight");
+   }
+
+   @Test
+   public void testClosedSessionDropsMessages() {
+      final SessionStub stub = new SessionStub("1", "", true);
+      final PushSession pushSession = new PushSession(stub.getSession(), 2, log);
+
+      pushSession.send("in flight");
+      pushSession.send("queued");
+      pushSession.close();
+
+      assertThat(pushSession.send("after close")).isFalse();
+      stub.completeSend();
+      assertThat(stub.getSent()).containsExactly("in flight");
+      assertThat(stub.getCloseReason()).isNull();
+   }
+}
@@ -0,0 +1,135 @@
+/*
+ * -----------------------------------------------------------------------\
+ * Lumeer
+ *  
+ * Copyright (C) 2016 - 2017 the original author or authors.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -----------------------------------------------------------------------/
+ */
+package io.lumeer.engine.push;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import javax.websocket.CloseReason;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+/**
+ * A WebSocket session that records the messages sent to it. It completes the sends immediately, or keeps them
+ * in flight until {@link #completeSend()} when it acts as a slow client.
+ *
+ * @author <a href="mailto:marvenec@gmail.com">Martin Večeřa</a>
+ */
+class SessionStub {
+
+   private final String id;
+
+   private final Map<String, String> pathParameters;
+
+   private final Map<String, Object> userProperties = new HashMap<>();
+
+   private final List<Object> sent = new ArrayList<>();
+
+   private final Queue<SendHandler> inFlight = new ArrayDeque<>();
+
+   private final boolean slow;
+
+   private CloseReason closeReason;
+
+   private final Session session;
+
+   SessionStub(final String id, final String channel, final boolean slow) {
+      this.id = id;
+      this.pathParameters = channel != null ? Collections.singletonMap("channel", channel) : Collections.emptyMap();
+      this.slow = slow;
+
+      final RemoteEndpoint.Async remote = proxy(RemoteEndpoint.Async.class, (proxy, method, args) -> {
+         if (method.getName().startsWith("send") && args != null && args.length == 2 && args[1] instanceof SendHandler) {
+            sent.add(args[0]);
+            if (this.slow) {
+               inFlight.add((SendHandler) args[1]);
+            } else {
+               ((SendHandler) args[1]).onResult(new SendResult());
+            }
+            return null;
+         }
+         return objectMethod(proxy, method, args);
+      });
+
+      this.session = proxy(Session.class, (proxy, method, args) -> {
+         switch (method.getName()) {
+            case "getId":
+               return this.id;
+            case "getPathParameters":
+               return pathParameters;
+            case "getUserProperties":
+               return userProperties;
+            case "getAsyncRemote":
+               return remote;
+            case "close":
+               closeReason = args != null && args.length > 0 ? (CloseReason) args[0] : new CloseReason(CloseReason.CloseCodes.NORMAL_CLOSURE, null);
+               return null;
+            default:
+               return objectMethod(proxy, method, args);
+         }
+      });
+   }
+
+   public Session getSession() {
+      return session;
+   }
+
+   public List<Object> getSent() {
+      return sent;
+   }
+
+   public CloseReason getCloseReason() {
+      return closeReason;
+   }
+
+   /**
+    * Completes the oldest send in flight of a slow client.
+    */
+   public void completeSend() {
+      inFlight.remove().onResult(new SendResult());
+   }
+
+   @SuppressWarnings("unchecked")
+   private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+      return (T) Proxy.newProxyInstance(SessionStub.class.getClassLoader(), new Class<?>[] { type }, handler);
+   }
+
+   private Object objectMethod(final Object proxy, final Method method, final Object[] args) {
+      switch (method.getName()) {
+         case "equals":
+            return proxy == args[0];
+         case "hashCode":
+            return System.identityHashCode(proxy);
+         case "toString":
+            return "SessionStub " + id;
+         default:
+            throw new UnsupportedOperationException(method.getName());
+      }
+   }
+}
@@ -75,6 +75,7 @@ public class CollectionServiceIntegrationTest extends IntegrationTestBase {
    private static final String COLLECTION_DROP_ATTRIBUTE = "CollectionServiceCollectionDropAttribute";
    private static final String COLLECTION_OPTION_SEARCH = "CollectionServiceCollectionOptionSearch";
    private static final String COLLECTION_QUERY_SEARCH = "CollectionServiceCollectionQuerySearch";
+   private static final String COLLECTION_EXPORT = "CollectionServiceCollectionExport";
    private static final String COLLECTION_ADD_COLLECTION_METADATA = "CollectionServiceCollectionAddCollectionMetadata";
    private static final String COLLECTION_READ_COLLECTION_METADATA = "CollectionServiceCollectionReadCollectionMetadata";
    private static final String COLLECTION_UPDATE_COLLECTION_METADATA = "CollectionServiceCollectionUpdateCollectionMetadata";
@@ -300,6 +301,37 @@ public class CollectionServiceIntegrationTest extends IntegrationTestBase {
       client.close();
    }
 
+   @Test
+   public void testExport() throws Exception {
+      setUpCollections(COLLECTION_EXPORT);
+      final Client client = ClientBuilder.newBuilder().build();
+
+      collectionFacade.createCollection(COLLECTION_EXPORT);
+      createDummyEntries(COLLECTION_EXPORT); // size = 10
+      // no one has rights to read this document
+      dataStorage.createDocument(getInternalName(COLLECTION_EXPORT), new DataDocument("dummyAttribute", 10));
+
+      Response response = client.target(TARGET_URI).path(PATH_PREFIX + COLLECTION_EXPORT + "/export/")
+                                .request(LumeerConst.JSON_LINES_MEDIA_TYPE).buildGet().invoke();
+      assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+      String[] lines = response.readEntity(String.class).split("\n");
+      assertThat(lines).hasSize(10);
+      assertThat(lines).allMatch(line -> line.contains("\"dummyAttribute\"") && line.contains("\"_id\""));
+      response.close();
+
+      response = client.target(TARGET_URI).path(PATH_PREFIX + COLLECTION_EXPORT + "/export/")
+                       .queryParam("attribute", "dummyAttribute")
+                       .request(LumeerConst.CSV_MEDIA_TYPE).buildGet().invoke();
+      assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+      lines = response.readEntity(String.class).split("\r\n");
+      assertThat(lines).hasSize(11);
+      assertThat(lines[0]).isEqualTo("dummyAttribute");
+      assertThat(lines[1]).isEqualTo("0");
+      response.close();
+
+      client.close();
+   }
+
    @Test
    public void testQuerySearch() throws Exception {
       setUpCollections(COLLECTION_QUERY_SEARCH);
@@ -48,7 +48,9 @@ import javax.inject.Inject;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
@@ -89,6 +91,7 @@ public class DocumentServiceIntegrationTest extends IntegrationTestBase {
    private final String COLLECTION_REVERT_DOCUMENT_VERSION = "DocumentServiceCollectionRevertDocumentVersion";
    private final String COLLECTION_READ_ACCESS_RIGHTS = "DocumentServiceCollectionrReadAccessRights";
    private final String COLLECTION_UPDATE_ACCESS_RIGHTS = "DocumentServiceCollectionrUpdateAccessRights";
+   private final String COLLECTION_CONDITIONAL_READ_AND_UPDATE = "DocumentServiceCollectionConditionalReadAndUpdate";
 
    @Inject
    private DataStorageProvider dataStorageProvider;
@@ -281,6 +284,63 @@ public class DocumentServiceIntegrationTest extends IntegrationTestBase {
       client.close();
    }
 
+   @Test
+   public void testConditionalReadAndUpdate() throws Exception {
+      setUpCollections(COLLECTION_CONDITIONAL_READ_AND_UPDATE);
+      final Client client = ClientBuilder.newBuilder().build();
+
+      collectionFacade.createCollection(COLLECTION_CONDITIONAL_READ_AND_UPDATE);
+      String documentId = documentFacade.createDocument(getInternalName(COLLECTION_CONDITIONAL_READ_AND_UPDATE), new DataDocument("name", "original"));
+
+      // 200 - the document is read together with its version tag
+      Response response = client.target(TARGET_URI).path(setPathPrefix(COLLECTION_CONDITIONAL_READ_AND_UPDATE) + documentId).request().buildGet().invoke();
+      final EntityTag tag = response.getEntityTag();
+      assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+      assertThat(tag).isNotNull();
+      response.close();
+
+      // 304 - the document was not changed
+      response = client.target(TARGET_URI).path(setPathPrefix(COLLECTION_CONDITIONAL_READ_AND_UPDATE) + documentId).request().header(HttpHeaders.IF_NONE_MATCH, tag).buildGet().invoke();
+      assertThat(response.getStatus()).isEqualTo(Response.Status.NOT_MODIFIED.getStatusCode());
+      response.close();
+
+      // 204 - the document is updated in the expected version
+      response = client.target(TARGET_URI).path(setPathPrefix(COLLECTION_CONDITIONAL_READ_AND_UPDATE) + "update/").request().header(HttpHeaders.IF_MATCH, tag).buildPut(Entity.json(new DataDocument("_id", documentId).append("name", "updated"))).invoke();
+      final EntityTag updatedTag = response.getEntityTag();
+      assertThat(response.getStatus()).isEqualTo(Response.Status.NO_CONTENT.getStatusCode());
+      assertThat(updatedTag).isNotEqualTo(tag);
+      response.close();
+
+      // 412 - the document is not in the expected version anymore
+      response = client.target(TARGET_URI).path(setPathPrefix(COLLECTION_CONDITIONAL_READ_AND_UPDATE) + "replace/").request().header(HttpHeaders.IF_MATCH, tag).buildPut(Entity.json(new DataDocument("_id", documentId).append("name", "stale"))).invoke();
+      assertThat(response.getStatus()).isEqualTo(Response.Status.PRECONDITION_FAILED.getStatusCode());
+      assertThat(documentFacade.readDocument(getInternalName(COLLECTION_CONDITIONAL_READ_AND_UPDATE), documentId).getString("name")).isEqualTo("updated");
+      response.close();
+
+      // 200 - the changed document is read again
+      response = client.target(TARGET_URI).path(setPathPrefix(COLLECTION_CONDITIONAL_READ_AND_UPDATE) + documentId).request().header(HttpHeaders.IF_NONE_MATCH, tag).buildGet().invoke();
+      assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+      assertThat(response.getEntityTag()).isEqualTo(updatedTag);
+      response.close();
+
+      // 200 - a change without a new version changes the tag as well
+      documentMetadataFacade.putDocumentMetadata(getInternalName(COLLECTION_CONDITIONAL_READ_AND_UPDATE), documentId, LumeerConst.Document.UPDATED_BY_USER_KEY, "changed");
+      response = client.target(TARGET_URI).path(setPathPrefix(COLLECTION_CONDITIONAL_READ_AND_UPDATE) + documentId).request().header(HttpHeaders.IF_NONE_MATCH, updatedTag).buildGet().invoke();
+      final EntityTag metadataTag = response.getEntityTag();
+      assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+      assertThat(metadataTag).isNotEqualTo(updatedTag);
+      response.close();
+
+      // 200 - so does a change of the access rights
+      securityFacade.setRightsWrite(getInternalName(COLLECTION_CONDITIONAL_READ_AND_UPDATE), documentId, userFacade.getUserEmail());
+      response = client.target(TARGET_URI).path(setPathPrefix(COLLECTION_CONDITIONAL_READ_AND_UPDATE) + documentId).request().header(HttpHeaders.IF_NONE_MATCH, metadataTag).buildGet().invoke();
+      assertThat(response.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+      assertThat(response.getEntityTag()).isNotEqualTo(metadataTag);
+      response.close();
+
+      client.close();
+   }
+
    private void setUpCollections(final String collectionName) throws DbException {
       if (dataStorage.hasCollection(getInternalName(collectionName))) {
          collectionFacade.dropCollection(getInternalName(collectionName));
@@ -30,6 +30,7 @@ import io.lumeer.engine.controller.CollectionFacade;
 import io.lumeer.engine.controller.CollectionMetadataFacade;
 import io.lumeer.engine.controller.LinkingFacade;
 import io.lumeer.engine.provider.DataStorageProvider;
+import io.lumeer.engine.provider.LinkGraphProvider;
 
 import org.jboss.arquillian.junit.Arquillian;
 import org.junit.Before;
@@ -69,6 +70,9 @@ public class LinkingServiceIntegrationTest extends IntegrationTestBase {
    @Inject
    private DataStorageProvider dataStorageProvider;
 
+   @Inject
+   private LinkGraphProvider linkGraphProvider;
+
    @Before
    public void init() {
       dataStorage = dataStorageProvider.getUserStorage();
@@ -150,6 +154,9 @@ public class LinkingServiceIntegrationTest extends IntegrationTestBase {
             }
          }
       }
+
+      // the collections are dropped directly in the storage, bypassing the link index
+      linkGraphProvider.invalidate(dataStorage);
    }
 
    private String buildCollectionName(final String firstCollectionName, final String secondCollectionName, final String role) {